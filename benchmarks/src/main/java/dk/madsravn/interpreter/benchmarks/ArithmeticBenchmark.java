@@ -0,0 +1,45 @@
+package dk.madsravn.interpreter.benchmarks;
+
+import dk.madsravn.interpreter.ast.Program;
+import dk.madsravn.interpreter.evaluator.Evaluator;
+import dk.madsravn.interpreter.lexer.Lexer;
+import dk.madsravn.interpreter.object.Environment;
+import dk.madsravn.interpreter.object.IObject;
+import dk.madsravn.interpreter.parser.Parser;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Arithmetic heavy script for the tree-walking evaluator. benchmarks.jar runs it with the GC profiler, so compare
+ * gc.alloc.rate.norm, the bytes allocated per evaluation, as well as the time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xss64m")
+public class ArithmeticBenchmark {
+    private static final String SOURCE = """
+            let f = fn(a, b) {
+                (a * b + a - b) * (a + b) / (b * b + 1) - a * a + b * b - (a * 3 + b * 5) * (a - b * 7) / (a * a + 1)
+            };
+            let loop = fn(i, acc) {
+                if (i < 1) { acc } else { loop(i - 1, acc + f(i, i - 3) - f(i - 1, 2) * 2) }
+            };
+            loop(5000, 0);
+            """;
+
+    private Program program;
+
+    @Setup
+    public void setup() {
+        program = new Parser(new Lexer(SOURCE)).parseProgram();
+    }
+
+    @Benchmark
+    public IObject evaluate() {
+        return Evaluator.evaluate(program, new Environment());
+    }
+}
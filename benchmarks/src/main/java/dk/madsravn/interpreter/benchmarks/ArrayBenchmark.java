@@ -0,0 +1,60 @@
+package dk.madsravn.interpreter.benchmarks;
+
+import dk.madsravn.interpreter.evaluator.Evaluator;
+import dk.madsravn.interpreter.object.ArrayObject;
+import dk.madsravn.interpreter.object.IObject;
+import dk.madsravn.interpreter.object.IntegerObject;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds an array with push and walks it with first and rest, going through the same builtins a Monkey program
+ * calls. Both loops should scale linearly with size; with a copying push or nested subList views they were
+ * quadratic.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ArrayBenchmark {
+    @Param({ "10000", "100000", "1000000" })
+    private int size;
+
+    private ArrayObject full;
+
+    @Setup
+    public void setup() {
+        List<IObject> elements = new ArrayList<>();
+        for(int i = 0; i < size; i++) {
+            elements.add(new IntegerObject(i));
+        }
+        full = new ArrayObject(elements);
+    }
+
+    @Benchmark
+    public IObject pushLoop() {
+        IObject array = new ArrayObject(new ArrayList<>());
+        for(int i = 0; i < size; i++) {
+            array = Evaluator.pushArray(List.of(array, new IntegerObject(i)));
+        }
+
+        return array;
+    }
+
+    @Benchmark
+    public long restLoop() {
+        long sum = 0;
+        IObject array = full;
+        while(((ArrayObject) array).getElementsLength() > 0) {
+            sum += ((IntegerObject) Evaluator.firstOfArray(List.of(array))).getValue();
+            array = Evaluator.restOfArray(List.of(array));
+        }
+
+        return sum;
+    }
+}
@@ -0,0 +1,129 @@
+package dk.madsravn.interpreter.benchmarks;
+
+/**
+ * Monkey scripts shared by the lexer, parser and evaluator benchmarks. Every workload takes a size: the number of
+ * loop iterations for the hand-written scripts, and the number of generated functions for GENERATED. The scripts
+ * only use the top level and tail calls for their loops, so large sizes do not need a bigger Java stack.
+ */
+public enum Corpus {
+    FIB {
+        @Override
+        public String source(int size) {
+            return """
+                    let fib = fn(x) { if (x < 2) { x } else { fib(x - 1) + fib(x - 2) } };
+                    let loop = fn(i, acc) { if (i < 1) { acc } else { loop(i - 1, acc + fib(12)) } };
+                    loop(%d, 0);
+                    """.formatted(size / 100 + 1);
+        }
+    },
+
+    ARRAYS {
+        @Override
+        public String source(int size) {
+            return """
+                    let build = fn(i, acc) { if (i < 1) { acc } else { build(i - 1, push(acc, i)) } };
+                    let sum = fn(arr, acc) { if (len(arr) == 0) { acc } else { sum(rest(arr), acc + first(arr)) } };
+                    sum(build(%d, []), 0);
+                    """.formatted(size);
+        }
+    },
+
+    HASHES {
+        @Override
+        public String source(int size) {
+            return """
+                    let build = fn(i, acc) { if (i < 1) { acc } else { build(i - 1, set(acc, i, i * 2)) } };
+                    let table = build(%d, {});
+                    let names = {"one": 1, "two": 2, "three": 3, true: 4, 5: 5};
+                    let lookup = fn(i, acc) {
+                        if (i < 1) { acc } else { lookup(i - 1, acc + table[i] + names["two"] + names[true]) }
+                    };
+                    lookup(%d, 0);
+                    """.formatted(size, size);
+        }
+    },
+
+    RECORDS {
+        // Hashes used as records: built by one literal and read with constant keys.
+        @Override
+        public String source(int size) {
+            return """
+                    let person = fn(i) { {"name": "monkey", "age": i, "height": i * 2, "weight": i + 3} };
+                    let total = fn(i, acc) {
+                        if (i < 1) { acc } else {
+                            let p = person(i);
+                            total(i - 1, acc + p["age"] + p["height"] + p["weight"] + len(p["name"]))
+                        }
+                    };
+                    total(%d, 0);
+                    """.formatted(size);
+        }
+    },
+
+    STRINGS {
+        @Override
+        public String source(int size) {
+            return """
+                    let concat = fn(i, s) { if (i < 1) { s } else { concat(i - 1, s + "monkey" + " ") } };
+                    len(concat(%d, ""));
+                    """.formatted(size);
+        }
+    },
+
+    CLOSURES {
+        @Override
+        public String source(int size) {
+            return """
+                    let map = fn(arr, f) {
+                        let iter = fn(arr, accumulated) {
+                            if (len(arr) == 0) { accumulated } else { iter(rest(arr), push(accumulated, f(first(arr)))) }
+                        };
+                        iter(arr, [])
+                    };
+                    let reduce = fn(arr, initial, f) {
+                        let iter = fn(arr, result) {
+                            if (len(arr) == 0) { result } else { iter(rest(arr), f(result, first(arr))) }
+                        };
+                        iter(arr, initial)
+                    };
+                    let range = fn(i, acc) { if (i < 1) { acc } else { range(i - 1, push(acc, i)) } };
+                    let adder = fn(x) { fn(y) { x + y } };
+                    let doubled = map(range(%d, []), fn(x) { adder(x)(x) });
+                    reduce(doubled, 0, fn(acc, x) { acc + x });
+                    """.formatted(size);
+        }
+    },
+
+    GENERATED {
+        // A large program of many small functions, mostly interesting for the lexer and the parser.
+        @Override
+        public String source(int size) {
+            StringBuilder sb = new StringBuilder();
+            for(int i = 0; i < size; i++) {
+                String name = functionName(i);
+                sb.append("let ").append(name).append(" = fn(a, b) {\n");
+                sb.append("    let c = a * ").append(i % 97).append(" + b - (a / (b + 1));\n");
+                sb.append("    let values = [a, b, c, \"value").append(i).append("\"];\n");
+                sb.append("    let table = {\"a\": a, \"b\": b, ").append(i).append(": values[2]};\n");
+                sb.append("    if (c > a) { return table[\"a\"] + values[1]; } else { c == b }\n");
+                sb.append("};\n");
+                sb.append(name).append("(").append(i).append(", 3);\n");
+            }
+
+            return sb.toString();
+        }
+    };
+
+    public abstract String source(int size);
+
+    // Identifiers can only contain letters, so the index is spelled out in base 26.
+    private static String functionName(int index) {
+        StringBuilder name = new StringBuilder();
+        do {
+            name.append((char) ('a' + index % 26));
+            index /= 26;
+        } while(index > 0);
+
+        return "gen" + name;
+    }
+}
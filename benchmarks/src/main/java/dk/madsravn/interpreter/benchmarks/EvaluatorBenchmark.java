@@ -0,0 +1,47 @@
+package dk.madsravn.interpreter.benchmarks;
+
+import dk.madsravn.interpreter.ast.Program;
+import dk.madsravn.interpreter.evaluator.Evaluator;
+import dk.madsravn.interpreter.lexer.Lexer;
+import dk.madsravn.interpreter.object.Environment;
+import dk.madsravn.interpreter.object.ErrorObject;
+import dk.madsravn.interpreter.object.IObject;
+import dk.madsravn.interpreter.parser.Parser;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Evaluates each workload of the Corpus on a fresh Environment. The program is parsed and resolved once in setup,
+ * so only evaluation is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xss64m")
+public class EvaluatorBenchmark {
+    @Param({ "FIB", "ARRAYS", "HASHES", "RECORDS", "STRINGS", "CLOSURES", "GENERATED" })
+    private Corpus workload;
+
+    @Param({ "100", "1000", "10000" })
+    private int size;
+
+    private Program program;
+
+    @Setup
+    public void setup() {
+        program = new Parser(new Lexer(workload.source(size))).parseProgram();
+        // Fail the run instead of measuring how fast a broken script reports its error.
+        IObject result = Evaluator.evaluate(program, new Environment());
+        if(result instanceof ErrorObject error) {
+            throw new IllegalStateException(workload + ": " + error.getMessage());
+        }
+    }
+
+    @Benchmark
+    public IObject evaluate() {
+        return Evaluator.evaluate(program, new Environment());
+    }
+}
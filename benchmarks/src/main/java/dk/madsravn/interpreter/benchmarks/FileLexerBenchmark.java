@@ -0,0 +1,82 @@
+package dk.madsravn.interpreter.benchmarks;
+
+import dk.madsravn.interpreter.lexer.ILexer;
+import dk.madsravn.interpreter.lexer.Lexer;
+import dk.madsravn.interpreter.lexer.MappedLexer;
+import dk.madsravn.interpreter.lexer.Scanners;
+import dk.madsravn.interpreter.tokens.TokenType;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lexes a generated script file from disk, the way App runs a file: reading it into a String for Lexer, or mapping
+ * it for MappedLexer, which uses the VectorScanner unless it runs as mappedLexerScalar. Besides the time per file,
+ * the megabytes row of the results is the throughput in MB/s.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector" })
+public class FileLexerBenchmark {
+    @Param({ "1000", "10000", "100000" })
+    private int size;
+
+    private Path file;
+    private double megabytes;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Throughput {
+        public double megabytes;
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        file = Files.createTempFile("benchmark", ".monkey");
+        Files.writeString(file, Corpus.GENERATED.source(size), StandardCharsets.UTF_8);
+        megabytes = Files.size(file) / (1024.0 * 1024.0);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.delete(file);
+    }
+
+    @Benchmark
+    public int lexer(Throughput throughput) throws IOException {
+        throughput.megabytes += megabytes;
+        return count(new Lexer(Files.readString(file, StandardCharsets.UTF_8)));
+    }
+
+    @Benchmark
+    public int mappedLexer(Throughput throughput) throws IOException {
+        throughput.megabytes += megabytes;
+        return count(MappedLexer.open(file));
+    }
+
+    @Benchmark
+    public int mappedLexerScalar(Throughput throughput) throws IOException {
+        throughput.megabytes += megabytes;
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return count(new MappedLexer(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), Scanners.scalar()));
+        }
+    }
+
+    private static int count(ILexer lexer) {
+        int count = 0;
+        while(lexer.nextToken().getType() != TokenType.EOF) {
+            count++;
+        }
+
+        return count;
+    }
+}
@@ -0,0 +1,75 @@
+package dk.madsravn.interpreter.benchmarks;
+
+import dk.madsravn.interpreter.evaluator.Evaluator;
+import dk.madsravn.interpreter.object.HashObject;
+import dk.madsravn.interpreter.object.IObject;
+import dk.madsravn.interpreter.object.IntegerObject;
+import dk.madsravn.interpreter.object.StringObject;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds a hash one key at a time with set and then takes it apart again with delete, the way a script would build
+ * a lookup table incrementally. getLoop looks every key of a table with string keys up, through the same path as an
+ * index expression, using the same key objects each time like a script indexing with literals does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class HashBenchmark {
+    @Param({ "10000", "100000", "1000000" })
+    private int size;
+
+    private HashObject full;
+    private HashObject table;
+    private StringObject[] keys;
+
+    @Setup
+    public void setup() {
+        full = (HashObject) setLoop();
+        keys = new StringObject[size];
+        IObject hash = new HashObject(Map.of());
+        for(int i = 0; i < size; i++) {
+            keys[i] = new StringObject("key-" + i);
+            hash = Evaluator.setHash(List.of(hash, keys[i], new IntegerObject(i)));
+        }
+        table = (HashObject) hash;
+    }
+
+    @Benchmark
+    public IObject setLoop() {
+        IObject hash = new HashObject(Map.of());
+        for(int i = 0; i < size; i++) {
+            IObject key = new IntegerObject(i);
+            hash = Evaluator.setHash(List.of(hash, key, key));
+        }
+
+        return hash;
+    }
+
+    @Benchmark
+    public long getLoop() {
+        long sum = 0;
+        for(StringObject key : keys) {
+            sum += ((IntegerObject) Evaluator.evaluateIndexExpression(table, key)).getValue();
+        }
+
+        return sum;
+    }
+
+    @Benchmark
+    public IObject deleteLoop() {
+        IObject hash = full;
+        for(int i = 0; i < size; i++) {
+            hash = Evaluator.deleteHash(List.of(hash, new IntegerObject(i)));
+        }
+
+        return hash;
+    }
+}
@@ -0,0 +1,73 @@
+package dk.madsravn.interpreter.benchmarks;
+
+import dk.madsravn.interpreter.collection.PersistentHashMap;
+import dk.madsravn.interpreter.object.HashObject;
+import dk.madsravn.interpreter.object.IObject;
+import dk.madsravn.interpreter.object.IntegerObject;
+import dk.madsravn.interpreter.object.Shape;
+import dk.madsravn.interpreter.object.StringObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Prints the bytes a hash of each size keeps alive per entry, for HashObject, for a HashObject with a Shape (made by
+ * a literal with constant string keys), for a PersistentHashMap holding the same pairs (the layout every HashObject
+ * used before small hashes became CompactMaps) and for a java.util.HashMap.
+ * JMH's gc.alloc.rate.norm counts garbage as well, so this measures the heap after a full GC instead. The keys and
+ * values are shared by every copy and not counted.
+ *
+ * java -cp target/benchmarks.jar dk.madsravn.interpreter.benchmarks.HashFootprint
+ */
+public class HashFootprint {
+    private static final int[] SIZES = { 1, 4, 8, 9, 16, 32, 64, 65, 1024 };
+    private static final int ENTRIES_PER_LAYOUT = 1 << 20;
+
+    public static void main(String[] args) {
+        System.out.printf("%6s %12s %8s %18s %10s%n", "size", "HashObject", "Shaped", "PersistentHashMap", "HashMap");
+        for(int size : SIZES) {
+            Map<IObject, IObject> pairs = new HashMap<>();
+            List<StringObject> keys = new ArrayList<>();
+            for(int i = 0; i < size; i++) {
+                keys.add(new StringObject("key" + i));
+                pairs.put(keys.get(i), new IntegerObject(i));
+            }
+            double hashObject = bytesPerEntry(pairs, HashObject::new);
+            String shaped = "-";
+            Shape shape = Shape.of(keys);
+            if(shape != null) {
+                IObject[] values = keys.stream().map(pairs::get).toArray(IObject[]::new);
+                shaped = "%.1f".formatted(bytesPerEntry(pairs, p -> new HashObject(shape, values.clone())));
+            }
+            double trie = bytesPerEntry(pairs, PersistentHashMap::from);
+            double hashMap = bytesPerEntry(pairs, HashMap::new);
+            System.out.printf("%6d %12.1f %8s %18.1f %10.1f%n", size, hashObject, shaped, trie, hashMap);
+        }
+    }
+
+    private static double bytesPerEntry(Map<IObject, IObject> pairs, Function<Map<IObject, IObject>, Object> layout) {
+        Object[] copies = new Object[Math.max(1, ENTRIES_PER_LAYOUT / pairs.size())];
+        long before = usedHeap();
+        for(int i = 0; i < copies.length; i++) {
+            copies[i] = layout.apply(pairs);
+        }
+        long after = usedHeap();
+        if(copies[copies.length - 1] == null) {
+            throw new IllegalStateException();
+        }
+
+        return (double) (after - before) / copies.length / pairs.size();
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for(int i = 0; i < 3; i++) {
+            System.gc();
+        }
+
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
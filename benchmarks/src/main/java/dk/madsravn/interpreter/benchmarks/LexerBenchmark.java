@@ -0,0 +1,58 @@
+package dk.madsravn.interpreter.benchmarks;
+
+import dk.madsravn.interpreter.lexer.Lexer;
+import dk.madsravn.interpreter.lexer.StreamingLexer;
+import dk.madsravn.interpreter.lexer.TokenBuffer;
+import dk.madsravn.interpreter.tokens.Token;
+import dk.madsravn.interpreter.tokens.TokenType;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tokenizes each workload of the Corpus. The hand-written scripts are short, so size mostly matters for GENERATED,
+ * which is where the bytes per second of the lexer show.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class LexerBenchmark {
+    @Param({ "FIB", "ARRAYS", "HASHES", "RECORDS", "STRINGS", "CLOSURES", "GENERATED" })
+    private Corpus workload;
+
+    @Param({ "100", "1000", "10000" })
+    private int size;
+
+    private String source;
+
+    @Setup
+    public void setup() {
+        source = workload.source(size);
+    }
+
+    @Benchmark
+    public List<Token> readAllTokens() {
+        return new Lexer(source).readAllTokens();
+    }
+
+    @Benchmark
+    public TokenBuffer tokenize() {
+        return new Lexer(source).tokenize();
+    }
+
+    @Benchmark
+    public int streaming() {
+        StreamingLexer lexer = new StreamingLexer(new StringReader(source));
+        int count = 0;
+        while(lexer.nextToken().getType() != TokenType.EOF) {
+            count++;
+        }
+
+        return count;
+    }
+}
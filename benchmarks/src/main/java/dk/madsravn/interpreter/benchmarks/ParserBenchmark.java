@@ -0,0 +1,70 @@
+package dk.madsravn.interpreter.benchmarks;
+
+import dk.madsravn.interpreter.ast.Program;
+import dk.madsravn.interpreter.cache.ProgramCache;
+import dk.madsravn.interpreter.lexer.Lexer;
+import dk.madsravn.interpreter.parser.ParallelParser;
+import dk.madsravn.interpreter.parser.Parser;
+import dk.madsravn.interpreter.serialization.AstReader;
+import dk.madsravn.interpreter.serialization.AstWriter;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses each workload of the Corpus, including the lexing: token by token as the Parser asks for them, or all at
+ * once into a TokenBuffer first. parseParallel splits the source at top level statements and parses the chunks on
+ * the common ForkJoinPool. readCompiled loads the same program from the binary form AstWriter produces, which is
+ * what running a precompiled script costs instead, and cachedProgram is a hit in a ProgramCache, which still hashes
+ * the source.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+    @Param({ "FIB", "ARRAYS", "HASHES", "RECORDS", "STRINGS", "CLOSURES", "GENERATED" })
+    private Corpus workload;
+
+    @Param({ "100", "1000", "10000" })
+    private int size;
+
+    private String source;
+    private byte[] compiled;
+    private ProgramCache cache;
+
+    @Setup
+    public void setup() {
+        source = workload.source(size);
+        compiled = AstWriter.write(new Parser(new Lexer(source)).parseProgram());
+        cache = new ProgramCache(1);
+        cache.get(source);
+    }
+
+    @Benchmark
+    public Program parseProgram() {
+        return new Parser(new Lexer(source)).parseProgram();
+    }
+
+    @Benchmark
+    public Program parseTokenBuffer() {
+        return new Parser(new Lexer(source).tokenize()).parseProgram();
+    }
+
+    @Benchmark
+    public Program parseParallel() {
+        return new ParallelParser(source).parseProgram();
+    }
+
+    @Benchmark
+    public Program readCompiled() {
+        return AstReader.read(compiled);
+    }
+
+    @Benchmark
+    public Program cachedProgram() {
+        return cache.get(source).program();
+    }
+}
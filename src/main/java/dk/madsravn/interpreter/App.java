@@ -1,21 +1,144 @@
 package dk.madsravn.interpreter;
 
-import dk.madsravn.interpreter.lexer.Lexer;
+import dk.madsravn.interpreter.ast.Program;
+import dk.madsravn.interpreter.compiler.Bytecode;
+import dk.madsravn.interpreter.compiler.Compiler;
+import dk.madsravn.interpreter.evaluator.Evaluator;
+import dk.madsravn.interpreter.lexer.MappedLexer;
+import dk.madsravn.interpreter.object.Environment;
+import dk.madsravn.interpreter.object.ErrorObject;
+import dk.madsravn.interpreter.object.IObject;
+import dk.madsravn.interpreter.optimizer.ConstantFolder;
+import dk.madsravn.interpreter.parser.Parser;
+import dk.madsravn.interpreter.repl.Engine;
 import dk.madsravn.interpreter.repl.Repl;
-import dk.madsravn.interpreter.tokens.Token;
-import dk.madsravn.interpreter.tokens.TokenType;
+import dk.madsravn.interpreter.resolver.Resolver;
+import dk.madsravn.interpreter.serialization.AstReader;
+import dk.madsravn.interpreter.serialization.AstWriter;
+import dk.madsravn.interpreter.vm.VM;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
- * Hello world!
+ * Starts the REPL, or runs a script file when its path is given. Pass {@code --engine=vm} to run input on the
+ * bytecode virtual machine instead of the tree-walking evaluator. The virtual machine keeps its call stack on the
+ * heap, so recursion is not limited by the thread's stack size; {@code --max-depth=N} sets how many nested calls it
+ * allows.
  *
+ * {@code --compile} parses the given {@code .monkey} files and writes each tree next to its source as a
+ * {@code .monkeyc} file. Running a {@code .monkeyc} file loads the tree directly instead of lexing and parsing.
  */
 public class App 
 {
-    public static void main( String[] args )
+    private static final String SOURCE_EXTENSION = ".monkey";
+    private static final String COMPILED_EXTENSION = ".monkeyc";
+
+    public static void main( String[] args ) throws IOException
     {
-        Repl repl = new Repl();
+        Engine engine = Engine.EVALUATOR;
+        int maxDepth = VM.DEFAULT_MAX_DEPTH;
+        boolean compile = false;
+        List<Path> scripts = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.equals("--compile")) {
+                compile = true;
+            } else if (arg.startsWith("--engine=")) {
+                engine = Engine.fromOptionName(arg.substring("--engine=".length()));
+            } else if (arg.startsWith("--max-depth=")) {
+                maxDepth = Integer.parseInt(arg.substring("--max-depth=".length()));
+            } else if (!arg.startsWith("--")) {
+                scripts.add(Path.of(arg));
+            }
+        }
+        if (compile) {
+            System.exit(compileFiles(scripts));
+        }
+        if (!scripts.isEmpty()) {
+            System.exit(runFile(scripts.get(0), engine, maxDepth));
+        }
+        Repl repl = new Repl(engine, maxDepth);
         repl.start();
     }
+
+    private static int compileFiles(List<Path> scripts) throws IOException {
+        for (Path script : scripts) {
+            Program program = parseFile(script);
+            if (program == null) {
+                return 1;
+            }
+            AstWriter.write(program, compiledPath(script));
+        }
+
+        return 0;
+    }
+
+    private static Path compiledPath(Path script) {
+        String name = script.getFileName().toString();
+        if (name.endsWith(SOURCE_EXTENSION)) {
+            name = name.substring(0, name.length() - SOURCE_EXTENSION.length());
+        }
+
+        return script.resolveSibling(name + COMPILED_EXTENSION);
+    }
+
+    // The file is lexed straight from a memory mapping, without reading it into a String first.
+    private static Program parseFile(Path script) throws IOException {
+        Parser parser = new Parser(MappedLexer.open(script));
+        Program program = parser.parseProgram();
+        if (parser.getErrors().size() > 0) {
+            System.err.println(script + ":");
+            parser.getErrors().stream().map(s -> "\t" + s).forEach(System.err::println);
+            return null;
+        }
+
+        return program;
+    }
+
+    private static int runFile(Path script, Engine engine, int maxDepth) throws IOException {
+        Program program;
+        if (script.getFileName().toString().endsWith(COMPILED_EXTENSION)) {
+            try {
+                program = AstReader.read(script);
+            } catch (IllegalArgumentException e) {
+                System.err.println(script + ": " + e.getMessage());
+                return 1;
+            }
+        } else {
+            program = parseFile(script);
+            if (program == null) {
+                return 1;
+            }
+        }
+
+        IObject evaluated;
+        if (engine == Engine.VM) {
+            Compiler compiler = new Compiler();
+            try {
+                compiler.compile(program);
+            } catch (IllegalArgumentException e) {
+                // A program too large for an instruction's operands, for example a call with 65536 arguments.
+                System.err.println(script + ": " + e.getMessage());
+                return 1;
+            }
+            Bytecode bytecode = compiler.bytecode();
+            evaluated = new VM(bytecode, new IObject[bytecode.getGlobalNames().size()], maxDepth).run();
+        } else {
+            // The script is the only program its Environment runs, so its functions can call builtins directly.
+            ConstantFolder.fold(program);
+            Resolver.resolve(program);
+            evaluated = Evaluator.evaluate(program, new Environment());
+        }
+        if (evaluated instanceof ErrorObject error) {
+            System.err.println(error.inspect());
+            return 1;
+        }
+        if (evaluated != null) {
+            System.out.println(evaluated.inspect());
+        }
+
+        return 0;
+    }
 }
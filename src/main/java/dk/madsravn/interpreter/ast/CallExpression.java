@@ -9,6 +9,9 @@ public class CallExpression implements IExpression {
     private Token token;
     private IExpression function;
     private List<IExpression> arguments;
+    // Set by the Resolver when the call's value is returned from the enclosing function as it is.
+    private boolean tailCall;
+    private final CallSiteCache cache = new CallSiteCache();
 
     public CallExpression(Token token, IExpression function, List<IExpression> arguments) {
         this.token = token;
@@ -20,9 +23,25 @@ public class CallExpression implements IExpression {
         return function;
     }
 
+    public void setFunction(IExpression function) {
+        this.function = function;
+    }
+
     public List<IExpression> getArguments() {
         return arguments;
     }
+
+    public boolean isTailCall() {
+        return tailCall;
+    }
+
+    public void setTailCall(boolean tailCall) {
+        this.tailCall = tailCall;
+    }
+
+    public CallSiteCache getCache() {
+        return cache;
+    }
     @Override
     public void expressionNode() {}
 
@@ -0,0 +1,74 @@
+package dk.madsravn.interpreter.ast;
+
+import java.util.Arrays;
+
+/**
+ * What the Evaluator has seen a call site call, so a call to a function it has called there before can skip the
+ * general path. A target is the FunctionLiteral of a called function and comes with the slots the function's
+ * parameters are bound to. Calls of builtins take their arguments as a list and have nothing to skip, so they are
+ * not remembered. A site that has called more than MAX_TARGETS different functions is megamorphic and stops
+ * remembering.
+ *
+ * Programs can be shared between threads, so the targets are kept in an immutable snapshot that is replaced as a
+ * whole. A thread that misses an update from another thread only looks the function up again.
+ */
+public class CallSiteCache {
+    public static final int MAX_TARGETS = 4;
+    // A layout entry for a parameter that is not a plain slot, for example one that closures capture.
+    public static final int NOT_A_SLOT = -1;
+
+    public enum State { UNINITIALIZED, MONOMORPHIC, POLYMORPHIC, MEGAMORPHIC }
+
+    private static final Targets EMPTY = new Targets(new Object[0], new int[0][], false);
+    private static final Targets MEGAMORPHIC = new Targets(new Object[0], new int[0][], true);
+
+    private Targets targets = EMPTY;
+
+    // The parameter layout remembered for the target, or null when the target has not been seen here.
+    public int[] layout(Object target) {
+        Targets current = targets;
+        for(int i = 0; i < current.targets.length; i++) {
+            if(current.targets[i] == target) {
+                return current.layouts[i];
+            }
+        }
+
+        return null;
+    }
+
+    public void add(Object target, int[] layout) {
+        Targets current = targets;
+        if(current.megamorphic) {
+            return;
+        }
+        int count = current.targets.length;
+        if(count == MAX_TARGETS) {
+            targets = MEGAMORPHIC;
+            return;
+        }
+        Object[] newTargets = Arrays.copyOf(current.targets, count + 1);
+        int[][] newLayouts = Arrays.copyOf(current.layouts, count + 1);
+        newTargets[count] = target;
+        newLayouts[count] = layout;
+        targets = new Targets(newTargets, newLayouts, false);
+    }
+
+    public boolean isMegamorphic() {
+        return targets.megamorphic;
+    }
+
+    public State getState() {
+        Targets current = targets;
+        if(current.megamorphic) {
+            return State.MEGAMORPHIC;
+        }
+        return switch(current.targets.length) {
+            case 0 -> State.UNINITIALIZED;
+            case 1 -> State.MONOMORPHIC;
+            default -> State.POLYMORPHIC;
+        };
+    }
+
+    // The fields are final, so a thread that sees the snapshot also sees the arrays it was created with.
+    private record Targets(Object[] targets, int[][] layouts, boolean megamorphic) { }
+}
@@ -0,0 +1,7 @@
+package dk.madsravn.interpreter.ast;
+
+/**
+ * One free variable of a FunctionLiteral. When local is set the variable belongs to the enclosing function and
+ * index is one of its cells, otherwise the enclosing function captured it too and index is its free variable.
+ */
+public record Capture(boolean local, int index) { }
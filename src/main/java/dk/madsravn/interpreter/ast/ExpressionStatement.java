@@ -33,4 +33,8 @@ public class ExpressionStatement implements IStatement {
     public IExpression getExpression() {
         return expression;
     }
+
+    public Token getToken() {
+        return token;
+    }
 }
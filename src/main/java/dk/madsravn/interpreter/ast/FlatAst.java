@@ -0,0 +1,444 @@
+package dk.madsravn.interpreter.ast;
+
+import dk.madsravn.interpreter.tokens.Token;
+import dk.madsravn.interpreter.tokens.TokenType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A syntax tree stored as parallel arrays instead of one object per node. Nodes are numbered in preorder, and for
+ * every node the arrays hold its kind, its first child, its next sibling and one int value. Names, strings and
+ * operators live once in a table of constants. This takes a fraction of the memory of the node objects, which also
+ * each keep a Token, and a walk over it reads neighbouring array slots instead of following pointers.
+ *
+ * What the value of a node means depends on its kind:
+ * <ul>
+ *     <li>LET, IDENTIFIER, STRING and PREFIX: index of the name, string or operator in the constants</li>
+ *     <li>INTEGER: the integer itself</li>
+ *     <li>BOOLEAN: 1 for true and 0 for false</li>
+ *     <li>INFIX: ordinal of the InfixOperator</li>
+ *     <li>FUNCTION: number of parameters, which are its first children, followed by the body</li>
+ * </ul>
+ * The children of the other kinds are what their AST node holds, in the same order. An if without an else has two
+ * children, and hash literals list their keys and values alternately. A NULL node stands in where error recovery in
+ * the Parser left an expression out.
+ *
+ * Tokens carry no source positions, so a FlatAst has no spans either. It is a read only copy of a tree and can be
+ * shared between threads.
+ */
+public class FlatAst {
+    public static final int NONE = -1;
+
+    public static final byte NULL = 0;
+    public static final byte PROGRAM = 1;
+    public static final byte LET = 2;
+    public static final byte RETURN = 3;
+    public static final byte EXPRESSION = 4;
+    public static final byte BLOCK = 5;
+    public static final byte IDENTIFIER = 6;
+    public static final byte INTEGER = 7;
+    public static final byte STRING = 8;
+    public static final byte BOOLEAN = 9;
+    public static final byte PREFIX = 10;
+    public static final byte INFIX = 11;
+    public static final byte IF = 12;
+    public static final byte FUNCTION = 13;
+    public static final byte CALL = 14;
+    public static final byte ARRAY = 15;
+    public static final byte HASH = 16;
+    public static final byte INDEX = 17;
+
+    private static final InfixOperator[] INFIX_OPERATORS = InfixOperator.values();
+
+    private final byte[] kinds;
+    private final int[] firstChildren;
+    private final int[] nextSiblings;
+    private final int[] values;
+    private final String[] constants;
+
+    private FlatAst(byte[] kinds, int[] firstChildren, int[] nextSiblings, int[] values, String[] constants) {
+        this.kinds = kinds;
+        this.firstChildren = firstChildren;
+        this.nextSiblings = nextSiblings;
+        this.values = values;
+        this.constants = constants;
+    }
+
+    public static FlatAst from(INode node) {
+        Builder builder = new Builder();
+        builder.add(node);
+        return builder.build();
+    }
+
+    public int size() {
+        return kinds.length;
+    }
+
+    public int root() {
+        return 0;
+    }
+
+    public byte kind(int node) {
+        return kinds[node];
+    }
+
+    public int firstChild(int node) {
+        return firstChildren[node];
+    }
+
+    public int nextSibling(int node) {
+        return nextSiblings[node];
+    }
+
+    public int value(int node) {
+        return values[node];
+    }
+
+    // The name, string or operator of a LET, IDENTIFIER, STRING or PREFIX node.
+    public String constant(int node) {
+        return constants[values[node]];
+    }
+
+    public InfixOperator infixOperator(int node) {
+        return INFIX_OPERATORS[values[node]];
+    }
+
+    public int childCount(int node) {
+        int count = 0;
+        for(int child = firstChildren[node]; child != NONE; child = nextSiblings[child]) {
+            count++;
+        }
+
+        return count;
+    }
+
+    public int constantCount() {
+        return constants.length;
+    }
+
+    // Rebuilds the node objects for a subtree, for example the body of a function a closure prints.
+    public INode toNode(int node) {
+        switch(kinds[node]) {
+            case NULL:
+                return null;
+
+            case PROGRAM: {
+                Program program = new Program();
+                for(int child = firstChildren[node]; child != NONE; child = nextSiblings[child]) {
+                    program.addStatement((IStatement) toNode(child));
+                }
+                return program;
+            }
+
+            case LET:
+                return new LetStatement(Token.of(TokenType.LET), identifier(constant(node)), expression(firstChildren[node]));
+
+            case RETURN:
+                return new ReturnStatement(Token.of(TokenType.RETURN), expression(firstChildren[node]));
+
+            case EXPRESSION: {
+                IExpression expression = expression(firstChildren[node]);
+                ExpressionStatement statement = new ExpressionStatement(firstToken(firstChildren[node]));
+                statement.setExpression(expression);
+                return statement;
+            }
+
+            case BLOCK:
+                return block(node);
+
+            case IDENTIFIER:
+                return identifier(constant(node));
+
+            case INTEGER:
+                return new IntegerLiteral(new Token(TokenType.INT, Integer.toString(values[node])), values[node]);
+
+            case STRING:
+                return new StringLiteral(new Token(TokenType.STRING, constant(node)), constant(node));
+
+            case BOOLEAN:
+                return values[node] == 1
+                        ? new BooleanType(Token.of(TokenType.TRUE), true)
+                        : new BooleanType(Token.of(TokenType.FALSE), false);
+
+            case PREFIX:
+                return new PrefixExpression(operatorToken(constant(node)), constant(node), expression(firstChildren[node]));
+
+            case INFIX: {
+                String operator = infixOperator(node).getLiteral();
+                int left = firstChildren[node];
+                return new InfixExpression(operatorToken(operator), expression(left), operator, expression(nextSiblings[left]));
+            }
+
+            case IF: {
+                int condition = firstChildren[node];
+                int consequence = nextSiblings[condition];
+                int alternative = nextSiblings[consequence];
+                return new IfExpression(Token.of(TokenType.IF), expression(condition), block(consequence),
+                        alternative == NONE ? null : block(alternative));
+            }
+
+            case FUNCTION: {
+                List<Identifier> parameters = new ArrayList<>(values[node]);
+                int child = firstChildren[node];
+                for(int i = 0; i < values[node]; i++) {
+                    parameters.add(identifier(constant(child)));
+                    child = nextSiblings[child];
+                }
+                return new FunctionLiteral(Token.of(TokenType.FUNCTION), parameters, block(child));
+            }
+
+            case CALL: {
+                int function = firstChildren[node];
+                return new CallExpression(Token.of(TokenType.LPAREN), expression(function), expressions(nextSiblings[function]));
+            }
+
+            case ARRAY:
+                return new ArrayLiteral(Token.of(TokenType.LBRACKET), expressions(firstChildren[node]));
+
+            case HASH: {
+                Map<IExpression, IExpression> pairs = new LinkedHashMap<>();
+                for(int key = firstChildren[node]; key != NONE; key = nextSiblings[nextSiblings[key]]) {
+                    pairs.put(expression(key), expression(nextSiblings[key]));
+                }
+                return new HashLiteral(Token.of(TokenType.LBRACE), pairs);
+            }
+
+            case INDEX: {
+                int left = firstChildren[node];
+                return new IndexExpression(Token.of(TokenType.LBRACKET), expression(left), expression(nextSiblings[left]));
+            }
+
+            default:
+                throw new IllegalStateException("Unknown node kind " + kinds[node]);
+        }
+    }
+
+    private IExpression expression(int node) {
+        return (IExpression) toNode(node);
+    }
+
+    private List<IExpression> expressions(int first) {
+        List<IExpression> expressions = new ArrayList<>();
+        for(int node = first; node != NONE; node = nextSiblings[node]) {
+            expressions.add(expression(node));
+        }
+
+        return expressions;
+    }
+
+    private BlockStatement block(int node) {
+        List<IStatement> statements = new ArrayList<>();
+        for(int child = firstChildren[node]; child != NONE; child = nextSiblings[child]) {
+            statements.add((IStatement) toNode(child));
+        }
+
+        return new BlockStatement(Token.of(TokenType.LBRACE), statements);
+    }
+
+    private static Identifier identifier(String name) {
+        return new Identifier(new Token(TokenType.IDENT, name), name);
+    }
+
+    // The token an expression statement starts with, which is the first token of its expression.
+    private Token firstToken(int node) {
+        return switch(kinds[node]) {
+            case INFIX, CALL, INDEX -> firstToken(firstChildren[node]);
+            case PREFIX -> operatorToken(constant(node));
+            case IDENTIFIER -> new Token(TokenType.IDENT, constant(node));
+            case INTEGER -> new Token(TokenType.INT, Integer.toString(values[node]));
+            case STRING -> new Token(TokenType.STRING, constant(node));
+            case BOOLEAN -> Token.of(values[node] == 1 ? TokenType.TRUE : TokenType.FALSE);
+            case IF -> Token.of(TokenType.IF);
+            case FUNCTION -> Token.of(TokenType.FUNCTION);
+            case ARRAY -> Token.of(TokenType.LBRACKET);
+            case HASH -> Token.of(TokenType.LBRACE);
+            default -> Token.of(TokenType.ILLEGAL);
+        };
+    }
+
+    private static Token operatorToken(String operator) {
+        for(TokenType type : TokenType.values()) {
+            if(operator.equals(Token.fixedLiteral(type))) {
+                return Token.of(type);
+            }
+        }
+
+        throw new IllegalStateException("Unknown operator " + operator);
+    }
+
+    private static class Builder {
+        private byte[] kinds = new byte[64];
+        private int[] firstChildren = new int[64];
+        private int[] nextSiblings = new int[64];
+        private int[] values = new int[64];
+        private int size;
+        private final Map<String, Integer> constants = new LinkedHashMap<>();
+
+        // Adds a node and its subtree, and returns the node's index.
+        int add(INode node) {
+            switch(node) {
+                case Program program -> {
+                    int index = node(PROGRAM, 0);
+                    addChildren(index, program.getStatements());
+                    return index;
+                }
+
+                case LetStatement letStatement -> {
+                    int index = node(LET, constant(letStatement.getName().getValue()));
+                    addChild(index, letStatement.getValue());
+                    return index;
+                }
+
+                case ReturnStatement returnStatement -> {
+                    int index = node(RETURN, 0);
+                    addChild(index, returnStatement.getExpression());
+                    return index;
+                }
+
+                case ExpressionStatement expressionStatement -> {
+                    int index = node(EXPRESSION, 0);
+                    addChild(index, expressionStatement.getExpression());
+                    return index;
+                }
+
+                case BlockStatement blockStatement -> {
+                    int index = node(BLOCK, 0);
+                    addChildren(index, blockStatement.getStatements());
+                    return index;
+                }
+
+                case Identifier identifier -> {
+                    return node(IDENTIFIER, constant(identifier.getValue()));
+                }
+
+                case IntegerLiteral integerLiteral -> {
+                    return node(INTEGER, integerLiteral.getValue());
+                }
+
+                case StringLiteral stringLiteral -> {
+                    return node(STRING, constant(stringLiteral.getValue()));
+                }
+
+                case BooleanType booleanType -> {
+                    return node(BOOLEAN, booleanType.getValue() ? 1 : 0);
+                }
+
+                case PrefixExpression prefixExpression -> {
+                    int index = node(PREFIX, constant(prefixExpression.getOperator()));
+                    addChild(index, prefixExpression.getRight());
+                    return index;
+                }
+
+                case InfixExpression infixExpression -> {
+                    int index = node(INFIX, infixExpression.getInfixOperator().ordinal());
+                    int left = addChild(index, infixExpression.getLeft());
+                    addSibling(left, infixExpression.getRight());
+                    return index;
+                }
+
+                case IfExpression ifExpression -> {
+                    int index = node(IF, 0);
+                    int condition = addChild(index, ifExpression.getCondition());
+                    int consequence = addSibling(condition, ifExpression.getConsequence());
+                    if(ifExpression.getAlternative() != null) {
+                        addSibling(consequence, ifExpression.getAlternative());
+                    }
+                    return index;
+                }
+
+                case FunctionLiteral functionLiteral -> {
+                    int index = node(FUNCTION, functionLiteral.getParametersLength());
+                    List<INode> children = new ArrayList<>(functionLiteral.getParameters());
+                    children.add(functionLiteral.getBody());
+                    addChildren(index, children);
+                    return index;
+                }
+
+                case CallExpression callExpression -> {
+                    int index = node(CALL, 0);
+                    List<INode> children = new ArrayList<>();
+                    children.add(callExpression.getFunction());
+                    children.addAll(callExpression.getArguments());
+                    addChildren(index, children);
+                    return index;
+                }
+
+                case ArrayLiteral arrayLiteral -> {
+                    int index = node(ARRAY, 0);
+                    addChildren(index, arrayLiteral.getElements());
+                    return index;
+                }
+
+                case HashLiteral hashLiteral -> {
+                    int index = node(HASH, 0);
+                    List<INode> children = new ArrayList<>();
+                    for(Map.Entry<IExpression, IExpression> entry : hashLiteral.getPairs().entrySet()) {
+                        children.add(entry.getKey());
+                        children.add(entry.getValue());
+                    }
+                    addChildren(index, children);
+                    return index;
+                }
+
+                case IndexExpression indexExpression -> {
+                    int index = node(INDEX, 0);
+                    int left = addChild(index, indexExpression.getLeft());
+                    addSibling(left, indexExpression.getIndex());
+                    return index;
+                }
+
+                case null -> {
+                    return node(NULL, 0);
+                }
+
+                default -> throw new IllegalArgumentException("Cannot flatten " + node.getClass().getSimpleName());
+            }
+        }
+
+        private int addChild(int parent, INode child) {
+            int index = add(child);
+            firstChildren[parent] = index;
+            return index;
+        }
+
+        private int addSibling(int previous, INode sibling) {
+            int index = add(sibling);
+            nextSiblings[previous] = index;
+            return index;
+        }
+
+        private void addChildren(int parent, List<? extends INode> children) {
+            int previous = NONE;
+            for(INode child : children) {
+                previous = previous == NONE ? addChild(parent, child) : addSibling(previous, child);
+            }
+        }
+
+        private int node(byte kind, int value) {
+            if(size == kinds.length) {
+                kinds = Arrays.copyOf(kinds, size * 2);
+                firstChildren = Arrays.copyOf(firstChildren, size * 2);
+                nextSiblings = Arrays.copyOf(nextSiblings, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            kinds[size] = kind;
+            firstChildren[size] = NONE;
+            nextSiblings[size] = NONE;
+            values[size] = value;
+            return size++;
+        }
+
+        private int constant(String value) {
+            return constants.computeIfAbsent(value, v -> constants.size());
+        }
+
+        FlatAst build() {
+            return new FlatAst(Arrays.copyOf(kinds, size), Arrays.copyOf(firstChildren, size),
+                    Arrays.copyOf(nextSiblings, size), Arrays.copyOf(values, size), constants.keySet().toArray(new String[0]));
+        }
+    }
+}
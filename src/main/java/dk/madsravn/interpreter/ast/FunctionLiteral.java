@@ -9,6 +9,14 @@ public class FunctionLiteral  implements IExpression{
     private Token token;
     private List<Identifier> parameters;
     private BlockStatement body;
+    // Number of slots a call frame for this function needs: its parameters and the names it binds with let.
+    private int frameSize;
+    // Number of those names that functions defined in the body capture, which live in cells instead of slots.
+    private int cellCount;
+    // Where each free variable of the function comes from when a closure is created.
+    private List<Capture> captures = List.of();
+    // The locals that start out with the value of a binding of an enclosing function.
+    private List<Shadow> shadows = List.of();
 
     public FunctionLiteral(Token token, List<Identifier> parameters, BlockStatement body) {
         this.token = token;
@@ -27,6 +35,38 @@ public class FunctionLiteral  implements IExpression{
     public int getParametersLength() {
         return parameters.size();
     }
+
+    public int getFrameSize() {
+        return frameSize;
+    }
+
+    public void setFrameSize(int frameSize) {
+        this.frameSize = frameSize;
+    }
+
+    public int getCellCount() {
+        return cellCount;
+    }
+
+    public void setCellCount(int cellCount) {
+        this.cellCount = cellCount;
+    }
+
+    public List<Capture> getCaptures() {
+        return captures;
+    }
+
+    public void setCaptures(List<Capture> captures) {
+        this.captures = captures;
+    }
+
+    public List<Shadow> getShadows() {
+        return shadows;
+    }
+
+    public void setShadows(List<Shadow> shadows) {
+        this.shadows = shadows;
+    }
     @Override
     public void expressionNode() {}
 
@@ -6,9 +6,14 @@ import java.util.Map;
 import java.util.stream.Collectors;
 
 public class HashLiteral implements IExpression {
+    // The shape of a literal that cannot have one, because a key is not a constant string or is repeated.
+    public static final Object NO_SHAPE = new Object();
 
     private Token token;
     private Map<IExpression, IExpression> pairs;
+    // The Shape the Evaluator made for the literal, or NO_SHAPE. Threads that make it at the same time each use
+    // their own, which index expressions treat as two shapes.
+    private Object shape;
 
     public HashLiteral(Token token, Map<IExpression, IExpression> pairs) {
         this.token = token;
@@ -23,6 +28,14 @@ public class HashLiteral implements IExpression {
         return pairs.size();
     }
 
+    public Object getShape() {
+        return shape;
+    }
+
+    public void setShape(Object shape) {
+        this.shape = shape;
+    }
+
     @Override
     public void expressionNode() { }
 
@@ -4,8 +4,18 @@ import dk.madsravn.interpreter.tokens.Token;
 import dk.madsravn.interpreter.tokens.TokenType;
 
 public class Identifier implements IExpression {
+    public static final int NO_INDEX = -1;
+
+    // Where the Resolver found the binding. LOCAL is a slot in the current call frame, CELL is a cell of the current
+    // call frame that closures share, and FREE is one of the cells the current closure captured. BUILTIN is a builtin
+    // nothing in the program can shadow, by its index in Builtins. Other names that are not bound in any function
+    // stay GLOBAL and are looked up by name.
+    public enum Binding { GLOBAL, LOCAL, CELL, FREE, BUILTIN }
+
     private Token token;
     private String value;
+    private Binding binding = Binding.GLOBAL;
+    private int index = NO_INDEX;
 
     public Identifier(Token token, String value) {
         this.token = token;
@@ -23,6 +33,23 @@ public class Identifier implements IExpression {
         return value;
     }
 
+    public void resolve(Binding binding, int index) {
+        this.binding = binding;
+        this.index = index;
+    }
+
+    public boolean isResolved() {
+        return binding != Binding.GLOBAL;
+    }
+
+    public Binding getBinding() {
+        return binding;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
     @Override
     public String string() {
         return value;
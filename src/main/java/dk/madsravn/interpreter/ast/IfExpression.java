@@ -19,6 +19,10 @@ public class IfExpression implements IExpression {
         return condition;
     }
 
+    public void setCondition(IExpression condition) {
+        this.condition = condition;
+    }
+
     public BlockStatement getConsequence() {
         return consequence;
     }
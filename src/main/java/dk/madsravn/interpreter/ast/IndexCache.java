@@ -0,0 +1,69 @@
+package dk.madsravn.interpreter.ast;
+
+import java.util.Arrays;
+
+/**
+ * The slots an index expression with a constant string key has found its key in, one for each shape of hash it has
+ * indexed, so indexing another hash of a shape it has seen is a check of the shape and a read of the slot. A site
+ * that has seen more than MAX_SHAPES different shapes is megamorphic and stops remembering.
+ *
+ * Like a CallSiteCache, the entries are kept in an immutable snapshot that is replaced as a whole.
+ */
+public class IndexCache {
+    public static final int MAX_SHAPES = 4;
+    public static final int NOT_CACHED = -1;
+
+    public enum State { UNINITIALIZED, MONOMORPHIC, POLYMORPHIC, MEGAMORPHIC }
+
+    private static final Entries EMPTY = new Entries(new Object[0], new int[0], false);
+    private static final Entries MEGAMORPHIC = new Entries(new Object[0], new int[0], true);
+
+    private Entries entries = EMPTY;
+
+    // The slot remembered for the shape, or NOT_CACHED.
+    public int slot(Object shape) {
+        Entries current = entries;
+        for(int i = 0; i < current.shapes.length; i++) {
+            if(current.shapes[i] == shape) {
+                return current.slots[i];
+            }
+        }
+
+        return NOT_CACHED;
+    }
+
+    public void add(Object shape, int slot) {
+        Entries current = entries;
+        if(current.megamorphic) {
+            return;
+        }
+        int count = current.shapes.length;
+        if(count == MAX_SHAPES) {
+            entries = MEGAMORPHIC;
+            return;
+        }
+        Object[] newShapes = Arrays.copyOf(current.shapes, count + 1);
+        int[] newSlots = Arrays.copyOf(current.slots, count + 1);
+        newShapes[count] = shape;
+        newSlots[count] = slot;
+        entries = new Entries(newShapes, newSlots, false);
+    }
+
+    public boolean isMegamorphic() {
+        return entries.megamorphic;
+    }
+
+    public State getState() {
+        Entries current = entries;
+        if(current.megamorphic) {
+            return State.MEGAMORPHIC;
+        }
+        return switch(current.shapes.length) {
+            case 0 -> State.UNINITIALIZED;
+            case 1 -> State.MONOMORPHIC;
+            default -> State.POLYMORPHIC;
+        };
+    }
+
+    private record Entries(Object[] shapes, int[] slots, boolean megamorphic) { }
+}
@@ -6,6 +6,7 @@ public class IndexExpression implements IExpression {
     private Token token;
     private IExpression left;
     private IExpression index;
+    private final IndexCache cache = new IndexCache();
 
     public IndexExpression(Token token, IExpression left, IExpression index) {
         this.token = token;
@@ -17,10 +18,22 @@ public class IndexExpression implements IExpression {
         return left;
     }
 
+    public void setLeft(IExpression left) {
+        this.left = left;
+    }
+
     public IExpression getIndex() {
         return index;
     }
 
+    public void setIndex(IExpression index) {
+        this.index = index;
+    }
+
+    public IndexCache getCache() {
+        return cache;
+    }
+
     @Override
     public void expressionNode() {  }
 
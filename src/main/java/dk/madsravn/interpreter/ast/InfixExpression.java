@@ -3,15 +3,28 @@ package dk.madsravn.interpreter.ast;
 import dk.madsravn.interpreter.tokens.Token;
 
 public class InfixExpression implements IExpression{
+    // What the Evaluator has seen this node's operands be. Starts out UNINITIALIZED, is narrowed to a single type
+    // on the first evaluation and falls back to GENERIC for good once an operand of another type shows up.
+    public enum Specialization {
+        UNINITIALIZED,
+        INTEGER,
+        STRING,
+        BOOLEAN,
+        GENERIC
+    }
+
     private Token token;
     private IExpression left;
     private IExpression right;
     private String operator;
+    private InfixOperator infixOperator;
+    private Specialization specialization = Specialization.UNINITIALIZED;
 
     public InfixExpression(Token token, IExpression left, String operator, IExpression right) {
         this.token = token;
         this.left = left;
         this.operator = operator;
+        this.infixOperator = InfixOperator.fromLiteral(operator);
         this.right = right;
     }
 
@@ -19,14 +32,34 @@ public class InfixExpression implements IExpression{
         return operator;
     }
 
+    public InfixOperator getInfixOperator() {
+        return infixOperator;
+    }
+
+    public Specialization getSpecialization() {
+        return specialization;
+    }
+
+    public void setSpecialization(Specialization specialization) {
+        this.specialization = specialization;
+    }
+
     public IExpression getRight() {
         return right;
     }
 
+    public void setRight(IExpression right) {
+        this.right = right;
+    }
+
     public IExpression getLeft() {
         return left;
     }
 
+    public void setLeft(IExpression left) {
+        this.left = left;
+    }
+
     @Override
     public void expressionNode() {}
 
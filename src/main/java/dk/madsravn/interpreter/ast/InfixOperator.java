@@ -0,0 +1,36 @@
+package dk.madsravn.interpreter.ast;
+
+public enum InfixOperator {
+    PLUS("+"),
+    MINUS("-"),
+    MULTIPLY("*"),
+    DIVIDE("/"),
+    LESS_THAN("<"),
+    GREATER_THAN(">"),
+    EQUAL("=="),
+    NOT_EQUAL("!=");
+
+    private final String literal;
+
+    InfixOperator(String literal) {
+        this.literal = literal;
+    }
+
+    public String getLiteral() {
+        return literal;
+    }
+
+    public boolean isArithmetic() {
+        return this == PLUS || this == MINUS || this == MULTIPLY || this == DIVIDE;
+    }
+
+    public static InfixOperator fromLiteral(String literal) {
+        for(InfixOperator operator : values()) {
+            if(operator.literal.equals(literal)) {
+                return operator;
+            }
+        }
+
+        throw new IllegalArgumentException("Not an infix operator: " + literal);
+    }
+}
@@ -29,6 +29,10 @@ public class LetStatement implements IStatement {
         return value;
     }
 
+    public void setValue(IExpression value) {
+        this.value = value;
+    }
+
     @Override
     public String string() {
         StringBuilder sb = new StringBuilder();
@@ -35,6 +35,10 @@ public class PrefixExpression implements IExpression{
         return right;
     }
 
+    public void setRight(IExpression right) {
+        this.right = right;
+    }
+
     public String getOperator() {
         return operator;
     }
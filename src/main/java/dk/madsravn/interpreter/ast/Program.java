@@ -6,6 +6,7 @@ import java.util.stream.Collectors;
 
 public class Program implements INode{
     List<IStatement> statements;
+    private boolean resolved;
 
     public Program() {
         statements = new ArrayList<IStatement>();
@@ -23,6 +24,18 @@ public class Program implements INode{
         return statements;
     }
 
+    public boolean isResolved() {
+        return resolved;
+    }
+
+    // A resolved program can be shared between threads (see ProgramCache), so its statements are frozen from then on.
+    public void setResolved(boolean resolved) {
+        this.resolved = resolved;
+        if(resolved) {
+            statements = List.copyOf(statements);
+        }
+    }
+
     @Override
     public String tokenLiteral() {
         if (statements.size() > 0) {
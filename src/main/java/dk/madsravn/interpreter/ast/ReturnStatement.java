@@ -15,6 +15,10 @@ public class ReturnStatement implements IStatement{
         return expression;
     }
 
+    public void setExpression(IExpression expression) {
+        this.expression = expression;
+    }
+
     @Override
     public void statementNode() {}
 
@@ -0,0 +1,8 @@
+package dk.madsravn.interpreter.ast;
+
+/**
+ * A name a FunctionLiteral binds with let that an enclosing function binds as well. Until the let has run the name
+ * still means the enclosing binding, so a call starts the local out with the value of the free variable free. The
+ * local is a slot, or a cell when cell is set, with the given index.
+ */
+public record Shadow(boolean cell, int index, int free) { }
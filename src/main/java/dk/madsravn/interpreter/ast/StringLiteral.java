@@ -5,6 +5,9 @@ import dk.madsravn.interpreter.tokens.Token;
 public class StringLiteral implements IExpression {
     private Token token;
     private String value;
+    // The object the Evaluator made for this literal. Strings are immutable, so every evaluation can return the same
+    // one, which keeps its hash key and lets hash lookups with a literal key match by identity.
+    private Object constant;
 
     public StringLiteral(Token token, String value) {
         this.token = token;
@@ -15,6 +18,14 @@ public class StringLiteral implements IExpression {
         return value;
     }
 
+    public Object getConstant() {
+        return constant;
+    }
+
+    public void setConstant(Object constant) {
+        this.constant = constant;
+    }
+
     @Override
     public void expressionNode() { }
 
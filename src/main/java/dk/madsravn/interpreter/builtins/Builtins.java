@@ -0,0 +1,60 @@
+package dk.madsravn.interpreter.builtins;
+
+import dk.madsravn.interpreter.object.BuiltinFunctionObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+
+/**
+ * Every builtin, created once. The core builtins come first, followed by those of the IBuiltinProviders that
+ * ServiceLoader finds. The order of this list is part of the bytecode: GET_BUILTIN refers to builtins by their
+ * index, and so does an Identifier the Resolver bound to a builtin.
+ */
+public final class Builtins {
+    public static final int NOT_FOUND = -1;
+    // GET_BUILTIN has a single byte operand.
+    public static final int MAX_BUILTINS = 256;
+
+    public static final List<BuiltinFunctionObject> FUNCTIONS = load();
+    public static final List<String> NAMES = FUNCTIONS.stream().map(BuiltinFunctionObject::getName).toList();
+
+    private static final Map<String, Integer> INDEXES = indexes(NAMES);
+
+    private Builtins() { }
+
+    public static int indexOf(String name) {
+        return INDEXES.getOrDefault(name, NOT_FOUND);
+    }
+
+    // The builtin with the name, or null when there is none.
+    public static BuiltinFunctionObject lookup(String name) {
+        int index = indexOf(name);
+        return index == NOT_FOUND ? null : FUNCTIONS.get(index);
+    }
+
+    private static List<BuiltinFunctionObject> load() {
+        List<BuiltinFunctionObject> functions = new ArrayList<>(new CoreBuiltins().builtins());
+        for(IBuiltinProvider provider : ServiceLoader.load(IBuiltinProvider.class)) {
+            functions.addAll(provider.builtins());
+        }
+        if(functions.size() > MAX_BUILTINS) {
+            throw new IllegalStateException("too many builtins: " + functions.size() + ", at most " + MAX_BUILTINS);
+        }
+
+        return List.copyOf(functions);
+    }
+
+    private static Map<String, Integer> indexes(List<String> names) {
+        Map<String, Integer> indexes = new HashMap<>();
+        for(int i = 0; i < names.size(); i++) {
+            if(indexes.putIfAbsent(names.get(i), i) != null) {
+                throw new IllegalStateException("builtin `" + names.get(i) + "` is defined more than once");
+            }
+        }
+
+        return Map.copyOf(indexes);
+    }
+}
@@ -0,0 +1,23 @@
+package dk.madsravn.interpreter.builtins;
+
+import dk.madsravn.interpreter.evaluator.Evaluator;
+import dk.madsravn.interpreter.object.BuiltinFunctionObject;
+
+import java.util.List;
+
+// The builtins of the language itself. They always come first in the registry, so their indexes never change.
+class CoreBuiltins implements IBuiltinProvider {
+    @Override
+    public List<BuiltinFunctionObject> builtins() {
+        return List.of(
+                new BuiltinFunctionObject("len", 1, Evaluator::lengthOfObject),
+                new BuiltinFunctionObject("puts", BuiltinFunctionObject.VARIADIC, Evaluator::printLine),
+                new BuiltinFunctionObject("first", 1, Evaluator::firstOfArray),
+                new BuiltinFunctionObject("last", 1, Evaluator::lastOfArray),
+                new BuiltinFunctionObject("rest", 1, Evaluator::restOfArray),
+                new BuiltinFunctionObject("push", 2, Evaluator::pushArray),
+                new BuiltinFunctionObject("set", 3, Evaluator::setHash),
+                new BuiltinFunctionObject("delete", 2, Evaluator::deleteHash)
+        );
+    }
+}
@@ -0,0 +1,13 @@
+package dk.madsravn.interpreter.builtins;
+
+import dk.madsravn.interpreter.object.BuiltinFunctionObject;
+
+import java.util.List;
+
+/**
+ * A source of native builtins. Implementations are found with ServiceLoader, so a jar on the class path can add
+ * builtins by listing its provider in META-INF/services/dk.madsravn.interpreter.builtins.IBuiltinProvider.
+ */
+public interface IBuiltinProvider {
+    List<BuiltinFunctionObject> builtins();
+}
@@ -0,0 +1,17 @@
+package dk.madsravn.interpreter.cache;
+
+import dk.madsravn.interpreter.ast.Program;
+
+import java.util.List;
+
+// A parsed and resolved Program together with the errors the Parser reported for it. Programs with errors are
+// cached too, so a broken script is not parsed again on every attempt to run it.
+public record CachedProgram(Program program, List<String> errors) {
+    public CachedProgram {
+        errors = List.copyOf(errors);
+    }
+
+    public boolean hasErrors() {
+        return !errors.isEmpty();
+    }
+}
@@ -0,0 +1,146 @@
+package dk.madsravn.interpreter.cache;
+
+import dk.madsravn.interpreter.ast.Program;
+import dk.madsravn.interpreter.lexer.Lexer;
+import dk.madsravn.interpreter.optimizer.ConstantFolder;
+import dk.madsravn.interpreter.parser.Parser;
+import dk.madsravn.interpreter.resolver.Resolver;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Parsed programs keyed by the SHA-256 of their source text, so running the same script again skips lexing, parsing,
+ * folding and resolving. The cache holds at most maxEntries programs and roughly maxBytes of them, and evicts the least
+ * recently used program when either limit is exceeded. All methods are safe to call from several threads.
+ *
+ * A cached Program is shared by every caller and must be treated as read only. It is resolved before it is stored,
+ * so the Evaluator does not run the Resolver on it again, and the only things evaluation writes to the tree are the
+ * specialization hint of an InfixExpression, the CallSiteCache of a CallExpression, the IndexCache of an
+ * IndexExpression, the shape of a HashLiteral and the constant of a StringLiteral. Every value of those is handled
+ * correctly, and each is either immutable with final fields (the caches' snapshots and Shape) or safe to read without
+ * synchronization (StringObject), so threads racing on them only cost a respecialization, a lookup, a second shape
+ * that index expressions treat as a different one, or an extra StringObject.
+ *
+ * Do not pass a cached Program to code that changes the tree. It is resolved for a new Environment, so builtins are
+ * bound directly: run it in an Environment that does not define globals with the names of builtins.
+ */
+public class ProgramCache {
+    // What a resolved tree takes on the heap per character of source, measured at around 20 on the generated corpus.
+    static final int ESTIMATED_BYTES_PER_CHAR = 24;
+    private final int maxEntries;
+    private final long maxBytes;
+    // Access ordered, so iteration starts at the least recently used entry. Guarded by itself.
+    private final LinkedHashMap<String, Entry> entries;
+    private long estimatedBytes;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder evictions;
+
+    public ProgramCache(int maxEntries) {
+        this(maxEntries, Long.MAX_VALUE);
+    }
+
+    public ProgramCache(int maxEntries, long maxBytes) {
+        if(maxEntries < 1 || maxBytes < 1) {
+            throw new IllegalArgumentException("Cache limits must be positive");
+        }
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+        this.evictions = new LongAdder();
+    }
+
+    // Parsing happens outside the lock, so a slow parse does not hold up lookups of other scripts. Two threads
+    // missing on the same source at once both parse it, and the second one gets the program the first one stored.
+    public CachedProgram get(String source) {
+        String key = key(source);
+        synchronized(entries) {
+            Entry entry = entries.get(key);
+            if(entry != null) {
+                hits.increment();
+                return entry.program;
+            }
+        }
+        misses.increment();
+
+        Parser parser = new Parser(new Lexer(source).tokenize());
+        Program program = parser.parseProgram();
+        ConstantFolder.fold(program);
+        Resolver.resolve(program);
+        long bytes = (long) source.length() * ESTIMATED_BYTES_PER_CHAR;
+        Entry parsed = new Entry(new CachedProgram(program, parser.getErrors()), bytes);
+
+        synchronized(entries) {
+            Entry existing = entries.putIfAbsent(key, parsed);
+            if(existing != null) {
+                return existing.program;
+            }
+            estimatedBytes += parsed.bytes;
+            evict();
+        }
+
+        return parsed.program;
+    }
+
+    // Keeps at least the newest entry, even when it is larger than maxBytes on its own.
+    private void evict() {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while(entries.size() > 1 && (entries.size() > maxEntries || estimatedBytes > maxBytes)) {
+            Entry eldest = iterator.next();
+            iterator.remove();
+            estimatedBytes -= eldest.bytes;
+            evictions.increment();
+        }
+    }
+
+    public void clear() {
+        synchronized(entries) {
+            entries.clear();
+            estimatedBytes = 0;
+        }
+    }
+
+    public int size() {
+        synchronized(entries) {
+            return entries.size();
+        }
+    }
+
+    public long getEstimatedBytes() {
+        synchronized(entries) {
+            return estimatedBytes;
+        }
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    static String key(String source) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(source.getBytes(StandardCharsets.UTF_8)));
+        } catch(NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private record Entry(CachedProgram program, long bytes) { }
+}
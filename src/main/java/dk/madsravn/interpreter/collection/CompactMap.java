@@ -0,0 +1,222 @@
+package dk.madsravn.interpreter.collection;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Immutable map for up to MAX_SIZE entries, kept in insertion order in a single dense array of keys and values. A
+ * map of up to LINEAR_SIZE entries is just that array, and a lookup compares the key with each of them. A larger map
+ * also gets an index table like a CPython dict: an open addressing table of bytes, each the number of an entry in the
+ * dense array. Both take a fraction of the memory of a trie, where every level is a node with its own array.
+ *
+ * The hash codes are not stored, which would take another array: the interpreter's keys cache their own. with and
+ * without copy the arrays, so past MAX_SIZE a PersistentHashMap, which only copies a path, is the better choice.
+ * Changing the value of a key keeps the key in its place, like in a LinkedHashMap.
+ */
+public final class CompactMap<K, V> extends AbstractMap<K, V> {
+    public static final int LINEAR_SIZE = 8;
+    public static final int MAX_SIZE = 64;
+    private static final CompactMap<?, ?> EMPTY = new CompactMap<>(new Object[0], null);
+
+    // Key, value, key, value, ... in insertion order.
+    private final Object[] keysAndValues;
+    // Null up to LINEAR_SIZE entries. Otherwise at most half full, and each slot holds the number of an entry plus
+    // one, or 0 when it is empty.
+    private final byte[] index;
+
+    private CompactMap(Object[] keysAndValues, byte[] index) {
+        this.keysAndValues = keysAndValues;
+        this.index = index;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <K, V> CompactMap<K, V> empty() {
+        return (CompactMap<K, V>) EMPTY;
+    }
+
+    // Keeps the iteration order of the map.
+    @SuppressWarnings("unchecked")
+    public static <K, V> CompactMap<K, V> from(Map<? extends K, ? extends V> map) {
+        if(map instanceof CompactMap<?, ?> compactMap) {
+            return (CompactMap<K, V>) compactMap;
+        }
+        if(map.size() > MAX_SIZE) {
+            throw new IllegalArgumentException("a CompactMap holds at most " + MAX_SIZE + " entries, got " + map.size());
+        }
+
+        CompactMap<K, V> result = empty();
+        for(Map.Entry<? extends K, ? extends V> entry : map.entrySet()) {
+            result = result.with(entry.getKey(), entry.getValue());
+        }
+
+        return result;
+    }
+
+    public boolean isFull() {
+        return size() == MAX_SIZE;
+    }
+
+    // Adding a key to a full map throws IllegalStateException. Check isFull and containsKey first.
+    public CompactMap<K, V> with(K key, V value) {
+        int hash = key.hashCode();
+        int at = indexOf(key, hash);
+        if(at >= 0) {
+            if(keysAndValues[at + 1] == value) {
+                return this;
+            }
+            Object[] newKeysAndValues = keysAndValues.clone();
+            newKeysAndValues[at + 1] = value;
+            return new CompactMap<>(newKeysAndValues, index);
+        }
+        if(isFull()) {
+            throw new IllegalStateException("a CompactMap holds at most " + MAX_SIZE + " entries");
+        }
+
+        int length = keysAndValues.length;
+        Object[] newKeysAndValues = Arrays.copyOf(keysAndValues, length + 2);
+        newKeysAndValues[length] = key;
+        newKeysAndValues[length + 1] = value;
+        int size = length / 2 + 1;
+        if(size <= LINEAR_SIZE) {
+            return new CompactMap<>(newKeysAndValues, null);
+        }
+        if(index == null || 2 * size > index.length) {
+            return new CompactMap<>(newKeysAndValues, buildIndex(newKeysAndValues));
+        }
+        byte[] newIndex = index.clone();
+        insert(newIndex, hash, size);
+
+        return new CompactMap<>(newKeysAndValues, newIndex);
+    }
+
+    public CompactMap<K, V> without(Object key) {
+        int at = indexOf(key, key.hashCode());
+        if(at < 0) {
+            return this;
+        }
+
+        Object[] newKeysAndValues = new Object[keysAndValues.length - 2];
+        System.arraycopy(keysAndValues, 0, newKeysAndValues, 0, at);
+        System.arraycopy(keysAndValues, at + 2, newKeysAndValues, at, keysAndValues.length - at - 2);
+        // The entries after the removed one moved, so the index is built again.
+        byte[] newIndex = newKeysAndValues.length / 2 <= LINEAR_SIZE ? null : buildIndex(newKeysAndValues);
+
+        return new CompactMap<>(newKeysAndValues, newIndex);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        if(key == null) {
+            return null;
+        }
+        int at = indexOf(key, key.hashCode());
+
+        return at < 0 ? null : (V) keysAndValues[at + 1];
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key != null && indexOf(key, key.hashCode()) >= 0;
+    }
+
+    @Override
+    public int size() {
+        return keysAndValues.length / 2;
+    }
+
+    // Not kept in a field, which would grow every map by a reference for a view that is rarely asked for twice.
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Map.Entry<K, V>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return CompactMap.this.size();
+            }
+        };
+    }
+
+    // The position of the key in keysAndValues, or -1.
+    private int indexOf(Object key, int hash) {
+        if(index == null) {
+            for(int i = 0; i < keysAndValues.length; i += 2) {
+                if(matches(keysAndValues[i], key)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        int mask = index.length - 1;
+        for(int slot = spread(hash) & mask; ; slot = (slot + 1) & mask) {
+            int entry = index[slot] & 0xFF;
+            if(entry == 0) {
+                return -1;
+            }
+            int at = 2 * (entry - 1);
+            if(matches(keysAndValues[at], key)) {
+                return at;
+            }
+        }
+    }
+
+    // The interpreter's keys compare their cached hashes in equals, so an unequal key is rejected without comparing
+    // hash codes here first.
+    private static boolean matches(Object candidate, Object key) {
+        return candidate == key || key.equals(candidate);
+    }
+
+    private static byte[] buildIndex(Object[] keysAndValues) {
+        int size = keysAndValues.length / 2;
+        byte[] index = new byte[Integer.highestOneBit(2 * size - 1) << 1];
+        for(int i = 0; i < size; i++) {
+            insert(index, keysAndValues[2 * i].hashCode(), i + 1);
+        }
+
+        return index;
+    }
+
+    private static void insert(byte[] index, int hash, int entry) {
+        int mask = index.length - 1;
+        int slot = spread(hash) & mask;
+        while(index[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        index[slot] = (byte) entry;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private final class EntryIterator implements Iterator<Map.Entry<K, V>> {
+        private int at;
+
+        @Override
+        public boolean hasNext() {
+            return at < keysAndValues.length;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Map.Entry<K, V> next() {
+            if(!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<K, V> entry = new AbstractMap.SimpleImmutableEntry<>((K) keysAndValues[at], (V) keysAndValues[at + 1]);
+            at += 2;
+
+            return entry;
+        }
+    }
+}
@@ -0,0 +1,478 @@
+package dk.madsravn.interpreter.collection;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Immutable hash map stored as a CHAMP trie (Steindorfer and Vinju, "Optimizing Hash-Array Mapped Tries for Fast
+ * and Lean Immutable JVM Collections"). Every node consumes 5 bits of the key's hash and keeps two bitmaps: one for
+ * the slots holding a key/value pair inline and one for the slots pointing to a sub node. with and without copy the
+ * path from the root to the changed slot and share every other node with the map they were called on.
+ *
+ * Nodes are kept in canonical form: a sub node always holds at least two entries, so removing a key pulls a lone
+ * remaining entry back up into its parent. Keys whose 32 bit hashes are equal end up in a collision node.
+ */
+public class PersistentHashMap<K, V> extends AbstractMap<K, V> {
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+    private static final int HASH_BITS = 32;
+    private static final Object NOT_FOUND = new Object();
+    private static final PersistentHashMap<?, ?> EMPTY = new PersistentHashMap<>(BitmapNode.EMPTY, 0);
+
+    private final Node root;
+    private final int size;
+    private Set<Map.Entry<K, V>> entrySet;
+
+    private PersistentHashMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentHashMap<K, V> empty() {
+        return (PersistentHashMap<K, V>) EMPTY;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentHashMap<K, V> from(Map<? extends K, ? extends V> map) {
+        if(map instanceof PersistentHashMap<?, ?> persistent) {
+            return (PersistentHashMap<K, V>) persistent;
+        }
+
+        PersistentHashMap<K, V> result = empty();
+        for(Map.Entry<? extends K, ? extends V> entry : map.entrySet()) {
+            result = result.with(entry.getKey(), entry.getValue());
+        }
+
+        return result;
+    }
+
+    public PersistentHashMap<K, V> with(K key, V value) {
+        Change change = new Change();
+        Node newRoot = root.update(key, value, key.hashCode(), 0, change);
+        if(!change.modified) {
+            return this;
+        }
+
+        return new PersistentHashMap<>(newRoot, change.added ? size + 1 : size);
+    }
+
+    public PersistentHashMap<K, V> without(Object key) {
+        Change change = new Change();
+        Node newRoot = root.remove(key, key.hashCode(), 0, change);
+        if(!change.modified) {
+            return this;
+        }
+
+        return new PersistentHashMap<>(newRoot, size - 1);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        if(key == null) {
+            return null;
+        }
+        Object value = root.find(key, key.hashCode(), 0);
+
+        return value == NOT_FOUND ? null : (V) value;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key != null && root.find(key, key.hashCode(), 0) != NOT_FOUND;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        if(entrySet == null) {
+            entrySet = new AbstractSet<>() {
+                @Override
+                public Iterator<Map.Entry<K, V>> iterator() {
+                    return new EntryIterator<>(root);
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
+        }
+
+        return entrySet;
+    }
+
+    private static int bitFor(int hash, int shift) {
+        return 1 << ((hash >>> shift) & MASK);
+    }
+
+    // Set by update and remove so the map knows whether it changed and whether a key was added.
+    private static final class Change {
+        private boolean modified;
+        private boolean added;
+    }
+
+    private interface Node {
+        Object find(Object key, int hash, int shift);
+
+        Node update(Object key, Object value, int hash, int shift, Change change);
+
+        Node remove(Object key, int hash, int shift, Change change);
+
+        int payloadArity();
+
+        int nodeArity();
+
+        Object keyAt(int index);
+
+        Object valueAt(int index);
+
+        Node nodeAt(int index);
+    }
+
+    private static final class BitmapNode implements Node {
+        private static final BitmapNode EMPTY = new BitmapNode(0, 0, new Object[0]);
+
+        private final int dataMap;
+        private final int nodeMap;
+        // Inline pairs first as key, value, key, value, ..., followed by the sub nodes. Both in bit order.
+        private final Object[] content;
+
+        private BitmapNode(int dataMap, int nodeMap, Object[] content) {
+            this.dataMap = dataMap;
+            this.nodeMap = nodeMap;
+            this.content = content;
+        }
+
+        @Override
+        public Object find(Object key, int hash, int shift) {
+            int bit = bitFor(hash, shift);
+            if((dataMap & bit) != 0) {
+                int index = dataIndex(bit);
+                return key.equals(content[2 * index]) ? content[2 * index + 1] : NOT_FOUND;
+            }
+            if((nodeMap & bit) != 0) {
+                return subNode(bit).find(key, hash, shift + BITS);
+            }
+
+            return NOT_FOUND;
+        }
+
+        @Override
+        public Node update(Object key, Object value, int hash, int shift, Change change) {
+            int bit = bitFor(hash, shift);
+            if((dataMap & bit) != 0) {
+                int index = dataIndex(bit);
+                Object existingKey = content[2 * index];
+                if(key.equals(existingKey)) {
+                    if(content[2 * index + 1] == value) {
+                        return this;
+                    }
+                    change.modified = true;
+                    Object[] newContent = content.clone();
+                    newContent[2 * index + 1] = value;
+                    return new BitmapNode(dataMap, nodeMap, newContent);
+                }
+
+                change.modified = true;
+                change.added = true;
+                Node merged = mergeTwo(existingKey, content[2 * index + 1], existingKey.hashCode(), key, value, hash, shift + BITS);
+                return migrateInlineToNode(bit, merged);
+            }
+            if((nodeMap & bit) != 0) {
+                Node subNode = subNode(bit);
+                Node newSubNode = subNode.update(key, value, hash, shift + BITS, change);
+                return change.modified ? replaceNode(bit, newSubNode) : this;
+            }
+
+            change.modified = true;
+            change.added = true;
+            return insertInline(bit, key, value);
+        }
+
+        @Override
+        public Node remove(Object key, int hash, int shift, Change change) {
+            int bit = bitFor(hash, shift);
+            if((dataMap & bit) != 0) {
+                int index = dataIndex(bit);
+                if(!key.equals(content[2 * index])) {
+                    return this;
+                }
+                change.modified = true;
+                if(payloadArity() == 2 && nodeArity() == 0) {
+                    // The remaining pair either becomes the root or is pulled up into the parent, so give it the
+                    // bit it would have at the root. The parent only reads its key and value.
+                    int remaining = 1 - index;
+                    int newDataMap = shift == 0 ? dataMap ^ bit : bitFor(hash, 0);
+                    return new BitmapNode(newDataMap, 0, new Object[] { content[2 * remaining], content[2 * remaining + 1] });
+                }
+                return removeInline(bit);
+            }
+            if((nodeMap & bit) != 0) {
+                Node newSubNode = subNode(bit).remove(key, hash, shift + BITS, change);
+                if(!change.modified) {
+                    return this;
+                }
+                if(newSubNode.payloadArity() == 1 && newSubNode.nodeArity() == 0) {
+                    if(payloadArity() == 0 && nodeArity() == 1) {
+                        return newSubNode;
+                    }
+                    return migrateNodeToInline(bit, newSubNode);
+                }
+                return replaceNode(bit, newSubNode);
+            }
+
+            return this;
+        }
+
+        @Override
+        public int payloadArity() {
+            return Integer.bitCount(dataMap);
+        }
+
+        @Override
+        public int nodeArity() {
+            return Integer.bitCount(nodeMap);
+        }
+
+        @Override
+        public Object keyAt(int index) {
+            return content[2 * index];
+        }
+
+        @Override
+        public Object valueAt(int index) {
+            return content[2 * index + 1];
+        }
+
+        @Override
+        public Node nodeAt(int index) {
+            return (Node) content[2 * payloadArity() + index];
+        }
+
+        private int dataIndex(int bit) {
+            return Integer.bitCount(dataMap & (bit - 1));
+        }
+
+        private int nodeIndex(int bit) {
+            return 2 * payloadArity() + Integer.bitCount(nodeMap & (bit - 1));
+        }
+
+        private Node subNode(int bit) {
+            return (Node) content[nodeIndex(bit)];
+        }
+
+        private Node replaceNode(int bit, Node node) {
+            Object[] newContent = content.clone();
+            newContent[nodeIndex(bit)] = node;
+
+            return new BitmapNode(dataMap, nodeMap, newContent);
+        }
+
+        private Node insertInline(int bit, Object key, Object value) {
+            int at = 2 * dataIndex(bit);
+            Object[] newContent = new Object[content.length + 2];
+            System.arraycopy(content, 0, newContent, 0, at);
+            newContent[at] = key;
+            newContent[at + 1] = value;
+            System.arraycopy(content, at, newContent, at + 2, content.length - at);
+
+            return new BitmapNode(dataMap | bit, nodeMap, newContent);
+        }
+
+        private Node removeInline(int bit) {
+            int at = 2 * dataIndex(bit);
+            Object[] newContent = new Object[content.length - 2];
+            System.arraycopy(content, 0, newContent, 0, at);
+            System.arraycopy(content, at + 2, newContent, at, content.length - at - 2);
+
+            return new BitmapNode(dataMap ^ bit, nodeMap, newContent);
+        }
+
+        private Node migrateInlineToNode(int bit, Node node) {
+            int from = 2 * dataIndex(bit);
+            // Position of the node once the pair in front of it is gone.
+            int to = nodeIndex(bit) - 2;
+            Object[] newContent = new Object[content.length - 1];
+            System.arraycopy(content, 0, newContent, 0, from);
+            System.arraycopy(content, from + 2, newContent, from, to - from);
+            newContent[to] = node;
+            System.arraycopy(content, to + 2, newContent, to + 1, content.length - to - 2);
+
+            return new BitmapNode(dataMap ^ bit, nodeMap | bit, newContent);
+        }
+
+        private Node migrateNodeToInline(int bit, Node node) {
+            int from = nodeIndex(bit);
+            int to = 2 * dataIndex(bit);
+            Object[] newContent = new Object[content.length + 1];
+            System.arraycopy(content, 0, newContent, 0, to);
+            newContent[to] = node.keyAt(0);
+            newContent[to + 1] = node.valueAt(0);
+            System.arraycopy(content, to, newContent, to + 2, from - to);
+            System.arraycopy(content, from + 1, newContent, from + 2, content.length - from - 1);
+
+            return new BitmapNode(dataMap | bit, nodeMap ^ bit, newContent);
+        }
+
+        private static Node mergeTwo(Object key0, Object value0, int hash0, Object key1, Object value1, int hash1, int shift) {
+            if(shift >= HASH_BITS) {
+                return new CollisionNode(hash0, new Object[] { key0, value0, key1, value1 });
+            }
+            int bit0 = bitFor(hash0, shift);
+            int bit1 = bitFor(hash1, shift);
+            if(bit0 != bit1) {
+                Object[] content = Integer.compareUnsigned(bit0, bit1) < 0
+                        ? new Object[] { key0, value0, key1, value1 }
+                        : new Object[] { key1, value1, key0, value0 };
+                return new BitmapNode(bit0 | bit1, 0, content);
+            }
+
+            return new BitmapNode(0, bit0, new Object[] { mergeTwo(key0, value0, hash0, key1, value1, hash1, shift + BITS) });
+        }
+    }
+
+    // Keys whose whole hash is equal. Only reached once all the hash bits have been used by BitmapNodes.
+    private static final class CollisionNode implements Node {
+        private final int hash;
+        private final Object[] pairs;
+
+        private CollisionNode(int hash, Object[] pairs) {
+            this.hash = hash;
+            this.pairs = pairs;
+        }
+
+        @Override
+        public Object find(Object key, int hash, int shift) {
+            int index = indexOf(key);
+            return index < 0 ? NOT_FOUND : pairs[index + 1];
+        }
+
+        @Override
+        public Node update(Object key, Object value, int hash, int shift, Change change) {
+            int index = indexOf(key);
+            if(index >= 0) {
+                if(pairs[index + 1] == value) {
+                    return this;
+                }
+                change.modified = true;
+                Object[] newPairs = pairs.clone();
+                newPairs[index + 1] = value;
+                return new CollisionNode(this.hash, newPairs);
+            }
+
+            change.modified = true;
+            change.added = true;
+            Object[] newPairs = new Object[pairs.length + 2];
+            System.arraycopy(pairs, 0, newPairs, 0, pairs.length);
+            newPairs[pairs.length] = key;
+            newPairs[pairs.length + 1] = value;
+            return new CollisionNode(this.hash, newPairs);
+        }
+
+        @Override
+        public Node remove(Object key, int hash, int shift, Change change) {
+            int index = indexOf(key);
+            if(index < 0) {
+                return this;
+            }
+            change.modified = true;
+            if(pairs.length == 4) {
+                int remaining = index == 0 ? 2 : 0;
+                return new BitmapNode(bitFor(this.hash, 0), 0, new Object[] { pairs[remaining], pairs[remaining + 1] });
+            }
+            Object[] newPairs = new Object[pairs.length - 2];
+            System.arraycopy(pairs, 0, newPairs, 0, index);
+            System.arraycopy(pairs, index + 2, newPairs, index, pairs.length - index - 2);
+
+            return new CollisionNode(this.hash, newPairs);
+        }
+
+        @Override
+        public int payloadArity() {
+            return pairs.length / 2;
+        }
+
+        @Override
+        public int nodeArity() {
+            return 0;
+        }
+
+        @Override
+        public Object keyAt(int index) {
+            return pairs[2 * index];
+        }
+
+        @Override
+        public Object valueAt(int index) {
+            return pairs[2 * index + 1];
+        }
+
+        @Override
+        public Node nodeAt(int index) {
+            throw new IndexOutOfBoundsException(index);
+        }
+
+        private int indexOf(Object key) {
+            for(int i = 0; i < pairs.length; i += 2) {
+                if(key.equals(pairs[i])) {
+                    return i;
+                }
+            }
+
+            return -1;
+        }
+    }
+
+    private static final class EntryIterator<K, V> implements Iterator<Map.Entry<K, V>> {
+        private final ArrayDeque<Node> pending = new ArrayDeque<>();
+        private Node current;
+        private int index;
+
+        private EntryIterator(Node root) {
+            enter(root);
+        }
+
+        @Override
+        public boolean hasNext() {
+            while(index >= current.payloadArity()) {
+                if(pending.isEmpty()) {
+                    return false;
+                }
+                enter(pending.pop());
+            }
+
+            return true;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Map.Entry<K, V> next() {
+            if(!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<K, V> entry = new AbstractMap.SimpleImmutableEntry<>((K) current.keyAt(index), (V) current.valueAt(index));
+            index++;
+
+            return entry;
+        }
+
+        private void enter(Node node) {
+            current = node;
+            index = 0;
+            for(int i = node.nodeArity() - 1; i >= 0; i--) {
+                pending.push(node.nodeAt(i));
+            }
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package dk.madsravn.interpreter.collection;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+/**
+ * Immutable vector stored as a 32-way trie with the last (up to) 32 elements kept in a separate tail array, in the
+ * style of Clojure's PersistentVector. push copies at most one tail array and one path through the trie, and every
+ * other node is shared with the vector it was pushed onto.
+ *
+ * rest does not copy anything: it returns a view that shares the trie and starts one element later. Dropped elements
+ * stay reachable for as long as the view is, just like the subList views ArrayObject used before.
+ */
+public class PersistentVector<T> extends AbstractList<T> implements RandomAccess {
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+    private static final Object[] EMPTY_ARRAY = new Object[0];
+    private static final Node EMPTY_NODE = new Node(new Object[WIDTH]);
+    private static final PersistentVector<?> EMPTY = new PersistentVector<>(0, BITS, EMPTY_NODE, EMPTY_ARRAY, 0);
+
+    // Elements before start have been dropped by rest, count includes them.
+    private final int count;
+    private final int shift;
+    private final Node root;
+    private final Object[] tail;
+    private final int start;
+
+    private PersistentVector(int count, int shift, Node root, Object[] tail, int start) {
+        this.count = count;
+        this.shift = shift;
+        this.root = root;
+        this.tail = tail;
+        this.start = start;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> PersistentVector<T> empty() {
+        return (PersistentVector<T>) EMPTY;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> PersistentVector<T> from(Collection<? extends T> elements) {
+        if(elements instanceof PersistentVector<?> vector) {
+            return (PersistentVector<T>) vector;
+        }
+
+        PersistentVector<T> vector = empty();
+        Object[] chunk = new Object[WIDTH];
+        int filled = 0;
+        for(T element : elements) {
+            chunk[filled++] = element;
+            if(filled == WIDTH) {
+                vector = vector.withFullTail(chunk);
+                chunk = new Object[WIDTH];
+                filled = 0;
+            }
+        }
+        if(filled > 0) {
+            Object[] tail = new Object[filled];
+            System.arraycopy(chunk, 0, tail, 0, filled);
+            vector = new PersistentVector<>(vector.count + filled, vector.shift, vector.root, tail, 0);
+        }
+
+        return vector;
+    }
+
+    @Override
+    public int size() {
+        return count - start;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T get(int index) {
+        if(index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size());
+        }
+        int i = start + index;
+
+        return (T) leafFor(i)[i & MASK];
+    }
+
+    public PersistentVector<T> push(T element) {
+        if(count - tailOffset() < WIDTH) {
+            Object[] newTail = new Object[tail.length + 1];
+            System.arraycopy(tail, 0, newTail, 0, tail.length);
+            newTail[tail.length] = element;
+            return new PersistentVector<>(count + 1, shift, root, newTail, start);
+        }
+
+        PersistentVector<T> pushed = withFullTail(tail);
+        return new PersistentVector<>(pushed.count + 1, pushed.shift, pushed.root, new Object[] { element }, start);
+    }
+
+    public PersistentVector<T> rest() {
+        if(size() <= 1) {
+            return empty();
+        }
+
+        return new PersistentVector<>(count, shift, root, tail, start + 1);
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<>() {
+            private int index = start;
+            private Object[] leaf = index < count ? leafFor(index) : null;
+
+            @Override
+            public boolean hasNext() {
+                return index < count;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public T next() {
+                if(index >= count) {
+                    throw new NoSuchElementException();
+                }
+                if((index & MASK) == 0) {
+                    leaf = leafFor(index);
+                }
+
+                return (T) leaf[index++ & MASK];
+            }
+        };
+    }
+
+    private int tailOffset() {
+        return count - tail.length;
+    }
+
+    private Object[] leafFor(int i) {
+        if(i >= tailOffset()) {
+            return tail;
+        }
+        Node node = root;
+        for(int level = shift; level > 0; level -= BITS) {
+            node = (Node) node.array[(i >>> level) & MASK];
+        }
+
+        return node.array;
+    }
+
+    // Moves a full tail of WIDTH elements into the trie. The result has an empty tail and is only used as a step
+    // towards the vector that is returned to the caller.
+    private PersistentVector<T> withFullTail(Object[] fullTail) {
+        int trieCount = count - tail.length;
+        Node tailNode = new Node(fullTail);
+        Node newRoot;
+        int newShift = shift;
+        if((trieCount >>> BITS) >= (1 << shift)) {
+            newRoot = new Node(new Object[WIDTH]);
+            newRoot.array[0] = root;
+            newRoot.array[1] = newPath(shift, tailNode);
+            newShift += BITS;
+        } else {
+            newRoot = pushTail(shift, root, trieCount, tailNode);
+        }
+
+        return new PersistentVector<>(trieCount + WIDTH, newShift, newRoot, EMPTY_ARRAY, start);
+    }
+
+    private static Node pushTail(int level, Node parent, int trieCount, Node tailNode) {
+        int subIndex = (trieCount >>> level) & MASK;
+        Node result = new Node(parent.array.clone());
+        Node toInsert;
+        if(level == BITS) {
+            toInsert = tailNode;
+        } else {
+            Node child = (Node) parent.array[subIndex];
+            toInsert = child != null ? pushTail(level - BITS, child, trieCount, tailNode) : newPath(level - BITS, tailNode);
+        }
+        result.array[subIndex] = toInsert;
+
+        return result;
+    }
+
+    private static Node newPath(int level, Node node) {
+        if(level == 0) {
+            return node;
+        }
+        Node path = new Node(new Object[WIDTH]);
+        path.array[0] = newPath(level - BITS, node);
+
+        return path;
+    }
+
+    private static final class Node {
+        private final Object[] array;
+
+        private Node(Object[] array) {
+            this.array = array;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package dk.madsravn.interpreter.compiler;
+
+import dk.madsravn.interpreter.object.IObject;
+
+import java.util.List;
+
+public class Bytecode {
+    private final byte[] instructions;
+    private final List<IObject> constants;
+    private final List<String> globalNames;
+
+    public Bytecode(byte[] instructions, List<IObject> constants, List<String> globalNames) {
+        this.instructions = instructions;
+        this.constants = constants;
+        this.globalNames = globalNames;
+    }
+
+    public byte[] getInstructions() {
+        return instructions;
+    }
+
+    public List<IObject> getConstants() {
+        return constants;
+    }
+
+    public List<String> getGlobalNames() {
+        return globalNames;
+    }
+}
@@ -0,0 +1,615 @@
+package dk.madsravn.interpreter.compiler;
+
+import dk.madsravn.interpreter.ast.*;
+import dk.madsravn.interpreter.builtins.Builtins;
+import dk.madsravn.interpreter.object.CompiledFunctionObject;
+import dk.madsravn.interpreter.object.IObject;
+import dk.madsravn.interpreter.object.IntegerObject;
+import dk.madsravn.interpreter.object.StringObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles a program to bytecode for the VM.
+ *
+ * Like the Resolver does for the evaluator, a name that is not bound anywhere is compiled as its builtin only when no
+ * global of that name can exist when the reference runs. Every let at the top level of the program gets its global
+ * slot before anything is compiled, so a function sees a global its program defines after it. When later inputs
+ * share the globals, as in the REPL, a reference inside a function always becomes a global, since a later input may
+ * define it before the function is called. A global slot whose let has not run falls back to the builtin.
+ */
+public class Compiler {
+    private final List<IObject> constants;
+    private SymbolTable symbolTable;
+    private CompilationScope scope;
+    private final boolean globalsOutliveProgram;
+
+    public Compiler() {
+        this(new SymbolTable(), new ArrayList<>(), false);
+    }
+
+    // Used by the REPL to keep globals and constants alive between inputs.
+    public Compiler(SymbolTable symbolTable, List<IObject> constants) {
+        this(symbolTable, constants, true);
+    }
+
+    private Compiler(SymbolTable symbolTable, List<IObject> constants, boolean globalsOutliveProgram) {
+        this.symbolTable = symbolTable;
+        this.constants = constants;
+        this.scope = new CompilationScope(null);
+        this.globalsOutliveProgram = globalsOutliveProgram;
+    }
+
+    public Bytecode bytecode() {
+        return new Bytecode(scope.toInstructions(), constants, List.copyOf(symbolTable.getGlobalTable().getDefinedNames()));
+    }
+
+    public void compile(INode node) {
+        switch(node) {
+            case Program program -> {
+                declareLets(program);
+                for(IStatement statement : program.getStatements()) {
+                    compile(statement);
+                }
+            }
+
+            case BlockStatement blockStatement -> {
+                for(IStatement statement : blockStatement.getStatements()) {
+                    compile(statement);
+                }
+            }
+
+            case ExpressionStatement expressionStatement -> {
+                compile(expressionStatement.getExpression());
+                emit(OpCode.POP);
+            }
+
+            case LetStatement letStatement -> {
+                String name = letStatement.getName().getValue();
+                if(letStatement.getValue() instanceof FunctionLiteral functionLiteral) {
+                    compileFunctionLiteral(functionLiteral, name);
+                } else {
+                    compile(letStatement.getValue());
+                }
+                Symbol symbol = symbolTable.define(name);
+                if(symbol.getScope() == SymbolScope.GLOBAL) {
+                    emit(OpCode.SET_GLOBAL, symbol.getIndex());
+                } else {
+                    emit(OpCode.SET_LOCAL, symbol.getIndex());
+                }
+            }
+
+            case ReturnStatement returnStatement -> {
+                compile(returnStatement.getExpression());
+                emit(OpCode.RETURN_VALUE);
+            }
+
+            case InfixExpression infixExpression -> {
+                compile(infixExpression.getLeft());
+                compile(infixExpression.getRight());
+                emit(infixOpCode(infixExpression.getInfixOperator()));
+            }
+
+            case PrefixExpression prefixExpression -> {
+                compile(prefixExpression.getRight());
+                if(prefixExpression.getOperator().equals("!")) {
+                    emit(OpCode.BANG);
+                } else {
+                    emit(OpCode.MINUS);
+                }
+            }
+
+            case IntegerLiteral integerLiteral ->
+                    emit(OpCode.CONSTANT, addConstant(IntegerObject.valueOf(integerLiteral.getValue())));
+
+            case StringLiteral stringLiteral ->
+                    emit(OpCode.CONSTANT, addConstant(new StringObject(stringLiteral.getValue())));
+
+            case BooleanType booleanType -> emit(booleanType.getValue() ? OpCode.TRUE : OpCode.FALSE);
+
+            case IfExpression ifExpression -> compileIfExpression(ifExpression);
+
+            case Identifier identifier -> loadSymbol(resolveIdentifier(identifier.getValue()));
+
+            case ArrayLiteral arrayLiteral -> {
+                for(IExpression element : arrayLiteral.getElements()) {
+                    compile(element);
+                }
+                emit(OpCode.ARRAY, arrayLiteral.getElementsLength());
+            }
+
+            case HashLiteral hashLiteral -> {
+                for(Map.Entry<IExpression, IExpression> entry : hashLiteral.getPairs().entrySet()) {
+                    compile(entry.getKey());
+                    compile(entry.getValue());
+                }
+                emit(OpCode.HASH, hashLiteral.getPairsLength() * 2);
+            }
+
+            case IndexExpression indexExpression -> {
+                compile(indexExpression.getLeft());
+                compile(indexExpression.getIndex());
+                emit(OpCode.INDEX);
+            }
+
+            case FunctionLiteral functionLiteral -> compileFunctionLiteral(functionLiteral, null);
+
+            case CallExpression callExpression -> {
+                compile(callExpression.getFunction());
+                for(IExpression argument : callExpression.getArguments()) {
+                    compile(argument);
+                }
+                emit(OpCode.CALL, callExpression.getArguments().size());
+            }
+
+            default -> { }
+        }
+    }
+
+    private OpCode infixOpCode(InfixOperator operator) {
+        return switch(operator) {
+            case PLUS -> OpCode.ADD;
+            case MINUS -> OpCode.SUB;
+            case MULTIPLY -> OpCode.MUL;
+            case DIVIDE -> OpCode.DIV;
+            case GREATER_THAN -> OpCode.GREATER_THAN;
+            case LESS_THAN -> OpCode.LESS_THAN;
+            case EQUAL -> OpCode.EQUAL;
+            case NOT_EQUAL -> OpCode.NOT_EQUAL;
+        };
+    }
+
+    private void compileIfExpression(IfExpression ifExpression) {
+        compile(ifExpression.getCondition());
+        int jumpNotTruthyPosition = emit(OpCode.JUMP_NOT_TRUTHY, 0);
+        compileBlockValue(ifExpression.getConsequence());
+        int jumpPosition = emit(OpCode.JUMP, 0);
+        changeOperand(jumpNotTruthyPosition, scope.length);
+        if(ifExpression.getAlternative() == null) {
+            emit(OpCode.NULL);
+        } else {
+            compileBlockValue(ifExpression.getAlternative());
+        }
+        changeOperand(jumpPosition, scope.length);
+    }
+
+    // A block used as an expression leaves the value of its last expression statement on the stack, or NULL.
+    private void compileBlockValue(BlockStatement block) {
+        compile(block);
+        if(lastInstructionIs(OpCode.POP)) {
+            removeLastInstruction();
+        } else {
+            emit(OpCode.NULL);
+        }
+    }
+
+    private void compileFunctionLiteral(FunctionLiteral functionLiteral, String name) {
+        enterFunction(name);
+        for(Identifier parameter : functionLiteral.getParameters()) {
+            symbolTable.define(parameter.getValue());
+        }
+        declareLets(functionLiteral.getBody());
+        compile(functionLiteral.getBody());
+        leaveFunction(functionLiteral.getParametersLength(), functionLiteral, null, FlatAst.NONE);
+    }
+
+    // Gives every let in the function its slot before the body is compiled, so a nested function that uses a name
+    // the function binds later captures that binding, like the Resolver does for the evaluator. Until its let has run
+    // the slot holds what an enclosing function binds to the name, and when nothing does the name is looked up as a
+    // global.
+    private void declareLets(INode node) {
+        switch(node) {
+            case Program program -> {
+                for(IStatement statement : program.getStatements()) {
+                    declareLets(statement);
+                }
+            }
+
+            case BlockStatement blockStatement -> {
+                for(IStatement statement : blockStatement.getStatements()) {
+                    declareLets(statement);
+                }
+            }
+
+            case LetStatement letStatement -> {
+                declareLets(letStatement.getValue());
+                symbolTable.defineLet(letStatement.getName().getValue());
+            }
+
+            case ReturnStatement returnStatement -> declareLets(returnStatement.getExpression());
+
+            case ExpressionStatement expressionStatement -> declareLets(expressionStatement.getExpression());
+
+            case PrefixExpression prefixExpression -> declareLets(prefixExpression.getRight());
+
+            case InfixExpression infixExpression -> {
+                declareLets(infixExpression.getLeft());
+                declareLets(infixExpression.getRight());
+            }
+
+            case IfExpression ifExpression -> {
+                declareLets(ifExpression.getCondition());
+                declareLets(ifExpression.getConsequence());
+                if(ifExpression.getAlternative() != null) {
+                    declareLets(ifExpression.getAlternative());
+                }
+            }
+
+            case CallExpression callExpression -> {
+                declareLets(callExpression.getFunction());
+                for(IExpression argument : callExpression.getArguments()) {
+                    declareLets(argument);
+                }
+            }
+
+            case ArrayLiteral arrayLiteral -> {
+                for(IExpression element : arrayLiteral.getElements()) {
+                    declareLets(element);
+                }
+            }
+
+            case HashLiteral hashLiteral -> {
+                for(Map.Entry<IExpression, IExpression> entry : hashLiteral.getPairs().entrySet()) {
+                    declareLets(entry.getKey());
+                    declareLets(entry.getValue());
+                }
+            }
+
+            case IndexExpression indexExpression -> {
+                declareLets(indexExpression.getLeft());
+                declareLets(indexExpression.getIndex());
+            }
+
+            // The lets of a nested function belong to that function.
+            case null, default -> { }
+        }
+    }
+
+    // The same for a FlatAst, in the same order, so both compile to the same slots.
+    private void declareLets(FlatAst ast, int node) {
+        if(ast.kind(node) == FlatAst.FUNCTION) {
+            return;
+        }
+        for(int child = ast.firstChild(node); child != FlatAst.NONE; child = ast.nextSibling(child)) {
+            declareLets(ast, child);
+        }
+        if(ast.kind(node) == FlatAst.LET) {
+            symbolTable.defineLet(ast.constant(node));
+        }
+    }
+
+    // A function refers to itself as the current closure only when the let that names it is the only binding of the
+    // name in the enclosing function. Otherwise the name is loaded like any other, because it may be bound to
+    // something else by the time the function runs.
+    private void enterFunction(String name) {
+        boolean boundOnce = name != null && symbolTable.isBoundOnce(name);
+        enterScope();
+        if(boundOnce) {
+            symbolTable.defineFunctionName(name);
+        }
+    }
+
+    // Either the function's literal or the FlatAst node it was compiled from, so the closure can show its source.
+    private void leaveFunction(int numParameters, FunctionLiteral functionLiteral, FlatAst ast, int node) {
+        if(lastInstructionIs(OpCode.POP)) {
+            removeLastInstruction();
+            emit(OpCode.RETURN_VALUE);
+        }
+        if(!lastInstructionIs(OpCode.RETURN_VALUE)) {
+            emit(OpCode.RETURN);
+        }
+
+        int[] shadows = symbolTable.captureShadowed();
+        useCells();
+        useTailCalls();
+        List<Symbol> freeSymbols = new ArrayList<>(symbolTable.getFreeSymbols());
+        List<String> localNames = List.copyOf(symbolTable.getDefinedNames());
+        List<String> freeNames = freeSymbols.stream().map(Symbol::getName).toList();
+        int[] cells = symbolTable.getCells();
+        byte[] instructions = leaveScope();
+
+        for(Symbol symbol : freeSymbols) {
+            loadCell(symbol);
+        }
+
+        int maxStackDepth = Instructions.maxStackDepth(instructions);
+        var function = functionLiteral != null
+                ? new CompiledFunctionObject(instructions, localNames, cells, shadows, freeNames, numParameters, maxStackDepth,
+                        functionLiteral.getParameters(), functionLiteral.getBody())
+                : new CompiledFunctionObject(instructions, localNames, cells, shadows, freeNames, numParameters, maxStackDepth,
+                        ast, node);
+        emit(OpCode.CLOSURE, addConstant(function), freeSymbols.size());
+    }
+
+    // Which locals nested functions capture is only known once the whole function has been compiled, so the
+    // instructions that use them are turned into their cell versions afterwards. Both have the same length.
+    private void useCells() {
+        for(int position = 0; position < scope.length; ) {
+            OpCode op = OpCode.fromByte(scope.code[position]);
+            if((op == OpCode.GET_LOCAL || op == OpCode.SET_LOCAL)
+                    && symbolTable.isCell(Instructions.readShort(scope.code, position + 1))) {
+                scope.code[position] = (byte) (op == OpCode.GET_LOCAL ? OpCode.GET_CELL : OpCode.SET_CELL).ordinal();
+            }
+            position += op.getLength();
+        }
+    }
+
+    // A call is in tail position when the function returns its value as it is: the call is followed by RETURN_VALUE,
+    // possibly after jumping out of if expressions. Such calls become TAIL_CALL, which has the same length, so a
+    // function that ends by calling itself or another function runs in constant stack, like in the evaluator.
+    private void useTailCalls() {
+        for(int position = 0; position < scope.length; ) {
+            OpCode op = OpCode.fromByte(scope.code[position]);
+            if(op == OpCode.CALL) {
+                int next = position + op.getLength();
+                while(next < scope.length && OpCode.fromByte(scope.code[next]) == OpCode.JUMP) {
+                    next = Instructions.readInt(scope.code, next + 1);
+                }
+                if(next < scope.length && OpCode.fromByte(scope.code[next]) == OpCode.RETURN_VALUE) {
+                    scope.code[position] = (byte) OpCode.TAIL_CALL.ordinal();
+                }
+            }
+            position += op.getLength();
+        }
+    }
+
+    // Pushes what a new closure captures for a free variable: the cell of a local or of a free variable of the
+    // enclosing function, or the enclosing function itself, which never changes.
+    private void loadCell(Symbol symbol) {
+        switch(symbol.getScope()) {
+            case LOCAL -> emit(OpCode.PUSH_CELL, symbol.getIndex());
+            case FREE -> emit(OpCode.PUSH_FREE_CELL, symbol.getIndex());
+            default -> loadSymbol(symbol);
+        }
+    }
+
+    // Compiles a FlatAst by walking its arrays, and emits exactly the same code as compile(INode) on the tree it was
+    // built from. A function's parameters and body are only turned back into nodes if a closure of it is printed.
+    public void compile(FlatAst ast) {
+        declareLets(ast, ast.root());
+        compile(ast, ast.root());
+    }
+
+    private void compile(FlatAst ast, int node) {
+        int child = ast.firstChild(node);
+        switch(ast.kind(node)) {
+            case FlatAst.PROGRAM, FlatAst.BLOCK -> {
+                for(; child != FlatAst.NONE; child = ast.nextSibling(child)) {
+                    compile(ast, child);
+                }
+            }
+
+            case FlatAst.EXPRESSION -> {
+                compile(ast, child);
+                emit(OpCode.POP);
+            }
+
+            case FlatAst.LET -> {
+                String name = ast.constant(node);
+                if(ast.kind(child) == FlatAst.FUNCTION) {
+                    compileFunction(ast, child, name);
+                } else {
+                    compile(ast, child);
+                }
+                Symbol symbol = symbolTable.define(name);
+                if(symbol.getScope() == SymbolScope.GLOBAL) {
+                    emit(OpCode.SET_GLOBAL, symbol.getIndex());
+                } else {
+                    emit(OpCode.SET_LOCAL, symbol.getIndex());
+                }
+            }
+
+            case FlatAst.RETURN -> {
+                compile(ast, child);
+                emit(OpCode.RETURN_VALUE);
+            }
+
+            case FlatAst.INFIX -> {
+                compile(ast, child);
+                compile(ast, ast.nextSibling(child));
+                emit(infixOpCode(ast.infixOperator(node)));
+            }
+
+            case FlatAst.PREFIX -> {
+                compile(ast, child);
+                if(ast.constant(node).equals("!")) {
+                    emit(OpCode.BANG);
+                } else {
+                    emit(OpCode.MINUS);
+                }
+            }
+
+            case FlatAst.INTEGER -> emit(OpCode.CONSTANT, addConstant(IntegerObject.valueOf(ast.value(node))));
+
+            case FlatAst.STRING -> emit(OpCode.CONSTANT, addConstant(new StringObject(ast.constant(node))));
+
+            case FlatAst.BOOLEAN -> emit(ast.value(node) == 1 ? OpCode.TRUE : OpCode.FALSE);
+
+            case FlatAst.IF -> {
+                compile(ast, child);
+                int jumpNotTruthyPosition = emit(OpCode.JUMP_NOT_TRUTHY, 0);
+                int consequence = ast.nextSibling(child);
+                compileBlockValue(ast, consequence);
+                int jumpPosition = emit(OpCode.JUMP, 0);
+                changeOperand(jumpNotTruthyPosition, scope.length);
+                int alternative = ast.nextSibling(consequence);
+                if(alternative == FlatAst.NONE) {
+                    emit(OpCode.NULL);
+                } else {
+                    compileBlockValue(ast, alternative);
+                }
+                changeOperand(jumpPosition, scope.length);
+            }
+
+            case FlatAst.IDENTIFIER -> loadSymbol(resolveIdentifier(ast.constant(node)));
+
+            case FlatAst.ARRAY -> {
+                int count = 0;
+                for(; child != FlatAst.NONE; child = ast.nextSibling(child)) {
+                    compile(ast, child);
+                    count++;
+                }
+                emit(OpCode.ARRAY, count);
+            }
+
+            case FlatAst.HASH -> {
+                int count = 0;
+                for(; child != FlatAst.NONE; child = ast.nextSibling(child)) {
+                    compile(ast, child);
+                    count++;
+                }
+                emit(OpCode.HASH, count);
+            }
+
+            case FlatAst.INDEX -> {
+                compile(ast, child);
+                compile(ast, ast.nextSibling(child));
+                emit(OpCode.INDEX);
+            }
+
+            case FlatAst.FUNCTION -> compileFunction(ast, node, null);
+
+            case FlatAst.CALL -> {
+                compile(ast, child);
+                int count = 0;
+                for(child = ast.nextSibling(child); child != FlatAst.NONE; child = ast.nextSibling(child)) {
+                    compile(ast, child);
+                    count++;
+                }
+                emit(OpCode.CALL, count);
+            }
+
+            default -> { }
+        }
+    }
+
+    private void compileBlockValue(FlatAst ast, int block) {
+        compile(ast, block);
+        if(lastInstructionIs(OpCode.POP)) {
+            removeLastInstruction();
+        } else {
+            emit(OpCode.NULL);
+        }
+    }
+
+    private void compileFunction(FlatAst ast, int node, String name) {
+        enterFunction(name);
+        int child = ast.firstChild(node);
+        for(int i = 0; i < ast.value(node); i++) {
+            symbolTable.define(ast.constant(child));
+            child = ast.nextSibling(child);
+        }
+        declareLets(ast, child);
+        compile(ast, child);
+        leaveFunction(ast.value(node), null, ast, node);
+    }
+
+    // Names that are not bound anywhere yet are late-bound globals, just like the evaluator looks them up at run time.
+    private Symbol resolveIdentifier(String name) {
+        var symbol = symbolTable.resolve(name);
+        if(symbol.isPresent()) {
+            return symbol.get();
+        }
+        int builtin = Builtins.indexOf(name);
+        if(builtin != Builtins.NOT_FOUND && !(globalsOutliveProgram && !symbolTable.isGlobal())) {
+            return new Symbol(name, SymbolScope.BUILTIN, builtin);
+        }
+
+        return symbolTable.getGlobalTable().define(name);
+    }
+
+    private void loadSymbol(Symbol symbol) {
+        switch(symbol.getScope()) {
+            case GLOBAL:
+                emit(OpCode.GET_GLOBAL, symbol.getIndex());
+                break;
+            case LOCAL:
+                emit(OpCode.GET_LOCAL, symbol.getIndex());
+                break;
+            case BUILTIN:
+                emit(OpCode.GET_BUILTIN, symbol.getIndex());
+                break;
+            case FREE:
+                emit(OpCode.GET_FREE, symbol.getIndex());
+                break;
+            case FUNCTION:
+                emit(OpCode.CURRENT_CLOSURE);
+                break;
+        }
+    }
+
+    private int addConstant(IObject object) {
+        constants.add(object);
+        return constants.size() - 1;
+    }
+
+    private int emit(OpCode op, int... operands) {
+        byte[] instruction = Instructions.make(op, operands);
+        int position = scope.append(instruction);
+        scope.previousOpCode = scope.lastOpCode;
+        scope.previousPosition = scope.lastPosition;
+        scope.lastOpCode = op;
+        scope.lastPosition = position;
+
+        return position;
+    }
+
+    private boolean lastInstructionIs(OpCode op) {
+        return scope.length > 0 && scope.lastOpCode == op;
+    }
+
+    private void removeLastInstruction() {
+        scope.length = scope.lastPosition;
+        scope.lastOpCode = scope.previousOpCode;
+        scope.lastPosition = scope.previousPosition;
+    }
+
+    private void changeOperand(int position, int operand) {
+        Instructions.writeInt(scope.code, position + 1, operand);
+    }
+
+    private void enterScope() {
+        scope = new CompilationScope(scope);
+        symbolTable = new SymbolTable(symbolTable);
+    }
+
+    private byte[] leaveScope() {
+        byte[] instructions = scope.toInstructions();
+        scope = scope.outer;
+        symbolTable = symbolTable.getOuter();
+
+        return instructions;
+    }
+
+    private static class CompilationScope {
+        private final CompilationScope outer;
+        private byte[] code = new byte[64];
+        private int length;
+        private OpCode lastOpCode;
+        private int lastPosition;
+        private OpCode previousOpCode;
+        private int previousPosition;
+
+        CompilationScope(CompilationScope outer) {
+            this.outer = outer;
+        }
+
+        int append(byte[] instruction) {
+            if(length + instruction.length > code.length) {
+                code = Arrays.copyOf(code, Math.max(code.length * 2, length + instruction.length));
+            }
+            int position = length;
+            System.arraycopy(instruction, 0, code, length, instruction.length);
+            length += instruction.length;
+
+            return position;
+        }
+
+        byte[] toInstructions() {
+            return Arrays.copyOf(code, length);
+        }
+    }
+}
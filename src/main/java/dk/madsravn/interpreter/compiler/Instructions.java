@@ -0,0 +1,144 @@
+package dk.madsravn.interpreter.compiler;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+public class Instructions {
+
+    private Instructions() { }
+
+    // Throws IllegalArgumentException when an operand does not fit in its width, instead of truncating it.
+    public static byte[] make(OpCode op, int... operands) {
+        byte[] instruction = new byte[op.getLength()];
+        instruction[0] = (byte) op.ordinal();
+
+        int offset = 1;
+        int[] widths = op.getOperandWidths();
+        for(int i = 0; i < widths.length; i++) {
+            int operand = operands[i];
+            if(widths[i] < 4 && (operand < 0 || operand >= 1 << (8 * widths[i]))) {
+                throw new IllegalArgumentException("operand " + operand + " of " + op + " does not fit in " + widths[i]
+                        + (widths[i] == 1 ? " byte" : " bytes"));
+            }
+            switch(widths[i]) {
+                case 4:
+                    instruction[offset] = (byte) (operand >>> 24);
+                    instruction[offset + 1] = (byte) (operand >>> 16);
+                    instruction[offset + 2] = (byte) (operand >>> 8);
+                    instruction[offset + 3] = (byte) operand;
+                    break;
+                case 2:
+                    instruction[offset] = (byte) (operand >>> 8);
+                    instruction[offset + 1] = (byte) operand;
+                    break;
+                case 1:
+                    instruction[offset] = (byte) operand;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unsupported operand width " + widths[i]);
+            }
+            offset += widths[i];
+        }
+
+        return instruction;
+    }
+
+    public static int readInt(byte[] instructions, int offset) {
+        return ((instructions[offset] & 0xff) << 24)
+                | ((instructions[offset + 1] & 0xff) << 16)
+                | ((instructions[offset + 2] & 0xff) << 8)
+                | (instructions[offset + 3] & 0xff);
+    }
+
+    public static int readShort(byte[] instructions, int offset) {
+        return ((instructions[offset] & 0xff) << 8) | (instructions[offset + 1] & 0xff);
+    }
+
+    public static int readByte(byte[] instructions, int offset) {
+        return instructions[offset] & 0xff;
+    }
+
+    public static void writeInt(byte[] instructions, int offset, int value) {
+        instructions[offset] = (byte) (value >>> 24);
+        instructions[offset + 1] = (byte) (value >>> 16);
+        instructions[offset + 2] = (byte) (value >>> 8);
+        instructions[offset + 3] = (byte) value;
+    }
+
+    // The deepest the operand stack can get while running these instructions, found by following every jump.
+    // The VM reserves this much stack for a call up front so that pushes never need a bounds check.
+    public static int maxStackDepth(byte[] instructions) {
+        int[] depthAt = new int[instructions.length + 1];
+        Arrays.fill(depthAt, -1);
+        ArrayDeque<Integer> work = new ArrayDeque<>();
+        depthAt[0] = 0;
+        work.push(0);
+        int max = 0;
+        while(!work.isEmpty()) {
+            int offset = work.pop();
+            int depth = depthAt[offset];
+            while(offset < instructions.length) {
+                OpCode op = OpCode.fromByte(instructions[offset]);
+                depth += stackEffect(op, instructions, offset);
+                max = Math.max(max, depth);
+                int next = offset + op.getLength();
+                if(op == OpCode.JUMP || op == OpCode.JUMP_NOT_TRUTHY) {
+                    int target = readInt(instructions, offset + 1);
+                    if(depthAt[target] < 0) {
+                        depthAt[target] = depth;
+                        work.push(target);
+                    }
+                }
+                if(op == OpCode.JUMP || op == OpCode.RETURN || op == OpCode.RETURN_VALUE || depthAt[next] >= 0) {
+                    break;
+                }
+                depthAt[next] = depth;
+                offset = next;
+            }
+        }
+
+        return max;
+    }
+
+    private static int stackEffect(OpCode op, byte[] instructions, int offset) {
+        switch(op) {
+            case CONSTANT, TRUE, FALSE, NULL, GET_GLOBAL, GET_LOCAL, GET_BUILTIN, GET_FREE, CURRENT_CLOSURE,
+                    GET_CELL, PUSH_CELL, PUSH_FREE_CELL:
+                return 1;
+            case POP, ADD, SUB, MUL, DIV, EQUAL, NOT_EQUAL, GREATER_THAN, LESS_THAN, JUMP_NOT_TRUTHY,
+                    SET_GLOBAL, SET_LOCAL, SET_CELL, INDEX, RETURN_VALUE:
+                return -1;
+            case ARRAY, HASH:
+                return 1 - readInt(instructions, offset + 1);
+            case CALL, TAIL_CALL:
+                return -readShort(instructions, offset + 1);
+            case CLOSURE:
+                return 1 - readShort(instructions, offset + 5);
+            default:
+                return 0;
+        }
+    }
+
+    public static String disassemble(byte[] instructions) {
+        StringBuilder sb = new StringBuilder();
+        int offset = 0;
+        while(offset < instructions.length) {
+            OpCode op = OpCode.fromByte(instructions[offset]);
+            sb.append(String.format("%04d %s", offset, op.name()));
+            int operandOffset = offset + 1;
+            for(int width : op.getOperandWidths()) {
+                int operand = switch(width) {
+                    case 4 -> readInt(instructions, operandOffset);
+                    case 2 -> readShort(instructions, operandOffset);
+                    default -> readByte(instructions, operandOffset);
+                };
+                sb.append(" ").append(operand);
+                operandOffset += width;
+            }
+            sb.append("\n");
+            offset += op.getLength();
+        }
+
+        return sb.toString();
+    }
+}
@@ -0,0 +1,75 @@
+package dk.madsravn.interpreter.compiler;
+
+/**
+ * Instruction set of the virtual machine. Every instruction is encoded as a single opcode byte
+ * (the ordinal of the constant) followed by its operands, big-endian, with the widths given here.
+ *
+ * A local that a closure captures lives in a Cell in its slot, and is read and written with GET_CELL and SET_CELL
+ * instead of GET_LOCAL and SET_LOCAL. PUSH_CELL and PUSH_FREE_CELL push the cell itself for a CLOSURE to capture.
+ *
+ * TAIL_CALL is a CALL whose value the calling function returns as it is, which the VM runs in the caller's frame.
+ */
+public enum OpCode {
+    CONSTANT(4),
+    POP(),
+    ADD(),
+    SUB(),
+    MUL(),
+    DIV(),
+    TRUE(),
+    FALSE(),
+    NULL(),
+    EQUAL(),
+    NOT_EQUAL(),
+    GREATER_THAN(),
+    LESS_THAN(),
+    MINUS(),
+    BANG(),
+    JUMP_NOT_TRUTHY(4),
+    JUMP(4),
+    GET_GLOBAL(4),
+    SET_GLOBAL(4),
+    GET_LOCAL(2),
+    SET_LOCAL(2),
+    GET_BUILTIN(1),
+    GET_FREE(2),
+    CURRENT_CLOSURE(),
+    ARRAY(4),
+    HASH(4),
+    INDEX(),
+    CALL(2),
+    RETURN_VALUE(),
+    RETURN(),
+    CLOSURE(4, 2),
+    GET_CELL(2),
+    SET_CELL(2),
+    PUSH_CELL(2),
+    PUSH_FREE_CELL(2),
+    TAIL_CALL(2),
+    ;
+
+    private static final OpCode[] VALUES = values();
+
+    private final int[] operandWidths;
+
+    OpCode(int... operandWidths) {
+        this.operandWidths = operandWidths;
+    }
+
+    public int[] getOperandWidths() {
+        return operandWidths;
+    }
+
+    public int getLength() {
+        int length = 1;
+        for(int width : operandWidths) {
+            length += width;
+        }
+
+        return length;
+    }
+
+    public static OpCode fromByte(byte opcode) {
+        return VALUES[opcode & 0xff];
+    }
+}
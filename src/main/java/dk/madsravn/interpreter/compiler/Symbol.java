@@ -0,0 +1,25 @@
+package dk.madsravn.interpreter.compiler;
+
+public class Symbol {
+    private final String name;
+    private final SymbolScope scope;
+    private final int index;
+
+    public Symbol(String name, SymbolScope scope, int index) {
+        this.name = name;
+        this.scope = scope;
+        this.index = index;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public SymbolScope getScope() {
+        return scope;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+}
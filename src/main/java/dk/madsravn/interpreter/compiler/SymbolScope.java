@@ -0,0 +1,9 @@
+package dk.madsravn.interpreter.compiler;
+
+public enum SymbolScope {
+    GLOBAL,
+    LOCAL,
+    BUILTIN,
+    FREE,
+    FUNCTION,
+}
@@ -0,0 +1,167 @@
+package dk.madsravn.interpreter.compiler;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+public class SymbolTable {
+    private final SymbolTable outer;
+    private final Map<String, Symbol> store;
+    private final List<Symbol> freeSymbols;
+    private final List<String> definedNames;
+    // The local slots that a nested function captures.
+    private final BitSet cells;
+    // Names the function binds more than once, with a parameter and a let or with several lets.
+    private final Set<String> rebound;
+    // Names the function binds with let but not as a parameter, in the order of their lets.
+    private final Set<String> letNames;
+
+    public SymbolTable() {
+        this(null);
+    }
+
+    public SymbolTable(SymbolTable outer) {
+        this.outer = outer;
+        this.store = new HashMap<>();
+        this.freeSymbols = new ArrayList<>();
+        this.definedNames = new ArrayList<>();
+        this.cells = new BitSet();
+        this.rebound = new HashSet<>();
+        this.letNames = new LinkedHashSet<>();
+    }
+
+    public SymbolTable getOuter() {
+        return outer;
+    }
+
+    public boolean isGlobal() {
+        return outer == null;
+    }
+
+    public int getNumDefinitions() {
+        return definedNames.size();
+    }
+
+    public List<String> getDefinedNames() {
+        return definedNames;
+    }
+
+    public List<Symbol> getFreeSymbols() {
+        return freeSymbols;
+    }
+
+    public boolean isCell(int slot) {
+        return cells.get(slot);
+    }
+
+    public int[] getCells() {
+        return cells.stream().toArray();
+    }
+
+    // Re-defining a name in the same scope reuses its slot, mirroring how Environment.set overwrites a binding.
+    public Symbol define(String name) {
+        var existing = store.get(name);
+        if(existing != null && (existing.getScope() == SymbolScope.GLOBAL || existing.getScope() == SymbolScope.LOCAL)) {
+            return existing;
+        }
+        SymbolScope scope = isGlobal() ? SymbolScope.GLOBAL : SymbolScope.LOCAL;
+        Symbol symbol = new Symbol(name, scope, definedNames.size());
+        definedNames.add(name);
+        store.put(name, symbol);
+
+        return symbol;
+    }
+
+    // Defines a name for a let statement, after the parameters have been defined.
+    public Symbol defineLet(String name) {
+        var existing = store.get(name);
+        if(existing != null && existing.getScope() == SymbolScope.LOCAL) {
+            rebound.add(name);
+        } else {
+            letNames.add(name);
+        }
+
+        return define(name);
+    }
+
+    // Captures the binding of an enclosing function for every let bound local that shadows one, so the local can
+    // start out with its value until the let runs. Returns pairs of the local's slot and the free variable's index.
+    public int[] captureShadowed() {
+        List<Integer> shadows = new ArrayList<>();
+        for(String name : letNames) {
+            var symbol = outer.resolve(name);
+            if(symbol.isEmpty() || symbol.get().getScope() == SymbolScope.GLOBAL || symbol.get().getScope() == SymbolScope.BUILTIN) {
+                continue;
+            }
+            if(symbol.get().getScope() == SymbolScope.LOCAL) {
+                outer.cells.set(symbol.get().getIndex());
+            }
+            freeSymbols.add(symbol.get());
+            shadows.add(store.get(name).getIndex());
+            shadows.add(freeSymbols.size() - 1);
+        }
+
+        return shadows.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    // Whether the name is a local bound by exactly one let, so once that let has run the name keeps its value for
+    // the rest of the call. A global never is, since a later let or input can bind it again.
+    public boolean isBoundOnce(String name) {
+        var symbol = store.get(name);
+        return symbol != null && symbol.getScope() == SymbolScope.LOCAL && !rebound.contains(name);
+    }
+
+    public Symbol defineFunctionName(String name) {
+        Symbol symbol = new Symbol(name, SymbolScope.FUNCTION, 0);
+        store.put(name, symbol);
+
+        return symbol;
+    }
+
+    private Symbol defineFree(Symbol original) {
+        freeSymbols.add(original);
+        Symbol symbol = new Symbol(original.getName(), SymbolScope.FREE, freeSymbols.size() - 1);
+        store.put(original.getName(), symbol);
+
+        return symbol;
+    }
+
+    public Optional<Symbol> resolve(String name) {
+        var symbol = store.get(name);
+        if(symbol != null) {
+            return Optional.of(symbol);
+        }
+        if(outer == null) {
+            return Optional.empty();
+        }
+
+        var outerSymbol = outer.resolve(name);
+        if(outerSymbol.isEmpty()) {
+            return outerSymbol;
+        }
+        var scope = outerSymbol.get().getScope();
+        if(scope == SymbolScope.GLOBAL || scope == SymbolScope.BUILTIN) {
+            return outerSymbol;
+        }
+        if(scope == SymbolScope.LOCAL) {
+            outer.cells.set(outerSymbol.get().getIndex());
+        }
+
+        return Optional.of(defineFree(outerSymbol.get()));
+    }
+
+    public SymbolTable getGlobalTable() {
+        SymbolTable table = this;
+        while(table.outer != null) {
+            table = table.outer;
+        }
+
+        return table;
+    }
+}
@@ -0,0 +1,69 @@
+package dk.madsravn.interpreter.evaluator;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Counts how calls in the Evaluator went through the call site caches, across all programs and threads. A hit is a
+// call to a target the site had seen, a miss one it had not, and a megamorphic call one at a site that no longer
+// remembers its targets.
+//
+// Counting is off unless the interpreter.evaluator.callStatistics system property is true or setEnabled turns it on,
+// so ordinary calls only pay for reading the flag and not for updating counters shared by every thread.
+public final class CallStatistics {
+    private static final LongAdder HITS = new LongAdder();
+    private static final LongAdder MISSES = new LongAdder();
+    private static final LongAdder MEGAMORPHIC = new LongAdder();
+    private static volatile boolean enabled = Boolean.getBoolean("interpreter.evaluator.callStatistics");
+
+    private CallStatistics() { }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        CallStatistics.enabled = enabled;
+    }
+
+    static void hit() {
+        if(enabled) {
+            HITS.increment();
+        }
+    }
+
+    static void miss() {
+        if(enabled) {
+            MISSES.increment();
+        }
+    }
+
+    static void megamorphic() {
+        if(enabled) {
+            MEGAMORPHIC.increment();
+        }
+    }
+
+    public static long getHits() {
+        return HITS.sum();
+    }
+
+    public static long getMisses() {
+        return MISSES.sum();
+    }
+
+    public static long getMegamorphicCalls() {
+        return MEGAMORPHIC.sum();
+    }
+
+    // Hits as a share of all calls, or 0 before any call.
+    public static double hitRate() {
+        long hits = getHits();
+        long total = hits + getMisses() + getMegamorphicCalls();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    public static void reset() {
+        HITS.reset();
+        MISSES.reset();
+        MEGAMORPHIC.reset();
+    }
+}
@@ -1,20 +1,32 @@
 package dk.madsravn.interpreter.evaluator;
 
 import dk.madsravn.interpreter.ast.*;
+import dk.madsravn.interpreter.builtins.Builtins;
 import dk.madsravn.interpreter.object.*;
+import dk.madsravn.interpreter.optimizer.ConstantFolder;
+import dk.madsravn.interpreter.resolver.Resolver;
 
 import java.util.*;
 
 public class Evaluator {
 
-    private static BooleanObject TRUE = new BooleanObject(true);
-    private static BooleanObject FALSE = new BooleanObject(false);
-    private static NullObject NULL = new NullObject();
+    public static final BooleanObject TRUE = new BooleanObject(true);
+    public static final BooleanObject FALSE = new BooleanObject(false);
+    public static final NullObject NULL = new NullObject();
 
     public static IObject evaluate(INode node, Environment env) {
+        if(!(node instanceof Program program && program.isResolved())) {
+            ConstantFolder.fold(node);
+            Resolver.resolve(node, name -> env.lookup(name) != null);
+        }
+
+        return evaluate(node, new Frame(env));
+    }
+
+    private static IObject evaluate(INode node, Frame frame) {
         return switch(node) {
             case PrefixExpression prefixExpression -> {
-                IObject right = evaluate(prefixExpression.getRight(), env);
+                IObject right = evaluate(prefixExpression.getRight(), frame);
                 if(isError(right)) {
                     yield right;
                 }
@@ -22,81 +34,49 @@ public class Evaluator {
             }
 
             case LetStatement letStatement -> {
-                var value = evaluate(letStatement.getValue(), env);
+                var value = evaluate(letStatement.getValue(), frame);
                 if(isError(value)) {
                     yield value;
                 }
-                env.set(letStatement.getName().getValue(), value);
+                bind(frame, letStatement.getName(), value);
                 yield null;
             }
 
-            case Identifier identifier -> evaluateIdentifier(identifier, env);
+            case Identifier identifier -> evaluateIdentifier(identifier, frame);
 
-            case HashLiteral hashLiteral -> evaluateHashLiteral(hashLiteral, env);
+            case HashLiteral hashLiteral -> evaluateHashLiteral(hashLiteral, frame);
 
-            case StringLiteral stringLiteral -> new StringObject(stringLiteral.getValue());
+            case StringLiteral stringLiteral -> evaluateStringLiteral(stringLiteral);
 
-            case CallExpression callExpression -> {
-                var function = evaluate(callExpression.getFunction(), env);
-                if(isError(function)) {
-                    yield function;
-                }
-                var args = evaluateExpressions(callExpression.getArguments(), env);
-                if(args.size() == 1 && isError(args.get(0))) {
-                    yield args.get(0);
-                }
-
-                yield applyFunction(function, args);
-            }
+            case CallExpression callExpression -> evaluateCallExpression(callExpression, frame);
 
             case ArrayLiteral arrayLiteral -> {
-                var elements = evaluateExpressions(arrayLiteral.getElements(), env);
+                var elements = evaluateExpressions(arrayLiteral.getElements(), frame);
                 if(elements.size() == 1 && isError(elements.get(0))) {
                     yield elements.get(0);
                 }
                 yield new ArrayObject(elements);
             }
 
-            case InfixExpression infixExpression -> {
-                IObject left = evaluate(infixExpression.getLeft(), env);
-                if(isError(left)) {
-                    yield left;
-                }
-                IObject right = evaluate(infixExpression.getRight(), env);
-                if(isError(right)) {
-                    yield right;
-                }
-                yield evaluateInfixExpression(infixExpression.getOperator(), left, right);
-            }
+            case InfixExpression infixExpression -> evaluateInfixExpression(infixExpression, frame);
 
-            case FunctionLiteral functionLiteral ->
-                    new FunctionObject(functionLiteral.getParameters(), functionLiteral.getBody(), env);
+            case FunctionLiteral functionLiteral -> evaluateFunctionLiteral(functionLiteral, frame);
 
             case ReturnStatement returnStatement -> {
-                IObject value = evaluate(returnStatement.getExpression(), env);
+                IObject value = evaluate(returnStatement.getExpression(), frame);
                 if(isError(value)) {
                     yield value;
                 }
                 yield new ReturnObject(value);
             }
 
-            case IndexExpression indexExpression -> {
-                var left = evaluate(indexExpression.getLeft(), env);
-                if(isError(left)) {
-                    yield left;
-                }
-                var index = evaluate(indexExpression.getIndex(), env);
-                if(isError(index)) {
-                    yield index;
-                }
-                yield evaluateIndexExpression(left, index);
-            }
+            case IndexExpression indexExpression -> evaluateIndexExpression(indexExpression, frame);
 
-            case BlockStatement blockStatement -> evaluateBlockStatement(blockStatement.getStatements(), env);
+            case BlockStatement blockStatement -> evaluateBlockStatement(blockStatement.getStatements(), frame);
 
-            case IfExpression ifExpression -> evaluateIfExpression(ifExpression, env);
+            case IfExpression ifExpression -> evaluateIfExpression(ifExpression, frame);
 
-            case IntegerLiteral integerLiteral -> new IntegerObject(integerLiteral.getValue());
+            case IntegerLiteral integerLiteral -> IntegerObject.valueOf(integerLiteral.getValue());
 
             case BooleanType booleanType -> {
                 boolean value =  booleanType.getValue();
@@ -107,33 +87,109 @@ public class Evaluator {
                 }
             }
 
-            case ExpressionStatement expressionStatement -> evaluate(expressionStatement.getExpression(), env);
+            case ExpressionStatement expressionStatement -> evaluate(expressionStatement.getExpression(), frame);
 
-            case Program program -> evaluateProgram(program.getStatements(), env);
+            case Program program -> evaluateProgram(program.getStatements(), frame);
 
             //TODO: What is missing? Interfaces?
             default -> null;
         };
     }
 
-    private static IObject evaluateHashLiteral(HashLiteral hashLiteral, Environment env) {
-        Map<IObject, IObject> pairs = new HashMap<>();
+    private static StringObject evaluateStringLiteral(StringLiteral stringLiteral) {
+        if(stringLiteral.getConstant() instanceof StringObject string) {
+            return string;
+        }
+        StringObject string = new StringObject(stringLiteral.getValue());
+        stringLiteral.setConstant(string);
+
+        return string;
+    }
+
+    private static IObject evaluateHashLiteral(HashLiteral hashLiteral, Frame frame) {
+        if(shapeOf(hashLiteral) instanceof Shape shape) {
+            IObject[] values = new IObject[shape.size()];
+            int slot = 0;
+            for(IExpression expression : hashLiteral.getPairs().values()) {
+                var value = evaluate(expression, frame);
+                if(isError(value)) {
+                    return value;
+                }
+                values[slot++] = value != null ? value : NULL;
+            }
+            return new HashObject(shape, values);
+        }
+
+        HashObject hash = new HashObject(Map.of());
         for(Map.Entry<IExpression, IExpression> entry : hashLiteral.getPairs().entrySet()) {
-            var key = evaluate(entry.getKey(), env);
+            var key = evaluate(entry.getKey(), frame);
             if(isError(key)) {
                 return key;
             }
-            var value = evaluate(entry.getValue(), env);
+            var value = evaluate(entry.getValue(), frame);
             if(isError(value)) {
                 return value;
             }
-            pairs.put(key, value);
+            // An expression without a value, like a call of a function that ends with a let, is NULL in a hash as it
+            // is on the VM.
+            hash = hash.with(key != null ? key : NULL, value != null ? value : NULL);
         }
 
-        return new HashObject(pairs);
+        return hash;
     }
 
-    private static IObject evaluateIndexExpression(IObject left, IObject index) {
+    // The literal's Shape, made the first time it is evaluated, or HashLiteral.NO_SHAPE.
+    private static Object shapeOf(HashLiteral hashLiteral) {
+        Object shape = hashLiteral.getShape();
+        if(shape != null) {
+            return shape;
+        }
+        List<StringObject> keys = new ArrayList<>();
+        for(IExpression key : hashLiteral.getPairs().keySet()) {
+            if(!(key instanceof StringLiteral stringLiteral)) {
+                hashLiteral.setShape(HashLiteral.NO_SHAPE);
+                return HashLiteral.NO_SHAPE;
+            }
+            keys.add(evaluateStringLiteral(stringLiteral));
+        }
+        shape = Shape.of(keys);
+        if(shape == null) {
+            shape = HashLiteral.NO_SHAPE;
+        }
+        hashLiteral.setShape(shape);
+
+        return shape;
+    }
+
+    private static IObject evaluateIndexExpression(IndexExpression indexExpression, Frame frame) {
+        var left = evaluate(indexExpression.getLeft(), frame);
+        if(isError(left)) {
+            return left;
+        }
+        // A constant key into a hash with a shape: the slot is the same for every hash of that shape.
+        if(indexExpression.getIndex() instanceof StringLiteral stringLiteral && left instanceof HashObject hash
+                && hash.getShape() != null) {
+            IndexCache cache = indexExpression.getCache();
+            int slot = cache.slot(hash.getShape());
+            if(slot != IndexCache.NOT_CACHED) {
+                return hash.getValue(slot);
+            }
+            slot = hash.getShape().slotOf(evaluateStringLiteral(stringLiteral));
+            if(slot == Shape.NOT_FOUND) {
+                return NULL;
+            }
+            cache.add(hash.getShape(), slot);
+            return hash.getValue(slot);
+        }
+        var index = evaluate(indexExpression.getIndex(), frame);
+        if(isError(index)) {
+            return index;
+        }
+
+        return evaluateIndexExpression(left, index);
+    }
+
+    public static IObject evaluateIndexExpression(IObject left, IObject index) {
         if(left instanceof ArrayObject && index instanceof IntegerObject) {
             return evaluateArrayIndexExpression((ArrayObject) left, index);
         }
@@ -144,17 +200,17 @@ public class Evaluator {
         return ErrorObject.indexOperatorNotSupported(left.type());
     }
 
+    private static boolean isHashable(IObject object) {
+        return object instanceof IHashKey;
+    }
+
     private static IObject evaluateHashExpression(HashObject left, IObject index) {
-        if(index instanceof StringObject || index instanceof BooleanObject || index instanceof IntegerObject) {
-            var value =  left.getPairs().get(index);
-            if(value != null) {
-                return value;
-            } else {
-                return NULL;
-            }
-        } else {
+        if(!(index instanceof IHashKey key)) {
             return ErrorObject.unusableAsHashKey(index.type());
         }
+        var value = left.get(key);
+
+        return value != null ? value : NULL;
     }
 
     private static IObject evaluateArrayIndexExpression(ArrayObject array, IObject index) {
@@ -164,18 +220,18 @@ public class Evaluator {
             return NULL;
         }
 
-        return array.getElements().get(indexValue);
+        return array.get(indexValue);
     }
 
-    private static IObject evaluateIfExpression(IfExpression ifExpression, Environment env) {
-        var condition = evaluate(ifExpression.getCondition(), env);
+    private static IObject evaluateIfExpression(IfExpression ifExpression, Frame frame) {
+        var condition = evaluate(ifExpression.getCondition(), frame);
         if(isError(condition)) {
             return condition;
         }
         if(isTruthy(condition)) {
-            return evaluate(ifExpression.getConsequence(), env);
+            return evaluate(ifExpression.getConsequence(), frame);
         } else if (ifExpression.getAlternative() != null) {
-            return evaluate(ifExpression.getAlternative(), env);
+            return evaluate(ifExpression.getAlternative(), frame);
         } else {
             return NULL;
         }
@@ -193,10 +249,10 @@ public class Evaluator {
         return true;
     }
 
-    private static IObject evaluateProgram(List<IStatement> statements, Environment env) {
+    private static IObject evaluateProgram(List<IStatement> statements, Frame frame) {
         IObject object = NULL;
         for(IStatement statement : statements) {
-            object =  evaluate(statement, env);
+            object =  evaluate(statement, frame);
             if(object instanceof ReturnObject) {
                 ReturnObject returnObject = (ReturnObject) object;
                 return returnObject.getValue();
@@ -209,10 +265,10 @@ public class Evaluator {
         return object;
     }
 
-    private static IObject evaluateBlockStatement(List<IStatement> statements, Environment env) {
+    private static IObject evaluateBlockStatement(List<IStatement> statements, Frame frame) {
         IObject object = NULL;
         for(IStatement statement : statements) {
-            object =  evaluate(statement, env);
+            object =  evaluate(statement, frame);
             if(object instanceof ReturnObject || object instanceof ErrorObject) {
                 return object;
             }
@@ -221,64 +277,197 @@ public class Evaluator {
         return object;
     }
 
-    private static IObject evaluateInfixExpression(String operator, IObject left, IObject right) {
+    private static IObject evaluateInfixExpression(InfixExpression infixExpression, Frame frame) {
+        InfixExpression.Specialization specialization = infixExpression.getSpecialization();
+        if(specialization == InfixExpression.Specialization.INTEGER) {
+            IObject unboxed = evaluateUnboxedInfixExpression(infixExpression, frame);
+            if(unboxed != null) {
+                return unboxed;
+            }
+        }
+
+        IObject left = evaluate(infixExpression.getLeft(), frame);
+        if(isError(left)) {
+            return left;
+        }
+        IObject right = evaluate(infixExpression.getRight(), frame);
+        if(isError(right)) {
+            return right;
+        }
+
+        InfixOperator operator = infixExpression.getInfixOperator();
+        switch(specialization) {
+            case INTEGER -> {
+                if(left instanceof IntegerObject leftInteger && right instanceof IntegerObject rightInteger) {
+                    return evaluateIntegerInfixExpression(operator, leftInteger.getValue(), rightInteger.getValue());
+                }
+            }
+            case STRING -> {
+                if(left instanceof StringObject leftString && right instanceof StringObject rightString) {
+                    return StringObject.concat(leftString, rightString);
+                }
+            }
+            case BOOLEAN -> {
+                if(left instanceof BooleanObject leftBoolean && right instanceof BooleanObject rightBoolean) {
+                    boolean equal = leftBoolean.getValue() == rightBoolean.getValue();
+                    return nativeBoolToBooleanObject(operator == InfixOperator.EQUAL ? equal : !equal);
+                }
+            }
+            case UNINITIALIZED -> {
+                infixExpression.setSpecialization(specializationFor(operator, left, right));
+                return evaluateInfixExpression(operator, left, right);
+            }
+            case GENERIC -> {
+                return evaluateInfixExpression(operator, left, right);
+            }
+        }
+
+        // The operands no longer have the type this node was specialized for.
+        infixExpression.setSpecialization(InfixExpression.Specialization.GENERIC);
+        return evaluateInfixExpression(operator, left, right);
+    }
+
+    private static InfixExpression.Specialization specializationFor(InfixOperator operator, IObject left, IObject right) {
+        if(left instanceof IntegerObject && right instanceof IntegerObject) {
+            return InfixExpression.Specialization.INTEGER;
+        }
+        if(left instanceof StringObject && right instanceof StringObject && operator == InfixOperator.PLUS) {
+            return InfixExpression.Specialization.STRING;
+        }
+        if(left instanceof BooleanObject && right instanceof BooleanObject
+                && (operator == InfixOperator.EQUAL || operator == InfixOperator.NOT_EQUAL)) {
+            return InfixExpression.Specialization.BOOLEAN;
+        }
+
+        return InfixExpression.Specialization.GENERIC;
+    }
+
+    // Once a node has been specialized to INTEGER, arithmetic and comparisons over literals, names and other
+    // arithmetic are computed on primitive ints, so only the final result is boxed, and comparisons box nothing. The
+    // operands are side effect free, so anything that is not an integer falls back to the boxed path, which evaluates
+    // them again and deoptimizes the node.
+    private static final long NOT_AN_INTEGER = Long.MIN_VALUE;
+
+    private static IObject evaluateUnboxedInfixExpression(InfixExpression infixExpression, Frame frame) {
+        if(!isIntegerOperand(infixExpression.getLeft()) || !isIntegerOperand(infixExpression.getRight())) {
+            return null;
+        }
+        InfixOperator operator = infixExpression.getInfixOperator();
+        switch(operator) {
+            case LESS_THAN, GREATER_THAN, EQUAL, NOT_EQUAL -> {
+                long left = evaluateIntegerOperand(infixExpression.getLeft(), frame);
+                if(left == NOT_AN_INTEGER) {
+                    return null;
+                }
+                long right = evaluateIntegerOperand(infixExpression.getRight(), frame);
+                if(right == NOT_AN_INTEGER) {
+                    return null;
+                }
+                return evaluateIntegerInfixExpression(operator, (int) left, (int) right);
+            }
+            default -> {
+                long value = evaluateIntegerOperand(infixExpression, frame);
+                return value == NOT_AN_INTEGER ? null : IntegerObject.valueOf((int) value);
+            }
+        }
+    }
+
+    private static boolean isIntegerOperand(IExpression expression) {
+        return expression instanceof IntegerLiteral || expression instanceof Identifier
+                || expression instanceof InfixExpression || expression instanceof PrefixExpression;
+    }
+
+    private static long evaluateIntegerOperand(IExpression expression, Frame frame) {
+        switch(expression) {
+            case IntegerLiteral integerLiteral -> {
+                return integerLiteral.getValue();
+            }
+            case Identifier identifier -> {
+                return evaluateIdentifier(identifier, frame) instanceof IntegerObject integerObject
+                        ? integerObject.getValue() : NOT_AN_INTEGER;
+            }
+            case PrefixExpression prefixExpression when prefixExpression.getOperator().equals("-") -> {
+                long right = evaluateIntegerOperand(prefixExpression.getRight(), frame);
+                return right == NOT_AN_INTEGER ? NOT_AN_INTEGER : (int) -right;
+            }
+            case InfixExpression infixExpression -> {
+                InfixOperator operator = infixExpression.getInfixOperator();
+                if(!operator.isArithmetic()) {
+                    return NOT_AN_INTEGER;
+                }
+                long left = evaluateIntegerOperand(infixExpression.getLeft(), frame);
+                if(left == NOT_AN_INTEGER) {
+                    return NOT_AN_INTEGER;
+                }
+                long right = evaluateIntegerOperand(infixExpression.getRight(), frame);
+                if(right == NOT_AN_INTEGER) {
+                    return NOT_AN_INTEGER;
+                }
+                int leftValue = (int) left;
+                int rightValue = (int) right;
+                return switch(operator) {
+                    case PLUS -> leftValue + rightValue;
+                    case MINUS -> leftValue - rightValue;
+                    case MULTIPLY -> leftValue * rightValue;
+                    default -> rightValue == 0 ? NOT_AN_INTEGER : leftValue / rightValue;
+                };
+            }
+            default -> {
+                return NOT_AN_INTEGER;
+            }
+        }
+    }
+
+    public static IObject evaluateInfixExpression(String operator, IObject left, IObject right) {
+        return evaluateInfixExpression(InfixOperator.fromLiteral(operator), left, right);
+    }
+
+    public static IObject evaluateInfixExpression(InfixOperator operator, IObject left, IObject right) {
+        if(left instanceof IntegerObject leftInteger && right instanceof IntegerObject rightInteger) {
+            return evaluateIntegerInfixExpression(operator, leftInteger.getValue(), rightInteger.getValue());
+        }
         if(!left.type().equals(right.type())) {
-            return ErrorObject.typeMismatchError("" + left.type() + " " + operator + " " + right.type());
+            return ErrorObject.typeMismatchError("" + left.type() + " " + operator.getLiteral() + " " + right.type());
         }
         if(left instanceof StringObject && right instanceof StringObject) {
             return evaluateStringInfixExpression(operator, (StringObject) left, (StringObject) right);
         }
-        if(left instanceof IntegerObject && right instanceof IntegerObject) {
-            return evaluateIntegerInfixExpression(operator, (IntegerObject) left, (IntegerObject) right);
-        }
         if(left instanceof BooleanObject && right instanceof BooleanObject) {
             var leftValue = ((BooleanObject)left).getValue();
             var rightValue = ((BooleanObject)right).getValue();
-            if (operator.equals("==")) {
+            if (operator == InfixOperator.EQUAL) {
                 return nativeBoolToBooleanObject(leftValue == rightValue);
             }
-            if(operator.equals("!=")) {
+            if(operator == InfixOperator.NOT_EQUAL) {
                 return nativeBoolToBooleanObject(leftValue != rightValue);
             }
         }
 
-        return ErrorObject.unknownOperatorError("" + left.type() + " " + operator + " " + right.type());
+        return ErrorObject.unknownOperatorError("" + left.type() + " " + operator.getLiteral() + " " + right.type());
     }
 
-    private static IObject evaluateStringInfixExpression(String operator, StringObject left, StringObject right) {
-        if(!operator.equals("+")) {
-            return ErrorObject.unknownOperatorError(left.type() + " " + operator + " " + right.type());
+    private static IObject evaluateStringInfixExpression(InfixOperator operator, StringObject left, StringObject right) {
+        if(operator != InfixOperator.PLUS) {
+            return ErrorObject.unknownOperatorError(left.type() + " " + operator.getLiteral() + " " + right.type());
         }
 
-        return new StringObject(left.getValue() + right.getValue());
+        return StringObject.concat(left, right);
     }
 
-    private static IObject evaluateIntegerInfixExpression(String operator, IntegerObject left, IntegerObject right) {
-        var leftValue = left.getValue();
-        var rightValue = right.getValue();
-        switch(operator) {
-            case "+":
-                return new IntegerObject(leftValue + rightValue);
-            case "-":
-                return new IntegerObject(leftValue - rightValue);
-            case "*":
-                return new IntegerObject(leftValue * rightValue);
-            case "/":
-                return new IntegerObject(leftValue / rightValue);
-            case "<":
-                return nativeBoolToBooleanObject(leftValue < rightValue);
-            case ">":
-                return nativeBoolToBooleanObject(leftValue > rightValue);
-            case "==":
-                return nativeBoolToBooleanObject(leftValue == rightValue);
-            case "!=":
-                return nativeBoolToBooleanObject(leftValue != rightValue);
-            default:
-                return ErrorObject.unknownOperatorError(left.type() + " " + operator + " " + right.type());
-        }
+    private static IObject evaluateIntegerInfixExpression(InfixOperator operator, int leftValue, int rightValue) {
+        return switch(operator) {
+            case PLUS -> IntegerObject.valueOf(leftValue + rightValue);
+            case MINUS -> IntegerObject.valueOf(leftValue - rightValue);
+            case MULTIPLY -> IntegerObject.valueOf(leftValue * rightValue);
+            case DIVIDE -> IntegerObject.valueOf(leftValue / rightValue);
+            case LESS_THAN -> nativeBoolToBooleanObject(leftValue < rightValue);
+            case GREATER_THAN -> nativeBoolToBooleanObject(leftValue > rightValue);
+            case EQUAL -> nativeBoolToBooleanObject(leftValue == rightValue);
+            case NOT_EQUAL -> nativeBoolToBooleanObject(leftValue != rightValue);
+        };
     }
 
-    private static IObject evaluatePrefixExpression(String operator, IObject right) {
+    public static IObject evaluatePrefixExpression(String operator, IObject right) {
         if(operator.equals("!")) {
             return evaluateBangOperatorExpression(right);
         }
@@ -311,7 +500,7 @@ public class Evaluator {
         if(right.type().equals("INTEGER")) {
             if(right instanceof IntegerObject) {
                 var value = ((IntegerObject)right).getValue();
-                return new IntegerObject(-value);
+                return IntegerObject.valueOf(-value);
             }
         }
 
@@ -326,43 +515,41 @@ public class Evaluator {
         }
     }
 
-    private static IObject evaluateIdentifier(INode node, Environment env) {
-        Identifier identifier = (Identifier) node;
-
-        var value = env.get(identifier.getValue());
-        if(value.isPresent()) {
-            return value.get();
+    private static IObject evaluateFunctionLiteral(FunctionLiteral functionLiteral, Frame frame) {
+        List<Capture> captures = functionLiteral.getCaptures();
+        Cell[] captured = new Cell[captures.size()];
+        for(int i = 0; i < captured.length; i++) {
+            Capture capture = captures.get(i);
+            captured[i] = capture.local() ? frame.getCell(capture.index()) : frame.getFree(capture.index());
         }
 
-        var builtin = findBuiltinFunction(identifier.getValue());
-        if(builtin.isPresent()) {
-            return builtin.get();
-        }
-
-        return ErrorObject.identifierNotFoundError(identifier.getValue());
+        return new FunctionObject(functionLiteral, frame.getGlobals(), captured);
     }
 
-    private static Optional<IObject> findBuiltinFunction(String name) {
-        if(name.equals("len")) {
-            return Optional.of(new BuiltinFunctionObject(Evaluator::lengthOfObject));
-            //return Optional.of(new BuiltinFunctionObject((a) -> NULL));
-        }
-        if(name.equals("first")) {
-            return Optional.of(new BuiltinFunctionObject(Evaluator::firstOfArray));
-        }
-        if(name.equals("last")) {
-            return Optional.of(new BuiltinFunctionObject(Evaluator::lastOfArray));
-        }
-        if(name.equals("rest")) {
-            return Optional.of(new BuiltinFunctionObject(Evaluator::restOfArray));
+    private static IObject evaluateIdentifier(Identifier identifier, Frame frame) {
+        var local = switch(identifier.getBinding()) {
+            case LOCAL -> frame.get(identifier.getIndex());
+            case CELL -> frame.getCell(identifier.getIndex()).get();
+            case FREE -> frame.getFree(identifier.getIndex()).get();
+            case BUILTIN -> Builtins.FUNCTIONS.get(identifier.getIndex());
+            case GLOBAL -> null;
+        };
+        if(local != null) {
+            return local;
         }
-        if(name.equals("push")) {
-            return Optional.of(new BuiltinFunctionObject(Evaluator::pushArray));
+
+        // Globals, and locals whose let has not run (yet) and that shadow no enclosing binding, are found by name.
+        var value = frame.getGlobals().lookup(identifier.getValue());
+        if(value != null) {
+            return value;
         }
-        if(name.equals("puts")) {
-            return Optional.of(new BuiltinFunctionObject(Evaluator::printLine));
+
+        var builtin = Builtins.lookup(identifier.getValue());
+        if(builtin != null) {
+            return builtin;
         }
-        return Optional.empty();
+
+        return ErrorObject.identifierNotFoundError(identifier.getValue());
     }
 
     //TODO: first, last and rest of arrays needs to return something if they are ArrayObject.
@@ -376,28 +563,18 @@ public class Evaluator {
     }
 
     public static IObject pushArray(List<IObject> objects) {
-        if(objects.size() != 2) {
-            return ErrorObject.wrongNumberOfArguments(2, objects.size());
-        }
         if(objects.getFirst() instanceof ArrayObject) {
             ArrayObject arrayObject = (ArrayObject) objects.get(0);
-            List<IObject> newElements = new ArrayList<>();
-            newElements.addAll(arrayObject.getElements());
-            newElements.add(objects.getLast());
-            return new ArrayObject(newElements);
+            return arrayObject.push(objects.getLast());
         }
 
         return ErrorObject.argumentToFirstMustBeArray(objects.getFirst().type());
     }
     public static IObject firstOfArray(List<IObject> objects) {
-        if(objects.size() != 1) {
-            return ErrorObject.wrongNumberOfArguments(1, objects.size());
-        }
-
         if(objects.get(0) instanceof ArrayObject) {
             ArrayObject arrayObject = (ArrayObject) objects.getFirst();
             if(arrayObject.getElementsLength() > 0) {
-                return arrayObject.getElements().getFirst();
+                return arrayObject.get(0);
             } else {
                 return NULL;
             }
@@ -407,36 +584,22 @@ public class Evaluator {
     }
 
     public static IObject restOfArray(List<IObject> objects) {
-        if(objects.size() != 1) {
-            return ErrorObject.wrongNumberOfArguments(1, objects.size());
-        }
-
         if(objects.get(0) instanceof ArrayObject) {
             ArrayObject arrayObject = (ArrayObject) objects.getFirst();
             if(arrayObject.getElementsLength() == 0) {
                 return NULL;
-            } else if(arrayObject.getElementsLength() == 1) {
-                List<IObject> elements = new ArrayList<>();
-                return new ArrayObject(elements);
-
-            } else if(arrayObject.getElementsLength() > 1) {
-                List<IObject> elements = arrayObject.getElements().subList(1, arrayObject.getElementsLength());
-                return new ArrayObject(elements);
             }
+            return arrayObject.rest();
         }
 
         return ErrorObject.argumentToFirstMustBeArray(objects.getFirst().type());
     }
 
     public static IObject lastOfArray(List<IObject> objects) {
-        if(objects.size() != 1) {
-            return ErrorObject.wrongNumberOfArguments(1, objects.size());
-        }
-
         if(objects.get(0) instanceof ArrayObject) {
             ArrayObject arrayObject = (ArrayObject) objects.getFirst();
             if(arrayObject.getElementsLength() > 0) {
-                return arrayObject.getElements().getLast();
+                return arrayObject.get(arrayObject.getElementsLength() - 1);
             } else {
                 return NULL;
             }
@@ -446,26 +609,44 @@ public class Evaluator {
 
     }
 
-    public static IObject lengthOfObject(List<IObject> objects) {
-        if(objects.size() != 1) {
-            return ErrorObject.wrongNumberOfArguments(1, objects.size());
+    public static IObject setHash(List<IObject> objects) {
+        if(!(objects.getFirst() instanceof HashObject hashObject)) {
+            return ErrorObject.argumentMustBeHash("set", objects.getFirst().type());
         }
-        if(objects.getFirst() instanceof StringObject) {
-            var value = ((StringObject)objects.getFirst()).getValue();
-            return new IntegerObject(value.length());
+        if(!isHashable(objects.get(1))) {
+            return ErrorObject.unusableAsHashKey(objects.get(1).type());
+        }
+
+        return hashObject.with(objects.get(1), objects.get(2));
+    }
+
+    public static IObject deleteHash(List<IObject> objects) {
+        if(!(objects.getFirst() instanceof HashObject hashObject)) {
+            return ErrorObject.argumentMustBeHash("delete", objects.getFirst().type());
+        }
+        if(!isHashable(objects.get(1))) {
+            return ErrorObject.unusableAsHashKey(objects.get(1).type());
+        }
+
+        return hashObject.without(objects.get(1));
+    }
+
+    public static IObject lengthOfObject(List<IObject> objects) {
+        if(objects.getFirst() instanceof StringObject string) {
+            return IntegerObject.valueOf(string.length());
         }
         if(objects.getFirst() instanceof ArrayObject) {
             var length = ((ArrayObject)objects.getFirst()).getElementsLength();
-            return new IntegerObject(length);
+            return IntegerObject.valueOf(length);
         }
 
         return ErrorObject.argumentNotSupported("len", objects.getFirst().type());
     }
 
-    private static List<IObject> evaluateExpressions(List<IExpression> expressions, Environment env) {
-        List<IObject> result = new ArrayList<>();
+    private static List<IObject> evaluateExpressions(List<IExpression> expressions, Frame frame) {
+        List<IObject> result = new ArrayList<>(expressions.size());
         for(IExpression expression : expressions) {
-            var evaluated = evaluate(expression, env);
+            var evaluated = evaluate(expression, frame);
             if(isError(evaluated)) {
                 return Arrays.asList(evaluated);
             }
@@ -475,12 +656,77 @@ public class Evaluator {
         return result;
     }
 
+    // A call to a function the call site has seen before binds the arguments straight into the new frame, using the
+    // parameter slots the site remembered, instead of collecting them in a list first.
+    private static IObject evaluateCallExpression(CallExpression callExpression, Frame frame) {
+        var function = evaluate(callExpression.getFunction(), frame);
+        if(isError(function)) {
+            return function;
+        }
+
+        CallSiteCache cache = callExpression.getCache();
+        List<IExpression> arguments = callExpression.getArguments();
+        if(cache.isMegamorphic()) {
+            CallStatistics.megamorphic();
+        } else if(function instanceof FunctionObject functionObject && functionObject.getLiteral() != null) {
+            FunctionLiteral literal = functionObject.getLiteral();
+            int[] layout = cache.layout(literal);
+            if(layout == null) {
+                CallStatistics.miss();
+                layout = parameterLayout(literal);
+                cache.add(literal, layout);
+            } else {
+                CallStatistics.hit();
+            }
+            if(layout.length == arguments.size()) {
+                Frame calleeFrame = new Frame(literal.getFrameSize(), literal.getCellCount(), functionObject.getCaptured(), functionObject.getGlobals());
+                for(int i = 0; i < layout.length; i++) {
+                    var argument = evaluate(arguments.get(i), frame);
+                    if(isError(argument)) {
+                        return argument;
+                    }
+                    if(layout[i] != CallSiteCache.NOT_A_SLOT) {
+                        calleeFrame.set(layout[i], argument);
+                    } else {
+                        bind(calleeFrame, literal.getParameters().get(i), argument);
+                    }
+                }
+                initShadows(calleeFrame, literal);
+                if(callExpression.isTailCall()) {
+                    return new TailCallObject(functionObject, calleeFrame);
+                }
+                return callFunction(functionObject, calleeFrame);
+            }
+        }
+
+        var args = evaluateExpressions(arguments, frame);
+        if(args.size() == 1 && isError(args.get(0))) {
+            return args.get(0);
+        }
+        if(callExpression.isTailCall() && function instanceof FunctionObject functionObject) {
+            return new TailCallObject(functionObject, args);
+        }
+
+        return applyFunction(function, args);
+    }
+
+    private static int[] parameterLayout(FunctionLiteral literal) {
+        int[] layout = new int[literal.getParametersLength()];
+        for(int i = 0; i < layout.length; i++) {
+            Identifier parameter = literal.getParameters().get(i);
+            layout[i] = parameter.getBinding() == Identifier.Binding.LOCAL ? parameter.getIndex() : CallSiteCache.NOT_A_SLOT;
+        }
+
+        return layout;
+    }
+
     private static IObject applyFunction(IObject function, List<IObject> arguments) {
         if(function instanceof FunctionObject) {
             FunctionObject functionObject = (FunctionObject) function;
-            Environment extendedEnvironment = extendFunctionEnvironment(functionObject, arguments);
-            IObject evaluated = evaluate(functionObject.getBody(), extendedEnvironment);
-            return unwrapReturnValue(evaluated);
+            if(arguments.size() < functionObject.getParametersLength()) {
+                return ErrorObject.wrongNumberOfArguments(functionObject.getParametersLength(), arguments.size());
+            }
+            return callFunction(functionObject, extendFunctionFrame(functionObject, arguments));
         }
         if(function instanceof BuiltinFunctionObject) {
             BuiltinFunctionObject builtinFunctionObject = (BuiltinFunctionObject) function;
@@ -490,13 +736,67 @@ public class Evaluator {
         return ErrorObject.notAFunction(function.type());
     }
 
-    private static Environment extendFunctionEnvironment(FunctionObject function, List<IObject> arguments) {
-        Environment env = new Environment(function.getEnvironment());
+    private static IObject callFunction(FunctionObject functionObject, Frame extendedFrame) {
+        while(true) {
+            IObject evaluated = unwrapReturnValue(evaluate(functionObject.getBody(), extendedFrame));
+            if(!(evaluated instanceof TailCallObject tailCall)) {
+                return evaluated;
+            }
+            // A function calling itself can overwrite its own frame. Closures made by the call only hold on to
+            // its cells, and clear gives the next call new ones.
+            if(tailCall.getFrame() != null) {
+                functionObject = tailCall.getFunction();
+                extendedFrame = tailCall.getFrame();
+            } else if(tailCall.getArguments().size() < tailCall.getFunction().getParametersLength()) {
+                return ErrorObject.wrongNumberOfArguments(tailCall.getFunction().getParametersLength(), tailCall.getArguments().size());
+            } else if(tailCall.getFunction() == functionObject) {
+                extendedFrame.clear();
+                bindArguments(extendedFrame, functionObject, tailCall.getArguments());
+                initShadows(extendedFrame, functionObject.getLiteral());
+            } else {
+                functionObject = tailCall.getFunction();
+                extendedFrame = extendFunctionFrame(functionObject, tailCall.getArguments());
+            }
+        }
+    }
+
+    private static Frame extendFunctionFrame(FunctionObject function, List<IObject> arguments) {
+        FunctionLiteral literal = function.getLiteral();
+        Frame frame = new Frame(literal.getFrameSize(), literal.getCellCount(), function.getCaptured(), function.getGlobals());
+        bindArguments(frame, function, arguments);
+        initShadows(frame, literal);
+
+        return frame;
+    }
+
+    // Locals whose let has not run yet start out with the binding of the enclosing function they shadow.
+    private static void initShadows(Frame frame, FunctionLiteral literal) {
+        List<Shadow> shadows = literal.getShadows();
+        for(int i = 0; i < shadows.size(); i++) {
+            Shadow shadow = shadows.get(i);
+            IObject value = frame.getFree(shadow.free()).get();
+            if(shadow.cell()) {
+                frame.getCell(shadow.index()).set(value);
+            } else {
+                frame.set(shadow.index(), value);
+            }
+        }
+    }
+
+    // Arguments beyond the parameters are ignored.
+    private static void bindArguments(Frame frame, FunctionObject function, List<IObject> arguments) {
         for(int i = 0; i < function.getParametersLength(); ++i) {
-            env.set(function.getParameters().get(i).getValue(), arguments.get(i));
+            bind(frame, function.getParameters().get(i), arguments.get(i));
         }
+    }
 
-        return env;
+    private static void bind(Frame frame, Identifier name, IObject value) {
+        switch(name.getBinding()) {
+            case LOCAL -> frame.set(name.getIndex(), value);
+            case CELL -> frame.getCell(name.getIndex()).set(value);
+            case FREE -> frame.getFree(name.getIndex()).set(value);
+            case GLOBAL -> frame.getGlobals().set(name.getValue(), value);
+        }
     }
 
     private static IObject unwrapReturnValue(IObject object) {
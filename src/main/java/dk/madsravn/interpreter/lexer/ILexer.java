@@ -0,0 +1,8 @@
+package dk.madsravn.interpreter.lexer;
+
+import dk.madsravn.interpreter.tokens.Token;
+
+// A source of tokens for the Parser. Once the input is exhausted every call returns an EOF token.
+public interface ILexer {
+    Token nextToken();
+}
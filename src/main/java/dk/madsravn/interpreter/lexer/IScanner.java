@@ -0,0 +1,17 @@
+package dk.madsravn.interpreter.lexer;
+
+/**
+ * Finds the end of a run of bytes of one kind in b[from, to). Every method returns the index of the first byte that
+ * does not belong to the run, or to when the run reaches the end of the range.
+ */
+public interface IScanner {
+    int skipWhitespace(byte[] b, int from, int to);
+
+    // Letters and underscores, the characters of an identifier.
+    int skipLetters(byte[] b, int from, int to);
+
+    int skipDigits(byte[] b, int from, int to);
+
+    // Everything up to a double quote or a NUL byte, the content of a string literal.
+    int skipStringContent(byte[] b, int from, int to);
+}
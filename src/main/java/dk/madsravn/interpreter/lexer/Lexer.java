@@ -6,12 +6,14 @@ import dk.madsravn.interpreter.tokens.TokenType;
 import java.util.ArrayList;
 import java.util.List;
 
-public class Lexer {
+public class Lexer implements ILexer {
     private static final char NOTHING = '\0';
     private final String input;
     private int position;
     private int readPosition;
     private char ch;
+    private int tokenStart;
+    private int tokenEnd;
 
     public Lexer(String input) {
         this.input = input;
@@ -32,7 +34,7 @@ public class Lexer {
     }
 
     public static Token eofToken() {
-        return new Token(TokenType.EOF, "" + NOTHING);
+        return Token.of(TokenType.EOF);
     }
 
     private void skipWhitespace() {
@@ -42,77 +44,93 @@ public class Lexer {
     }
 
     private Token findToken() {
+        TokenType type = scan();
+        String literal = Token.fixedLiteral(type);
+        if(literal != null) {
+            return Token.of(type);
+        }
+
+        return new Token(type, input.substring(tokenStart, tokenEnd));
+    }
+
+    // Finds the next token without allocating anything. The token's text is input[tokenStart, tokenEnd), which for a
+    // string is its content without the quotes. Like findToken it leaves ch on the last character of the token, or
+    // just after it for the types advanceToken lists.
+    private TokenType scan() {
         skipWhitespace();
+        tokenStart = position;
+        tokenEnd = position + 1;
         switch (ch) {
             case '"':
-                String content = readString();
-                return new Token(TokenType.STRING, content);
+                tokenStart = position + 1;
+                skipString();
+                tokenEnd = position;
+                return TokenType.STRING;
             case ':':
-                return new Token(TokenType.COLON, ":");
+                return TokenType.COLON;
             case '=':
                 if (peekChar() == '=') {
-                    char current = ch;
                     readChar();
-                    String literal = "" + current + ch;
-                    return new Token(TokenType.EQ, literal);
+                    tokenEnd = position + 1;
+                    return TokenType.EQ;
                 } else {
-                    return new Token(TokenType.ASSIGN, "=");
+                    return TokenType.ASSIGN;
                 }
             case '+':
-                return new Token(TokenType.PLUS, "+");
+                return TokenType.PLUS;
             case '-':
-                return new Token(TokenType.MINUS, "-");
+                return TokenType.MINUS;
             case '!':
                 if (peekChar() == '=') {
-                    char current = ch;
                     readChar();
-                    String literal = "" + current + ch;
-                    return new Token(TokenType.NOT_EQ, literal);
+                    tokenEnd = position + 1;
+                    return TokenType.NOT_EQ;
                 } else {
-                    return new Token(TokenType.BANG, "!");
+                    return TokenType.BANG;
                 }
             case '*':
-                return new Token(TokenType.ASTERISK, "*");
+                return TokenType.ASTERISK;
             case '/':
-                return new Token(TokenType.SLASH, "/");
+                return TokenType.SLASH;
             case '<':
-                return new Token(TokenType.LT, "<");
+                return TokenType.LT;
             case '>':
-                return new Token(TokenType.GT, ">");
+                return TokenType.GT;
             case ',':
-                return new Token(TokenType.COMMA, ",");
+                return TokenType.COMMA;
             case ';':
-                return new Token(TokenType.SEMICOLON, ";");
+                return TokenType.SEMICOLON;
             case '(':
-                return new Token(TokenType.LPAREN, "(");
+                return TokenType.LPAREN;
             case ')':
-                return new Token(TokenType.RPAREN, ")");
+                return TokenType.RPAREN;
             case '{':
-                return new Token(TokenType.LBRACE, "{");
+                return TokenType.LBRACE;
             case '}':
-                return new Token(TokenType.RBRACE, "}");
+                return TokenType.RBRACE;
             case '[':
-                return new Token(TokenType.LBRACKET, "[");
+                return TokenType.LBRACKET;
             case ']':
-                return new Token(TokenType.RBRACKET, "]");
+                return TokenType.RBRACKET;
             case NOTHING:
-                return new Token(TokenType.EOF, "" + NOTHING);
+                tokenEnd = position;
+                return TokenType.EOF;
             default:
                 if (isLetter(ch)) {
-                    String identifier = readIdentifier();
-                    TokenType token = Token.lookUpIdentifier(identifier);
-                    return new Token(token, identifier);
+                    skipIdentifier();
+                    tokenEnd = position;
+                    return Token.lookUpIdentifier(input, tokenStart, tokenEnd);
                 } else if (isDigit(ch)) {
-                    String number = readNumber();
-                    return new Token(TokenType.INT, number);
+                    skipNumber();
+                    tokenEnd = position;
+                    return TokenType.INT;
                 } else {
-                    return new Token(TokenType.ILLEGAL, "" + ch);
+                    return TokenType.ILLEGAL;
                 }
         }
     }
 
-    private String readString() {
-        int startPosition = position + 1;
+    private void skipString() {
         // TODO: This is ugly. Fix
         while(true) {
             readChar();
@@ -120,16 +138,12 @@ public class Lexer {
                 break;
             }
         }
-        return input.substring(startPosition, position);
     }
 
-    private String readIdentifier() {
-        int startPosition = position;
+    private void skipIdentifier() {
         while(isLetter(ch)) {
             readChar();
         }
-
-        return input.substring(startPosition, position);
     }
 
     private boolean isLetter(char ch) {
@@ -140,20 +154,23 @@ public class Lexer {
         return '0' <= ch && ch <= '9';
     }
 
-    private String readNumber() {
-        int startPosition = position;
+    private void skipNumber() {
         while(isDigit(ch)) {
             readChar();
         }
-
-        return input.substring(startPosition, position);
     }
 
     protected boolean advanceToken(Token token) {
-        List<TokenType> tokenTypes = List.of(TokenType.IDENT, TokenType.FUNCTION, TokenType.INT, TokenType.LET,
-                TokenType.TRUE, TokenType.FALSE, TokenType.IF, TokenType.ELSE, TokenType.RETURN);
+        return advanceToken(token.getType());
+    }
 
-        return !tokenTypes.contains(token.getType());
+    private static boolean advanceToken(TokenType type) {
+        switch (type) {
+            case IDENT, FUNCTION, INT, LET, TRUE, FALSE, IF, ELSE, RETURN:
+                return false;
+            default:
+                return true;
+        }
     }
 
     private char peekChar() {
@@ -164,15 +181,37 @@ public class Lexer {
         }
     }
 
+    @Override
     public Token nextToken() {
         Token token = findToken();
-        if (advanceToken(token)) {
+        if (advanceToken(token.getType())) {
             readChar();
         }
 
         return token;
     }
 
+    /**
+     * Lexes the rest of the input into a TokenBuffer, up to and including EOF. Only the type and the source offsets
+     * of each token are stored, so no Token or String is created for any of them.
+     */
+    public TokenBuffer tokenize() {
+        // Real scripts have roughly one token per four characters, which saves most of the copying as it grows.
+        TokenBuffer buffer = new TokenBuffer(input, input.length() / 4 + 16);
+        while(true) {
+            TokenType type = scan();
+            buffer.add(type, tokenStart, tokenEnd);
+            if(type == TokenType.EOF) {
+                break;
+            }
+            if(advanceToken(type)) {
+                readChar();
+            }
+        }
+
+        return buffer;
+    }
+
     public List<Token> readAllTokens() {
         List<Token> tokens = new ArrayList<Token>();
         while(true) {
@@ -0,0 +1,278 @@
+package dk.madsravn.interpreter.lexer;
+
+import dk.madsravn.interpreter.tokens.Token;
+import dk.madsravn.interpreter.tokens.TokenType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Lexer for UTF-8 script files that scans the bytes of a memory-mapped file directly. Every token except a string
+ * literal is ASCII, so characters are classified with a 256-entry table and only the contents of strings (and any
+ * stray non-ASCII character, which is ILLEGAL) are decoded. Runs of whitespace, identifiers, numbers and string
+ * contents are found by an IScanner, vectorized when the Vector API is available. Produces the same tokens as Lexer on the decoded text,
+ * except that a stray character outside the Basic Multilingual Plane is one ILLEGAL token instead of two.
+ *
+ * A single mapping is limited to 2GB, which is also the limit for a String holding the script.
+ */
+public class MappedLexer implements ILexer {
+    private static final int WINDOW_SIZE = 64 * 1024;
+    private static final int MAX_CACHED_LENGTH = 16;
+    private static final byte[] CLASSES = ScalarScanner.CLASSES;
+    private static final int WHITESPACE_RUN = 0;
+    private static final int LETTER_RUN = 1;
+    private static final int DIGIT_RUN = 2;
+    private static final int STRING_RUN = 3;
+    private final ByteBuffer input;
+    private final int limit;
+    private final IScanner scanner;
+    private int position;
+    // The input is scanned through a heap copy of the part around position, which the scanners can read as a
+    // byte[] and which avoids a bounds-checked ByteBuffer.get for every byte.
+    private final byte[] window;
+    private int windowStart;
+    private int windowLength;
+    private byte[] scratch = new byte[64];
+    private final String[] words = new String[1024];
+
+    public MappedLexer(ByteBuffer input) {
+        this(input, Scanners.best());
+    }
+
+    public MappedLexer(ByteBuffer input, IScanner scanner) {
+        this.input = input;
+        this.position = input.position();
+        this.limit = input.limit();
+        this.scanner = scanner;
+        this.window = new byte[Math.min(WINDOW_SIZE, Math.max(limit - position, 1))];
+        this.windowStart = position;
+    }
+
+    // The mapping stays valid after the channel is closed, until the buffer is garbage collected.
+    public static MappedLexer open(Path path) throws IOException {
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new MappedLexer(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    // Like Lexer, a NUL character ends the input.
+    private int byteAt(int index) {
+        int offset = index - windowStart;
+        if(offset >= 0 && offset < windowLength) {
+            return window[offset] & 0xff;
+        }
+        if(index >= limit) {
+            return 0;
+        }
+        if(index < windowStart) {
+            return input.get(index) & 0xff;
+        }
+        moveWindow(index);
+
+        return window[0] & 0xff;
+    }
+
+    private void moveWindow(int index) {
+        windowStart = index;
+        windowLength = Math.min(window.length, limit - index);
+        input.get(index, window, 0, windowLength);
+    }
+
+    // Returns the end of the run of the given kind that starts at from, moving the window along as long as the run
+    // reaches the end of it.
+    private int skipRun(int run, int from) {
+        int index = from;
+        while(index < limit) {
+            if(index < windowStart || index >= windowStart + windowLength) {
+                moveWindow(index);
+            }
+            int offset = index - windowStart;
+            int end = switch(run) {
+                case WHITESPACE_RUN -> scanner.skipWhitespace(window, offset, windowLength);
+                case LETTER_RUN -> scanner.skipLetters(window, offset, windowLength);
+                case DIGIT_RUN -> scanner.skipDigits(window, offset, windowLength);
+                default -> scanner.skipStringContent(window, offset, windowLength);
+            };
+            index = windowStart + end;
+            if(end < windowLength) {
+                break;
+            }
+        }
+
+        return index;
+    }
+
+    @Override
+    public Token nextToken() {
+        position = skipRun(WHITESPACE_RUN, position);
+
+        int c = byteAt(position);
+        switch(CLASSES[c]) {
+            case ScalarScanner.LETTER: {
+                int start = position;
+                position = skipRun(LETTER_RUN, position);
+                TokenType type = keyword(start, position);
+                if(type != TokenType.IDENT) {
+                    return Token.of(type);
+                }
+                return new Token(TokenType.IDENT, word(start, position));
+            }
+            case ScalarScanner.DIGIT: {
+                int start = position;
+                position = skipRun(DIGIT_RUN, position);
+                return new Token(TokenType.INT, word(start, position));
+            }
+            case ScalarScanner.NON_ASCII: {
+                int start = position;
+                position += sequenceLength(c);
+                return new Token(TokenType.ILLEGAL, text(start, Math.min(position, limit), StandardCharsets.UTF_8));
+            }
+            default:
+                break;
+        }
+
+        switch(c) {
+            case '"': {
+                int start = position + 1;
+                int end = skipRun(STRING_RUN, start);
+                // Skip the closing quote, or step past the end like Lexer does for an unterminated string.
+                position = end + 1;
+                return new Token(TokenType.STRING, text(start, end, StandardCharsets.UTF_8));
+            }
+            case '=':
+                return twoCharacterToken('=', TokenType.EQ, TokenType.ASSIGN);
+            case '!':
+                return twoCharacterToken('=', TokenType.NOT_EQ, TokenType.BANG);
+            case 0:
+                return Token.of(TokenType.EOF);
+            default:
+                position++;
+                TokenType type = singleCharacterType(c);
+                if(type == TokenType.ILLEGAL) {
+                    return new Token(TokenType.ILLEGAL, String.valueOf((char) c));
+                }
+                return Token.of(type);
+        }
+    }
+
+    private Token twoCharacterToken(int second, TokenType twoCharacters, TokenType oneCharacter) {
+        if(byteAt(position + 1) == second) {
+            position += 2;
+            return Token.of(twoCharacters);
+        }
+        position++;
+
+        return Token.of(oneCharacter);
+    }
+
+    private static TokenType singleCharacterType(int c) {
+        switch(c) {
+            case ':': return TokenType.COLON;
+            case '+': return TokenType.PLUS;
+            case '-': return TokenType.MINUS;
+            case '*': return TokenType.ASTERISK;
+            case '/': return TokenType.SLASH;
+            case '<': return TokenType.LT;
+            case '>': return TokenType.GT;
+            case ',': return TokenType.COMMA;
+            case ';': return TokenType.SEMICOLON;
+            case '(': return TokenType.LPAREN;
+            case ')': return TokenType.RPAREN;
+            case '{': return TokenType.LBRACE;
+            case '}': return TokenType.RBRACE;
+            case '[': return TokenType.LBRACKET;
+            case ']': return TokenType.RBRACKET;
+            default: return TokenType.ILLEGAL;
+        }
+    }
+
+    // Number of bytes in the UTF-8 sequence starting with the lead byte c. Invalid lead bytes count as one byte and
+    // decode to the replacement character.
+    private static int sequenceLength(int c) {
+        if(c >= 0xf0 && c < 0xf8) {
+            return 4;
+        }
+        if(c >= 0xe0) {
+            return c < 0xf0 ? 3 : 1;
+        }
+
+        return c >= 0xc0 ? 2 : 1;
+    }
+
+    private TokenType keyword(int start, int end) {
+        int length = end - start;
+        if(length < 2 || length > 6) {
+            return TokenType.IDENT;
+        }
+        switch(byteAt(start)) {
+            case 'f':
+                if(matches("fn", start, length)) {
+                    return TokenType.FUNCTION;
+                }
+                return matches("false", start, length) ? TokenType.FALSE : TokenType.IDENT;
+            case 'l':
+                return matches("let", start, length) ? TokenType.LET : TokenType.IDENT;
+            case 't':
+                return matches("true", start, length) ? TokenType.TRUE : TokenType.IDENT;
+            case 'i':
+                return matches("if", start, length) ? TokenType.IF : TokenType.IDENT;
+            case 'e':
+                return matches("else", start, length) ? TokenType.ELSE : TokenType.IDENT;
+            case 'r':
+                return matches("return", start, length) ? TokenType.RETURN : TokenType.IDENT;
+            default:
+                return TokenType.IDENT;
+        }
+    }
+
+    private boolean matches(String keyword, int start, int length) {
+        return keyword.length() == length && matchesAt(keyword, start);
+    }
+
+    // Scripts use the same few names and numbers over and over, so short ASCII words are looked up in a small
+    // direct-mapped cache before a new String is made for them.
+    private String word(int start, int end) {
+        int length = end - start;
+        if(length > MAX_CACHED_LENGTH) {
+            return text(start, end, StandardCharsets.ISO_8859_1);
+        }
+        int hash = 0;
+        for(int i = start; i < end; i++) {
+            hash = 31 * hash + byteAt(i);
+        }
+        int slot = (hash ^ (hash >>> 16)) & (words.length - 1);
+        String cached = words[slot];
+        if(cached != null && cached.length() == length && matchesAt(cached, start)) {
+            return cached;
+        }
+        String word = text(start, end, StandardCharsets.ISO_8859_1);
+        words[slot] = word;
+
+        return word;
+    }
+
+    private boolean matchesAt(String word, int start) {
+        for(int i = 0; i < word.length(); i++) {
+            if(byteAt(start + i) != word.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private String text(int start, int end, Charset charset) {
+        int length = end - start;
+        if(scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        input.get(start, scratch, 0, length);
+
+        return new String(scratch, 0, length, charset);
+    }
+}
@@ -0,0 +1,64 @@
+package dk.madsravn.interpreter.lexer;
+
+// Looks at one byte at a time through a 256-entry table of character classes.
+public class ScalarScanner implements IScanner {
+    static final byte OTHER = 0;
+    static final byte WHITESPACE = 1;
+    static final byte LETTER = 2;
+    static final byte DIGIT = 3;
+    static final byte NON_ASCII = 4;
+    static final byte[] CLASSES = new byte[256];
+    static {
+        CLASSES[' '] = WHITESPACE;
+        CLASSES['\t'] = WHITESPACE;
+        CLASSES['\n'] = WHITESPACE;
+        CLASSES['\r'] = WHITESPACE;
+        for(int c = 'a'; c <= 'z'; c++) {
+            CLASSES[c] = LETTER;
+        }
+        for(int c = 'A'; c <= 'Z'; c++) {
+            CLASSES[c] = LETTER;
+        }
+        CLASSES['_'] = LETTER;
+        for(int c = '0'; c <= '9'; c++) {
+            CLASSES[c] = DIGIT;
+        }
+        for(int c = 0x80; c < 0x100; c++) {
+            CLASSES[c] = NON_ASCII;
+        }
+    }
+
+    @Override
+    public int skipWhitespace(byte[] b, int from, int to) {
+        return skipClass(b, from, to, WHITESPACE);
+    }
+
+    @Override
+    public int skipLetters(byte[] b, int from, int to) {
+        return skipClass(b, from, to, LETTER);
+    }
+
+    @Override
+    public int skipDigits(byte[] b, int from, int to) {
+        return skipClass(b, from, to, DIGIT);
+    }
+
+    @Override
+    public int skipStringContent(byte[] b, int from, int to) {
+        int i = from;
+        while(i < to && b[i] != '"' && b[i] != 0) {
+            i++;
+        }
+
+        return i;
+    }
+
+    private static int skipClass(byte[] b, int from, int to, byte characterClass) {
+        int i = from;
+        while(i < to && CLASSES[b[i] & 0xff] == characterClass) {
+            i++;
+        }
+
+        return i;
+    }
+}
@@ -0,0 +1,45 @@
+package dk.madsravn.interpreter.lexer;
+
+import java.util.Optional;
+
+/**
+ * Picks the scanner backend for MappedLexer. The VectorScanner needs the incubating jdk.incubator.vector module,
+ * which the JVM only loads with --add-modules jdk.incubator.vector; without it, or with
+ * -Dinterpreter.lexer.vector=false, the ScalarScanner is used.
+ */
+public class Scanners {
+    private static final IScanner SCALAR = new ScalarScanner();
+    private static final Optional<IScanner> VECTOR = loadVectorScanner();
+
+    private Scanners() {
+    }
+
+    public static IScanner scalar() {
+        return SCALAR;
+    }
+
+    public static Optional<IScanner> vector() {
+        return VECTOR;
+    }
+
+    public static IScanner best() {
+        if(!Boolean.parseBoolean(System.getProperty("interpreter.lexer.vector", "true"))) {
+            return SCALAR;
+        }
+
+        return VECTOR.orElse(SCALAR);
+    }
+
+    // VectorScanner is only linked when the module is there, so no Vector API class is touched otherwise.
+    private static Optional<IScanner> loadVectorScanner() {
+        if(ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of((IScanner) Class.forName("dk.madsravn.interpreter.lexer.VectorScanner")
+                    .getDeclaredConstructor().newInstance());
+        } catch(ReflectiveOperationException | LinkageError e) {
+            return Optional.empty();
+        }
+    }
+}
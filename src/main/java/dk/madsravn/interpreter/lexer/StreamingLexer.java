@@ -0,0 +1,193 @@
+package dk.madsravn.interpreter.lexer;
+
+import dk.madsravn.interpreter.tokens.Token;
+import dk.madsravn.interpreter.tokens.TokenType;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Lexer that pulls its input from a Reader through a fixed-size buffer instead of holding the whole script in a
+ * String. It produces the same tokens as Lexer. The text of the token being read is collected in a builder as it
+ * goes, so identifiers, numbers and strings may span any number of refills, and memory stays bounded by the buffer
+ * and the longest token. Errors from the Reader are rethrown as UncheckedIOException.
+ */
+public class StreamingLexer implements ILexer, AutoCloseable {
+    private static final char NOTHING = '\0';
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+    private final Reader reader;
+    private final char[] buffer;
+    private int bufferPosition;
+    private int bufferLimit;
+    private boolean endOfInput;
+    private final StringBuilder text;
+    private char ch;
+    private char peek;
+
+    public StreamingLexer(Reader reader) {
+        this(reader, DEFAULT_BUFFER_SIZE);
+    }
+
+    public StreamingLexer(Reader reader, int bufferSize) {
+        if(bufferSize < 1) {
+            throw new IllegalArgumentException("Buffer size must be positive, got " + bufferSize);
+        }
+        this.reader = reader;
+        this.buffer = new char[bufferSize];
+        this.text = new StringBuilder();
+        peek = fetch();
+        readChar();
+    }
+
+    // Reads the channel as UTF-8.
+    public StreamingLexer(ReadableByteChannel channel) {
+        this(Channels.newReader(channel, StandardCharsets.UTF_8), DEFAULT_BUFFER_SIZE);
+    }
+
+    private void readChar() {
+        ch = peek;
+        peek = fetch();
+    }
+
+    private char fetch() {
+        if(bufferPosition == bufferLimit) {
+            refill();
+            if(bufferPosition == bufferLimit) {
+                return NOTHING;
+            }
+        }
+
+        return buffer[bufferPosition++];
+    }
+
+    private void refill() {
+        bufferPosition = 0;
+        bufferLimit = 0;
+        if(endOfInput) {
+            return;
+        }
+        try {
+            int read;
+            do {
+                read = reader.read(buffer, 0, buffer.length);
+            } while(read == 0);
+            if(read < 0) {
+                endOfInput = true;
+            } else {
+                bufferLimit = read;
+            }
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void skipWhitespace() {
+        while(ch == ' ' || ch == '\t' || ch == '\n' || ch == '\r') {
+            readChar();
+        }
+    }
+
+    @Override
+    public Token nextToken() {
+        skipWhitespace();
+        TokenType type = switch(ch) {
+            case '"' -> {
+                readString();
+                yield TokenType.STRING;
+            }
+            case '=' -> twoCharacterType('=', TokenType.EQ, TokenType.ASSIGN);
+            case '!' -> twoCharacterType('=', TokenType.NOT_EQ, TokenType.BANG);
+            case ':' -> TokenType.COLON;
+            case '+' -> TokenType.PLUS;
+            case '-' -> TokenType.MINUS;
+            case '*' -> TokenType.ASTERISK;
+            case '/' -> TokenType.SLASH;
+            case '<' -> TokenType.LT;
+            case '>' -> TokenType.GT;
+            case ',' -> TokenType.COMMA;
+            case ';' -> TokenType.SEMICOLON;
+            case '(' -> TokenType.LPAREN;
+            case ')' -> TokenType.RPAREN;
+            case '{' -> TokenType.LBRACE;
+            case '}' -> TokenType.RBRACE;
+            case '[' -> TokenType.LBRACKET;
+            case ']' -> TokenType.RBRACKET;
+            case NOTHING -> TokenType.EOF;
+            default -> {
+                if(isLetter(ch)) {
+                    readWhile(true);
+                    yield Token.lookUpIdentifier(text, 0, text.length());
+                } else if(isDigit(ch)) {
+                    readWhile(false);
+                    yield TokenType.INT;
+                } else {
+                    text.setLength(0);
+                    text.append(ch);
+                    yield TokenType.ILLEGAL;
+                }
+            }
+        };
+
+        // Identifiers, keywords and numbers stop on the character after them, other tokens are still on their last one.
+        if(!isWordType(type)) {
+            readChar();
+        }
+        if(Token.fixedLiteral(type) != null) {
+            return Token.of(type);
+        }
+
+        return new Token(type, text.toString());
+    }
+
+    private TokenType twoCharacterType(char second, TokenType twoCharacters, TokenType oneCharacter) {
+        if(peek == second) {
+            readChar();
+            return twoCharacters;
+        }
+
+        return oneCharacter;
+    }
+
+    private void readString() {
+        text.setLength(0);
+        readChar();
+        while(ch != '"' && ch != NOTHING) {
+            text.append(ch);
+            readChar();
+        }
+    }
+
+    private void readWhile(boolean letters) {
+        text.setLength(0);
+        while(letters ? isLetter(ch) : isDigit(ch)) {
+            text.append(ch);
+            readChar();
+        }
+    }
+
+    private static boolean isWordType(TokenType type) {
+        switch (type) {
+            case IDENT, FUNCTION, INT, LET, TRUE, FALSE, IF, ELSE, RETURN:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private boolean isLetter(char ch) {
+        return ('a' <= ch && ch <= 'z') || ('A' <= ch && ch <= 'Z') || ch == '_';
+    }
+
+    private boolean isDigit(char ch) {
+        return '0' <= ch && ch <= '9';
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,91 @@
+package dk.madsravn.interpreter.lexer;
+
+import dk.madsravn.interpreter.tokens.Token;
+import dk.madsravn.interpreter.tokens.TokenType;
+
+import java.util.Arrays;
+
+/**
+ * Tokens of one source string stored as three parallel int arrays: the TokenType ordinal and the start and end
+ * offset of the token's text in the source. Filling it allocates nothing per token; Token objects and literal
+ * strings are only created when somebody asks for them, and tokens with a fixed literal are shared.
+ */
+public class TokenBuffer {
+    private static final TokenType[] TYPES = TokenType.values();
+    private static final int INITIAL_CAPACITY = 64;
+    private final String source;
+    private int[] types;
+    private int[] starts;
+    private int[] ends;
+    private int size;
+
+    public TokenBuffer(String source) {
+        this(source, INITIAL_CAPACITY);
+    }
+
+    public TokenBuffer(String source, int capacity) {
+        this.source = source;
+        this.types = new int[Math.max(capacity, 1)];
+        this.starts = new int[types.length];
+        this.ends = new int[types.length];
+    }
+
+    public void add(TokenType type, int start, int end) {
+        if(size == types.length) {
+            int capacity = types.length * 2;
+            types = Arrays.copyOf(types, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+        }
+        types[size] = type.ordinal();
+        starts[size] = start;
+        ends[size] = end;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public TokenType type(int index) {
+        return TYPES[types[checkIndex(index)]];
+    }
+
+    public int start(int index) {
+        return starts[checkIndex(index)];
+    }
+
+    public int end(int index) {
+        return ends[checkIndex(index)];
+    }
+
+    public String literal(int index) {
+        String fixed = Token.fixedLiteral(type(index));
+        if(fixed != null) {
+            return fixed;
+        }
+
+        return source.substring(starts[index], ends[index]);
+    }
+
+    public Token token(int index) {
+        TokenType type = type(index);
+        if(Token.fixedLiteral(type) != null) {
+            return Token.of(type);
+        }
+
+        return new Token(type, source.substring(starts[index], ends[index]));
+    }
+
+    private int checkIndex(int index) {
+        if(index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+        }
+
+        return index;
+    }
+}
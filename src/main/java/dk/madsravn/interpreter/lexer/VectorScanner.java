@@ -0,0 +1,92 @@
+package dk.madsravn.interpreter.lexer;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Classifies a whole vector of bytes per step (16 to 64 depending on the CPU) with the incubating Vector API once a
+ * run turns out to be long, and finishes the last partial vector with the ScalarScanner. Only load it through Scanners, which checks that the
+ * jdk.incubator.vector module is present.
+ */
+public class VectorScanner implements IScanner {
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+    // Most runs in a script are a few bytes long, shorter than it takes to pay for loading a vector, so the first
+    // bytes of every run are looked at one at a time.
+    private static final int SHORT_RUN = 16;
+    private final ScalarScanner scalar = new ScalarScanner();
+
+    @Override
+    public int skipWhitespace(byte[] b, int from, int to) {
+        int i = scalar.skipWhitespace(b, from, Math.min(to, from + SHORT_RUN));
+        if(i < from + SHORT_RUN) {
+            return i;
+        }
+        for(; i + SPECIES.length() <= to; i += SPECIES.length()) {
+            ByteVector v = ByteVector.fromArray(SPECIES, b, i);
+            VectorMask<Byte> whitespace = v.eq((byte) ' ').or(v.eq((byte) '\n')).or(v.eq((byte) '\t')).or(v.eq((byte) '\r'));
+            if(!whitespace.allTrue()) {
+                return i + whitespace.not().firstTrue();
+            }
+        }
+
+        return scalar.skipWhitespace(b, i, to);
+    }
+
+    @Override
+    public int skipLetters(byte[] b, int from, int to) {
+        int i = scalar.skipLetters(b, from, Math.min(to, from + SHORT_RUN));
+        if(i < from + SHORT_RUN) {
+            return i;
+        }
+        for(; i + SPECIES.length() <= to; i += SPECIES.length()) {
+            ByteVector v = ByteVector.fromArray(SPECIES, b, i);
+            // Setting bit 5 maps 'A'-'Z' onto 'a'-'z' and moves no other byte into that range. Bytes are signed, so
+            // non-ASCII bytes are negative and never letters.
+            ByteVector lower = v.or((byte) 0x20);
+            VectorMask<Byte> letters = lower.compare(VectorOperators.GE, (byte) 'a')
+                    .and(lower.compare(VectorOperators.LE, (byte) 'z'))
+                    .or(v.eq((byte) '_'));
+            if(!letters.allTrue()) {
+                return i + letters.not().firstTrue();
+            }
+        }
+
+        return scalar.skipLetters(b, i, to);
+    }
+
+    @Override
+    public int skipDigits(byte[] b, int from, int to) {
+        int i = scalar.skipDigits(b, from, Math.min(to, from + SHORT_RUN));
+        if(i < from + SHORT_RUN) {
+            return i;
+        }
+        for(; i + SPECIES.length() <= to; i += SPECIES.length()) {
+            ByteVector v = ByteVector.fromArray(SPECIES, b, i);
+            VectorMask<Byte> digits = v.compare(VectorOperators.GE, (byte) '0').and(v.compare(VectorOperators.LE, (byte) '9'));
+            if(!digits.allTrue()) {
+                return i + digits.not().firstTrue();
+            }
+        }
+
+        return scalar.skipDigits(b, i, to);
+    }
+
+    @Override
+    public int skipStringContent(byte[] b, int from, int to) {
+        int i = scalar.skipStringContent(b, from, Math.min(to, from + SHORT_RUN));
+        if(i < from + SHORT_RUN) {
+            return i;
+        }
+        for(; i + SPECIES.length() <= to; i += SPECIES.length()) {
+            ByteVector v = ByteVector.fromArray(SPECIES, b, i);
+            VectorMask<Byte> end = v.eq((byte) '"').or(v.eq((byte) 0));
+            if(end.anyTrue()) {
+                return i + end.firstTrue();
+            }
+        }
+
+        return scalar.skipStringContent(b, i, to);
+    }
+}
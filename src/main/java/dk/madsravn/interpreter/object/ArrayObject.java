@@ -1,14 +1,16 @@
 package dk.madsravn.interpreter.object;
 
+import dk.madsravn.interpreter.collection.PersistentVector;
+
 import java.util.List;
 import java.util.stream.Collectors;
 
 public class ArrayObject implements IObject {
     private static String OBJ_TYPE = "ARRAY";
-    private List<IObject> elements;
+    private PersistentVector<IObject> elements;
 
     public ArrayObject(List<IObject> elements) {
-        this.elements = elements;
+        this.elements = PersistentVector.from(elements);
     }
 
     public int getElementsLength() {
@@ -18,6 +20,19 @@ public class ArrayObject implements IObject {
     public List<IObject> getElements() {
         return elements;
     }
+
+    public IObject get(int index) {
+        return elements.get(index);
+    }
+
+    public ArrayObject push(IObject element) {
+        return new ArrayObject(elements.push(element));
+    }
+
+    public ArrayObject rest() {
+        return new ArrayObject(elements.rest());
+    }
+
     @Override
     public String type() {
         return OBJ_TYPE;
@@ -1,8 +1,6 @@
 package dk.madsravn.interpreter.object;
 
-import java.util.Objects;
-
-public class BooleanObject implements IObject {
+public class BooleanObject implements IHashKey {
     private boolean value;
     private static String OBJ_TYPE = "BOOLEAN";
 
@@ -21,9 +19,14 @@ public class BooleanObject implements IObject {
     public String inspect() {
         return "" + value;
     }
+    @Override
+    public long hashKey() {
+        return value ? 1 : 0;
+    }
+
     @Override
     public int hashCode() {
-        return Objects.hash(OBJ_TYPE, value);
+        return Boolean.hashCode(value);
     }
 
     @Override
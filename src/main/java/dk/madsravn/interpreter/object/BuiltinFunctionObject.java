@@ -1,17 +1,31 @@
 package dk.madsravn.interpreter.object;
 
-import java.util.Arrays;
 import java.util.List;
 import java.util.function.Function;
 
 public class BuiltinFunctionObject implements IObject {
+    // The arity of a builtin that takes any number of arguments.
+    public static final int VARIADIC = -1;
+
     private static String OBJ_TYPE = "BUILTIN";
-    private Function<List<IObject>, IObject> func;
+    private final String name;
+    private final int arity;
+    private final Function<List<IObject>, IObject> func;
 
-    public BuiltinFunctionObject(Function<List<IObject>, IObject> func) {
+    public BuiltinFunctionObject(String name, int arity, Function<List<IObject>, IObject> func) {
+        this.name = name;
+        this.arity = arity;
         this.func = func;
     }
 
+    public String getName() {
+        return name;
+    }
+
+    public int getArity() {
+        return arity;
+    }
+
     @Override
     public String type() {
         return OBJ_TYPE;
@@ -22,7 +36,12 @@ public class BuiltinFunctionObject implements IObject {
         return "builtin function";
     }
 
+    // The number of arguments is checked here, so the function itself only sees calls with the right arity.
     public IObject apply(List<IObject> objects) {
+        if(arity != VARIADIC && objects.size() != arity) {
+            return ErrorObject.wrongNumberOfArguments(arity, objects.size());
+        }
+
         return func.apply(objects);
     }
 }
@@ -0,0 +1,21 @@
+package dk.madsravn.interpreter.object;
+
+// Box for a name that closures capture. The frame that binds the name and every closure that captured it share the
+// same Cell, so a later let in the function is visible to a closure created earlier.
+public class Cell {
+    private IObject value;
+
+    public Cell() { }
+
+    public Cell(IObject value) {
+        this.value = value;
+    }
+
+    public IObject get() {
+        return value;
+    }
+
+    public void set(IObject value) {
+        this.value = value;
+    }
+}
@@ -0,0 +1,44 @@
+package dk.madsravn.interpreter.object;
+
+import dk.madsravn.interpreter.ast.BlockStatement;
+import dk.madsravn.interpreter.ast.Identifier;
+
+import java.util.List;
+
+// A function value produced by the virtual machine. It extends FunctionObject so both engines expose the same
+// parameters, body and inspect() output for a function, but it is executed from its compiled instructions.
+public class ClosureObject extends FunctionObject {
+    private CompiledFunctionObject function;
+    // Shared with the frames and closures that captured the same variables.
+    private Cell[] free;
+
+    public ClosureObject(CompiledFunctionObject function, Cell[] free) {
+        super(null, null);
+        this.function = function;
+        this.free = free;
+    }
+
+    public CompiledFunctionObject getFunction() {
+        return function;
+    }
+
+    public Cell[] getFree() {
+        return free;
+    }
+
+    // Asked of the compiled function, which may only build the nodes when they are needed.
+    @Override
+    public int getParametersLength() {
+        return function.getNumParameters();
+    }
+
+    @Override
+    public List<Identifier> getParameters() {
+        return function.getParameters();
+    }
+
+    @Override
+    public BlockStatement getBody() {
+        return function.getBody();
+    }
+}
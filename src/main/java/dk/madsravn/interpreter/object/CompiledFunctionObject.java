@@ -0,0 +1,108 @@
+package dk.madsravn.interpreter.object;
+
+import dk.madsravn.interpreter.ast.BlockStatement;
+import dk.madsravn.interpreter.ast.FlatAst;
+import dk.madsravn.interpreter.ast.FunctionLiteral;
+import dk.madsravn.interpreter.ast.Identifier;
+
+import java.util.List;
+
+public class CompiledFunctionObject implements IObject {
+    private static String OBJ_TYPE = "COMPILED_FUNCTION";
+    private byte[] instructions;
+    // The names of the local slots and of the free variables, for looking up a name whose let has not run yet.
+    private List<String> localNames;
+    private List<String> freeNames;
+    // The local slots that closures capture, which hold a Cell.
+    private int[] cells;
+    // Pairs of a local slot and a free variable whose value the slot starts out with, see SymbolTable.captureShadowed.
+    private int[] shadows;
+    private int numParameters;
+    private int maxStackDepth;
+    private List<Identifier> parameters;
+    private BlockStatement body;
+    // A function compiled from a FlatAst only turns its parameters and body back into nodes when they are asked for.
+    private FlatAst ast;
+    private int node;
+
+    public CompiledFunctionObject(byte[] instructions, List<String> localNames, int[] cells, int[] shadows,
+                                  List<String> freeNames, int numParameters, int maxStackDepth,
+                                  List<Identifier> parameters, BlockStatement body) {
+        this.instructions = instructions;
+        this.maxStackDepth = maxStackDepth;
+        this.localNames = localNames;
+        this.cells = cells;
+        this.shadows = shadows;
+        this.freeNames = freeNames;
+        this.numParameters = numParameters;
+        this.parameters = parameters;
+        this.body = body;
+    }
+
+    public CompiledFunctionObject(byte[] instructions, List<String> localNames, int[] cells, int[] shadows,
+                                  List<String> freeNames, int numParameters, int maxStackDepth, FlatAst ast, int node) {
+        this(instructions, localNames, cells, shadows, freeNames, numParameters, maxStackDepth, null, null);
+        this.ast = ast;
+        this.node = node;
+    }
+
+    public byte[] getInstructions() {
+        return instructions;
+    }
+
+    public int getNumLocals() {
+        return localNames.size();
+    }
+
+    public String getLocalName(int slot) {
+        return localNames.get(slot);
+    }
+
+    public String getFreeName(int index) {
+        return freeNames.get(index);
+    }
+
+    public int[] getCells() {
+        return cells;
+    }
+
+    public int[] getShadows() {
+        return shadows;
+    }
+
+    public int getNumParameters() {
+        return numParameters;
+    }
+
+    public int getMaxStackDepth() {
+        return maxStackDepth;
+    }
+
+    public List<Identifier> getParameters() {
+        materialize();
+        return parameters;
+    }
+
+    public BlockStatement getBody() {
+        materialize();
+        return body;
+    }
+
+    private void materialize() {
+        if(body == null && ast != null) {
+            FunctionLiteral literal = (FunctionLiteral) ast.toNode(node);
+            parameters = literal.getParameters();
+            body = literal.getBody();
+        }
+    }
+
+    @Override
+    public String type() {
+        return OBJ_TYPE;
+    }
+
+    @Override
+    public String inspect() {
+        return "CompiledFunction[" + numParameters + " parameters, " + instructions.length + " bytes]";
+    }
+}
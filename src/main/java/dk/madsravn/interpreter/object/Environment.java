@@ -19,21 +19,20 @@ public class Environment {
         this.outerStore = Optional.of(outerStore);
     }
 
-    //TODO: UGLY AS HELL
     public Optional<IObject> get(String name) {
-        //return Optional.ofNullable(store.get(name)).orElse(Optional.ofNullable(outerStore.get(name).get()));
-        var first = store.get(name);
-        if(first != null) {
-            return Optional.ofNullable(first);
-        } else {
-            if(outerStore.isPresent()) {
-                var second = outerStore.get().get(name);
-                if (second.isPresent()) {
-                    return second;
-                }
+        return Optional.ofNullable(lookup(name));
+    }
+
+    // Walks the chain without allocating; returns null when the name is not bound anywhere.
+    public IObject lookup(String name) {
+        Environment environment = this;
+        while(true) {
+            var value = environment.store.get(name);
+            if(value != null || environment.outerStore.isEmpty()) {
+                return value;
             }
+            environment = environment.outerStore.get();
         }
-        return Optional.empty();
     }
 
     public IObject set(String name, IObject value) {
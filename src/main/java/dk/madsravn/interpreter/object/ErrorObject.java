@@ -31,6 +31,10 @@ public class ErrorObject implements IObject {
         return new ErrorObject("argument for `first` must be ARRAY, got " + type);
     }
 
+    public static ErrorObject argumentMustBeHash(String name, String type) {
+        return new ErrorObject("argument for `" + name + "` must be HASH, got " + type);
+    }
+
     public static ErrorObject unusableAsHashKey(String type) {
         return new ErrorObject("unusable as hash key: " + type);
     }
@@ -39,6 +43,10 @@ public class ErrorObject implements IObject {
         return new ErrorObject("not a function: " + message);
     }
 
+    public static ErrorObject stackOverflow() {
+        return new ErrorObject("stack overflow");
+    }
+
     public ErrorObject(String message) {
         this.message = message;
     }
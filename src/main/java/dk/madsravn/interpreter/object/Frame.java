@@ -0,0 +1,66 @@
+package dk.madsravn.interpreter.object;
+
+import java.util.Arrays;
+
+/**
+ * Storage for the names bound by one function call, addressed by the indexes the Resolver assigned. Names no
+ * closure captures live in plain slots, captured names in cells, and free holds the cells the called closure
+ * captured from the functions around it. A frame does not point to the frame the function was defined in, so a
+ * closure only keeps the cells it uses alive. The outermost frame has nothing but the global Environment.
+ */
+public class Frame {
+    private static final IObject[] NO_SLOTS = new IObject[0];
+    private static final Cell[] NO_CELLS = new Cell[0];
+    private final IObject[] slots;
+    private final Cell[] cells;
+    private final Cell[] free;
+    private final Environment globals;
+
+    public Frame(Environment globals) {
+        this.slots = NO_SLOTS;
+        this.cells = NO_CELLS;
+        this.free = NO_CELLS;
+        this.globals = globals;
+    }
+
+    public Frame(int size, int cellCount, Cell[] free, Environment globals) {
+        this.slots = size == 0 ? NO_SLOTS : new IObject[size];
+        this.cells = cellCount == 0 ? NO_CELLS : new Cell[cellCount];
+        this.free = free;
+        this.globals = globals;
+        newCells();
+    }
+
+    public IObject get(int slot) {
+        return slots[slot];
+    }
+
+    public void set(int slot, IObject value) {
+        slots[slot] = value;
+    }
+
+    public Cell getCell(int index) {
+        return cells[index];
+    }
+
+    public Cell getFree(int index) {
+        return free[index];
+    }
+
+    // Forgets every binding so the frame can be used for another call of the same function. Closures made by the
+    // previous call keep their cells, the next call gets new ones.
+    public void clear() {
+        Arrays.fill(slots, null);
+        newCells();
+    }
+
+    public Environment getGlobals() {
+        return globals;
+    }
+
+    private void newCells() {
+        for(int i = 0; i < cells.length; i++) {
+            cells[i] = new Cell();
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package dk.madsravn.interpreter.object;
 
 import dk.madsravn.interpreter.ast.BlockStatement;
+import dk.madsravn.interpreter.ast.FunctionLiteral;
 import dk.madsravn.interpreter.ast.Identifier;
 
 import java.util.List;
@@ -10,11 +11,20 @@ public class FunctionObject implements IObject {
     private static String OBJ_TYPE = "FUNCTION";
     private List<Identifier> parameters;
     private BlockStatement body;
-    private Environment env;
-    public FunctionObject(List<Identifier> parameters, BlockStatement body, Environment env) {
+    private FunctionLiteral literal;
+    private Environment globals;
+    // The cells this closure captured, in the order of the literal's captures.
+    private Cell[] captured;
+    public FunctionObject(FunctionLiteral literal, Environment globals, Cell[] captured) {
+        this(literal.getParameters(), literal.getBody());
+        this.literal = literal;
+        this.globals = globals;
+        this.captured = captured;
+    }
+
+    protected FunctionObject(List<Identifier> parameters, BlockStatement body) {
         this.parameters = parameters;
         this.body = body;
-        this.env = env;
     }
 
     public int getParametersLength() {
@@ -29,8 +39,16 @@ public class FunctionObject implements IObject {
         return body;
     }
 
-    public Environment getEnvironment() {
-        return env;
+    public FunctionLiteral getLiteral() {
+        return literal;
+    }
+
+    public Environment getGlobals() {
+        return globals;
+    }
+
+    public Cell[] getCaptured() {
+        return captured;
     }
 
     @Override
@@ -41,12 +59,12 @@ public class FunctionObject implements IObject {
     @Override
     public String inspect() {
         StringBuilder sb = new StringBuilder();
-        String paramString = parameters.stream().map(p -> p.string()).collect(Collectors.joining(", "));
+        String paramString = getParameters().stream().map(p -> p.string()).collect(Collectors.joining(", "));
         sb.append("fn");
         sb.append("(");
         sb.append(paramString);
         sb.append(") {\n");
-        sb.append(body.string());
+        sb.append(getBody().string());
         sb.append("\n");
 
         return sb.toString();
@@ -1,19 +1,110 @@
 package dk.madsravn.interpreter.object;
 
+import dk.madsravn.interpreter.collection.CompactMap;
+import dk.madsravn.interpreter.collection.PersistentHashMap;
+
 import java.util.Map;
 import java.util.stream.Collectors;
 
+// Hashes of up to CompactMap.MAX_SIZE pairs, which is nearly all of them, are CompactMaps and list their pairs in
+// insertion order. A hash that grows past that becomes a PersistentHashMap, so set and delete keep sharing most of
+// it with the hash they were called on, and lists its pairs in the trie's order, which only depends on the keys.
+//
+// A hash made by a literal with constant string keys has the literal's Shape instead and only holds the values, in
+// the order of the shape's slots. Changing one of its values keeps the shape. Adding or removing a key turns the hash
+// into a CompactMap, because giving every such hash a shape of its own would cost more than the shape saves.
 public class HashObject implements IObject {
     private static String OBJ_TYPE = "HASH";
-    private Map<IObject, IObject> pairs;
+    // Null when the hash has a shape.
+    private final Map<IObject, IObject> pairs;
+    private final Shape shape;
+    private final IObject[] values;
 
     public HashObject(Map<IObject, IObject> pairs) {
-        this.pairs = pairs;
+        this.shape = null;
+        this.values = null;
+        if(pairs instanceof CompactMap<IObject, IObject> || pairs instanceof PersistentHashMap<IObject, IObject>) {
+            this.pairs = pairs;
+        } else if(pairs.size() <= CompactMap.MAX_SIZE) {
+            this.pairs = CompactMap.from(pairs);
+        } else {
+            this.pairs = PersistentHashMap.from(pairs);
+        }
+    }
+
+    // The values are used as they are, so the caller must not change the array afterwards.
+    public HashObject(Shape shape, IObject[] values) {
+        this.pairs = null;
+        this.shape = shape;
+        this.values = values;
     }
 
+    // For a hash with a shape this is a new map every time.
     public Map<IObject, IObject> getPairs() {
-        return pairs;
+        if(shape == null) {
+            return pairs;
+        }
+        CompactMap<IObject, IObject> result = CompactMap.empty();
+        for(int i = 0; i < values.length; i++) {
+            result = result.with(shape.getKey(i), values[i]);
+        }
+
+        return result;
+    }
+
+    // The shape of the hash, or null when it does not have one.
+    public Shape getShape() {
+        return shape;
+    }
+
+    public IObject getValue(int slot) {
+        return values[slot];
+    }
+
+    // The value for the key, or null when the hash does not contain it.
+    public IObject get(IHashKey key) {
+        if(shape != null) {
+            int slot = shape.slotOf(key);
+            return slot == Shape.NOT_FOUND ? null : values[slot];
+        }
+
+        return pairs.get(key);
+    }
+
+    public HashObject with(IObject key, IObject value) {
+        if(shape != null) {
+            int slot = shape.slotOf(key);
+            if(slot == Shape.NOT_FOUND) {
+                return new HashObject(getPairs()).with(key, value);
+            }
+            if(values[slot] == value) {
+                return this;
+            }
+            IObject[] newValues = values.clone();
+            newValues[slot] = value;
+            return new HashObject(shape, newValues);
+        }
+        if(pairs instanceof CompactMap<IObject, IObject> small) {
+            if(!small.isFull() || small.containsKey(key)) {
+                return new HashObject(small.with(key, value));
+            }
+            return new HashObject(PersistentHashMap.<IObject, IObject>from(small).with(key, value));
+        }
+
+        return new HashObject(((PersistentHashMap<IObject, IObject>) pairs).with(key, value));
     }
+
+    public HashObject without(IObject key) {
+        if(shape != null) {
+            return shape.slotOf(key) == Shape.NOT_FOUND ? this : new HashObject(getPairs()).without(key);
+        }
+        if(pairs instanceof CompactMap<IObject, IObject> small) {
+            return new HashObject(small.without(key));
+        }
+
+        return new HashObject(((PersistentHashMap<IObject, IObject>) pairs).without(key));
+    }
+
     @Override
     public String type() {
         return OBJ_TYPE;
@@ -22,7 +113,7 @@ public class HashObject implements IObject {
     @Override
     public String inspect() {
         StringBuilder sb = new StringBuilder();
-        String elementsString = pairs.entrySet().stream().map(p -> p.getKey().inspect() + ": " + p.getValue().inspect()).collect(Collectors.joining(", "));
+        String elementsString = getPairs().entrySet().stream().map(p -> p.getKey().inspect() + ": " + p.getValue().inspect()).collect(Collectors.joining(", "));
         sb.append("{");
         sb.append(elementsString);
         sb.append("}");
@@ -0,0 +1,14 @@
+package dk.madsravn.interpreter.object;
+
+/**
+ * A value that can be used as a key in a HashObject. hashKey is a 64 bit hash that is computed at most once per
+ * object, and equal keys have equal hash keys. hashCode is derived from it, so map lookups do not hash the value
+ * again, and equals can reject most unequal keys by comparing hash keys before comparing values.
+ */
+public interface IHashKey extends IObject {
+    long hashKey();
+
+    static int hashCodeOf(long hashKey) {
+        return (int) (hashKey ^ (hashKey >>> 32));
+    }
+}
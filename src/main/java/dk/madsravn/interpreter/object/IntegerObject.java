@@ -1,15 +1,32 @@
 package dk.madsravn.interpreter.object;
 
-import java.util.Objects;
-
-public class IntegerObject implements IObject {
-    private int value;
+public class IntegerObject implements IHashKey {
     private static String OBJ_TYPE = "INTEGER";
+    private static final int CACHE_LOW = -128;
+    private static final int CACHE_HIGH = 1024;
+    private static final IntegerObject[] CACHE = new IntegerObject[CACHE_HIGH - CACHE_LOW + 1];
+
+    static {
+        for(int i = 0; i < CACHE.length; i++) {
+            CACHE[i] = new IntegerObject(CACHE_LOW + i);
+        }
+    }
+
+    private final int value;
 
     public IntegerObject(int value) {
         this.value = value;
     }
 
+    // Loop counters, indexes and small constants are shared instead of allocated, like Integer.valueOf.
+    public static IntegerObject valueOf(int value) {
+        if(value >= CACHE_LOW && value <= CACHE_HIGH) {
+            return CACHE[value - CACHE_LOW];
+        }
+
+        return new IntegerObject(value);
+    }
+
     public int getValue() {
         return value;
     }
@@ -25,9 +42,14 @@ public class IntegerObject implements IObject {
         return OBJ_TYPE;
     }
 
+    @Override
+    public long hashKey() {
+        return value;
+    }
+
     @Override
     public int hashCode() {
-        return Objects.hash(OBJ_TYPE, value);
+        return value;
     }
 
     @Override
@@ -0,0 +1,55 @@
+package dk.madsravn.interpreter.object;
+
+import dk.madsravn.interpreter.collection.CompactMap;
+
+import java.util.List;
+
+/**
+ * The keys of a hash literal whose keys are all constant strings, each with the slot its value has in the hashes
+ * made from the literal. Every evaluation of the literal shares the shape, so such a hash only holds an array of
+ * values, and an index expression with a constant key can remember the slot for the shape and skip the lookup.
+ *
+ * Shapes are immutable. A hash that gets a key its shape does not have stops using a shape (see HashObject).
+ */
+public final class Shape {
+    public static final int MAX_KEYS = CompactMap.MAX_SIZE;
+    public static final int NOT_FOUND = -1;
+
+    private final StringObject[] keys;
+    private final CompactMap<IObject, Integer> slots;
+
+    private Shape(StringObject[] keys, CompactMap<IObject, Integer> slots) {
+        this.keys = keys;
+        this.slots = slots;
+    }
+
+    // The shape for the keys in this order, or null when a key is repeated or there are more than MAX_KEYS of them.
+    public static Shape of(List<StringObject> keys) {
+        if(keys.size() > MAX_KEYS) {
+            return null;
+        }
+        CompactMap<IObject, Integer> slots = CompactMap.empty();
+        for(int i = 0; i < keys.size(); i++) {
+            slots = slots.with(keys.get(i), i);
+        }
+        if(slots.size() != keys.size()) {
+            return null;
+        }
+
+        return new Shape(keys.toArray(new StringObject[0]), slots);
+    }
+
+    public int slotOf(IObject key) {
+        Integer slot = slots.get(key);
+
+        return slot == null ? NOT_FOUND : slot;
+    }
+
+    public StringObject getKey(int slot) {
+        return keys[slot];
+    }
+
+    public int size() {
+        return keys.length;
+    }
+}
@@ -1,18 +1,100 @@
 package dk.madsravn.interpreter.object;
 
-import java.util.Objects;
+import java.util.ArrayDeque;
 
-public class StringObject implements IObject {
+/**
+ * A string is either flat, holding a String, or a concatenation of two other StringObjects (a rope) that is only
+ * copied into one String when its characters are needed: by getValue, inspect, hashCode and equals. Building a
+ * string with + one piece at a time therefore copies every character once instead of once per +.
+ *
+ * The content is a single field holding either the String or the pair, and a flattened rope replaces the pair with
+ * the String in one write. Threads that share a rope can flatten it at the same time and only repeat the work. The
+ * hash key is cached the same way. Both fields are volatile, because a string can reach another thread without any
+ * synchronization, for example as the constant of a StringLiteral in a cached Program, and a plain field could then
+ * still read as null there (or, for the hash key, as half of a long).
+ */
+public class StringObject implements IHashKey {
     private static String OBJ_TYPE = "STRING";
-    private String value;
+    // Strings up to this length are concatenated right away. A rope node costs more than copying them.
+    static final int SHORT_LENGTH = 256;
+
+    private static final long HASH_SEED = 1125899906842597L;
+
+    private final int length;
+    private volatile Object content;
+    // 0 until computed. A string that really hashes to 0 is hashed again every time, like String.hashCode.
+    private volatile long hashKey;
 
     public StringObject(String value) {
-        this.value = value;
+        this.length = value.length();
+        this.content = value;
+    }
+
+    private StringObject(StringObject left, StringObject right) {
+        this.length = left.length + right.length;
+        this.content = new Concat(left, right);
+    }
+
+    public static StringObject concat(StringObject left, StringObject right) {
+        if(left.length == 0) {
+            return right;
+        }
+        if(right.length == 0) {
+            return left;
+        }
+        if(left.length + right.length <= SHORT_LENGTH) {
+            return new StringObject(left.getValue() + right.getValue());
+        }
+        // Appending a short string to a rope that ends in a short flat string grows that string instead of adding
+        // a node, so a string built a few characters at a time does not turn into a node per piece.
+        if(right.length < SHORT_LENGTH && left.content instanceof Concat concat
+                && concat.right.content instanceof String tail && tail.length() + right.length <= SHORT_LENGTH) {
+            return new StringObject(concat.left, new StringObject(tail + right.getValue()));
+        }
+
+        return new StringObject(left, right);
     }
 
     public String getValue() {
+        Object current = content;
+        if(current instanceof String value) {
+            return value;
+        }
+        String value = flatten((Concat) current);
+        content = value;
+
         return value;
     }
+
+    public int length() {
+        return length;
+    }
+
+    // Whether the characters are still spread over a rope.
+    public boolean isFlat() {
+        return content instanceof String;
+    }
+
+    // Walks the rope with a stack of its own, because ropes built by long recursions are deeper than the call stack.
+    private String flatten(Concat concat) {
+        StringBuilder builder = new StringBuilder(length);
+        ArrayDeque<StringObject> pending = new ArrayDeque<>();
+        pending.push(concat.right);
+        pending.push(concat.left);
+        while(!pending.isEmpty()) {
+            Object current = pending.pop().content;
+            if(current instanceof String value) {
+                builder.append(value);
+            } else {
+                Concat node = (Concat) current;
+                pending.push(node.right);
+                pending.push(node.left);
+            }
+        }
+
+        return builder.toString();
+    }
+
     @Override
     public String type() {
         return OBJ_TYPE;
@@ -20,12 +102,27 @@ public class StringObject implements IObject {
 
     @Override
     public String inspect() {
-        return "\"" + value + "\"";
+        return "\"" + getValue() + "\"";
+    }
+
+    @Override
+    public long hashKey() {
+        long hash = hashKey;
+        if(hash == 0) {
+            hash = HASH_SEED;
+            String value = getValue();
+            for(int i = 0; i < value.length(); i++) {
+                hash = 31 * hash + value.charAt(i);
+            }
+            hashKey = hash;
+        }
+
+        return hash;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(OBJ_TYPE, value);
+        return IHashKey.hashCodeOf(hashKey());
     }
 
     @Override
@@ -38,6 +135,12 @@ public class StringObject implements IObject {
             return false;
         }
         StringObject that = (StringObject) o;
-        return this.value.equals(that.value);
+        if(this.length != that.length || (this.hashKey != 0 && that.hashKey != 0 && this.hashKey != that.hashKey)) {
+            return false;
+        }
+
+        return this.getValue().equals(that.getValue());
     }
+
+    private record Concat(StringObject left, StringObject right) { }
 }
@@ -0,0 +1,45 @@
+package dk.madsravn.interpreter.object;
+
+import java.util.List;
+
+// A call in tail position that has not been made yet. It is handed back to the function application that is
+// already running, which makes the call in its own loop instead of nesting another one on the Java stack.
+public class TailCallObject implements IObject {
+    private static String OBJ_TYPE = "TAIL_CALL";
+    private FunctionObject function;
+    private List<IObject> arguments;
+    // Set instead of arguments when the caller has already bound the arguments in a frame for the call.
+    private Frame frame;
+
+    public TailCallObject(FunctionObject function, List<IObject> arguments) {
+        this.function = function;
+        this.arguments = arguments;
+    }
+
+    public TailCallObject(FunctionObject function, Frame frame) {
+        this.function = function;
+        this.frame = frame;
+    }
+
+    public FunctionObject getFunction() {
+        return function;
+    }
+
+    public List<IObject> getArguments() {
+        return arguments;
+    }
+
+    public Frame getFrame() {
+        return frame;
+    }
+
+    @Override
+    public String type() {
+        return OBJ_TYPE;
+    }
+
+    @Override
+    public String inspect() {
+        return function.inspect();
+    }
+}
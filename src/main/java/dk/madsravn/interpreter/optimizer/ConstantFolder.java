@@ -0,0 +1,318 @@
+package dk.madsravn.interpreter.optimizer;
+
+import dk.madsravn.interpreter.ast.*;
+import dk.madsravn.interpreter.evaluator.Evaluator;
+import dk.madsravn.interpreter.object.BooleanObject;
+import dk.madsravn.interpreter.object.IObject;
+import dk.madsravn.interpreter.object.IntegerObject;
+import dk.madsravn.interpreter.object.StringObject;
+import dk.madsravn.interpreter.tokens.Token;
+import dk.madsravn.interpreter.tokens.TokenType;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Static pass run between the Parser and the Resolver that rewrites the tree in place. Prefix and infix expressions
+ * over literals are replaced by their value, if expressions with a literal condition lose the branch that can never
+ * run, and a name bound by let to a literal is replaced by the literal where it is certain to still hold that value.
+ *
+ * Values are computed by the Evaluator's own operators, so a folded expression has exactly the value it would have had
+ * at run time. An expression that would give an error, like 1 + true, is left alone so the error still happens when
+ * (and only if) it runs, and so is division by zero.
+ *
+ * A let is propagated when it is a statement of a function body or of the program itself (not of a nested block that
+ * may not run), and it is the only binding of the name in that function. Only the statements after it see the
+ * literal, including functions defined there unless they bind the name themselves. Globals are never propagated into
+ * functions, because a later input in the REPL may bind the name again before the function is called.
+ */
+public class ConstantFolder {
+    // Folding a concatenation copies the strings into the tree, so longer results are left for run time.
+    static final int MAX_STRING_LENGTH = 1024;
+
+    private ConstantFolder() {
+    }
+
+    public static void fold(INode node) {
+        switch(node) {
+            case Program program ->
+                    foldBody(program.getStatements(), new Scope(true, Map.of(), bindingCounts(program.getStatements(), List.of())));
+            case IStatement statement -> foldStatement(statement, new Scope(true, Map.of(), Map.of()));
+            case IExpression expression -> foldExpression(expression, new Scope(true, Map.of(), Map.of()));
+            case null, default -> { }
+        }
+    }
+
+    private static void foldBody(List<IStatement> statements, Scope scope) {
+        for(IStatement statement : statements) {
+            foldStatement(statement, scope);
+            if(statement instanceof LetStatement letStatement && isLiteral(letStatement.getValue())
+                    && scope.bindings.getOrDefault(letStatement.getName().getValue(), 0) == 1) {
+                scope.constants.put(letStatement.getName().getValue(), letStatement.getValue());
+            }
+        }
+    }
+
+    private static void foldStatement(IStatement statement, Scope scope) {
+        switch(statement) {
+            case LetStatement letStatement -> letStatement.setValue(foldExpression(letStatement.getValue(), scope));
+            case ReturnStatement returnStatement ->
+                    returnStatement.setExpression(foldExpression(returnStatement.getExpression(), scope));
+            case ExpressionStatement expressionStatement ->
+                    expressionStatement.setExpression(foldExpression(expressionStatement.getExpression(), scope));
+            case BlockStatement blockStatement -> foldBlock(blockStatement, scope);
+            case null, default -> { }
+        }
+    }
+
+    // Statements of a nested block may not run, so the lets in them are not propagated.
+    private static void foldBlock(BlockStatement block, Scope scope) {
+        for(IStatement statement : block.getStatements()) {
+            foldStatement(statement, scope);
+        }
+    }
+
+    private static IExpression foldExpression(IExpression expression, Scope scope) {
+        switch(expression) {
+            case Identifier identifier -> {
+                return scope.constants.getOrDefault(identifier.getValue(), identifier);
+            }
+
+            case PrefixExpression prefixExpression -> {
+                prefixExpression.setRight(foldExpression(prefixExpression.getRight(), scope));
+                IObject right = valueOf(prefixExpression.getRight());
+                if(right == null) {
+                    return prefixExpression;
+                }
+                IExpression folded = literalOf(Evaluator.evaluatePrefixExpression(prefixExpression.getOperator(), right));
+                return folded != null ? folded : prefixExpression;
+            }
+
+            case InfixExpression infixExpression -> {
+                infixExpression.setLeft(foldExpression(infixExpression.getLeft(), scope));
+                infixExpression.setRight(foldExpression(infixExpression.getRight(), scope));
+                IObject left = valueOf(infixExpression.getLeft());
+                IObject right = valueOf(infixExpression.getRight());
+                if(left == null || right == null) {
+                    return infixExpression;
+                }
+                // Division by zero throws in the Evaluator, which has to keep happening at run time.
+                if(infixExpression.getInfixOperator() == InfixOperator.DIVIDE
+                        && right instanceof IntegerObject divisor && divisor.getValue() == 0) {
+                    return infixExpression;
+                }
+                IObject value = Evaluator.evaluateInfixExpression(infixExpression.getInfixOperator(), left, right);
+                IExpression folded = literalOf(value);
+                return folded != null ? folded : infixExpression;
+            }
+
+            case IfExpression ifExpression -> {
+                ifExpression.setCondition(foldExpression(ifExpression.getCondition(), scope));
+                foldBlock(ifExpression.getConsequence(), scope);
+                if(ifExpression.getAlternative() != null) {
+                    foldBlock(ifExpression.getAlternative(), scope);
+                }
+                return pruneIfExpression(ifExpression);
+            }
+
+            case FunctionLiteral functionLiteral -> {
+                foldBody(functionLiteral.getBody().getStatements(), scope.enterFunction(functionLiteral));
+                return functionLiteral;
+            }
+
+            case CallExpression callExpression -> {
+                callExpression.setFunction(foldExpression(callExpression.getFunction(), scope));
+                foldExpressions(callExpression.getArguments(), scope);
+                return callExpression;
+            }
+
+            case ArrayLiteral arrayLiteral -> {
+                foldExpressions(arrayLiteral.getElements(), scope);
+                return arrayLiteral;
+            }
+
+            case HashLiteral hashLiteral -> {
+                List<Map.Entry<IExpression, IExpression>> pairs = new ArrayList<>(hashLiteral.getPairs().entrySet());
+                hashLiteral.getPairs().clear();
+                for(Map.Entry<IExpression, IExpression> pair : pairs) {
+                    hashLiteral.getPairs().put(foldExpression(pair.getKey(), scope), foldExpression(pair.getValue(), scope));
+                }
+                return hashLiteral;
+            }
+
+            case IndexExpression indexExpression -> {
+                indexExpression.setLeft(foldExpression(indexExpression.getLeft(), scope));
+                indexExpression.setIndex(foldExpression(indexExpression.getIndex(), scope));
+                return indexExpression;
+            }
+
+            case null, default -> {
+                return expression;
+            }
+        }
+    }
+
+    private static void foldExpressions(List<IExpression> expressions, Scope scope) {
+        if(expressions == null) {
+            return;
+        }
+        for(int i = 0; i < expressions.size(); i++) {
+            expressions.set(i, foldExpression(expressions.get(i), scope));
+        }
+    }
+
+    // A branch that is taken for certain replaces the whole if expression when it is a single expression, and
+    // otherwise stays as the consequence of an always true if. An if (false) without an else is left alone, since
+    // its value is null and there is no literal for that.
+    private static IExpression pruneIfExpression(IfExpression ifExpression) {
+        IObject condition = valueOf(ifExpression.getCondition());
+        if(condition == null) {
+            return ifExpression;
+        }
+        boolean truthy = condition != Evaluator.FALSE;
+        BlockStatement taken = truthy ? ifExpression.getConsequence() : ifExpression.getAlternative();
+        if(taken == null) {
+            return ifExpression;
+        }
+        List<IStatement> statements = taken.getStatements();
+        if(statements.size() == 1 && statements.get(0) instanceof ExpressionStatement statement
+                && statement.getExpression() != null) {
+            return statement.getExpression();
+        }
+        if(truthy && ifExpression.getAlternative() == null) {
+            return ifExpression;
+        }
+
+        return new IfExpression(Token.of(TokenType.IF), new BooleanType(Token.of(TokenType.TRUE), true), taken, null);
+    }
+
+    private static boolean isLiteral(IExpression expression) {
+        return expression instanceof IntegerLiteral || expression instanceof StringLiteral || expression instanceof BooleanType;
+    }
+
+    private static IObject valueOf(IExpression expression) {
+        return switch(expression) {
+            case IntegerLiteral integerLiteral -> IntegerObject.valueOf(integerLiteral.getValue());
+            case StringLiteral stringLiteral -> new StringObject(stringLiteral.getValue());
+            case BooleanType booleanType -> booleanType.getValue() ? Evaluator.TRUE : Evaluator.FALSE;
+            case null, default -> null;
+        };
+    }
+
+    // The literal for a value, or null for errors and anything else that has no literal.
+    private static IExpression literalOf(IObject object) {
+        return switch(object) {
+            case IntegerObject integer -> {
+                String literal = Integer.toString(integer.getValue());
+                yield new IntegerLiteral(new Token(TokenType.INT, literal), integer.getValue());
+            }
+            case StringObject string when string.length() <= MAX_STRING_LENGTH ->
+                    new StringLiteral(new Token(TokenType.STRING, string.getValue()), string.getValue());
+            case BooleanObject bool ->
+                    new BooleanType(Token.of(bool.getValue() ? TokenType.TRUE : TokenType.FALSE), bool.getValue());
+            case null, default -> null;
+        };
+    }
+
+    // How many times each name is bound in a function: as a parameter, or by a let anywhere in the body except in
+    // nested functions, which have names of their own.
+    private static Map<String, Integer> bindingCounts(List<IStatement> statements, List<Identifier> parameters) {
+        Map<String, Integer> counts = new HashMap<>();
+        if(parameters != null) {
+            for(Identifier parameter : parameters) {
+                counts.merge(parameter.getValue(), 1, Integer::sum);
+            }
+        }
+        countLets(statements, counts);
+
+        return counts;
+    }
+
+    private static void countLets(List<IStatement> statements, Map<String, Integer> counts) {
+        for(IStatement statement : statements) {
+            switch(statement) {
+                case LetStatement letStatement -> {
+                    counts.merge(letStatement.getName().getValue(), 1, Integer::sum);
+                    countLets(letStatement.getValue(), counts);
+                }
+                case ReturnStatement returnStatement -> countLets(returnStatement.getExpression(), counts);
+                case ExpressionStatement expressionStatement -> countLets(expressionStatement.getExpression(), counts);
+                case BlockStatement blockStatement -> countLets(blockStatement.getStatements(), counts);
+                case null, default -> { }
+            }
+        }
+    }
+
+    // Only blocks of if expressions can hold lets of the same function, but they can sit anywhere in an expression.
+    private static void countLets(IExpression expression, Map<String, Integer> counts) {
+        switch(expression) {
+            case IfExpression ifExpression -> {
+                countLets(ifExpression.getCondition(), counts);
+                countLets(ifExpression.getConsequence().getStatements(), counts);
+                if(ifExpression.getAlternative() != null) {
+                    countLets(ifExpression.getAlternative().getStatements(), counts);
+                }
+            }
+            case PrefixExpression prefixExpression -> countLets(prefixExpression.getRight(), counts);
+            case InfixExpression infixExpression -> {
+                countLets(infixExpression.getLeft(), counts);
+                countLets(infixExpression.getRight(), counts);
+            }
+            case CallExpression callExpression -> {
+                countLets(callExpression.getFunction(), counts);
+                countLetsIn(callExpression.getArguments(), counts);
+            }
+            case ArrayLiteral arrayLiteral -> countLetsIn(arrayLiteral.getElements(), counts);
+            case HashLiteral hashLiteral -> {
+                for(Map.Entry<IExpression, IExpression> pair : hashLiteral.getPairs().entrySet()) {
+                    countLets(pair.getKey(), counts);
+                    countLets(pair.getValue(), counts);
+                }
+            }
+            case IndexExpression indexExpression -> {
+                countLets(indexExpression.getLeft(), counts);
+                countLets(indexExpression.getIndex(), counts);
+            }
+            case null, default -> { }
+        }
+    }
+
+    private static void countLetsIn(List<IExpression> expressions, Map<String, Integer> counts) {
+        if(expressions == null) {
+            return;
+        }
+        for(IExpression expression : expressions) {
+            countLets(expression, counts);
+        }
+    }
+
+    private static class Scope {
+        private final boolean global;
+        // Names known to hold a literal at the current point of the function.
+        private final Map<String, IExpression> constants;
+        private final Map<String, Integer> bindings;
+
+        Scope(boolean global, Map<String, IExpression> constants, Map<String, Integer> bindings) {
+            this.global = global;
+            this.constants = new HashMap<>(constants);
+            this.bindings = bindings;
+        }
+
+        Scope enterFunction(FunctionLiteral functionLiteral) {
+            List<IStatement> body = functionLiteral.getBody().getStatements();
+            Map<String, Integer> bindings = bindingCounts(body, functionLiteral.getParameters());
+            Map<String, IExpression> inherited = new HashMap<>();
+            if(!global) {
+                for(Map.Entry<String, IExpression> constant : constants.entrySet()) {
+                    if(!bindings.containsKey(constant.getKey())) {
+                        inherited.put(constant.getKey(), constant.getValue());
+                    }
+                }
+            }
+
+            return new Scope(false, inherited, bindings);
+        }
+    }
+}
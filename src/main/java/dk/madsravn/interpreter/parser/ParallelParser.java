@@ -0,0 +1,145 @@
+package dk.madsravn.interpreter.parser;
+
+import dk.madsravn.interpreter.ast.IStatement;
+import dk.madsravn.interpreter.ast.Program;
+import dk.madsravn.interpreter.lexer.Lexer;
+
+import java.io.Serial;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Lexes and parses a large source in parallel. The input is cut into chunks after semicolons that are outside any
+ * string literal, parentheses, brackets or braces, which is where a top level statement ends. Every chunk is
+ * parsed by its own Parser on a ForkJoinPool, and the statements and errors are joined in source order, so the
+ * result is the same as Parser.parseProgram on the whole input.
+ *
+ * When the input does not close every string and bracket it opens, the parser's error recovery could run past a
+ * semicolon, so such input is parsed as one chunk. Recovery from other errors can also consume a semicolon the
+ * input was cut at (after "if;" for example), so when any chunk has errors the whole input is parsed again by a
+ * single Parser. Only input with errors pays for that.
+ */
+public class ParallelParser {
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+    private final String input;
+    private final ForkJoinPool pool;
+    private final int chunkSize;
+    private final List<String> errors;
+
+    public ParallelParser(String input) {
+        this(input, ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+    }
+
+    // chunkSize is the smallest number of characters worth handing to a parser of its own.
+    public ParallelParser(String input, ForkJoinPool pool, int chunkSize) {
+        this.input = input;
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+        this.errors = new ArrayList<String>();
+    }
+
+    public Program parseProgram() {
+        List<Integer> splits = splitPoints(input, chunkSize);
+        List<String> chunks = new ArrayList<String>(splits.size() + 1);
+        int start = 0;
+        for(int split : splits) {
+            chunks.add(input.substring(start, split));
+            start = split;
+        }
+        chunks.add(input.substring(start));
+
+        List<ParsedChunk> parsed = pool.invoke(new ParseTask(chunks, 0, chunks.size()));
+        if(chunks.size() > 1 && parsed.stream().anyMatch(chunk -> !chunk.errors().isEmpty())) {
+            Parser parser = new Parser(new Lexer(input).tokenize());
+            Program program = parser.parseProgram();
+            errors.addAll(parser.getErrors());
+            return program;
+        }
+
+        Program program = new Program();
+        for(ParsedChunk chunk : parsed) {
+            for(IStatement statement : chunk.program().getStatements()) {
+                program.addStatement(statement);
+            }
+            errors.addAll(chunk.errors());
+        }
+
+        return program;
+    }
+
+    public List<String> getErrors() {
+        return errors;
+    }
+
+    // Offsets just after the top level semicolons to split at, at least chunkSize characters apart.
+    static List<Integer> splitPoints(String input, int chunkSize) {
+        List<Integer> splits = new ArrayList<Integer>();
+        int depth = 0;
+        boolean inString = false;
+        int lastSplit = 0;
+        for(int i = 0; i < input.length(); i++) {
+            char ch = input.charAt(i);
+            if(inString) {
+                inString = ch != '"';
+                continue;
+            }
+            switch(ch) {
+                case '"' -> inString = true;
+                case '(', '[', '{' -> depth++;
+                case ')', ']', '}' -> depth--;
+                case ';' -> {
+                    if(depth == 0 && i + 1 - lastSplit >= chunkSize && i + 1 < input.length()) {
+                        lastSplit = i + 1;
+                        splits.add(lastSplit);
+                    }
+                }
+                default -> { }
+            }
+            if(depth < 0) {
+                return List.of();
+            }
+        }
+        if(depth != 0 || inString) {
+            return List.of();
+        }
+
+        return splits;
+    }
+
+    private record ParsedChunk(Program program, List<String> errors) { }
+
+    private static class ParseTask extends RecursiveTask<List<ParsedChunk>> {
+        // ForkJoinTask is Serializable, but a task is never serialized.
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private final transient List<String> chunks;
+        private final int from;
+        private final int to;
+
+        ParseTask(List<String> chunks, int from, int to) {
+            this.chunks = chunks;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected List<ParsedChunk> compute() {
+            if(to - from == 1) {
+                Parser parser = new Parser(new Lexer(chunks.get(from)).tokenize());
+                Program program = parser.parseProgram();
+                return List.of(new ParsedChunk(program, parser.getErrors()));
+            }
+
+            int middle = (from + to) >>> 1;
+            ParseTask right = new ParseTask(chunks, middle, to);
+            right.fork();
+            List<ParsedChunk> parsed = new ArrayList<ParsedChunk>(new ParseTask(chunks, from, middle).compute());
+            parsed.addAll(right.join());
+
+            return parsed;
+        }
+    }
+}
@@ -1,13 +1,14 @@
 package dk.madsravn.interpreter.parser;
 
 import dk.madsravn.interpreter.ast.*;
-import dk.madsravn.interpreter.lexer.Lexer;
+import dk.madsravn.interpreter.lexer.ILexer;
+import dk.madsravn.interpreter.lexer.TokenBuffer;
 import dk.madsravn.interpreter.tokens.Token;
 import dk.madsravn.interpreter.tokens.TokenType;
 
 import java.sql.Array;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -17,19 +18,38 @@ import static dk.madsravn.interpreter.tokens.TokenType.*;
 public class Parser {
     private Token currentToken;
     private Token peekToken;
-    private final Lexer lexer;
+    private final ILexer lexer;
+    private final TokenBuffer tokens;
+    private int tokenIndex;
     private final List<String> errors;
-    public Parser(Lexer lexer) {
+    public Parser(ILexer lexer) {
         this.lexer = lexer;
+        this.tokens = null;
         this.errors = new ArrayList<String>();
         nextToken();
         nextToken();
 
     }
 
+    // Parses tokens lexed up front with Lexer.tokenize. Tokens are created as the parser reaches them, and only
+    // identifiers, integers and strings get a Token of their own.
+    public Parser(TokenBuffer tokens) {
+        this.lexer = null;
+        this.tokens = tokens;
+        this.errors = new ArrayList<String>();
+        nextToken();
+        nextToken();
+    }
+
     private void nextToken() {
         currentToken = peekToken;
-        peekToken = lexer.nextToken();
+        if (tokens != null) {
+            // The buffer ends with EOF, which is repeated from then on like the Lexer does.
+            peekToken = tokens.token(Math.min(tokenIndex, tokens.size() - 1));
+            tokenIndex++;
+        } else {
+            peekToken = lexer.nextToken();
+        }
     }
 
     public Program parseProgram() {
@@ -108,7 +128,7 @@ public class Parser {
 
     private IExpression parseHashLiteral() {
         Token token = currentToken;
-        Map<IExpression, IExpression> pairs = new HashMap<>();
+        Map<IExpression, IExpression> pairs = new LinkedHashMap<>();
         while(!peekTokenType(RBRACE)) {
             nextToken();
             var key = parseExpression(LOWEST);
@@ -0,0 +1,26 @@
+package dk.madsravn.interpreter.repl;
+
+public enum Engine {
+    EVALUATOR("eval"),
+    VM("vm"),
+    ;
+
+    private final String optionName;
+
+    Engine(String optionName) {
+        this.optionName = optionName;
+    }
+
+    public String getOptionName() {
+        return optionName;
+    }
+
+    public static Engine fromOptionName(String optionName) {
+        for(Engine engine : values()) {
+            if(engine.optionName.equals(optionName)) {
+                return engine;
+            }
+        }
+        throw new IllegalArgumentException("Unknown engine '" + optionName + "', expected 'eval' or 'vm'");
+    }
+}
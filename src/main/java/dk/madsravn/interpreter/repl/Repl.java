@@ -1,22 +1,44 @@
 package dk.madsravn.interpreter.repl;
 
 import dk.madsravn.interpreter.ast.Program;
+import dk.madsravn.interpreter.compiler.Compiler;
+import dk.madsravn.interpreter.compiler.SymbolTable;
 import dk.madsravn.interpreter.evaluator.Evaluator;
 import dk.madsravn.interpreter.lexer.Lexer;
 import dk.madsravn.interpreter.object.Environment;
 import dk.madsravn.interpreter.object.IObject;
 import dk.madsravn.interpreter.parser.Parser;
-import dk.madsravn.interpreter.tokens.Token;
+import dk.madsravn.interpreter.vm.VM;
 
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
+import java.util.ArrayList;
 import java.util.List;
 
 public class Repl {
     private final String PROMPT = ">> ";
+    private final Engine engine;
+    private final int maxDepth;
+
+    public Repl() {
+        this(Engine.EVALUATOR);
+    }
+
+    public Repl(Engine engine) {
+        this(engine, VM.DEFAULT_MAX_DEPTH);
+    }
+
+    // maxDepth limits how deep programs may recurse on the VM.
+    public Repl(Engine engine, int maxDepth) {
+        this.engine = engine;
+        this.maxDepth = maxDepth;
+    }
 
     public void start() {
         Environment env = new Environment();
+        SymbolTable symbolTable = new SymbolTable();
+        List<IObject> constants = new ArrayList<>();
+        IObject[] globals = new IObject[0];
         while(true) {
             System.out.print(PROMPT);
             BufferedReader br = new BufferedReader(new InputStreamReader(System.in));
@@ -31,7 +53,16 @@ public class Repl {
                 }
                 System.out.println(program.string());
                 System.out.println("YIELDS:");
-                IObject evaluated = Evaluator.evaluate(program, env);
+                IObject evaluated;
+                if (engine == Engine.VM) {
+                    Compiler compiler = new Compiler(symbolTable, constants);
+                    compiler.compile(program);
+                    VM vm = new VM(compiler.bytecode(), globals, maxDepth);
+                    evaluated = vm.run();
+                    globals = vm.getGlobals();
+                } else {
+                    evaluated = Evaluator.evaluate(program, env);
+                }
                 if (evaluated != null) {
                     System.out.println(evaluated.inspect());
                 } else {
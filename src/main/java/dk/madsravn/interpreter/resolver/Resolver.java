@@ -0,0 +1,337 @@
+package dk.madsravn.interpreter.resolver;
+
+import dk.madsravn.interpreter.ast.*;
+import dk.madsravn.interpreter.builtins.Builtins;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Static pass run between the Parser and the Evaluator. Every name bound inside a function (parameters and let
+ * statements) gets a slot in that function's frame. Names that a nested function refers to get a cell instead, and
+ * the nested function lists them as its free variables, so a closure keeps exactly the cells it uses alive and not
+ * the frames they came from (upvalues, in Lua's terms). Top level names are globals and stay unresolved, so they
+ * keep living in the Environment where the REPL can see them between inputs.
+ *
+ * Function bodies are resolved after the scope they are defined in has been walked completely. A body runs when the
+ * function is called, so by then a later let in the enclosing function (for example the function's own name) is
+ * visible, exactly like when the Evaluator looked names up in the Environment chain at run time. A let gives its
+ * name a slot for the whole function, also before the let has run or when it is in a branch that is not taken. If
+ * an enclosing function binds the name too, the slot starts out with that binding's value (see Shadow), which is
+ * what the Environment chain found. An enclosing function cannot bind the name again while the call runs.
+ *
+ * A name that is not bound anywhere is bound to its builtin directly, unless a global of that name has been defined
+ * before the reference runs: by a let at the top level of the program, or in the Environment the program runs in.
+ * When the Environment outlives the program, as the REPL's does, a function can still be called after a later input
+ * has defined the global, so names inside functions are resolved as globals and only fall back to the builtin when
+ * they are called.
+ */
+public class Resolver {
+    private Scope scope;
+    private final List<Scope> functionScopes;
+    private final List<Use> uses;
+    private final Set<String> globals;
+    private final Predicate<String> isDefinedGlobal;
+    private final boolean environmentOutlivesProgram;
+
+    private Resolver(Predicate<String> isDefinedGlobal, boolean environmentOutlivesProgram) {
+        this.scope = new Scope(null, null);
+        this.functionScopes = new ArrayList<>();
+        this.uses = new ArrayList<>();
+        this.globals = new HashSet<>();
+        this.isDefinedGlobal = isDefinedGlobal;
+        this.environmentOutlivesProgram = environmentOutlivesProgram;
+    }
+
+    // For a program that runs once in a new Environment.
+    public static void resolve(INode node) {
+        resolve(node, name -> false, false);
+    }
+
+    // For a program that runs in an existing Environment, which later programs may go on to define globals in.
+    public static void resolve(INode node, Predicate<String> isDefinedGlobal) {
+        resolve(node, isDefinedGlobal, true);
+    }
+
+    private static void resolve(INode node, Predicate<String> isDefinedGlobal, boolean environmentOutlivesProgram) {
+        Resolver resolver = new Resolver(isDefinedGlobal, environmentOutlivesProgram);
+        resolver.resolveNode(node);
+        resolver.resolvePendingFunctions(resolver.scope);
+        resolver.finish();
+        if(node instanceof Program program) {
+            program.setResolved(true);
+        }
+    }
+
+    private void resolveNode(INode node) {
+        switch(node) {
+            case Program program -> {
+                for(IStatement statement : program.getStatements()) {
+                    resolveNode(statement);
+                }
+            }
+
+            case BlockStatement blockStatement -> {
+                for(IStatement statement : blockStatement.getStatements()) {
+                    resolveNode(statement);
+                }
+            }
+
+            case LetStatement letStatement -> {
+                resolveNode(letStatement.getValue());
+                declare(scope, letStatement.getName(), false);
+            }
+
+            case ReturnStatement returnStatement -> resolveNode(returnStatement.getExpression());
+
+            case ExpressionStatement expressionStatement -> resolveNode(expressionStatement.getExpression());
+
+            case Identifier identifier -> resolveIdentifier(identifier);
+
+            case PrefixExpression prefixExpression -> resolveNode(prefixExpression.getRight());
+
+            case InfixExpression infixExpression -> {
+                resolveNode(infixExpression.getLeft());
+                resolveNode(infixExpression.getRight());
+            }
+
+            case IfExpression ifExpression -> {
+                resolveNode(ifExpression.getCondition());
+                resolveNode(ifExpression.getConsequence());
+                if(ifExpression.getAlternative() != null) {
+                    resolveNode(ifExpression.getAlternative());
+                }
+            }
+
+            case FunctionLiteral functionLiteral -> scope.pendingFunctions.add(functionLiteral);
+
+            case CallExpression callExpression -> {
+                resolveNode(callExpression.getFunction());
+                for(IExpression argument : callExpression.getArguments()) {
+                    resolveNode(argument);
+                }
+            }
+
+            case ArrayLiteral arrayLiteral -> {
+                for(IExpression element : arrayLiteral.getElements()) {
+                    resolveNode(element);
+                }
+            }
+
+            case HashLiteral hashLiteral -> {
+                for(Map.Entry<IExpression, IExpression> entry : hashLiteral.getPairs().entrySet()) {
+                    resolveNode(entry.getKey());
+                    resolveNode(entry.getValue());
+                }
+            }
+
+            case IndexExpression indexExpression -> {
+                resolveNode(indexExpression.getLeft());
+                resolveNode(indexExpression.getIndex());
+            }
+
+            case null, default -> { }
+        }
+    }
+
+    private void resolveIdentifier(Identifier identifier) {
+        Variable local = scope.variables.get(identifier.getValue());
+        if(local != null) {
+            uses.add(new Use(identifier, local));
+            return;
+        }
+        for(Scope current = scope.outer; current != null && !current.isGlobal(); current = current.outer) {
+            Variable variable = current.variables.get(identifier.getValue());
+            if(variable != null) {
+                variable.captured = true;
+                identifier.resolve(Identifier.Binding.FREE, capture(scope, variable));
+                return;
+            }
+        }
+        int builtin = Builtins.indexOf(identifier.getValue());
+        boolean canBeDefinedLater = environmentOutlivesProgram && !scope.isGlobal();
+        if(builtin != Builtins.NOT_FOUND && !canBeDefinedLater && !globals.contains(identifier.getValue())
+                && !isDefinedGlobal.test(identifier.getValue())) {
+            identifier.resolve(Identifier.Binding.BUILTIN, builtin);
+            return;
+        }
+        identifier.resolve(Identifier.Binding.GLOBAL, Identifier.NO_INDEX);
+    }
+
+    // Adds the variable to the free variables of the function owning the scope, and of every function between it
+    // and the function the variable belongs to, so each closure can hand the variable's cell on to the next.
+    private static int capture(Scope scope, Variable variable) {
+        Integer index = scope.freeIndexes.get(variable);
+        if(index == null) {
+            if(scope.outer != variable.owner) {
+                capture(scope.outer, variable);
+            }
+            index = scope.free.size();
+            scope.free.add(variable);
+            scope.freeIndexes.put(variable, index);
+        }
+
+        return index;
+    }
+
+    private void resolvePendingFunctions(Scope owner) {
+        // Resolving a body can only add functions to the body's own scope, never to the owner's list.
+        for(FunctionLiteral functionLiteral : owner.pendingFunctions) {
+            resolveFunction(functionLiteral, owner);
+        }
+        owner.pendingFunctions.clear();
+    }
+
+    private void resolveFunction(FunctionLiteral functionLiteral, Scope outer) {
+        Scope functionScope = new Scope(outer, functionLiteral);
+        functionScopes.add(functionScope);
+        for(Identifier parameter : functionLiteral.getParameters()) {
+            declare(functionScope, parameter, true);
+        }
+
+        Scope saved = scope;
+        scope = functionScope;
+        resolveNode(functionLiteral.getBody());
+        scope = saved;
+
+        markTailCalls(functionLiteral.getBody(), true);
+        resolvePendingFunctions(functionScope);
+    }
+
+    // Binding the same name twice in one function reuses its variable, like Environment.set overwrites a binding.
+    private void declare(Scope scope, Identifier name, boolean parameter) {
+        if(scope.isGlobal()) {
+            globals.add(name.getValue());
+            name.resolve(Identifier.Binding.GLOBAL, Identifier.NO_INDEX);
+            return;
+        }
+        Variable variable = scope.variables.computeIfAbsent(name.getValue(), n -> new Variable(scope));
+        variable.parameter |= parameter;
+        uses.add(new Use(name, variable));
+    }
+
+    // A parameter always has a value, but a let that has not run leaves its name to the nearest enclosing function
+    // that binds it, so that binding is captured for the local to start out with.
+    private void captureShadowed() {
+        for(Scope functionScope : functionScopes) {
+            functionScope.variables.forEach((name, variable) -> {
+                if(variable.parameter) {
+                    return;
+                }
+                for(Scope current = functionScope.outer; current != null && !current.isGlobal(); current = current.outer) {
+                    Variable shadowed = current.variables.get(name);
+                    if(shadowed != null) {
+                        shadowed.captured = true;
+                        functionScope.shadowed.put(variable, capture(functionScope, shadowed));
+                        return;
+                    }
+                }
+            });
+        }
+    }
+
+    // Which variables are captured is only known once every nested function has been resolved, so slots and cells
+    // are numbered at the very end.
+    private void finish() {
+        captureShadowed();
+        for(Scope functionScope : functionScopes) {
+            int slots = 0;
+            int cells = 0;
+            for(Variable variable : functionScope.variables.values()) {
+                variable.index = variable.captured ? cells++ : slots++;
+            }
+            functionScope.function.setFrameSize(slots);
+            functionScope.function.setCellCount(cells);
+        }
+        for(Scope functionScope : functionScopes) {
+            List<Capture> captures = new ArrayList<>();
+            for(Variable variable : functionScope.free) {
+                if(variable.owner == functionScope.outer) {
+                    captures.add(new Capture(true, variable.index));
+                } else {
+                    captures.add(new Capture(false, functionScope.outer.freeIndexes.get(variable)));
+                }
+            }
+            functionScope.function.setCaptures(captures);
+            List<Shadow> shadows = new ArrayList<>();
+            functionScope.shadowed.forEach((variable, free) -> shadows.add(new Shadow(variable.captured, variable.index, free)));
+            functionScope.function.setShadows(shadows);
+        }
+        for(Use use : uses) {
+            use.identifier.resolve(use.variable.captured ? Identifier.Binding.CELL : Identifier.Binding.LOCAL, use.variable.index);
+        }
+    }
+
+    // A call is in tail position when its value becomes the function's return value unchanged: the expression of a
+    // return statement, or the last expression of the body, looking through if expressions in both cases.
+    private static void markTailCalls(BlockStatement block, boolean valueIsReturned) {
+        List<IStatement> statements = block.getStatements();
+        for(int i = 0; i < statements.size(); i++) {
+            switch(statements.get(i)) {
+                case ReturnStatement returnStatement -> markTailCalls(returnStatement.getExpression(), true);
+                case ExpressionStatement expressionStatement ->
+                        markTailCalls(expressionStatement.getExpression(), valueIsReturned && i == statements.size() - 1);
+                default -> { }
+            }
+        }
+    }
+
+    private static void markTailCalls(IExpression expression, boolean inTailPosition) {
+        switch(expression) {
+            case CallExpression callExpression -> callExpression.setTailCall(inTailPosition);
+            case IfExpression ifExpression -> {
+                markTailCalls(ifExpression.getConsequence(), inTailPosition);
+                if(ifExpression.getAlternative() != null) {
+                    markTailCalls(ifExpression.getAlternative(), inTailPosition);
+                }
+            }
+            case null, default -> { }
+        }
+    }
+
+    private static class Scope {
+        private final Scope outer;
+        private final FunctionLiteral function;
+        private final Map<String, Variable> variables;
+        private final List<FunctionLiteral> pendingFunctions;
+        // Variables of enclosing functions that this function's closures capture, in the order of their cells.
+        private final List<Variable> free;
+        private final Map<Variable, Integer> freeIndexes;
+        // Variables bound by let that shadow a variable of an enclosing function, with the free index it has here.
+        private final Map<Variable, Integer> shadowed;
+
+        Scope(Scope outer, FunctionLiteral function) {
+            this.outer = outer;
+            this.function = function;
+            this.variables = new LinkedHashMap<>();
+            this.pendingFunctions = new ArrayList<>();
+            this.free = new ArrayList<>();
+            this.freeIndexes = new HashMap<>();
+            this.shadowed = new LinkedHashMap<>();
+        }
+
+        boolean isGlobal() {
+            return outer == null;
+        }
+    }
+
+    // A name bound in a function. Captured variables live in cells that closures share, the others in plain slots.
+    private static class Variable {
+        private final Scope owner;
+        private boolean parameter;
+        private boolean captured;
+        private int index;
+
+        Variable(Scope owner) {
+            this.owner = owner;
+        }
+    }
+
+    private record Use(Identifier identifier, Variable variable) { }
+}
@@ -0,0 +1,34 @@
+package dk.madsravn.interpreter.serialization;
+
+// Layout shared by AstWriter and AstReader. A file is the magic bytes, the format version, the string table and then
+// the program's statements. Every node is a tag byte followed by its fields: strings are indexes into the string table,
+// counts and indexes are unsigned LEB128 varints, and child nodes follow in source order.
+final class AstFormat {
+    static final byte[] MAGIC = { 'M', 'N', 'K', 'A' };
+    static final int VERSION = 1;
+
+    static final byte NULL = 0;
+    static final byte LET_STATEMENT = 1;
+    static final byte RETURN_STATEMENT = 2;
+    static final byte EXPRESSION_STATEMENT = 3;
+    static final byte BLOCK_STATEMENT = 4;
+    static final byte IDENTIFIER = 5;
+    static final byte INTEGER_LITERAL = 6;
+    static final byte STRING_LITERAL = 7;
+    static final byte TRUE = 8;
+    static final byte FALSE = 9;
+    static final byte PREFIX_EXPRESSION = 10;
+    static final byte INFIX_EXPRESSION = 11;
+    static final byte IF_EXPRESSION = 12;
+    static final byte FUNCTION_LITERAL = 13;
+    static final byte CALL_EXPRESSION = 14;
+    static final byte ARRAY_LITERAL = 15;
+    static final byte HASH_LITERAL = 16;
+    static final byte INDEX_EXPRESSION = 17;
+
+    // Written in place of a string table index when a token's literal is the fixed literal of its type.
+    static final int FIXED_LITERAL = 0;
+
+    private AstFormat() {
+    }
+}
@@ -0,0 +1,299 @@
+package dk.madsravn.interpreter.serialization;
+
+import dk.madsravn.interpreter.ast.*;
+import dk.madsravn.interpreter.tokens.Token;
+import dk.madsravn.interpreter.tokens.TokenType;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rebuilds a Program written by AstWriter. The result is the tree the Parser would build for the original source,
+ * with the same tokens, so string() gives the same text. Reading is a single pass over the bytes that allocates
+ * only the nodes themselves and one String and Token per distinct name or literal.
+ */
+public class AstReader {
+    private static final TokenType[] TOKEN_TYPES = TokenType.values();
+    private static final Map<String, TokenType> OPERATORS = new HashMap<>();
+
+    static {
+        for(TokenType type : TOKEN_TYPES) {
+            String literal = Token.fixedLiteral(type);
+            if(literal != null) {
+                OPERATORS.put(literal, type);
+            }
+        }
+    }
+
+    private final byte[] input;
+    private int position;
+    private String[] strings;
+    // Tokens for identifiers, integer literals and string literals, created when a string is first used as one.
+    private Token[] identifierTokens;
+    private Token[] integerTokens;
+    private Token[] stringTokens;
+
+    private AstReader(byte[] input) {
+        this.input = input;
+    }
+
+    public static boolean isCompiled(byte[] input) {
+        if(input.length < AstFormat.MAGIC.length) {
+            return false;
+        }
+        for(int i = 0; i < AstFormat.MAGIC.length; i++) {
+            if(input[i] != AstFormat.MAGIC[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    public static Program read(Path path) throws IOException {
+        return read(Files.readAllBytes(path));
+    }
+
+    public static Program read(byte[] input) {
+        if(!isCompiled(input)) {
+            throw new IllegalArgumentException("Not a compiled program");
+        }
+        AstReader reader = new AstReader(input);
+        try {
+            return reader.readProgram();
+        } catch(IndexOutOfBoundsException | ClassCastException e) {
+            throw new IllegalArgumentException("Corrupt compiled program at byte " + reader.position, e);
+        }
+    }
+
+    private Program readProgram() {
+        position = AstFormat.MAGIC.length;
+        int version = readVarint();
+        if(version != AstFormat.VERSION) {
+            throw new IllegalArgumentException("Unsupported compiled program version " + version);
+        }
+        int count = readCount();
+        strings = new String[count];
+        for(int i = 0; i < count; i++) {
+            int length = readCount();
+            strings[i] = new String(input, position, length, StandardCharsets.UTF_8);
+            position += length;
+        }
+        identifierTokens = new Token[count];
+        integerTokens = new Token[count];
+        stringTokens = new Token[count];
+
+        Program program = new Program();
+        int statements = readCount();
+        for(int i = 0; i < statements; i++) {
+            program.addStatement((IStatement) readNode());
+        }
+        if(position != input.length) {
+            throw new IllegalArgumentException("Trailing bytes after compiled program");
+        }
+
+        return program;
+    }
+
+    private List<IStatement> readStatements() {
+        int count = readCount();
+        List<IStatement> statements = new ArrayList<>(count);
+        for(int i = 0; i < count; i++) {
+            statements.add((IStatement) readNode());
+        }
+
+        return statements;
+    }
+
+    private List<IExpression> readExpressions() {
+        int count = readCount();
+        List<IExpression> expressions = new ArrayList<>(count);
+        for(int i = 0; i < count; i++) {
+            expressions.add((IExpression) readNode());
+        }
+
+        return expressions;
+    }
+
+    private INode readNode() {
+        byte tag = input[position++];
+        switch(tag) {
+            case AstFormat.NULL:
+                // The Parser never leaves a node out of a program without errors, except the else block of an if.
+                throw new IllegalArgumentException("Missing node at byte " + (position - 1));
+
+            case AstFormat.LET_STATEMENT: {
+                Identifier name = readIdentifier();
+                return new LetStatement(Token.of(TokenType.LET), name, (IExpression) readNode());
+            }
+
+            case AstFormat.RETURN_STATEMENT:
+                return new ReturnStatement(Token.of(TokenType.RETURN), (IExpression) readNode());
+
+            case AstFormat.EXPRESSION_STATEMENT: {
+                ExpressionStatement statement = new ExpressionStatement(readToken());
+                statement.setExpression((IExpression) readNode());
+                return statement;
+            }
+
+            case AstFormat.BLOCK_STATEMENT:
+                return readBlock();
+
+            case AstFormat.IDENTIFIER:
+                return readIdentifier();
+
+            case AstFormat.INTEGER_LITERAL: {
+                int index = readVarint();
+                Token token = integerTokens[index];
+                if(token == null) {
+                    token = new Token(TokenType.INT, strings[index]);
+                    integerTokens[index] = token;
+                }
+                return new IntegerLiteral(token, Integer.parseInt(strings[index]));
+            }
+
+            case AstFormat.STRING_LITERAL: {
+                int index = readVarint();
+                Token token = stringTokens[index];
+                if(token == null) {
+                    token = new Token(TokenType.STRING, strings[index]);
+                    stringTokens[index] = token;
+                }
+                return new StringLiteral(token, strings[index]);
+            }
+
+            case AstFormat.TRUE:
+                return new BooleanType(Token.of(TokenType.TRUE), true);
+
+            case AstFormat.FALSE:
+                return new BooleanType(Token.of(TokenType.FALSE), false);
+
+            case AstFormat.PREFIX_EXPRESSION: {
+                Token token = readOperator();
+                return new PrefixExpression(token, token.getLiteral(), (IExpression) readNode());
+            }
+
+            case AstFormat.INFIX_EXPRESSION: {
+                Token token = readOperator();
+                IExpression left = (IExpression) readNode();
+                return new InfixExpression(token, left, token.getLiteral(), (IExpression) readNode());
+            }
+
+            case AstFormat.IF_EXPRESSION: {
+                IExpression condition = (IExpression) readNode();
+                BlockStatement consequence = (BlockStatement) readNode();
+                return new IfExpression(Token.of(TokenType.IF), condition, consequence, readAlternative());
+            }
+
+            case AstFormat.FUNCTION_LITERAL: {
+                int count = readCount();
+                List<Identifier> parameters = new ArrayList<>(count);
+                for(int i = 0; i < count; i++) {
+                    parameters.add(readIdentifier());
+                }
+                return new FunctionLiteral(Token.of(TokenType.FUNCTION), parameters, (BlockStatement) readNode());
+            }
+
+            case AstFormat.CALL_EXPRESSION: {
+                IExpression function = (IExpression) readNode();
+                return new CallExpression(Token.of(TokenType.LPAREN), function, readExpressions());
+            }
+
+            case AstFormat.ARRAY_LITERAL:
+                return new ArrayLiteral(Token.of(TokenType.LBRACKET), readExpressions());
+
+            case AstFormat.HASH_LITERAL: {
+                int count = readCount();
+                Map<IExpression, IExpression> pairs = new LinkedHashMap<>();
+                for(int i = 0; i < count; i++) {
+                    IExpression key = (IExpression) readNode();
+                    pairs.put(key, (IExpression) readNode());
+                }
+                return new HashLiteral(Token.of(TokenType.LBRACE), pairs);
+            }
+
+            case AstFormat.INDEX_EXPRESSION: {
+                IExpression left = (IExpression) readNode();
+                return new IndexExpression(Token.of(TokenType.LBRACKET), left, (IExpression) readNode());
+            }
+
+            default:
+                throw new IllegalArgumentException("Unknown node tag " + tag + " at byte " + (position - 1));
+        }
+    }
+
+    private BlockStatement readBlock() {
+        return new BlockStatement(Token.of(TokenType.LBRACE), readStatements());
+    }
+
+    private BlockStatement readAlternative() {
+        if(input[position] == AstFormat.NULL) {
+            position++;
+            return null;
+        }
+
+        return (BlockStatement) readNode();
+    }
+
+    // Every Identifier is a node of its own, since the Resolver records its binding on it, but the tokens are shared.
+    private Identifier readIdentifier() {
+        int index = readVarint();
+        Token token = identifierTokens[index];
+        if(token == null) {
+            token = new Token(TokenType.IDENT, strings[index]);
+            identifierTokens[index] = token;
+        }
+
+        return new Identifier(token, strings[index]);
+    }
+
+    private Token readOperator() {
+        String operator = strings[readVarint()];
+        TokenType type = OPERATORS.get(operator);
+        if(type == null) {
+            throw new IllegalArgumentException("Unknown operator " + operator);
+        }
+
+        return Token.of(type);
+    }
+
+    private Token readToken() {
+        TokenType type = TOKEN_TYPES[readVarint()];
+        int literal = readVarint();
+        if(literal == AstFormat.FIXED_LITERAL) {
+            return Token.of(type);
+        }
+
+        return new Token(type, strings[literal - 1]);
+    }
+
+    // A length or a number of items. Every item takes at least a byte, so a count larger than the bytes left can only
+    // come from a truncated or corrupted file, and is rejected before anything is allocated for it.
+    private int readCount() {
+        int count = readVarint();
+        if(count < 0 || count > input.length - position) {
+            throw new IllegalArgumentException("Corrupt compiled program: count " + count + " at byte " + position
+                    + " exceeds the remaining " + (input.length - position) + " bytes");
+        }
+
+        return count;
+    }
+
+    private int readVarint() {
+        int value = 0;
+        for(int shift = 0; ; shift += 7) {
+            byte b = input[position++];
+            value |= (b & 0x7F) << shift;
+            if(b >= 0) {
+                return value;
+            }
+        }
+    }
+}
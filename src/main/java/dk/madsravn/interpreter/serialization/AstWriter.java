@@ -0,0 +1,229 @@
+package dk.madsravn.interpreter.serialization;
+
+import dk.madsravn.interpreter.ast.*;
+import dk.madsravn.interpreter.tokens.Token;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes a parsed Program in a compact binary form that AstReader turns back into the same tree without lexing or
+ * parsing. Every distinct name, string and number literal is stored once in a string table, and nodes refer to it by
+ * index. Tokens are not stored: they follow from the node, except for the first token of an expression statement.
+ *
+ * Only the tree the Parser built is written. What the Resolver adds is recomputed when the program is evaluated.
+ */
+public class AstWriter {
+    private final List<String> strings;
+    private final Map<String, Integer> stringIndexes;
+    private byte[] body;
+    private int length;
+
+    private AstWriter() {
+        this.strings = new ArrayList<>();
+        this.stringIndexes = new HashMap<>();
+        this.body = new byte[1024];
+    }
+
+    public static byte[] write(Program program) {
+        AstWriter writer = new AstWriter();
+        writer.writeStatements(program.getStatements());
+        return writer.toByteArray();
+    }
+
+    public static void write(Program program, Path path) throws IOException {
+        Files.write(path, write(program));
+    }
+
+    public static void write(Program program, OutputStream output) throws IOException {
+        output.write(write(program));
+    }
+
+    private byte[] toByteArray() {
+        AstWriter header = new AstWriter();
+        header.writeBytes(AstFormat.MAGIC);
+        header.writeVarint(AstFormat.VERSION);
+        header.writeVarint(strings.size());
+        for(String string : strings) {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            header.writeVarint(bytes.length);
+            header.writeBytes(bytes);
+        }
+        header.writeBytes(Arrays.copyOf(body, length));
+
+        return Arrays.copyOf(header.body, header.length);
+    }
+
+    private void writeStatements(List<IStatement> statements) {
+        writeVarint(statements.size());
+        for(IStatement statement : statements) {
+            writeNode(statement);
+        }
+    }
+
+    private void writeExpressions(List<IExpression> expressions) {
+        writeVarint(expressions.size());
+        for(IExpression expression : expressions) {
+            writeNode(expression);
+        }
+    }
+
+    private void writeNode(INode node) {
+        switch(node) {
+            case LetStatement letStatement -> {
+                writeByte(AstFormat.LET_STATEMENT);
+                writeString(letStatement.getName().getValue());
+                writeNode(letStatement.getValue());
+            }
+
+            case ReturnStatement returnStatement -> {
+                writeByte(AstFormat.RETURN_STATEMENT);
+                writeNode(returnStatement.getExpression());
+            }
+
+            case ExpressionStatement expressionStatement -> {
+                writeByte(AstFormat.EXPRESSION_STATEMENT);
+                writeToken(expressionStatement.getToken());
+                writeNode(expressionStatement.getExpression());
+            }
+
+            case BlockStatement blockStatement -> {
+                writeByte(AstFormat.BLOCK_STATEMENT);
+                writeStatements(blockStatement.getStatements());
+            }
+
+            case Identifier identifier -> {
+                writeByte(AstFormat.IDENTIFIER);
+                writeString(identifier.getValue());
+            }
+
+            // The literal rather than the value, so a literal like 007 reads back unchanged.
+            case IntegerLiteral integerLiteral -> {
+                writeByte(AstFormat.INTEGER_LITERAL);
+                writeString(integerLiteral.tokenLiteral());
+            }
+
+            case StringLiteral stringLiteral -> {
+                writeByte(AstFormat.STRING_LITERAL);
+                writeString(stringLiteral.getValue());
+            }
+
+            case BooleanType booleanType -> writeByte(booleanType.getValue() ? AstFormat.TRUE : AstFormat.FALSE);
+
+            case PrefixExpression prefixExpression -> {
+                writeByte(AstFormat.PREFIX_EXPRESSION);
+                writeString(prefixExpression.getOperator());
+                writeNode(prefixExpression.getRight());
+            }
+
+            case InfixExpression infixExpression -> {
+                writeByte(AstFormat.INFIX_EXPRESSION);
+                writeString(infixExpression.getOperator());
+                writeNode(infixExpression.getLeft());
+                writeNode(infixExpression.getRight());
+            }
+
+            case IfExpression ifExpression -> {
+                writeByte(AstFormat.IF_EXPRESSION);
+                writeNode(ifExpression.getCondition());
+                writeNode(ifExpression.getConsequence());
+                writeNode(ifExpression.getAlternative());
+            }
+
+            case FunctionLiteral functionLiteral -> {
+                writeByte(AstFormat.FUNCTION_LITERAL);
+                writeVarint(functionLiteral.getParametersLength());
+                for(Identifier parameter : functionLiteral.getParameters()) {
+                    writeString(parameter.getValue());
+                }
+                writeNode(functionLiteral.getBody());
+            }
+
+            case CallExpression callExpression -> {
+                writeByte(AstFormat.CALL_EXPRESSION);
+                writeNode(callExpression.getFunction());
+                writeExpressions(callExpression.getArguments());
+            }
+
+            case ArrayLiteral arrayLiteral -> {
+                writeByte(AstFormat.ARRAY_LITERAL);
+                writeExpressions(arrayLiteral.getElements());
+            }
+
+            case HashLiteral hashLiteral -> {
+                writeByte(AstFormat.HASH_LITERAL);
+                writeVarint(hashLiteral.getPairsLength());
+                for(Map.Entry<IExpression, IExpression> entry : hashLiteral.getPairs().entrySet()) {
+                    writeNode(entry.getKey());
+                    writeNode(entry.getValue());
+                }
+            }
+
+            case IndexExpression indexExpression -> {
+                writeByte(AstFormat.INDEX_EXPRESSION);
+                writeNode(indexExpression.getLeft());
+                writeNode(indexExpression.getIndex());
+            }
+
+            case null -> writeByte(AstFormat.NULL);
+
+            default -> throw new IllegalArgumentException("Cannot serialize " + node.getClass().getSimpleName());
+        }
+    }
+
+    private void writeToken(Token token) {
+        writeVarint(token.getType().ordinal());
+        String fixed = Token.fixedLiteral(token.getType());
+        if(fixed != null && fixed.equals(token.getLiteral())) {
+            writeVarint(AstFormat.FIXED_LITERAL);
+        } else {
+            writeVarint(intern(token.getLiteral()) + 1);
+        }
+    }
+
+    private void writeString(String string) {
+        writeVarint(intern(string));
+    }
+
+    private int intern(String string) {
+        Integer index = stringIndexes.get(string);
+        if(index == null) {
+            index = strings.size();
+            strings.add(string);
+            stringIndexes.put(string, index);
+        }
+
+        return index;
+    }
+
+    private void writeVarint(int value) {
+        while((value & ~0x7F) != 0) {
+            writeByte((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        writeByte((byte) value);
+    }
+
+    private void writeByte(byte value) {
+        if(length == body.length) {
+            body = Arrays.copyOf(body, body.length * 2);
+        }
+        body[length++] = value;
+    }
+
+    private void writeBytes(byte[] bytes) {
+        if(length + bytes.length > body.length) {
+            body = Arrays.copyOf(body, Math.max(body.length * 2, length + bytes.length));
+        }
+        System.arraycopy(bytes, 0, body, length, bytes.length);
+        length += bytes.length;
+    }
+}
@@ -1,6 +1,16 @@
 package dk.madsravn.interpreter.tokens;
 //TOOD: Rename to TokenType
 public class Token {
+    private static final Token[] FIXED = new Token[TokenType.values().length];
+    static {
+        for(TokenType type : TokenType.values()) {
+            String literal = fixedLiteral(type);
+            if(literal != null) {
+                FIXED[type.ordinal()] = new Token(type, literal);
+            }
+        }
+    }
+
     private final TokenType type;
     private final String literal;
 
@@ -34,6 +44,82 @@ public class Token {
         return c.getType().equals(this.getType()) && c.getLiteral().equals(this.getLiteral());
     }
 
+    // The literal every token of the type has, or null for identifiers, integers, strings and illegal characters.
+    public static String fixedLiteral(TokenType type) {
+        switch (type) {
+            case EOF:
+                return "\0";
+            case IDENT, INT, STRING, ILLEGAL, UNKNOWN:
+                return null;
+            case FUNCTION:
+                return "fn";
+            case LET:
+                return "let";
+            case TRUE:
+                return "true";
+            case FALSE:
+                return "false";
+            case IF:
+                return "if";
+            case ELSE:
+                return "else";
+            case RETURN:
+                return "return";
+            default:
+                return type.toString();
+        }
+    }
+
+    // Shared token for a type with a fixed literal. Tokens are immutable, so one instance per type is enough.
+    public static Token of(TokenType type) {
+        Token token = FIXED[type.ordinal()];
+        if(token == null) {
+            throw new IllegalArgumentException("No fixed literal for " + type);
+        }
+
+        return token;
+    }
+
+    // Same as lookUpIdentifier(source.subSequence(start, end).toString()) without creating the substring.
+    public static TokenType lookUpIdentifier(CharSequence source, int start, int end) {
+        int length = end - start;
+        if(length < 2 || length > 6) {
+            return TokenType.IDENT;
+        }
+        switch (source.charAt(start)) {
+            case 'f':
+                if(isKeyword("fn", source, start, length)) {
+                    return TokenType.FUNCTION;
+                }
+                return isKeyword("false", source, start, length) ? TokenType.FALSE : TokenType.IDENT;
+            case 'l':
+                return isKeyword("let", source, start, length) ? TokenType.LET : TokenType.IDENT;
+            case 't':
+                return isKeyword("true", source, start, length) ? TokenType.TRUE : TokenType.IDENT;
+            case 'i':
+                return isKeyword("if", source, start, length) ? TokenType.IF : TokenType.IDENT;
+            case 'e':
+                return isKeyword("else", source, start, length) ? TokenType.ELSE : TokenType.IDENT;
+            case 'r':
+                return isKeyword("return", source, start, length) ? TokenType.RETURN : TokenType.IDENT;
+            default:
+                return TokenType.IDENT;
+        }
+    }
+
+    private static boolean isKeyword(String keyword, CharSequence source, int start, int length) {
+        if(keyword.length() != length) {
+            return false;
+        }
+        for(int i = 0; i < length; i++) {
+            if(source.charAt(start + i) != keyword.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
     public static TokenType lookUpIdentifier(String type) {
         switch (type) {
             case "fn":
@@ -0,0 +1,30 @@
+package dk.madsravn.interpreter.vm;
+
+import dk.madsravn.interpreter.object.ClosureObject;
+
+// Frames are reused between calls at the same depth, so they are mutable and owned by the VM.
+public class CallFrame {
+    private ClosureObject closure;
+    private byte[] instructions;
+    private int basePointer;
+    int ip;
+
+    void reset(ClosureObject closure, int basePointer) {
+        this.closure = closure;
+        this.instructions = closure.getFunction().getInstructions();
+        this.basePointer = basePointer;
+        this.ip = 0;
+    }
+
+    public ClosureObject getClosure() {
+        return closure;
+    }
+
+    public byte[] getInstructions() {
+        return instructions;
+    }
+
+    public int getBasePointer() {
+        return basePointer;
+    }
+}
@@ -0,0 +1,471 @@
+package dk.madsravn.interpreter.vm;
+
+import dk.madsravn.interpreter.ast.InfixOperator;
+import dk.madsravn.interpreter.builtins.Builtins;
+import dk.madsravn.interpreter.compiler.Bytecode;
+import dk.madsravn.interpreter.compiler.Instructions;
+import dk.madsravn.interpreter.compiler.OpCode;
+import dk.madsravn.interpreter.evaluator.Evaluator;
+import dk.madsravn.interpreter.object.*;
+
+import java.util.*;
+
+import static dk.madsravn.interpreter.compiler.Instructions.readByte;
+import static dk.madsravn.interpreter.compiler.Instructions.readInt;
+import static dk.madsravn.interpreter.compiler.Instructions.readShort;
+
+/**
+ * Runs compiled bytecode. Monkey calls never nest Java calls: the operand stack and the call frames live in arrays
+ * on the heap, so how deep a program can recurse is set by the depth limit and not by the thread's stack size. Both
+ * arrays start small and grow as a program recurses deeper. A TAIL_CALL reuses the frame of the function making it,
+ * like the Evaluator eliminates tail calls, so it does not count towards the depth limit.
+ */
+public class VM {
+    public static final int DEFAULT_MAX_DEPTH = 100_000;
+    private static final int INITIAL_STACK_SIZE = 2048;
+    private static final int INITIAL_FRAMES = 64;
+
+    private static final OpCode[] OPCODES = OpCode.values();
+
+    private final IObject[] constants;
+    private final List<String> globalNames;
+    private IObject[] globals;
+
+    // The operand stack is an Object[] rather than an IObject[]: every store into an interface typed array needs a
+    // type check, and the stack is written by almost every instruction.
+    private Object[] stack;
+    private CallFrame[] frames;
+    private int framesIndex;
+    private final int maxDepth;
+
+    private final ClosureObject mainClosure;
+
+    public VM(Bytecode bytecode) {
+        this(bytecode, new IObject[bytecode.getGlobalNames().size()]);
+    }
+
+    // Used by the REPL to keep globals alive between inputs.
+    public VM(Bytecode bytecode, IObject[] globals) {
+        this(bytecode, globals, DEFAULT_MAX_DEPTH);
+    }
+
+    // maxDepth is the number of nested calls a program may make before it fails with a stack overflow error.
+    public VM(Bytecode bytecode, IObject[] globals, int maxDepth) {
+        this.maxDepth = maxDepth;
+        this.constants = bytecode.getConstants().toArray(new IObject[0]);
+        this.globalNames = bytecode.getGlobalNames();
+        this.globals = globals.length < globalNames.size() ? Arrays.copyOf(globals, globalNames.size()) : globals;
+        this.stack = new Object[INITIAL_STACK_SIZE];
+        this.frames = new CallFrame[INITIAL_FRAMES];
+        for(int i = 0; i < INITIAL_FRAMES; i++) {
+            frames[i] = new CallFrame();
+        }
+        byte[] instructions = bytecode.getInstructions();
+        var mainFunction = new CompiledFunctionObject(instructions, List.of(), new int[0], new int[0], List.of(), 0,
+                Instructions.maxStackDepth(instructions), List.of(), null);
+        this.mainClosure = new ClosureObject(mainFunction, new Cell[0]);
+    }
+
+    public IObject[] getGlobals() {
+        return globals;
+    }
+
+    // Runs the program and returns the same value the Evaluator would: the value of the last statement, the value of
+    // a top level return, or the first error produced.
+    public IObject run() {
+        growStack(mainClosure.getFunction().getMaxStackDepth());
+        CallFrame frame = frames[0];
+        frame.reset(mainClosure, 0);
+        framesIndex = 1;
+
+        Object[] stack = this.stack;
+        final IObject[] constants = this.constants;
+        byte[] instructions = frame.getInstructions();
+        int ip = 0;
+        int sp = 0;
+        IObject result = Evaluator.NULL;
+
+        while(true) {
+            if(ip >= instructions.length) {
+                return result;
+            }
+            OpCode op = OPCODES[instructions[ip]];
+            ip++;
+            switch(op) {
+                case CONSTANT -> {
+                    stack[sp++] = constants[readInt(instructions, ip)];
+                    ip += 4;
+                }
+
+                case POP -> result = (IObject) stack[--sp];
+
+                case ADD -> {
+                    IObject right = (IObject) stack[--sp];
+                    IObject left = (IObject) stack[sp - 1];
+                    if(left instanceof IntegerObject l && right instanceof IntegerObject r) {
+                        stack[sp - 1] = IntegerObject.valueOf(l.getValue() + r.getValue());
+                    } else {
+                        IObject value = Evaluator.evaluateInfixExpression(InfixOperator.PLUS, left, right);
+                        if(value instanceof ErrorObject) {
+                            return value;
+                        }
+                        stack[sp - 1] = value;
+                    }
+                }
+
+                case SUB -> {
+                    IObject right = (IObject) stack[--sp];
+                    IObject left = (IObject) stack[sp - 1];
+                    if(left instanceof IntegerObject l && right instanceof IntegerObject r) {
+                        stack[sp - 1] = IntegerObject.valueOf(l.getValue() - r.getValue());
+                    } else {
+                        IObject value = Evaluator.evaluateInfixExpression(InfixOperator.MINUS, left, right);
+                        if(value instanceof ErrorObject) {
+                            return value;
+                        }
+                        stack[sp - 1] = value;
+                    }
+                }
+
+                case LESS_THAN -> {
+                    IObject right = (IObject) stack[--sp];
+                    IObject left = (IObject) stack[sp - 1];
+                    if(left instanceof IntegerObject l && right instanceof IntegerObject r) {
+                        stack[sp - 1] = l.getValue() < r.getValue() ? Evaluator.TRUE : Evaluator.FALSE;
+                    } else {
+                        IObject value = Evaluator.evaluateInfixExpression(InfixOperator.LESS_THAN, left, right);
+                        if(value instanceof ErrorObject) {
+                            return value;
+                        }
+                        stack[sp - 1] = value;
+                    }
+                }
+
+                case MUL, DIV, EQUAL, NOT_EQUAL, GREATER_THAN -> {
+                    IObject right = (IObject) stack[--sp];
+                    IObject left = (IObject) stack[sp - 1];
+                    IObject value = executeBinaryOperation(op, left, right);
+                    if(value instanceof ErrorObject) {
+                        return value;
+                    }
+                    stack[sp - 1] = value;
+                }
+
+                case TRUE -> stack[sp++] = Evaluator.TRUE;
+
+                case FALSE -> stack[sp++] = Evaluator.FALSE;
+
+                case NULL -> stack[sp++] = Evaluator.NULL;
+
+                case MINUS -> {
+                    IObject right = (IObject) stack[sp - 1];
+                    if(right instanceof IntegerObject integerObject) {
+                        stack[sp - 1] = IntegerObject.valueOf(-integerObject.getValue());
+                    } else {
+                        return Evaluator.evaluatePrefixExpression("-", right);
+                    }
+                }
+
+                case BANG -> stack[sp - 1] = Evaluator.evaluatePrefixExpression("!", (IObject) stack[sp - 1]);
+
+                case JUMP -> ip = readInt(instructions, ip);
+
+                case JUMP_NOT_TRUTHY -> {
+                    if(isTruthy((IObject) stack[--sp])) {
+                        ip += 4;
+                    } else {
+                        ip = readInt(instructions, ip);
+                    }
+                }
+
+                case SET_GLOBAL -> {
+                    globals[readInt(instructions, ip)] = (IObject) stack[--sp];
+                    ip += 4;
+                    // A let statement has no value of its own.
+                    result = null;
+                }
+
+                case GET_GLOBAL -> {
+                    int index = readInt(instructions, ip);
+                    ip += 4;
+                    IObject value = globals[index];
+                    if(value == null) {
+                        // A global whose let has not run, like the evaluator, falls back to the builtin.
+                        value = Builtins.lookup(globalNames.get(index));
+                        if(value == null) {
+                            return ErrorObject.identifierNotFoundError(globalNames.get(index));
+                        }
+                    }
+                    stack[sp++] = value;
+                }
+
+                case SET_LOCAL -> {
+                    stack[frame.getBasePointer() + readShort(instructions, ip)] = (IObject) stack[--sp];
+                    ip += 2;
+                }
+
+                case GET_LOCAL -> {
+                    int slot = readShort(instructions, ip);
+                    ip += 2;
+                    IObject value = (IObject) stack[frame.getBasePointer() + slot];
+                    if(value == null) {
+                        String name = frame.getClosure().getFunction().getLocalName(slot);
+                        value = lookupByName(name);
+                        if(value == null) {
+                            return ErrorObject.identifierNotFoundError(name);
+                        }
+                    }
+                    stack[sp++] = value;
+                }
+
+                case SET_CELL -> {
+                    ((Cell) stack[frame.getBasePointer() + readShort(instructions, ip)]).set((IObject) stack[--sp]);
+                    ip += 2;
+                }
+
+                case GET_CELL -> {
+                    int slot = readShort(instructions, ip);
+                    ip += 2;
+                    IObject value = ((Cell) stack[frame.getBasePointer() + slot]).get();
+                    if(value == null) {
+                        String name = frame.getClosure().getFunction().getLocalName(slot);
+                        value = lookupByName(name);
+                        if(value == null) {
+                            return ErrorObject.identifierNotFoundError(name);
+                        }
+                    }
+                    stack[sp++] = value;
+                }
+
+                case PUSH_CELL -> {
+                    stack[sp++] = stack[frame.getBasePointer() + readShort(instructions, ip)];
+                    ip += 2;
+                }
+
+                case PUSH_FREE_CELL -> {
+                    stack[sp++] = frame.getClosure().getFree()[readShort(instructions, ip)];
+                    ip += 2;
+                }
+
+                case GET_BUILTIN -> {
+                    stack[sp++] = Builtins.FUNCTIONS.get(readByte(instructions, ip));
+                    ip += 1;
+                }
+
+                case GET_FREE -> {
+                    int index = readShort(instructions, ip);
+                    ip += 2;
+                    IObject value = frame.getClosure().getFree()[index].get();
+                    if(value == null) {
+                        String name = frame.getClosure().getFunction().getFreeName(index);
+                        value = lookupByName(name);
+                        if(value == null) {
+                            return ErrorObject.identifierNotFoundError(name);
+                        }
+                    }
+                    stack[sp++] = value;
+                }
+
+                case CURRENT_CLOSURE -> stack[sp++] = frame.getClosure();
+
+                case ARRAY -> {
+                    int length = readInt(instructions, ip);
+                    ip += 4;
+                    List<IObject> elements = slice(stack, sp - length, sp);
+                    sp -= length;
+                    stack[sp++] = new ArrayObject(elements);
+                }
+
+                case HASH -> {
+                    int length = readInt(instructions, ip);
+                    ip += 4;
+                    HashObject hash = new HashObject(Map.of());
+                    for(int i = sp - length; i < sp; i += 2) {
+                        hash = hash.with((IObject) stack[i], (IObject) stack[i + 1]);
+                    }
+                    sp -= length;
+                    stack[sp++] = hash;
+                }
+
+                case INDEX -> {
+                    IObject index = (IObject) stack[--sp];
+                    IObject value = Evaluator.evaluateIndexExpression((IObject) stack[sp - 1], index);
+                    if(value instanceof ErrorObject) {
+                        return value;
+                    }
+                    stack[sp - 1] = value;
+                }
+
+                case CALL, TAIL_CALL -> {
+                    int numArguments = readShort(instructions, ip);
+                    ip += 2;
+                    IObject callee = (IObject) stack[sp - 1 - numArguments];
+                    if(callee instanceof ClosureObject closure) {
+                        CompiledFunctionObject function = closure.getFunction();
+                        if(numArguments < function.getNumParameters()) {
+                            return ErrorObject.wrongNumberOfArguments(function.getNumParameters(), numArguments);
+                        }
+                        int basePointer = sp - numArguments;
+                        // Like the evaluator, arguments beyond the parameters are evaluated and then dropped.
+                        sp = basePointer + function.getNumParameters();
+                        if(op == OpCode.TAIL_CALL) {
+                            // The callee and its arguments replace the current call's closure and locals. Closures
+                            // made by the current call hold on to its cells, not to its slots.
+                            int callerBase = frame.getBasePointer();
+                            System.arraycopy(stack, basePointer - 1, stack, callerBase - 1, sp - basePointer + 1);
+                            sp -= basePointer - callerBase;
+                            basePointer = callerBase;
+                        } else {
+                            if(framesIndex > maxDepth) {
+                                return ErrorObject.stackOverflow();
+                            }
+                            if(framesIndex == frames.length) {
+                                growFrames();
+                            }
+                            frame.ip = ip;
+                            frame = frames[framesIndex++];
+                        }
+                        int newSp = basePointer + function.getNumLocals();
+                        if(newSp + function.getMaxStackDepth() > stack.length) {
+                            stack = growStack(newSp + function.getMaxStackDepth());
+                        }
+                        for(int i = sp; i < newSp; i++) {
+                            stack[i] = null;
+                        }
+                        int[] shadows = function.getShadows();
+                        for(int i = 0; i < shadows.length; i += 2) {
+                            stack[basePointer + shadows[i]] = closure.getFree()[shadows[i + 1]].get();
+                        }
+                        for(int slot : function.getCells()) {
+                            stack[basePointer + slot] = new Cell((IObject) stack[basePointer + slot]);
+                        }
+                        frame.reset(closure, basePointer);
+                        sp = newSp;
+                        instructions = frame.getInstructions();
+                        ip = 0;
+                    } else if(callee instanceof BuiltinFunctionObject builtin) {
+                        List<IObject> arguments = slice(stack, sp - numArguments, sp);
+                        IObject value = builtin.apply(arguments);
+                        sp = sp - numArguments - 1;
+                        if(value instanceof ErrorObject) {
+                            return value;
+                        }
+                        stack[sp++] = value != null ? value : Evaluator.NULL;
+                    } else {
+                        return ErrorObject.notAFunction(callee.type());
+                    }
+                }
+
+                case RETURN_VALUE, RETURN -> {
+                    IObject value = op == OpCode.RETURN_VALUE ? (IObject) stack[--sp] : Evaluator.NULL;
+                    if(framesIndex == 1) {
+                        // A return statement at the top level ends the program.
+                        return value;
+                    }
+                    framesIndex--;
+                    sp = frame.getBasePointer() - 1;
+                    frame = frames[framesIndex - 1];
+                    instructions = frame.getInstructions();
+                    ip = frame.ip;
+                    stack[sp++] = value;
+                }
+
+                case CLOSURE -> {
+                    var function = (CompiledFunctionObject) constants[readInt(instructions, ip)];
+                    int numFree = readShort(instructions, ip + 4);
+                    ip += 6;
+                    Cell[] free = new Cell[numFree];
+                    for(int i = 0; i < numFree; i++) {
+                        // The enclosing function itself is pushed as it is, and never changes.
+                        Object captured = stack[sp - numFree + i];
+                        free[i] = captured instanceof Cell cell ? cell : new Cell((IObject) captured);
+                    }
+                    sp -= numFree;
+                    stack[sp++] = new ClosureObject(function, free);
+                }
+            }
+        }
+    }
+
+    // Locals whose let has not run yet and that shadow no enclosing binding are looked up by name, like the evaluator
+    // does: as a global, then a builtin.
+    private IObject lookupByName(String name) {
+        int index = globalNames.indexOf(name);
+        if(index >= 0 && index < globals.length && globals[index] != null) {
+            return globals[index];
+        }
+
+        return Builtins.lookup(name);
+    }
+
+    private Object[] growStack(int required) {
+        if(required > stack.length) {
+            stack = Arrays.copyOf(stack, Math.max(required, stack.length * 2));
+        }
+
+        return stack;
+    }
+
+    private void growFrames() {
+        int length = frames.length;
+        frames = Arrays.copyOf(frames, Math.min(length * 2, Math.max(maxDepth, length + 1)));
+        for(int i = length; i < frames.length; i++) {
+            frames[i] = new CallFrame();
+        }
+    }
+
+    private static List<IObject> slice(Object[] stack, int from, int to) {
+        List<IObject> objects = new ArrayList<>(to - from);
+        for(int i = from; i < to; i++) {
+            objects.add((IObject) stack[i]);
+        }
+
+        return objects;
+    }
+
+    private static IObject executeBinaryOperation(OpCode op, IObject left, IObject right) {
+        if(left instanceof IntegerObject leftInteger && right instanceof IntegerObject rightInteger) {
+            int leftValue = leftInteger.getValue();
+            int rightValue = rightInteger.getValue();
+            return switch(op) {
+                case ADD -> IntegerObject.valueOf(leftValue + rightValue);
+                case SUB -> IntegerObject.valueOf(leftValue - rightValue);
+                case MUL -> IntegerObject.valueOf(leftValue * rightValue);
+                case DIV -> IntegerObject.valueOf(leftValue / rightValue);
+                case EQUAL -> nativeBoolToBooleanObject(leftValue == rightValue);
+                case NOT_EQUAL -> nativeBoolToBooleanObject(leftValue != rightValue);
+                case GREATER_THAN -> nativeBoolToBooleanObject(leftValue > rightValue);
+                case LESS_THAN -> nativeBoolToBooleanObject(leftValue < rightValue);
+                default -> throw new IllegalStateException("Not a binary operation " + op);
+            };
+        }
+
+        return Evaluator.evaluateInfixExpression(operatorOf(op), left, right);
+    }
+
+    private static InfixOperator operatorOf(OpCode op) {
+        return switch(op) {
+            case ADD -> InfixOperator.PLUS;
+            case SUB -> InfixOperator.MINUS;
+            case MUL -> InfixOperator.MULTIPLY;
+            case DIV -> InfixOperator.DIVIDE;
+            case EQUAL -> InfixOperator.EQUAL;
+            case NOT_EQUAL -> InfixOperator.NOT_EQUAL;
+            case GREATER_THAN -> InfixOperator.GREATER_THAN;
+            case LESS_THAN -> InfixOperator.LESS_THAN;
+            default -> throw new IllegalStateException("Not a binary operation " + op);
+        };
+    }
+
+    private static BooleanObject nativeBoolToBooleanObject(boolean input) {
+        return input ? Evaluator.TRUE : Evaluator.FALSE;
+    }
+
+    private static boolean isTruthy(IObject object) {
+        if(object instanceof BooleanObject booleanObject) {
+            return booleanObject.getValue();
+        }
+
+        return !(object instanceof NullObject);
+    }
+}
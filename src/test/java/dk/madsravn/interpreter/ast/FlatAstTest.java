@@ -0,0 +1,73 @@
+package dk.madsravn.interpreter.ast;
+
+import dk.madsravn.interpreter.lexer.Lexer;
+import dk.madsravn.interpreter.parser.Parser;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FlatAstTest {
+
+    @Test
+    public void testLayout() {
+        FlatAst ast = FlatAst.from(parse("let add = fn(x, y) { x + y }; add(1, 2);"));
+        int let = ast.firstChild(ast.root());
+        int function = ast.firstChild(let);
+        int x = ast.firstChild(function);
+        int y = ast.nextSibling(x);
+        int body = ast.nextSibling(y);
+        int statement = ast.nextSibling(let);
+        int call = ast.firstChild(statement);
+
+        assertEquals(FlatAst.PROGRAM, ast.kind(ast.root()));
+        assertEquals(2, ast.childCount(ast.root()));
+        assertEquals(FlatAst.LET, ast.kind(let));
+        assertEquals("add", ast.constant(let));
+        assertEquals(FlatAst.FUNCTION, ast.kind(function));
+        assertEquals(2, ast.value(function));
+        assertEquals("x", ast.constant(x));
+        assertEquals("y", ast.constant(y));
+        assertEquals(FlatAst.BLOCK, ast.kind(body));
+        assertEquals(InfixOperator.PLUS, ast.infixOperator(ast.firstChild(ast.firstChild(body))));
+        assertEquals(FlatAst.CALL, ast.kind(call));
+        assertEquals(3, ast.childCount(call));
+        assertEquals(2, ast.value(ast.nextSibling(ast.nextSibling(ast.firstChild(call)))));
+        assertEquals(FlatAst.NONE, ast.nextSibling(statement));
+        // Nodes are numbered in preorder.
+        assertEquals(ast.root() + 1, let);
+        assertEquals(let + 1, function);
+    }
+
+    @Test
+    public void testConstantsAreShared() {
+        FlatAst ast = FlatAst.from(parse("let a = \"a\"; a; a; \"a\";"));
+        assertEquals(1, ast.constantCount());
+    }
+
+    @Test
+    public void testToNodeRebuildsTheTree() {
+        String input = """
+                let fib = fn(n) { if (n < 2) { return n; } else { fib(n - 1) + fib(n - 2) } };
+                let values = [1, "two", true, false, -3, !true, {"k": 5}["k"]];
+                if (values[0] == 1) { puts(values) };
+                fib(10) * 2 != 3;
+                -1 + 2;
+                """;
+        Program program = parse(input);
+        Program rebuilt = (Program) FlatAst.from(program).toNode(0);
+
+        assertEquals(program.getStatementsLength(), rebuilt.getStatementsLength());
+        assertEquals(program.string(), rebuilt.string());
+        for(int i = 0; i < program.getStatementsLength(); i++) {
+            assertEquals(program.getStatements().get(i).tokenLiteral(), rebuilt.getStatements().get(i).tokenLiteral());
+        }
+    }
+
+    private Program parse(String input) {
+        Parser parser = new Parser(new Lexer(input));
+        Program program = parser.parseProgram();
+        assertEquals(0, parser.getErrors().size(), String.join("\n", parser.getErrors()));
+
+        return program;
+    }
+}
@@ -0,0 +1,55 @@
+package dk.madsravn.interpreter.builtins;
+
+import dk.madsravn.interpreter.compiler.Compiler;
+import dk.madsravn.interpreter.evaluator.Evaluator;
+import dk.madsravn.interpreter.lexer.Lexer;
+import dk.madsravn.interpreter.object.*;
+import dk.madsravn.interpreter.parser.Parser;
+import dk.madsravn.interpreter.vm.VM;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BuiltinsTest {
+
+    @Test
+    public void testCoreBuiltinsComeFirst() {
+        assertEquals(List.of("len", "puts", "first", "last", "rest", "push", "set", "delete"), Builtins.NAMES.subList(0, 8));
+        assertEquals(0, Builtins.indexOf("len"));
+        assertEquals(Builtins.NOT_FOUND, Builtins.indexOf("foo"));
+        assertNull(Builtins.lookup("foo"));
+    }
+
+    @Test
+    public void testBuiltinsAreSingletons() {
+        assertSame(Builtins.lookup("len"), Builtins.FUNCTIONS.get(Builtins.indexOf("len")));
+        assertSame(Builtins.lookup("len"), eval("len"));
+        assertSame(Builtins.lookup("push"), eval("fn() { push }()"));
+    }
+
+    @Test
+    public void testArity() {
+        assertEquals(1, Builtins.lookup("len").getArity());
+        assertEquals(BuiltinFunctionObject.VARIADIC, Builtins.lookup("puts").getArity());
+        assertEquals(3, Builtins.lookup("set").getArity());
+
+        IObject error = Builtins.lookup("set").apply(List.of(IntegerObject.valueOf(1)));
+        assertEquals("wrong number of arguments. got=1, want=3", error.inspect());
+    }
+
+    @Test
+    public void testProviderFromServiceLoader() {
+        assertTrue(Builtins.indexOf("max") >= 8);
+        assertEquals(7, ((IntegerObject) eval("max(3, 7)")).getValue());
+
+        Compiler compiler = new Compiler();
+        compiler.compile(new Parser(new Lexer("max(9, 4)")).parseProgram());
+        assertEquals(9, ((IntegerObject) new VM(compiler.bytecode()).run()).getValue());
+    }
+
+    private IObject eval(String input) {
+        return Evaluator.evaluate(new Parser(new Lexer(input)).parseProgram(), new Environment());
+    }
+}
@@ -0,0 +1,18 @@
+package dk.madsravn.interpreter.builtins;
+
+import dk.madsravn.interpreter.object.BuiltinFunctionObject;
+import dk.madsravn.interpreter.object.IntegerObject;
+
+import java.util.List;
+
+// Registered in src/test/resources/META-INF/services, so the tests run with one builtin from outside the core.
+public class TestBuiltinProvider implements IBuiltinProvider {
+    @Override
+    public List<BuiltinFunctionObject> builtins() {
+        return List.of(new BuiltinFunctionObject("max", 2, arguments -> {
+            int left = ((IntegerObject) arguments.get(0)).getValue();
+            int right = ((IntegerObject) arguments.get(1)).getValue();
+            return IntegerObject.valueOf(Math.max(left, right));
+        }));
+    }
+}
@@ -0,0 +1,103 @@
+package dk.madsravn.interpreter.cache;
+
+import dk.madsravn.interpreter.ast.Program;
+import dk.madsravn.interpreter.evaluator.Evaluator;
+import dk.madsravn.interpreter.object.Environment;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ProgramCacheTest {
+
+    @Test
+    public void testHitsReturnTheSameProgram() {
+        ProgramCache cache = new ProgramCache(10);
+        CachedProgram first = cache.get("let a = 1; a + 1;");
+        CachedProgram second = cache.get("let a = 1; a + 1;");
+
+        assertSame(first, second);
+        assertTrue(first.program().isResolved());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() {
+        ProgramCache cache = new ProgramCache(2);
+        CachedProgram a = cache.get("1;");
+        cache.get("2;");
+        cache.get("1;");
+        cache.get("3;");
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        assertSame(a, cache.get("1;"));
+        assertEquals(2, cache.getHitCount());
+        cache.get("2;");
+        assertEquals(4, cache.getMissCount());
+    }
+
+    @Test
+    public void testEvictsByEstimatedBytes() {
+        ProgramCache cache = new ProgramCache(100, 10 * ProgramCache.ESTIMATED_BYTES_PER_CHAR);
+        cache.get("11111;");
+        cache.get("22222;");
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(6 * ProgramCache.ESTIMATED_BYTES_PER_CHAR, cache.getEstimatedBytes());
+
+        // An entry larger than the whole budget is still kept until the next one arrives.
+        cache.get("let x = 1234567890;");
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testErrorsAreCached() {
+        ProgramCache cache = new ProgramCache(10);
+        CachedProgram broken = cache.get("let = 5;");
+
+        assertTrue(broken.hasErrors());
+        assertSame(broken, cache.get("let = 5;"));
+        assertThrows(UnsupportedOperationException.class, () -> broken.errors().add("more"));
+    }
+
+    @Test
+    public void testKeyIsTheSourceDigest() {
+        assertEquals(ProgramCache.key("a;"), ProgramCache.key("a;"));
+        assertNotEquals(ProgramCache.key("a;"), ProgramCache.key("b;"));
+        assertEquals(64, ProgramCache.key("").length());
+    }
+
+    @Test
+    public void testResolvedProgramIsFrozen() {
+        Program program = new ProgramCache(1).get("1;").program();
+        assertThrows(UnsupportedOperationException.class, () -> program.addStatement(null));
+    }
+
+    @Test
+    public void testSharedProgramAcrossThreads() throws Exception {
+        ProgramCache cache = new ProgramCache(4);
+        String source = "let fib = fn(n) { if (n < 2) { n } else { fib(n - 1) + fib(n - 2) } }; let s = \"a\" + \"b\"; fib(15) + len(s);";
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for(int i = 0; i < 16; i++) {
+                results.add(executor.submit(() -> Evaluator.evaluate(cache.get(source).program(), new Environment()).inspect()));
+            }
+            for(Future<String> result : results) {
+                assertEquals("612", result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(16, cache.getHitCount() + cache.getMissCount());
+        assertEquals(1, cache.size());
+    }
+}
@@ -0,0 +1,108 @@
+package dk.madsravn.interpreter.collection;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CompactMapTest {
+
+    @Test
+    public void testWithAndGet() {
+        CompactMap<Integer, String> map = CompactMap.empty();
+        for(int i = 0; i < CompactMap.MAX_SIZE; i++) {
+            map = map.with(i, "v" + i);
+        }
+
+        assertEquals(CompactMap.MAX_SIZE, map.size());
+        for(int i = 0; i < CompactMap.MAX_SIZE; i++) {
+            assertEquals("v" + i, map.get(i));
+        }
+        assertNull(map.get(CompactMap.MAX_SIZE));
+        assertFalse(map.containsKey(-1));
+        assertNull(map.get(null));
+    }
+
+    @Test
+    public void testIndexedMaps() {
+        CompactMap<String, Integer> map = CompactMap.empty();
+        for(int i = 0; i < CompactMap.MAX_SIZE; i++) {
+            map = map.with("k" + i, i);
+            assertEquals(i, map.get("k" + i));
+        }
+        for(int i = 0; i < CompactMap.MAX_SIZE; i += 2) {
+            map = map.without("k" + i);
+        }
+
+        assertEquals(CompactMap.MAX_SIZE / 2, map.size());
+        for(int i = 0; i < CompactMap.MAX_SIZE; i++) {
+            assertEquals(i % 2 == 0 ? null : i, map.get("k" + i));
+        }
+        assertEquals("k1", map.keySet().iterator().next());
+    }
+
+    @Test
+    public void testFullMap() {
+        Map<Integer, Integer> source = new LinkedHashMap<>();
+        for(int i = 0; i < CompactMap.MAX_SIZE; i++) {
+            source.put(i, i);
+        }
+        CompactMap<Integer, Integer> map = CompactMap.from(source);
+
+        assertTrue(map.isFull());
+        assertEquals(-1, map.with(0, -1).get(0));
+        assertThrows(IllegalStateException.class, () -> map.with(CompactMap.MAX_SIZE, 0));
+        source.put(CompactMap.MAX_SIZE, 0);
+        assertThrows(IllegalArgumentException.class, () -> CompactMap.from(source));
+    }
+
+    @Test
+    public void testKeepsInsertionOrder() {
+        CompactMap<String, Integer> map = CompactMap.<String, Integer>empty().with("c", 1).with("a", 2).with("b", 3).with("a", 4);
+
+        assertEquals(List.of("c", "a", "b"), new ArrayList<>(map.keySet()));
+        assertEquals(List.of(1, 4, 3), new ArrayList<>(map.values()));
+        assertEquals(List.of("c", "b"), new ArrayList<>(map.without("a").keySet()));
+    }
+
+    @Test
+    public void testUpdatesDoNotChangeOriginal() {
+        CompactMap<String, Integer> original = CompactMap.<String, Integer>empty().with("a", 1).with("b", 2);
+        CompactMap<String, Integer> replaced = original.with("a", 10);
+        CompactMap<String, Integer> added = original.with("c", 3);
+        CompactMap<String, Integer> removed = original.without("a");
+
+        assertEquals(Map.of("a", 1, "b", 2), original);
+        assertEquals(Map.of("a", 10, "b", 2), replaced);
+        assertEquals(Map.of("a", 1, "b", 2, "c", 3), added);
+        assertEquals(Map.of("b", 2), removed);
+        assertSame(original, original.without("z"));
+        assertSame(original, original.with("a", 1));
+    }
+
+    @Test
+    public void testEqualHashCodes() {
+        // "Aa" and "BB" have the same hashCode.
+        CompactMap<String, Integer> map = CompactMap.<String, Integer>empty().with("Aa", 1).with("BB", 2);
+
+        assertEquals(1, map.get("Aa"));
+        assertEquals(2, map.get("BB"));
+        assertEquals(Map.of("BB", 2), map.without("Aa"));
+    }
+
+    @Test
+    public void testFromKeepsIterationOrder() {
+        Map<String, Integer> source = new LinkedHashMap<>();
+        source.put("z", 1);
+        source.put("y", 2);
+        source.put("x", 3);
+        CompactMap<String, Integer> map = CompactMap.from(source);
+
+        assertEquals(List.of("z", "y", "x"), new ArrayList<>(map.keySet()));
+        assertSame(map, CompactMap.from(map));
+    }
+}
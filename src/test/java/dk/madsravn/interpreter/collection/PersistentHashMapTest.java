@@ -0,0 +1,101 @@
+package dk.madsravn.interpreter.collection;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PersistentHashMapTest {
+
+    @Test
+    public void testWithAndGet() {
+        PersistentHashMap<Integer, String> map = PersistentHashMap.empty();
+        for(int i = 0; i < 20000; i++) {
+            map = map.with(i, "v" + i);
+        }
+
+        assertEquals(20000, map.size());
+        for(int i = 0; i < 20000; i++) {
+            assertEquals("v" + i, map.get(i));
+        }
+        assertNull(map.get(20000));
+        assertFalse(map.containsKey(-1));
+    }
+
+    @Test
+    public void testUpdatesDoNotChangeOriginal() {
+        PersistentHashMap<String, Integer> original = PersistentHashMap.<String, Integer>empty().with("a", 1).with("b", 2);
+        PersistentHashMap<String, Integer> replaced = original.with("a", 10);
+        PersistentHashMap<String, Integer> added = original.with("c", 3);
+        PersistentHashMap<String, Integer> removed = original.without("a");
+
+        assertEquals(Map.of("a", 1, "b", 2), original);
+        assertEquals(Map.of("a", 10, "b", 2), replaced);
+        assertEquals(Map.of("a", 1, "b", 2, "c", 3), added);
+        assertEquals(Map.of("b", 2), removed);
+        assertSame(original, original.without("missing"));
+        assertSame(original, original.with("a", 1));
+    }
+
+    @Test
+    public void testMatchesHashMap() {
+        Random random = new Random(42);
+        Map<Integer, Integer> expected = new HashMap<>();
+        PersistentHashMap<Integer, Integer> map = PersistentHashMap.empty();
+        for(int i = 0; i < 50000; i++) {
+            // Spread keys over the whole int range so every level of the trie is used.
+            int key = random.nextInt(3000) * 1_000_003;
+            if(random.nextInt(3) == 0) {
+                expected.remove(key);
+                map = map.without(key);
+            } else {
+                expected.put(key, i);
+                map = map.with(key, i);
+            }
+            assertEquals(expected.size(), map.size());
+        }
+
+        assertEquals(expected, map);
+        assertEquals(expected.entrySet(), map.entrySet());
+        for(Integer key : new ArrayList<>(expected.keySet())) {
+            map = map.without(key);
+        }
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void testCollidingHashes() {
+        List<Colliding> keys = new ArrayList<>();
+        for(int i = 0; i < 5; i++) {
+            keys.add(new Colliding(i));
+        }
+
+        PersistentHashMap<Colliding, Integer> map = PersistentHashMap.empty();
+        for(Colliding key : keys) {
+            map = map.with(key, key.id);
+        }
+        map = map.with(new Colliding(99), 99).with(keys.get(2), 20);
+
+        assertEquals(6, map.size());
+        assertEquals(20, map.get(keys.get(2)));
+        assertEquals(99, map.get(new Colliding(99)));
+
+        for(Colliding key : keys) {
+            map = map.without(key);
+        }
+        assertEquals(Map.of(new Colliding(99), 99), map);
+        assertTrue(map.without(new Colliding(99)).isEmpty());
+    }
+
+    private record Colliding(int id) {
+        @Override
+        public int hashCode() {
+            return 0xCAFE;
+        }
+    }
+}
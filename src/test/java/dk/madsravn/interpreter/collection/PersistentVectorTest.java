@@ -0,0 +1,94 @@
+package dk.madsravn.interpreter.collection;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PersistentVectorTest {
+
+    @Test
+    public void testPushAcrossTrieLevels() {
+        // 40000 elements needs three levels of the trie below the tail.
+        PersistentVector<Integer> vector = PersistentVector.empty();
+        for(int i = 0; i < 40000; i++) {
+            vector = vector.push(i);
+            assertEquals(i + 1, vector.size());
+            assertEquals(i, vector.get(i));
+        }
+
+        for(int i = 0; i < 40000; i++) {
+            assertEquals(i, vector.get(i));
+        }
+    }
+
+    @Test
+    public void testPushDoesNotChangeOriginal() {
+        PersistentVector<Integer> original = PersistentVector.from(range(1056));
+        PersistentVector<Integer> first = original.push(-1);
+        PersistentVector<Integer> second = original.push(-2);
+
+        assertEquals(1056, original.size());
+        assertEquals(-1, first.get(1056));
+        assertEquals(-2, second.get(1056));
+        assertEquals(range(1056), original);
+    }
+
+    @Test
+    public void testFromMatchesPush() {
+        for(int size : new int[] { 0, 1, 31, 32, 33, 1024, 1056, 1057, 33000 }) {
+            PersistentVector<Integer> pushed = PersistentVector.empty();
+            for(int i = 0; i < size; i++) {
+                pushed = pushed.push(i);
+            }
+
+            assertEquals(range(size), PersistentVector.from(range(size)));
+            assertEquals(range(size), pushed);
+            assertEquals(pushed.push(size), PersistentVector.from(range(size)).push(size));
+        }
+    }
+
+    @Test
+    public void testRest() {
+        PersistentVector<Integer> vector = PersistentVector.from(range(100));
+        List<Integer> expected = range(100);
+        while(!vector.isEmpty()) {
+            assertEquals(expected, vector);
+            assertEquals(expected.getFirst(), vector.getFirst());
+            assertEquals(expected.getLast(), vector.getLast());
+            vector = vector.rest();
+            expected = expected.subList(1, expected.size());
+        }
+
+        assertTrue(vector.rest().isEmpty());
+    }
+
+    @Test
+    public void testPushAfterRest() {
+        PersistentVector<Integer> vector = PersistentVector.from(range(40)).rest().rest().push(40);
+
+        assertEquals(39, vector.size());
+        assertEquals(2, vector.getFirst());
+        assertEquals(40, vector.getLast());
+        assertEquals(range(41).subList(2, 41), vector);
+    }
+
+    @Test
+    public void testGetOutOfBounds() {
+        PersistentVector<Integer> vector = PersistentVector.from(range(10)).rest();
+
+        assertThrows(IndexOutOfBoundsException.class, () -> vector.get(-1));
+        assertThrows(IndexOutOfBoundsException.class, () -> vector.get(9));
+    }
+
+    private List<Integer> range(int size) {
+        List<Integer> list = new ArrayList<>();
+        for(int i = 0; i < size; i++) {
+            list.add(i);
+        }
+
+        return list;
+    }
+}
@@ -0,0 +1,198 @@
+package dk.madsravn.interpreter.compiler;
+
+import dk.madsravn.interpreter.ast.FlatAst;
+import dk.madsravn.interpreter.ast.Program;
+import dk.madsravn.interpreter.lexer.Lexer;
+import dk.madsravn.interpreter.object.CompiledFunctionObject;
+import dk.madsravn.interpreter.object.IObject;
+import dk.madsravn.interpreter.object.IntegerObject;
+import dk.madsravn.interpreter.parser.Parser;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CompilerTest {
+
+    @Test
+    public void testMake() {
+        assertEquals("0000 CONSTANT 65534\n", Instructions.disassemble(Instructions.make(OpCode.CONSTANT, 65534)));
+        assertEquals("0000 GET_LOCAL 255\n", Instructions.disassemble(Instructions.make(OpCode.GET_LOCAL, 255)));
+        assertEquals("0000 CLOSURE 65535 255\n", Instructions.disassemble(Instructions.make(OpCode.CLOSURE, 65535, 255)));
+        assertEquals("0000 GET_LOCAL 300\n", Instructions.disassemble(Instructions.make(OpCode.GET_LOCAL, 300)));
+        assertThrows(IllegalArgumentException.class, () -> Instructions.make(OpCode.CALL, 65536));
+        assertThrows(IllegalArgumentException.class, () -> Instructions.make(OpCode.GET_BUILTIN, 256));
+    }
+
+    @Test
+    public void testIntegerArithmetic() {
+        Bytecode bytecode = compile("1 + 2; 3 < 4");
+        assertEquals(concat(
+                Instructions.make(OpCode.CONSTANT, 0),
+                Instructions.make(OpCode.CONSTANT, 1),
+                Instructions.make(OpCode.ADD),
+                Instructions.make(OpCode.POP),
+                Instructions.make(OpCode.CONSTANT, 2),
+                Instructions.make(OpCode.CONSTANT, 3),
+                Instructions.make(OpCode.LESS_THAN),
+                Instructions.make(OpCode.POP)
+        ), Instructions.disassemble(bytecode.getInstructions()));
+        assertEquals(4, bytecode.getConstants().size());
+        assertEquals(new IntegerObject(3), bytecode.getConstants().get(2));
+    }
+
+    @Test
+    public void testConditionals() {
+        Bytecode bytecode = compile("if (true) { 10 }; 3333;");
+        assertEquals(concat(
+                Instructions.make(OpCode.TRUE),
+                Instructions.make(OpCode.JUMP_NOT_TRUTHY, 16),
+                Instructions.make(OpCode.CONSTANT, 0),
+                Instructions.make(OpCode.JUMP, 17),
+                Instructions.make(OpCode.NULL),
+                Instructions.make(OpCode.POP),
+                Instructions.make(OpCode.CONSTANT, 1),
+                Instructions.make(OpCode.POP)
+        ), Instructions.disassemble(bytecode.getInstructions()));
+    }
+
+    @Test
+    public void testGlobalsAndBuiltins() {
+        Bytecode bytecode = compile("let one = 1; len(one); undefined;");
+        assertEquals(concat(
+                Instructions.make(OpCode.CONSTANT, 0),
+                Instructions.make(OpCode.SET_GLOBAL, 0),
+                Instructions.make(OpCode.GET_BUILTIN, 0),
+                Instructions.make(OpCode.GET_GLOBAL, 0),
+                Instructions.make(OpCode.CALL, 1),
+                Instructions.make(OpCode.POP),
+                Instructions.make(OpCode.GET_GLOBAL, 1),
+                Instructions.make(OpCode.POP)
+        ), Instructions.disassemble(bytecode.getInstructions()));
+        assertEquals(List.of("one", "undefined"), bytecode.getGlobalNames());
+    }
+
+    @Test
+    public void testRecursiveFunctionUsesCurrentClosure() {
+        Bytecode bytecode = compile("fn() { let countDown = fn(x) { countDown(x - 1); }; }");
+        assertTrue(bytecode.getConstants().get(1) instanceof CompiledFunctionObject);
+        CompiledFunctionObject function = (CompiledFunctionObject) bytecode.getConstants().get(1);
+        assertEquals(concat(
+                Instructions.make(OpCode.CURRENT_CLOSURE),
+                Instructions.make(OpCode.GET_LOCAL, 0),
+                Instructions.make(OpCode.CONSTANT, 0),
+                Instructions.make(OpCode.SUB),
+                Instructions.make(OpCode.TAIL_CALL, 1),
+                Instructions.make(OpCode.RETURN_VALUE)
+        ), Instructions.disassemble(function.getInstructions()));
+        assertEquals(1, function.getNumLocals());
+        assertEquals(1, function.getNumParameters());
+    }
+
+    @Test
+    public void testRecursiveFunctionThatCanBeReboundLoadsItsName() {
+        Bytecode global = compile("let countDown = fn(x) { countDown(x - 1); };");
+        CompiledFunctionObject function = (CompiledFunctionObject) global.getConstants().get(1);
+        assertEquals(OpCode.GET_GLOBAL, OpCode.fromByte(function.getInstructions()[0]));
+
+        Bytecode local = compile("fn() { let countDown = fn(x) { countDown(x - 1); }; let countDown = 1; }");
+        function = (CompiledFunctionObject) local.getConstants().get(1);
+        assertEquals(OpCode.GET_FREE, OpCode.fromByte(function.getInstructions()[0]));
+    }
+
+    @Test
+    public void testClosuresCaptureFreeVariables() {
+        Bytecode bytecode = compile("fn(a) { fn(b) { a + b } }");
+        CompiledFunctionObject inner = (CompiledFunctionObject) bytecode.getConstants().get(0);
+        assertEquals(concat(
+                Instructions.make(OpCode.GET_FREE, 0),
+                Instructions.make(OpCode.GET_LOCAL, 0),
+                Instructions.make(OpCode.ADD),
+                Instructions.make(OpCode.RETURN_VALUE)
+        ), Instructions.disassemble(inner.getInstructions()));
+        CompiledFunctionObject outer = (CompiledFunctionObject) bytecode.getConstants().get(1);
+        assertEquals(concat(
+                Instructions.make(OpCode.PUSH_CELL, 0),
+                Instructions.make(OpCode.CLOSURE, 0, 1),
+                Instructions.make(OpCode.RETURN_VALUE)
+        ), Instructions.disassemble(outer.getInstructions()));
+        assertArrayEquals(new int[] { 0 }, outer.getCells());
+    }
+
+    @Test
+    public void testCapturedLocalsUseCells() {
+        Bytecode bytecode = compile("fn() { let v = 1; let g = fn() { v + u }; let u = 2; g() }");
+        CompiledFunctionObject outer = (CompiledFunctionObject) bytecode.getConstants().get(3);
+        assertEquals(concat(
+                Instructions.make(OpCode.CONSTANT, 0),
+                Instructions.make(OpCode.SET_CELL, 0),
+                Instructions.make(OpCode.PUSH_CELL, 0),
+                Instructions.make(OpCode.PUSH_CELL, 2),
+                Instructions.make(OpCode.CLOSURE, 1, 2),
+                Instructions.make(OpCode.SET_LOCAL, 1),
+                Instructions.make(OpCode.CONSTANT, 2),
+                Instructions.make(OpCode.SET_CELL, 2),
+                Instructions.make(OpCode.GET_LOCAL, 1),
+                Instructions.make(OpCode.TAIL_CALL, 0),
+                Instructions.make(OpCode.RETURN_VALUE)
+        ), Instructions.disassemble(outer.getInstructions()));
+        assertArrayEquals(new int[] { 0, 2 }, outer.getCells());
+    }
+
+    @Test
+    public void testFlatAstCompilesToSameBytecode() {
+        String input = """
+                let fib = fn(n) { if (n < 2) { return n; } fib(n - 1) + fib(n - 2) };
+                let pair = fn(a) { fn(b) { [a, b, -a, !true] } };
+                let h = {"one": 1};
+                if (fib(10) > 50) { h["one"] } else { pair(1)(2)[0] };
+                puts(len("abc") == 3, 1 != 2);
+                """;
+        Program program = new Parser(new Lexer(input)).parseProgram();
+        Compiler fromTree = new Compiler();
+        fromTree.compile(program);
+        Compiler fromFlat = new Compiler();
+        fromFlat.compile(FlatAst.from(program));
+        Bytecode expected = fromTree.bytecode();
+        Bytecode bytecode = fromFlat.bytecode();
+
+        assertEquals(Instructions.disassemble(expected.getInstructions()), Instructions.disassemble(bytecode.getInstructions()));
+        assertEquals(expected.getGlobalNames(), bytecode.getGlobalNames());
+        assertEquals(expected.getConstants().size(), bytecode.getConstants().size());
+        for(int i = 0; i < expected.getConstants().size(); i++) {
+            IObject constant = expected.getConstants().get(i);
+            if(constant instanceof CompiledFunctionObject function) {
+                CompiledFunctionObject flat = (CompiledFunctionObject) bytecode.getConstants().get(i);
+                assertEquals(Instructions.disassemble(function.getInstructions()), Instructions.disassemble(flat.getInstructions()));
+                assertEquals(function.getBody().string(), flat.getBody().string());
+            } else {
+                assertEquals(constant.inspect(), bytecode.getConstants().get(i).inspect());
+            }
+        }
+    }
+
+    private Bytecode compile(String input) {
+        Lexer lexer = new Lexer(input);
+        Parser parser = new Parser(lexer);
+        Program program = parser.parseProgram();
+        Compiler compiler = new Compiler();
+        compiler.compile(program);
+
+        return compiler.bytecode();
+    }
+
+    private String concat(byte[]... instructions) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for(byte[] instruction : instructions) {
+            out.writeBytes(instruction);
+        }
+
+        return Instructions.disassemble(out.toByteArray());
+    }
+}
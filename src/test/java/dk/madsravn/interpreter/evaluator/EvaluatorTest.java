@@ -1,6 +1,6 @@
 package dk.madsravn.interpreter.evaluator;
 
-import dk.madsravn.interpreter.ast.Program;
+import dk.madsravn.interpreter.ast.*;
 import dk.madsravn.interpreter.lexer.Lexer;
 import dk.madsravn.interpreter.object.*;
 import dk.madsravn.interpreter.parser.Parser;
@@ -12,6 +12,7 @@ import java.util.List;
 
 import static dk.madsravn.interpreter.evaluator.Evaluator.evaluate;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class EvaluatorTest {
@@ -38,7 +39,10 @@ public class EvaluatorTest {
                 new EvalIntegerData("2 * (5 + 10)", 30),
                 new EvalIntegerData("3 * 3 * 3 + 10", 37),
                 new EvalIntegerData("3 * (3 * 3) + 10", 37),
-                new EvalIntegerData("(5 + 10 * 2 + 15 / 3) * 2 + -10", 50)
+                new EvalIntegerData("(5 + 10 * 2 + 15 / 3) * 2 + -10", 50),
+                new EvalIntegerData("let a = 7; let b = -3; (a * b - -a) / (b + 1)", 7),
+                new EvalIntegerData("2147483647 + 1", -2147483648),
+                new EvalIntegerData("let big = 2000000000; big * 2 + big", 1705032704)
         );
 
         for(EvalIntegerData input : inputs) {
@@ -145,7 +149,10 @@ public class EvaluatorTest {
                 new EvalStringData("5; false + true; 5;", "unknown operator: BOOLEAN + BOOLEAN"),
                 new EvalStringData("if (10 > 1) { true + false; }", "unknown operator: BOOLEAN + BOOLEAN"),
                 new EvalStringData("foobar", "identifier not found: foobar"),
-                new EvalStringData("\"Hello\" - \"World\"", "unknown operator: STRING - STRING")
+                new EvalStringData("\"Hello\" - \"World\"", "unknown operator: STRING - STRING"),
+                new EvalStringData("let a = \"five\"; let b = 5; a * 2 + b", "type mismatch: STRING * INTEGER"),
+                new EvalStringData("let t = true; 1 < t", "type mismatch: INTEGER < BOOLEAN"),
+                new EvalStringData("1 + -t", "identifier not found: t")
         );
 
         for(EvalStringData input : inputs) {
@@ -198,6 +205,21 @@ public class EvaluatorTest {
         }
     }
 
+    @Test
+    public void testLocalScopes() {
+        List<EvalIntegerData> inputs = Arrays.asList(
+                new EvalIntegerData("let newAdder = fn(x) { fn(y) { x + y } }; let addTwo = newAdder(2); addTwo(3);", 5),
+                new EvalIntegerData("let f = fn(n) { let loop = fn(i, acc) { if (i > n) { acc } else { loop(i + 1, acc + i) } }; loop(1, 0) }; f(10);", 55),
+                new EvalIntegerData("let x = 10; let f = fn(y) { let x = y * 2; x }; f(3) + x;", 16),
+                new EvalIntegerData("let later = fn() { defined + 1 }; let defined = 41; later();", 42)
+        );
+
+        for(EvalIntegerData input : inputs) {
+            IObject object = testEval(input.input);
+            testIntegerObject(object, input.value);
+        }
+    }
+
     @Test
     public void testStringLiteral() {
         String input = """
@@ -298,6 +320,8 @@ public class EvaluatorTest {
                 new EvalIntegerArrayData("rest([]);", null),
                 new EvalIntegerArrayData("last([]);", null),
                 new EvalIntegerArrayData("push([2], 3);", Arrays.asList(2, 3)),
+                new EvalIntegerArrayData("let a = [1, 2]; let b = push(a, 3); push(a, 4);", Arrays.asList(1, 2, 4)),
+                new EvalIntegerArrayData("let a = [1, 2, 3]; let b = rest(a); push(b, 4)[0] + len(a);", Arrays.asList(5)),
                 new EvalIntegerArrayData("first([]);", null)
         );
 
@@ -363,6 +387,333 @@ public class EvaluatorTest {
         }
     }
 
+    @Test
+    public void testHashBuiltins() {
+        List<EvalIntegerData> inputs = Arrays.asList(
+                new EvalIntegerData("set({}, \"foo\", 5)[\"foo\"]", 5),
+                new EvalIntegerData("set({\"foo\": 1}, \"foo\", 5)[\"foo\"]", 5),
+                new EvalIntegerData("let a = {\"foo\": 1}; let b = set(a, \"foo\", 5); a[\"foo\"]", 1),
+                new EvalIntegerData("let a = {1: 1, 2: 2}; let b = delete(a, 1); a[1] + b[2]", 3),
+                new EvalIntegerData("delete({1: 1, 2: 2}, 1)[1]", null),
+                new EvalIntegerData("delete({}, true)[true]", null),
+                new EvalIntegerData("let build = fn(h, i) { if (i < 1) { h } else { build(set(h, i, i * i), i - 1) } }; build({}, 100)[7]", 49)
+        );
+
+        for(EvalIntegerData input : inputs) {
+            var evaluated = testEval(input.input);
+            if(input.value != null) {
+                testIntegerObject(evaluated, input.value);
+            } else {
+                testNullObject(evaluated);
+            }
+        }
+
+        List<EvalStringData> errors = Arrays.asList(
+                new EvalStringData("set([], 1, 2)", "argument for `set` must be HASH, got ARRAY"),
+                new EvalStringData("delete(1, 1)", "argument for `delete` must be HASH, got INTEGER"),
+                new EvalStringData("set({}, fn(x) { x }, 2)", "unusable as hash key: FUNCTION"),
+                new EvalStringData("set({}, 1)", "wrong number of arguments. got=2, want=3")
+        );
+
+        for(EvalStringData input : errors) {
+            testErrorObject(testEval(input.input), input.value);
+        }
+    }
+
+    @Test
+    public void testPolymorphicOperands() {
+        String input = """
+                let add = fn(a, b) { a + b };
+                let same = fn(a, b) { a == b };
+                let ints = add(1, 2) + add(3, 4);
+                let strings = add("a", "b");
+                let booleans = same(true, true);
+                let mixed = same(1, 1);
+                add(strings, add("c", "d")) + add("", "" + "!");
+                """;
+
+        var evaluated = testEval(input);
+        assertTrue(evaluated instanceof StringObject);
+        assertEquals("abcd!", ((StringObject) evaluated).getValue());
+
+        testErrorObject(testEval("let add = fn(a, b) { a + b }; add(1, 2); add(1, true)"), "type mismatch: INTEGER + BOOLEAN");
+        testErrorObject(testEval("let add = fn(a, b) { a + b }; add(\"a\", \"b\"); add(true, false)"), "unknown operator: BOOLEAN + BOOLEAN");
+    }
+
+    @Test
+    public void testInfixExpressionSpecialization() {
+        Program program = new Parser(new Lexer("let add = fn(a, b) { a + b }; add(1, 2); add(3, 4);")).parseProgram();
+        FunctionLiteral function = (FunctionLiteral) ((LetStatement) program.getStatements().get(0)).getValue();
+        InfixExpression sum = (InfixExpression) ((ExpressionStatement) function.getBody().getStatements().get(0)).getExpression();
+        assertEquals(InfixExpression.Specialization.UNINITIALIZED, sum.getSpecialization());
+
+        Environment env = new Environment();
+        evaluate(program, env);
+        assertEquals(InfixExpression.Specialization.INTEGER, sum.getSpecialization());
+
+        var evaluated = evaluate(new Parser(new Lexer("add(\"a\", \"b\")")).parseProgram(), env);
+        assertEquals("ab", ((StringObject) evaluated).getValue());
+        assertEquals(InfixExpression.Specialization.GENERIC, sum.getSpecialization());
+
+        testIntegerObject(evaluate(new Parser(new Lexer("add(5, 6)")).parseProgram(), env), 11);
+        assertEquals(InfixExpression.Specialization.GENERIC, sum.getSpecialization());
+    }
+
+    @Test
+    public void testTailCalls() {
+        // Deep enough to overflow the Java stack if every iteration nested another call.
+        List<EvalIntegerData> inputs = Arrays.asList(
+                new EvalIntegerData("let count = fn(n, acc) { if (n == 0) { acc } else { count(n - 1, acc + 1) } }; count(1000000, 0)", 1000000),
+                new EvalIntegerData("let count = fn(n) { if (n == 0) { return 7; } return count(n - 1); }; count(1000000)", 7),
+                new EvalIntegerData("let even = fn(n) { if (n == 0) { 1 } else { odd(n - 1) } }; let odd = fn(n) { if (n == 0) { 0 } else { even(n - 1) } }; even(1000001)", 0),
+                new EvalIntegerData("let build = fn(n, acc) { if (n == 0) { acc } else { build(n - 1, push(acc, n)) } }; let sum = fn(arr, acc) { if (len(arr) == 0) { acc } else { sum(rest(arr), acc + first(arr)) } }; sum(build(100000, []), 0)", 705082704),
+                new EvalIntegerData("let marker = 100; let f = fn(n) { if (n == 2) { let marker = n; } if (n == 0) { marker } else { f(n - 1) } }; f(3)", 100),
+                new EvalIntegerData("let f = fn(n, acc) { let get = fn() { n }; if (n == 0) { acc } else { f(n - 1, push(acc, get)) } }; let fs = f(3, []); fs[0]() * 100 + fs[1]() * 10 + fs[2]()", 321)
+        );
+
+        for(EvalIntegerData input : inputs) {
+            testIntegerObject(testEval(input.input), input.value);
+        }
+    }
+
+    @Test
+    public void testClosureCells() {
+        // Closures share the cell of a captured name with the function that binds it, so they see a later let.
+        List<EvalIntegerData> inputs = Arrays.asList(
+                new EvalIntegerData("let f = fn() { let x = 1; let g = fn() { x }; let x = 2; g() }; f()", 2),
+                new EvalIntegerData("let f = fn(a) { let g = fn() { fn() { a + b } }; let b = 10; g() }; f(5)()", 15),
+                new EvalIntegerData("let f = fn(x) { let h = fn() { x }; let x = x * 2; h() + x }; f(3)", 12),
+                new EvalIntegerData("let make = fn(n) { let big = build(1000, []); let get = fn() { n }; get }; let build = fn(n, acc) { if (n == 0) { acc } else { build(n - 1, push(acc, n)) } }; make(4)() + make(3)()", 7)
+        );
+
+        for(EvalIntegerData input : inputs) {
+            Program program = new Parser(new Lexer(input.input)).parseProgram();
+            testIntegerObject(evaluate(program, new Environment()), input.value);
+        }
+    }
+
+    @Test
+    public void testCallSiteCacheStates() {
+        Program program = new Parser(new Lexer("let call = fn(f) { f() }; call(fn() { 1 }); call(fn() { 2 }); call(fn() { 3 }); call(fn() { 4 });")).parseProgram();
+        Environment env = new Environment();
+        FunctionLiteral call = (FunctionLiteral) ((LetStatement) program.getStatements().get(0)).getValue();
+        CallSiteCache cache = ((CallExpression) ((ExpressionStatement) call.getBody().getStatements().get(0)).getExpression()).getCache();
+        assertEquals(CallSiteCache.State.UNINITIALIZED, cache.getState());
+
+        testIntegerObject(evaluate(program, env), 4);
+        assertEquals(CallSiteCache.State.POLYMORPHIC, cache.getState());
+
+        testIntegerObject(evaluate(new Parser(new Lexer("call(fn() { 5 })")).parseProgram(), env), 5);
+        assertEquals(CallSiteCache.State.MEGAMORPHIC, cache.getState());
+        testIntegerObject(evaluate(new Parser(new Lexer("call(fn() { 6 })")).parseProgram(), env), 6);
+    }
+
+    @Test
+    public void testMonomorphicCallSiteHits() {
+        Program program = new Parser(new Lexer("let add = fn(a, b) { a + b }; let sum = fn(n, acc) { if (n == 0) { acc } else { sum(n - 1, add(acc, n)) } }; sum(10, 0)")).parseProgram();
+        FunctionLiteral sum = (FunctionLiteral) ((LetStatement) program.getStatements().get(1)).getValue();
+        IfExpression body = (IfExpression) ((ExpressionStatement) sum.getBody().getStatements().get(0)).getExpression();
+        CallExpression recursion = (CallExpression) ((ExpressionStatement) body.getAlternative().getStatements().get(0)).getExpression();
+
+        CallStatistics.reset();
+        CallStatistics.setEnabled(true);
+        try {
+            testIntegerObject(evaluate(program, new Environment()), 55);
+        } finally {
+            CallStatistics.setEnabled(false);
+        }
+        assertEquals(CallSiteCache.State.MONOMORPHIC, recursion.getCache().getState());
+        assertEquals(CallSiteCache.State.MONOMORPHIC, ((CallExpression) recursion.getArguments().get(1)).getCache().getState());
+        // The top level call and the first call at each of the two sites in sum miss, the other eighteen hit.
+        assertEquals(3, CallStatistics.getMisses());
+        assertEquals(18, CallStatistics.getHits());
+        assertEquals(0, CallStatistics.getMegamorphicCalls());
+    }
+
+    @Test
+    public void testBuiltinCallSitesAreNotCached() {
+        Program program = new Parser(new Lexer("let count = fn(n) { if (n == 0) { 0 } else { len([n]) + count(n - 1) } }; count(10)")).parseProgram();
+        FunctionLiteral count = (FunctionLiteral) ((LetStatement) program.getStatements().get(0)).getValue();
+        IfExpression body = (IfExpression) ((ExpressionStatement) count.getBody().getStatements().get(0)).getExpression();
+        InfixExpression sum = (InfixExpression) ((ExpressionStatement) body.getAlternative().getStatements().get(0)).getExpression();
+
+        CallStatistics.reset();
+        CallStatistics.setEnabled(true);
+        try {
+            testIntegerObject(evaluate(program, new Environment()), 10);
+        } finally {
+            CallStatistics.setEnabled(false);
+        }
+        assertEquals(CallSiteCache.State.UNINITIALIZED, ((CallExpression) sum.getLeft()).getCache().getState());
+        assertEquals(CallSiteCache.State.MONOMORPHIC, ((CallExpression) sum.getRight()).getCache().getState());
+        // Only the calls of count are counted: the top level call and the first recursive call miss, the rest hit.
+        assertEquals(2, CallStatistics.getMisses());
+        assertEquals(9, CallStatistics.getHits());
+    }
+
+    @Test
+    public void testCallStatisticsAreOffByDefault() {
+        CallStatistics.reset();
+        testIntegerObject(evaluate(new Parser(new Lexer("let f = fn(x) { len(x) }; f([1]) + f([2])")).parseProgram(), new Environment()), 2);
+
+        assertEquals(0, CallStatistics.getHits() + CallStatistics.getMisses() + CallStatistics.getMegamorphicCalls());
+    }
+
+    @Test
+    public void testHashKeysAndValuesWithoutAValue() {
+        testIntegerObject(testEval("let f = fn() { let a = 1; }; {f(): 1}; 7"), 7);
+        testIntegerObject(testEval("let f = fn() { let a = 1; }; {f(): 1, 2: 3}[2]"), 3);
+        assertEquals(Evaluator.NULL, testEval("let f = fn() { let a = 1; }; {\"a\": f()}[\"a\"]"));
+        assertEquals(Evaluator.NULL, testEval("let f = fn() { let a = 1; }; {1: f()}[1]"));
+    }
+
+    @Test
+    public void testLaterInputsCanShadowBuiltinsInFunctions() {
+        // Like the REPL, every input is evaluated on its own in the same Environment.
+        Environment env = new Environment();
+        evaluate(new Parser(new Lexer("let f = fn(x) { len(x) };")).parseProgram(), env);
+        testIntegerObject(evaluate(new Parser(new Lexer("f(\"abc\")")).parseProgram(), env), 3);
+        evaluate(new Parser(new Lexer("let len = fn(x) { 42 };")).parseProgram(), env);
+
+        testIntegerObject(evaluate(new Parser(new Lexer("f(\"abc\")")).parseProgram(), env), 42);
+    }
+
+    @Test
+    public void testCachedCallsKeepTheirResults() {
+        List<EvalIntegerData> inputs = Arrays.asList(
+                new EvalIntegerData("let f = fn(x) { let g = fn() { x }; g() }; f(3) + f(4)", 7),
+                new EvalIntegerData("let apply = fn(f, x) { f(x) }; apply(fn(x) { x * 2 }, 3) + apply(fn(x) { x + 1 }, 3) + apply(len, [1, 2])", 12),
+                new EvalIntegerData("let count = fn(n) { if (n == 0) { 0 } else { count(n - 1) } }; count(10000) + count(5)", 0),
+                new EvalIntegerData("let f = fn(a) { fn(b) { a * b } }; let g = f(2); let h = f(3); g(5) + h(5)", 25)
+        );
+
+        for(EvalIntegerData input : inputs) {
+            Program program = new Parser(new Lexer(input.input)).parseProgram();
+            testIntegerObject(evaluate(program, new Environment()), input.value);
+        }
+        testErrorObject(evaluate(new Parser(new Lexer("let f = fn(a) { a }; f(1); f(-true)")).parseProgram(), new Environment()), "unknown operator: -BOOLEAN");
+    }
+
+    @Test
+    public void testGlobalsShadowBuiltins() {
+        Environment env = new Environment();
+        testIntegerObject(evaluate(new Parser(new Lexer("let len = fn(x) { 42 }; len([1])")).parseProgram(), env), 42);
+        // A later input still sees the global the earlier one defined.
+        testIntegerObject(evaluate(new Parser(new Lexer("len([1, 2])")).parseProgram(), env), 42);
+        testIntegerObject(evaluate(new Parser(new Lexer("len([1, 2])")).parseProgram(), new Environment()), 2);
+    }
+
+    @Test
+    public void testStringAccumulation() {
+        String input = "let repeat = fn(s, n, acc) { if (n == 0) { acc } else { repeat(s, n - 1, acc + s) } }; let line = repeat(\"ab\", 200, \"\"); let text = repeat(line, 50, \"\");";
+        Environment env = new Environment();
+        evaluate(new Parser(new Lexer(input)).parseProgram(), env);
+
+        testIntegerObject(evaluate(new Parser(new Lexer("len(text)")).parseProgram(), env), 20000);
+        IObject text = evaluate(new Parser(new Lexer("text")).parseProgram(), env);
+        assertEquals("ab".repeat(10000), ((StringObject) text).getValue());
+        testIntegerObject(evaluate(new Parser(new Lexer("{text: 1}[repeat(line, 50, \"\")]")).parseProgram(), env), 1);
+    }
+
+    @Test
+    public void testStringLiteralsAreEvaluatedOnce() {
+        Program program = new Parser(new Lexer("let key = fn() { \"name\" }; [key(), key()]")).parseProgram();
+        ArrayObject keys = (ArrayObject) evaluate(program, new Environment());
+
+        assertSame(keys.get(0), keys.get(1));
+        testIntegerObject(testEval("let h = {\"a\": 1, \"b\": 2}; let get = fn(k) { h[k] }; get(\"a\") + get(\"b\") + get(\"a\")"), 4);
+    }
+
+    @Test
+    public void testHashLiteralsKeepTheirOrder() {
+        IObject hash = testEval("let key = \"k\"; {\"z\": 1, 3: 2, true: 3, key: 4, \"a\": 5}");
+
+        assertEquals("{\"z\": 1, 3: 2, true: 3, \"k\": 4, \"a\": 5}", hash.inspect());
+        assertEquals("{\"a\": 2, \"b\": 3}", testEval("set(set({\"a\": 1}, \"b\", 3), \"a\", 2)").inspect());
+    }
+
+    @Test
+    public void testRecordHashes() {
+        List<EvalIntegerData> inputs = Arrays.asList(
+                new EvalIntegerData("let p = {\"name\": 1, \"age\": 2}; p[\"name\"] + p[\"age\"]", 3),
+                new EvalIntegerData("let make = fn(a) { {\"a\": a, \"b\": a * 2} }; make(1)[\"b\"] + make(5)[\"a\"]", 7),
+                new EvalIntegerData("let p = set({\"a\": 1, \"b\": 2}, \"a\", 10); p[\"a\"] + p[\"b\"]", 12),
+                new EvalIntegerData("let p = set({\"a\": 1}, \"c\", 3); p[\"a\"] + p[\"c\"]", 4),
+                new EvalIntegerData("let p = {\"a\": 1, \"a\": 2}; p[\"a\"]", 2),
+                new EvalIntegerData("let k = \"b\"; let p = {\"a\": 1, \"b\": 2}; p[k]", 2)
+        );
+
+        for(EvalIntegerData input : inputs) {
+            testIntegerObject(testEval(input.input), input.value);
+        }
+        testNullObject(testEval("{\"a\": 1}[\"b\"]"));
+        testNullObject(testEval("delete({\"a\": 1, \"b\": 2}, \"a\")[\"a\"]"));
+        assertEquals("{\"b\": 2, \"c\": 3}", testEval("set(delete({\"a\": 1, \"b\": 2}, \"a\"), \"c\", 3)").inspect());
+    }
+
+    @Test
+    public void testIndexCacheStates() {
+        Program program = new Parser(new Lexer("let get = fn(h) { h[\"a\"] }; get({\"a\": 1}) + get({\"b\": 2, \"a\": 3})")).parseProgram();
+        Environment env = new Environment();
+        FunctionLiteral get = (FunctionLiteral) ((LetStatement) program.getStatements().get(0)).getValue();
+        IndexCache cache = ((IndexExpression) ((ExpressionStatement) get.getBody().getStatements().get(0)).getExpression()).getCache();
+        assertEquals(IndexCache.State.UNINITIALIZED, cache.getState());
+
+        testIntegerObject(evaluate(program, env), 4);
+        assertEquals(IndexCache.State.POLYMORPHIC, cache.getState());
+        // Hashes without a shape, and shapes without the key, are looked up without touching the cache.
+        testIntegerObject(evaluate(new Parser(new Lexer("get(set({}, \"a\", 5))")).parseProgram(), env), 5);
+        testNullObject(evaluate(new Parser(new Lexer("get({\"b\": 1})")).parseProgram(), env));
+        assertEquals(IndexCache.State.POLYMORPHIC, cache.getState());
+
+        testIntegerObject(evaluate(new Parser(new Lexer("get({\"a\": 6, \"c\": 0}) + get({\"a\": 7, \"d\": 0})")).parseProgram(), env), 13);
+        testIntegerObject(evaluate(new Parser(new Lexer("get({\"a\": 8, \"e\": 0})")).parseProgram(), env), 8);
+        assertEquals(IndexCache.State.MEGAMORPHIC, cache.getState());
+        testIntegerObject(evaluate(new Parser(new Lexer("get({\"f\": 0, \"a\": 9})")).parseProgram(), env), 9);
+    }
+
+    @Test
+    public void testClosuresShareCapturedVariables() {
+        List<EvalIntegerData> inputs = Arrays.asList(
+                new EvalIntegerData("let f = fn() { let v = 1; let g = fn() { v }; let v = 2; g() }; f()", 2),
+                new EvalIntegerData("fn() { let w = fn() { u }; let u = 7; w() }()", 7),
+                new EvalIntegerData("fn(a) { let get = fn() { fn() { a } }; let a = a + 1; get()() }(1)", 2),
+                new EvalIntegerData("let x = 1; fn() { let y = x; let x = 2; y }()", 1),
+                new EvalIntegerData("fn() { let n = len([1, 2]); let len = 5; n + len }()", 7)
+        );
+
+        for(EvalIntegerData input : inputs) {
+            testIntegerObject(testEval(input.input), input.value);
+        }
+        testErrorObject(testEval("fn() { let y = x; let x = 2; y }()"), "identifier not found: x");
+        testErrorObject(testEval("fn() { let w = fn() { u }; w() }()"), "identifier not found: u");
+    }
+
+    @Test
+    public void testLetsThatHaveNotRunShowTheEnclosingBinding() {
+        List<EvalIntegerData> inputs = Arrays.asList(
+                new EvalIntegerData("let outer = fn() { let y = 10; let inner = fn(n) { if (n > 0) { let y = 1; }; y }; inner(0) }; outer()", 10),
+                new EvalIntegerData("let outer = fn() { let y = 10; let inner = fn(n) { if (n > 0) { let y = 1; }; y }; inner(1) }; outer()", 1),
+                new EvalIntegerData("fn(y) { fn() { if (false) { let y = 1; }; fn() { if (false) { let y = 2; }; y }() }() }(3)", 3),
+                new EvalIntegerData("fn() { let f = fn() { if (false) { let y = 1; }; y }; let y = 4; f() }()", 4),
+                new EvalIntegerData("let y = 5; fn() { fn() { if (false) { let y = 1; }; y }() }()", 5)
+        );
+
+        for(EvalIntegerData input : inputs) {
+            testIntegerObject(testEval(input.input), input.value);
+        }
+        testErrorObject(testEval("fn() { let f = fn() { if (false) { let y = 1; }; y }; f() }()"), "identifier not found: y");
+    }
+
+    @Test
+    public void testArgumentCounts() {
+        testIntegerObject(testEval("fn(a) { a }(1, 2)"), 1);
+        testIntegerObject(testEval("let f = fn(a, b) { a + b }; f(1, 2, 3) + f(4, 5)"), 12);
+        testErrorObject(testEval("fn(a) { a }(1, -true)"), "unknown operator: -BOOLEAN");
+        testErrorObject(testEval("fn(a, b) { a }(1)"), "wrong number of arguments. got=1, want=2");
+        testErrorObject(testEval("let f = fn(a, b) { a }; let g = fn() { f(1) }; g()"), "wrong number of arguments. got=1, want=2");
+    }
+
     private void testErrorObject(IObject object, String message) {
         assertTrue(object instanceof ErrorObject);
         ErrorObject errorObject = (ErrorObject) object;
@@ -397,7 +748,7 @@ public class EvaluatorTest {
         assertEquals(booleanObject.getValue(), expected, input);
     }
 
-    private IObject testEval(String input) {
+    protected IObject testEval(String input) {
         Lexer lexer = new Lexer(input);
         Parser parser = new Parser(lexer);
         Program program = parser.parseProgram();
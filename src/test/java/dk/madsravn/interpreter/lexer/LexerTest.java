@@ -4,11 +4,21 @@ import dk.madsravn.interpreter.tokens.Token;
 import dk.madsravn.interpreter.tokens.TokenType;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
+import java.util.Random;
 import java.util.stream.IntStream;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
 
 public class LexerTest {
@@ -185,6 +195,133 @@ public class LexerTest {
         assertEquals(tokens, actual, () -> "Expected and actual lists are not equal: \n " + tokens + " \n " + actual + "\n ");
     }
 
+    @Test
+    public void testTokenizeMatchesNextToken() {
+        String input = """
+                let five = 5;
+                let add = fn(x, y) { x + y; };
+                if (five != 10 == true) { return false; } else { add(five, -five) / 2 * 3 < 4 > 5; }
+                "foo bar" [1, 2]; {"key": "value"}; letter elsewhere fnord iffy @ "unterminated""";
+        List<Token> expected = new Lexer(input).readAllTokens();
+        TokenBuffer buffer = new Lexer(input).tokenize();
+
+        assertEquals(expected.size(), buffer.size());
+        for(int i = 0; i < buffer.size(); i++) {
+            assertEquals(expected.get(i), buffer.token(i));
+            assertEquals(expected.get(i).getType(), buffer.type(i));
+            assertEquals(expected.get(i).getLiteral(), buffer.literal(i));
+        }
+        assertEquals("five", input.substring(buffer.start(1), buffer.end(1)));
+        assertSame(Token.of(TokenType.LET), buffer.token(0));
+        assertEquals(TokenType.EOF, buffer.type(buffer.size() - 1));
+    }
+
+    @Test
+    public void testTokenizeEmptyInput() {
+        TokenBuffer buffer = new Lexer("").tokenize();
+
+        assertEquals(1, buffer.size());
+        assertEquals(Lexer.eofToken(), buffer.token(0));
+    }
+
+    @Test
+    public void testStreamingLexerMatchesLexer() {
+        String input = """
+                let five = 5;
+                let add = fn(x, y) { x + y; };
+                if (five != 10 == true) { return false; } else { add(five, -five) / 2 * 3 < 4 > 5; }
+                "a string that is longer than the buffer" [12345678, 2]; {"key": "value"}; letter elsewhere @ "unterminated""";
+        List<Token> expected = new Lexer(input).readAllTokens();
+        // Small buffers make identifiers, numbers, strings and == span refills.
+        for(int bufferSize : new int[] { 1, 2, 3, 7, StreamingLexer.DEFAULT_BUFFER_SIZE }) {
+            StreamingLexer lexer = new StreamingLexer(new StringReader(input), bufferSize);
+            for(Token token : expected) {
+                assertEquals(token, lexer.nextToken(), "buffer size " + bufferSize);
+            }
+            assertEquals(Lexer.eofToken(), lexer.nextToken());
+        }
+    }
+
+    @Test
+    public void testStreamingLexerReadsChannel() {
+        byte[] input = "let søren = \"æøå\"; søren".getBytes(StandardCharsets.UTF_8);
+        StreamingLexer lexer = new StreamingLexer(Channels.newChannel(new ByteArrayInputStream(input)));
+        List<Token> expected = new Lexer(new String(input, StandardCharsets.UTF_8)).readAllTokens();
+
+        for(Token token : expected) {
+            assertEquals(token, lexer.nextToken());
+        }
+    }
+
+    @Test
+    public void testMappedLexerMatchesLexer() {
+        String input = """
+                let five = 5;
+                let add = fn(x, y) { x + y; };
+                if (five != 10 == true) { return false; } else { add(five, -five) / 2 * 3 < 4 > 5; }
+                "grüße, 世界" [12345678, 2]; {"key": "value"}; letter elsewhere fnord @ é "unterminated""";
+        List<Token> expected = new Lexer(input).readAllTokens();
+        MappedLexer lexer = new MappedLexer(ByteBuffer.wrap(input.getBytes(StandardCharsets.UTF_8)));
+
+        for(Token token : expected) {
+            assertEquals(token, lexer.nextToken());
+        }
+        assertEquals(Lexer.eofToken(), lexer.nextToken());
+    }
+
+    @Test
+    public void testMappedLexerOpensFile() throws IOException {
+        Path file = Files.createTempFile("lexer", ".monkey");
+        try {
+            Files.writeString(file, "let answer = \"forty-two\";");
+            MappedLexer lexer = MappedLexer.open(file);
+
+            assertEquals(Token.of(TokenType.LET), lexer.nextToken());
+            assertEquals(new Token(TokenType.IDENT, "answer"), lexer.nextToken());
+            assertEquals(Token.of(TokenType.ASSIGN), lexer.nextToken());
+            assertEquals(new Token(TokenType.STRING, "forty-two"), lexer.nextToken());
+            assertEquals(Token.of(TokenType.SEMICOLON), lexer.nextToken());
+            assertEquals(Lexer.eofToken(), lexer.nextToken());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testScannersAgree() {
+        Random random = new Random(42);
+        byte[] alphabet = " \t\n\rabcXYZ_0189\"\0;(é".getBytes(StandardCharsets.UTF_8);
+        byte[] input = new byte[1000];
+        for(int i = 0; i < input.length; i++) {
+            // Long runs of one byte, so the vector loops see runs that cross whole vectors.
+            input[i] = i > 0 && random.nextInt(8) > 0 ? input[i - 1] : alphabet[random.nextInt(alphabet.length)];
+        }
+        IScanner scalar = Scanners.scalar();
+        for(IScanner scanner : List.of(scalar, Scanners.vector().orElse(scalar))) {
+            for(int from = 0; from < input.length; from++) {
+                assertEquals(scalar.skipWhitespace(input, from, input.length), scanner.skipWhitespace(input, from, input.length));
+                assertEquals(scalar.skipLetters(input, from, input.length), scanner.skipLetters(input, from, input.length));
+                assertEquals(scalar.skipDigits(input, from, input.length), scanner.skipDigits(input, from, input.length));
+                assertEquals(scalar.skipStringContent(input, from, input.length), scanner.skipStringContent(input, from, input.length));
+            }
+        }
+    }
+
+    @Test
+    public void testMappedLexerAcrossWindows() {
+        // Runs of every kind that are longer than the lexer's window of input.
+        String input = "let " + "a".repeat(70000) + " = \"" + "é".repeat(40000) + "\";" + " ".repeat(70000)
+                + "9".repeat(70000) + "; " + "let b = [1, 2];\n".repeat(10000);
+        List<Token> expected = new Lexer(input).readAllTokens();
+        IScanner scalar = Scanners.scalar();
+        for(IScanner scanner : List.of(scalar, Scanners.vector().orElse(scalar))) {
+            MappedLexer lexer = new MappedLexer(ByteBuffer.wrap(input.getBytes(StandardCharsets.UTF_8)), scanner);
+            for(Token token : expected) {
+                assertEquals(token, lexer.nextToken());
+            }
+        }
+    }
+
     @Test
     public void testTokenTypesThatAdvanceReadChar() {
         String input = "=+(){},;";
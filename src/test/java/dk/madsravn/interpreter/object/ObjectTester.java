@@ -1,10 +1,19 @@
 package dk.madsravn.interpreter.object;
 
+import dk.madsravn.interpreter.collection.CompactMap;
+import dk.madsravn.interpreter.collection.PersistentHashMap;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 public class ObjectTester {
+    private static final BooleanObject TRUE = new BooleanObject(true);
+    private static final BooleanObject FALSE = new BooleanObject(false);
 
     @Test
     public void testStringHashKey() {
@@ -19,5 +28,143 @@ public class ObjectTester {
         assertNotEquals(hello2.hashCode(), diff2.hashCode());
     }
 
+    @Test
+    public void testIntegerValueOf() {
+        assertSame(IntegerObject.valueOf(0), IntegerObject.valueOf(0));
+        assertSame(IntegerObject.valueOf(-128), IntegerObject.valueOf(-128));
+        assertSame(IntegerObject.valueOf(1024), IntegerObject.valueOf(1024));
+        assertEquals(IntegerObject.valueOf(100000), new IntegerObject(100000));
+        assertEquals(IntegerObject.valueOf(-100000).hashCode(), new IntegerObject(-100000).hashCode());
+        assertEquals(-100000, IntegerObject.valueOf(-100000).getValue());
+    }
+
+    @Test
+    public void testStringConcatenationIsLazy() {
+        var left = new StringObject("a".repeat(StringObject.SHORT_LENGTH));
+        var right = new StringObject("b".repeat(StringObject.SHORT_LENGTH));
+        var rope = StringObject.concat(left, right);
+
+        assertFalse(rope.isFlat());
+        assertEquals(2 * StringObject.SHORT_LENGTH, rope.length());
+        assertFalse(rope.isFlat());
+        assertEquals("a".repeat(StringObject.SHORT_LENGTH) + "b".repeat(StringObject.SHORT_LENGTH), rope.getValue());
+        assertTrue(rope.isFlat());
+        assertTrue(StringObject.concat(new StringObject("ab"), new StringObject("cd")).isFlat());
+        assertSame(left, StringObject.concat(left, new StringObject("")));
+    }
+
+    @Test
+    public void testRopeEqualsFlatString() {
+        var rope = StringObject.concat(new StringObject("x".repeat(300)), new StringObject("y".repeat(300)));
+        var flat = new StringObject("x".repeat(300) + "y".repeat(300));
+
+        assertEquals(flat, rope);
+        assertEquals(rope, flat);
+        assertEquals(flat.hashCode(), rope.hashCode());
+        assertNotEquals(flat, StringObject.concat(new StringObject("y".repeat(300)), new StringObject("x".repeat(300))));
+
+        Map<IObject, IObject> pairs = new HashMap<>();
+        pairs.put(rope, IntegerObject.valueOf(1));
+        assertEquals(IntegerObject.valueOf(1), pairs.get(flat));
+    }
+
+    @Test
+    public void testDeepRopeFlattens() {
+        var string = new StringObject("");
+        StringBuilder expected = new StringBuilder();
+        for(int i = 0; i < 100000; i++) {
+            var piece = new StringObject(i % 100 == 0 ? "!" : "z".repeat(StringObject.SHORT_LENGTH));
+            string = StringObject.concat(string, piece);
+            expected.append(piece.getValue());
+        }
+
+        assertEquals(expected.length(), string.length());
+        assertEquals(expected.toString(), string.getValue());
+    }
+
+    @Test
+    public void testHashKeys() {
+        var rope = StringObject.concat(new StringObject("k".repeat(300)), new StringObject("v".repeat(300)));
+        var flat = new StringObject("k".repeat(300) + "v".repeat(300));
+
+        assertEquals(flat.hashKey(), rope.hashKey());
+        assertEquals(flat.hashCode(), rope.hashCode());
+        assertNotEquals(new StringObject("ab").hashKey(), new StringObject("ba").hashKey());
+        assertEquals(42L, IntegerObject.valueOf(42).hashKey());
+        assertNotEquals(new BooleanObject(true).hashKey(), new BooleanObject(false).hashKey());
+        assertFalse(new StringObject("aa").equals(new StringObject("ab")));
+    }
+
+    @Test
+    public void testHashObjectGet() {
+        var hash = new HashObject(Map.of(new StringObject("one"), IntegerObject.valueOf(1), IntegerObject.valueOf(2), new StringObject("two")));
+
+        assertEquals(IntegerObject.valueOf(1), hash.get(new StringObject("one")));
+        assertEquals(new StringObject("two"), hash.get(IntegerObject.valueOf(2)));
+        assertNull(hash.get(new BooleanObject(true)));
+    }
+
+    @Test
+    public void testSmallHashesKeepInsertionOrder() {
+        var hash = new HashObject(Map.of());
+        for(int i = CompactMap.MAX_SIZE - 1; i > 0; i--) {
+            hash = hash.with(IntegerObject.valueOf(i), IntegerObject.valueOf(i));
+        }
+        hash = hash.with(new StringObject("b"), TRUE).with(IntegerObject.valueOf(1), FALSE).without(IntegerObject.valueOf(2));
+
+        assertInstanceOf(CompactMap.class, hash.getPairs());
+        assertTrue(hash.inspect().startsWith("{" + (CompactMap.MAX_SIZE - 1) + ": " + (CompactMap.MAX_SIZE - 1) + ", "));
+        assertTrue(hash.inspect().endsWith("3: 3, 1: false, \"b\": true}"));
+    }
+
+    @Test
+    public void testLargeHashesUseTrie() {
+        var hash = new HashObject(Map.of());
+        for(int i = 0; i <= CompactMap.MAX_SIZE; i++) {
+            hash = hash.with(IntegerObject.valueOf(i), IntegerObject.valueOf(i));
+        }
+
+        assertInstanceOf(PersistentHashMap.class, hash.getPairs());
+        assertEquals(CompactMap.MAX_SIZE + 1, hash.getPairs().size());
+        for(int i = 0; i <= CompactMap.MAX_SIZE; i++) {
+            assertEquals(IntegerObject.valueOf(i), hash.get(IntegerObject.valueOf(i)));
+        }
+        assertNull(hash.without(IntegerObject.valueOf(3)).get(IntegerObject.valueOf(3)));
+    }
+
+    @Test
+    public void testShapedHashes() {
+        Shape shape = Shape.of(List.of(new StringObject("name"), new StringObject("age")));
+        var hash = new HashObject(shape, new IObject[] { new StringObject("monkey"), IntegerObject.valueOf(3) });
+
+        assertEquals(1, shape.slotOf(new StringObject("age")));
+        assertEquals(Shape.NOT_FOUND, shape.slotOf(IntegerObject.valueOf(1)));
+        assertEquals(IntegerObject.valueOf(3), hash.get(new StringObject("age")));
+        assertNull(hash.get(new StringObject("size")));
+        assertEquals("{\"name\": \"monkey\", \"age\": 3}", hash.inspect());
+
+        var older = hash.with(new StringObject("age"), IntegerObject.valueOf(4));
+        assertSame(shape, older.getShape());
+        assertEquals(IntegerObject.valueOf(4), older.get(new StringObject("age")));
+        assertEquals(IntegerObject.valueOf(3), hash.get(new StringObject("age")));
+
+        var larger = hash.with(new StringObject("size"), IntegerObject.valueOf(5));
+        assertNull(larger.getShape());
+        assertEquals("{\"name\": \"monkey\", \"age\": 3, \"size\": 5}", larger.inspect());
+        assertSame(hash, hash.without(new StringObject("size")));
+        assertEquals("{\"age\": 3}", hash.without(new StringObject("name")).inspect());
+    }
+
+    @Test
+    public void testShapesNeedDistinctKeys() {
+        assertNull(Shape.of(List.of(new StringObject("a"), new StringObject("a"))));
+        List<StringObject> keys = new ArrayList<>();
+        for(int i = 0; i <= Shape.MAX_KEYS; i++) {
+            keys.add(new StringObject("key" + i));
+        }
+        assertNull(Shape.of(keys));
+        assertEquals(Shape.MAX_KEYS, Shape.of(keys.subList(0, Shape.MAX_KEYS)).size());
+    }
+
     //TODO: Create tests for equality and hashCode of objects of type BooleanObject, IntegerObject and StringObject
 }
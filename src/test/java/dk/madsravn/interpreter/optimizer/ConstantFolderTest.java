@@ -0,0 +1,121 @@
+package dk.madsravn.interpreter.optimizer;
+
+import dk.madsravn.interpreter.ast.*;
+import dk.madsravn.interpreter.evaluator.Evaluator;
+import dk.madsravn.interpreter.lexer.Lexer;
+import dk.madsravn.interpreter.object.Environment;
+import dk.madsravn.interpreter.object.ErrorObject;
+import dk.madsravn.interpreter.object.IObject;
+import dk.madsravn.interpreter.object.IntegerObject;
+import dk.madsravn.interpreter.parser.Parser;
+import dk.madsravn.interpreter.resolver.Resolver;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConstantFolderTest {
+
+    @Test
+    public void testFoldsLiteralExpressions() {
+        assertFolded("1 + 2 * 3", "7");
+        assertFolded("(10 - 4) / 3 * -2", "-4");
+        assertFolded("!true", "false");
+        assertFolded("!!5", "true");
+        assertFolded("-(-5)", "5");
+        assertFolded("\"a\" + \"b\" + \"c\"", "abc");
+        assertFolded("1 < 2 == true", "true");
+        assertFolded("true != false", "true");
+        assertFolded("[1 + 1, x + (2 * 2)]", "[2, (x + 4)]");
+        assertFolded("f(1 + 1)[2 - 2]", "(f(2)[0])");
+    }
+
+    @Test
+    public void testKeepsRuntimeErrors() {
+        assertFolded("1 + true", "(1 + true)");
+        assertFolded("-true", "(-true)");
+        assertFolded("\"a\" - \"b\"", "(a - b)");
+        assertFolded("true + false", "(true + false)");
+        assertFolded("5 / (1 - 1)", "(5 / 0)");
+
+        ErrorObject error = (ErrorObject) evaluate("let x = 1 + true; 5");
+        assertEquals("type mismatch: INTEGER + BOOLEAN", error.getMessage());
+        assertEquals(5, ((IntegerObject) evaluate("if (false) { 1 + true }; 5")).getValue());
+    }
+
+    @Test
+    public void testLongConcatenationsAreLeftForRunTime() {
+        String long1 = "a".repeat(ConstantFolder.MAX_STRING_LENGTH);
+        assertFolded("\"" + long1 + "\" + \"b\"", "(" + long1 + " + b)");
+    }
+
+    @Test
+    public void testPrunesIfExpressions() {
+        assertFolded("if (true) { 1 } else { 2 }", "1");
+        assertFolded("if (1 > 2) { 1 } else { x }", "x");
+        assertFolded("if (0) { 1 }", "1");
+        assertFolded("if (false) { 1 }", "if false 1");
+        assertFolded("if (x) { 1 + 1 }", "if x 2");
+        assertFolded("if (false) { 1 } else { let y = 2; y }", "if true let y = 2;y");
+    }
+
+    @Test
+    public void testPropagatesLetBindings() {
+        assertFolded("let x = 5; let y = x * 2; y + 1;", "let x = 5;let y = 10;11");
+        assertFolded("fn() { let x = 2; let s = \"a\" + \"b\"; fn() { s + \"c\" }; x * x }",
+                "fn()let x = 2;let s = ab;fn()abc4");
+    }
+
+    @Test
+    public void testOnlyPropagatesWhereTheValueIsCertain() {
+        // Rebound names, uses before the let, lets that may not run and parameters that shadow the name.
+        assertFolded("let x = 1; x; let x = 2; x;", "let x = 1;xlet x = 2;x");
+        assertFolded("fn() { x; let x = 1; x }", "fn()xlet x = 1;1");
+        assertFolded("if (c) { let x = 1; x }; x", "if c let x = 1;xx");
+        assertFolded("fn() { let x = 1; fn(x) { x } }", "fn()let x = 1;fn(x)x");
+        assertFolded("fn() { let x = 1; fn() { let x = 2; x } }", "fn()let x = 1;fn()let x = 2;2");
+        // A global may be bound again by a later REPL input before the function is called.
+        assertFolded("let x = 1; fn() { x }", "let x = 1;fn()x");
+    }
+
+    @Test
+    public void testFoldedProgramsEvaluateTheSame() {
+        List<String> inputs = List.of(
+                "let x = 5; let f = fn(a) { let b = x * 2; if (b > 9) { a + b } else { 0 } }; f(1)",
+                "let s = \"ab\"; let t = s + \"c\"; len(t) + len(s)",
+                "let fib = fn(n) { let one = 1; if (n < 2) { n } else { fib(n - one) + fib(n - 2) } }; fib(12)",
+                "let h = {1 + 1: \"two\", \"k\" + \"ey\": 3 * 3}; [h[2], h[\"key\"]]",
+                "let f = fn() { if (true) { return 1 + 1; } 3 }; f()",
+                "let x = 1; let g = fn() { x }; g()"
+        );
+        for(String input : inputs) {
+            String folded = evaluate(input).inspect();
+            assertEquals(unfolded(input), folded, input);
+        }
+    }
+
+    private String unfolded(String input) {
+        Program program = parse(input);
+        Resolver.resolve(program);
+        return Evaluator.evaluate(program, new Environment()).inspect();
+    }
+
+    private IObject evaluate(String input) {
+        return Evaluator.evaluate(parse(input), new Environment());
+    }
+
+    private void assertFolded(String input, String expected) {
+        Program program = parse(input);
+        ConstantFolder.fold(program);
+        assertEquals(expected, program.string(), input);
+    }
+
+    private Program parse(String input) {
+        Parser parser = new Parser(new Lexer(input));
+        Program program = parser.parseProgram();
+        assertEquals(0, parser.getErrors().size(), String.join("\n", parser.getErrors()));
+
+        return program;
+    }
+}
@@ -2,12 +2,15 @@ package dk.madsravn.interpreter.parser;
 
 import dk.madsravn.interpreter.ast.*;
 import dk.madsravn.interpreter.lexer.Lexer;
+import dk.madsravn.interpreter.lexer.StreamingLexer;
 import org.junit.jupiter.api.Test;
 
+import java.io.StringReader;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -616,6 +619,94 @@ public class ParserTest {
         assertEquals(integerLiteral.tokenLiteral(), "" + value);
     }
 
+    @Test
+    public void testParsingTokenBuffer() {
+        String input = """
+                let add = fn(x, y) { x + y * 2; };
+                let result = if (add(1, 2) > 3) { [1, "two", true][0] } else { {"a": -1}["a"] };
+                return !result;
+                """;
+        Parser fromLexer = new Parser(new Lexer(input));
+        Program expected = fromLexer.parseProgram();
+        Parser fromBuffer = new Parser(new Lexer(input).tokenize());
+        Program program = fromBuffer.parseProgram();
+        checkForParseErrors(fromBuffer, input);
+
+        assertEquals(expected.getStatementsLength(), program.getStatementsLength());
+        assertEquals(expected.string(), program.string());
+    }
+
+    @Test
+    public void testParsingStreamingLexer() {
+        String input = "let add = fn(x, y) { x + y * 2; }; let result = add(1, 2) == 7; return [result, \"s\"][0];";
+        Program expected = new Parser(new Lexer(input)).parseProgram();
+        Parser parser = new Parser(new StreamingLexer(new StringReader(input), 4));
+        Program program = parser.parseProgram();
+        checkForParseErrors(parser, input);
+
+        assertEquals(expected.string(), program.string());
+    }
+
+    @Test
+    public void testParallelParserMatchesSequentialParser() {
+        StringBuilder sb = new StringBuilder();
+        for(int i = 0; i < 200; i++) {
+            sb.append("let f = fn(x) { let y = x * 2; if (y > 10) { return \"a;{\"; } y; };\n");
+            sb.append("let s = \"}; let broken = (\";\n");
+            sb.append("f(").append(i).append(") + {\"k\": fn() { 1; 2 }}[\"k\"]();\n");
+        }
+        String input = sb.toString();
+        Program expected = new Parser(new Lexer(input)).parseProgram();
+        ParallelParser parser = new ParallelParser(input, new ForkJoinPool(4), 256);
+        Program program = parser.parseProgram();
+        assertEquals(0, parser.getErrors().size(), formatErrors(parser.getErrors()));
+
+        assertEquals(expected.getStatementsLength(), program.getStatementsLength());
+        assertEquals(expected.string(), program.string());
+    }
+
+    @Test
+    public void testParallelParserKeepsErrorsInSourceOrder() {
+        StringBuilder sb = new StringBuilder();
+        for(int i = 0; i < 50; i++) {
+            sb.append("let ").append("x".repeat(i + 1)).append(" = 1;\n");
+            sb.append("let = ").append(i).append(";\n");
+        }
+        String input = sb.toString();
+        Parser sequential = new Parser(new Lexer(input));
+        sequential.parseProgram();
+        ParallelParser parser = new ParallelParser(input, new ForkJoinPool(4), 32);
+        parser.parseProgram();
+
+        assertFalse(sequential.getErrors().isEmpty());
+        assertEquals(sequential.getErrors(), parser.getErrors());
+    }
+
+    @Test
+    public void testParallelParserRecoversLikeSequentialParser() {
+        for(String input : List.of("if;;;let = ;", "let a = 1; if;; let b = 2; let = ; c;", "let x = ;; fn(;; 3;")) {
+            Parser sequential = new Parser(new Lexer(input));
+            Program expected = sequential.parseProgram();
+            ParallelParser parser = new ParallelParser(input, new ForkJoinPool(2), 1);
+            Program program = parser.parseProgram();
+
+            assertFalse(sequential.getErrors().isEmpty());
+            assertEquals(sequential.getErrors(), parser.getErrors());
+            assertEquals(expected.getStatementsLength(), program.getStatementsLength());
+            assertEquals(expected.string(), program.string());
+        }
+    }
+
+    @Test
+    public void testParallelParserSplitPoints() {
+        String input = "let a = 1; let b = fn() { 1; 2 }; let c = \"x;y\"; let d = [1; 2]; e;";
+        assertEquals(List.of(10, 33, 48, 64), ParallelParser.splitPoints(input, 1));
+        assertEquals(List.of(33, 64), ParallelParser.splitPoints(input, 20));
+        assertEquals(List.of(), ParallelParser.splitPoints(input, input.length()));
+        assertEquals(List.of(), ParallelParser.splitPoints("let a = 1; let b = { 2; let c = 3; d;", 1));
+        assertEquals(List.of(), ParallelParser.splitPoints("let a = 1; let b = \"2; let c = 3; d;", 1));
+    }
+
     private void checkForParseErrors(Parser parser, String input) {
         assertEquals(parser.getErrors().size(), 0, "Input [" + input + "] should not gives errors. There should not be any errors: " + formatErrors(parser.getErrors()));
     }
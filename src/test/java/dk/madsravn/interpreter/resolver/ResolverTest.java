@@ -0,0 +1,218 @@
+package dk.madsravn.interpreter.resolver;
+
+import dk.madsravn.interpreter.ast.*;
+import dk.madsravn.interpreter.builtins.Builtins;
+import dk.madsravn.interpreter.lexer.Lexer;
+import dk.madsravn.interpreter.parser.Parser;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ResolverTest {
+
+    @Test
+    public void testGlobalsStayUnresolved() {
+        Program program = resolve("let a = 5; a;");
+        LetStatement let = (LetStatement) program.getStatements().get(0);
+        Identifier a = (Identifier) ((ExpressionStatement) program.getStatements().get(1)).getExpression();
+
+        assertTrue(program.isResolved());
+        assertFalse(let.getName().isResolved());
+        assertFalse(a.isResolved());
+    }
+
+    @Test
+    public void testParametersAndLocals() {
+        Program program = resolve("let f = fn(x, y) { let z = x; z + y };");
+        FunctionLiteral function = functionOf(program.getStatements().get(0));
+        LetStatement let = (LetStatement) function.getBody().getStatements().get(0);
+        InfixExpression sum = (InfixExpression) ((ExpressionStatement) function.getBody().getStatements().get(1)).getExpression();
+
+        assertEquals(3, function.getFrameSize());
+        assertEquals(0, function.getCellCount());
+        assertTrue(function.getCaptures().isEmpty());
+        assertBinding(function.getParameters().get(0), Identifier.Binding.LOCAL, 0);
+        assertBinding(function.getParameters().get(1), Identifier.Binding.LOCAL, 1);
+        assertBinding(let.getName(), Identifier.Binding.LOCAL, 2);
+        assertBinding((Identifier) let.getValue(), Identifier.Binding.LOCAL, 0);
+        assertBinding((Identifier) sum.getLeft(), Identifier.Binding.LOCAL, 2);
+        assertBinding((Identifier) sum.getRight(), Identifier.Binding.LOCAL, 1);
+    }
+
+    @Test
+    public void testClosureCapturesOuterVariable() {
+        Program program = resolve("fn(a) { fn(b) { a + b } }");
+        FunctionLiteral outer = (FunctionLiteral) ((ExpressionStatement) program.getStatements().get(0)).getExpression();
+        FunctionLiteral inner = (FunctionLiteral) ((ExpressionStatement) outer.getBody().getStatements().get(0)).getExpression();
+        InfixExpression sum = (InfixExpression) ((ExpressionStatement) inner.getBody().getStatements().get(0)).getExpression();
+
+        assertEquals(0, outer.getFrameSize());
+        assertEquals(1, outer.getCellCount());
+        assertBinding(outer.getParameters().get(0), Identifier.Binding.CELL, 0);
+        assertEquals(List.of(new Capture(true, 0)), inner.getCaptures());
+        assertBinding((Identifier) sum.getLeft(), Identifier.Binding.FREE, 0);
+        assertBinding((Identifier) sum.getRight(), Identifier.Binding.LOCAL, 0);
+    }
+
+    @Test
+    public void testClosureCapturesOnlyWhatItUses() {
+        Program program = resolve("fn() { let big = [1, 2, 3]; let x = 1; fn() { x } }");
+        FunctionLiteral outer = (FunctionLiteral) ((ExpressionStatement) program.getStatements().get(0)).getExpression();
+        List<IStatement> body = outer.getBody().getStatements();
+        FunctionLiteral inner = (FunctionLiteral) ((ExpressionStatement) body.get(2)).getExpression();
+
+        assertEquals(1, outer.getFrameSize());
+        assertEquals(1, outer.getCellCount());
+        assertBinding(((LetStatement) body.get(0)).getName(), Identifier.Binding.LOCAL, 0);
+        assertBinding(((LetStatement) body.get(1)).getName(), Identifier.Binding.CELL, 0);
+        assertEquals(List.of(new Capture(true, 0)), inner.getCaptures());
+    }
+
+    @Test
+    public void testCapturesPassThroughIntermediateFunctions() {
+        Program program = resolve("fn(a, b) { fn() { fn() { b } } }");
+        FunctionLiteral outer = (FunctionLiteral) ((ExpressionStatement) program.getStatements().get(0)).getExpression();
+        FunctionLiteral middle = (FunctionLiteral) ((ExpressionStatement) outer.getBody().getStatements().get(0)).getExpression();
+        FunctionLiteral inner = (FunctionLiteral) ((ExpressionStatement) middle.getBody().getStatements().get(0)).getExpression();
+
+        assertBinding(outer.getParameters().get(0), Identifier.Binding.LOCAL, 0);
+        assertBinding(outer.getParameters().get(1), Identifier.Binding.CELL, 0);
+        assertEquals(List.of(new Capture(true, 0)), middle.getCaptures());
+        assertEquals(List.of(new Capture(false, 0)), inner.getCaptures());
+        assertBinding((Identifier) ((ExpressionStatement) inner.getBody().getStatements().get(0)).getExpression(), Identifier.Binding.FREE, 0);
+    }
+
+    @Test
+    public void testFunctionBodySeesLaterBindingsOfEnclosingFunction() {
+        Program program = resolve("fn() { let count = fn(n) { count(n) }; count(1) }");
+        FunctionLiteral outer = (FunctionLiteral) ((ExpressionStatement) program.getStatements().get(0)).getExpression();
+        FunctionLiteral count = functionOf(outer.getBody().getStatements().get(0));
+        CallExpression call = (CallExpression) ((ExpressionStatement) count.getBody().getStatements().get(0)).getExpression();
+
+        assertBinding(((LetStatement) outer.getBody().getStatements().get(0)).getName(), Identifier.Binding.CELL, 0);
+        assertBinding((Identifier) call.getFunction(), Identifier.Binding.FREE, 0);
+    }
+
+    @Test
+    public void testLetsThatShadowAnEnclosingBindingStartOutWithIt() {
+        Program program = resolve("fn(x) { let y = 10; fn(n) { if (n > 0) { let y = 1; let x = 2; }; y + x } }");
+        FunctionLiteral outer = (FunctionLiteral) ((ExpressionStatement) program.getStatements().get(0)).getExpression();
+        FunctionLiteral inner = (FunctionLiteral) ((ExpressionStatement) outer.getBody().getStatements().get(1)).getExpression();
+
+        assertBinding(outer.getParameters().get(0), Identifier.Binding.CELL, 0);
+        assertBinding(((LetStatement) outer.getBody().getStatements().get(0)).getName(), Identifier.Binding.CELL, 1);
+        assertEquals(List.of(new Capture(true, 1), new Capture(true, 0)), inner.getCaptures());
+        assertEquals(List.of(new Shadow(false, 1, 0), new Shadow(false, 2, 1)), inner.getShadows());
+        assertEquals(List.of(), outer.getShadows());
+    }
+
+    @Test
+    public void testParametersShadowWithoutCapturing() {
+        Program program = resolve("fn(x) { fn(x) { x } }");
+        FunctionLiteral outer = (FunctionLiteral) ((ExpressionStatement) program.getStatements().get(0)).getExpression();
+        FunctionLiteral inner = (FunctionLiteral) ((ExpressionStatement) outer.getBody().getStatements().get(0)).getExpression();
+
+        assertBinding(outer.getParameters().get(0), Identifier.Binding.LOCAL, 0);
+        assertEquals(List.of(), inner.getCaptures());
+        assertEquals(List.of(), inner.getShadows());
+    }
+
+    @Test
+    public void testRebindingReusesSlot() {
+        Program program = resolve("fn(x) { let x = x + 1; x }");
+        FunctionLiteral function = (FunctionLiteral) ((ExpressionStatement) program.getStatements().get(0)).getExpression();
+        LetStatement let = (LetStatement) function.getBody().getStatements().get(0);
+
+        assertEquals(1, function.getFrameSize());
+        assertBinding(let.getName(), Identifier.Binding.LOCAL, 0);
+    }
+
+    @Test
+    public void testTailCalls() {
+        Program program = resolve("let f = fn(n) { g(n); if (n) { return h(n); } if (n) { f(n) } else { 1 + f(n) } }; f(1);");
+        FunctionLiteral function = functionOf(program.getStatements().get(0));
+        List<IStatement> body = function.getBody().getStatements();
+        CallExpression first = (CallExpression) ((ExpressionStatement) body.get(0)).getExpression();
+        IfExpression returning = (IfExpression) ((ExpressionStatement) body.get(1)).getExpression();
+        CallExpression returned = (CallExpression) ((ReturnStatement) returning.getConsequence().getStatements().get(0)).getExpression();
+        IfExpression last = (IfExpression) ((ExpressionStatement) body.get(2)).getExpression();
+        CallExpression consequence = (CallExpression) ((ExpressionStatement) last.getConsequence().getStatements().get(0)).getExpression();
+        InfixExpression alternative = (InfixExpression) ((ExpressionStatement) last.getAlternative().getStatements().get(0)).getExpression();
+        CallExpression topLevel = (CallExpression) ((ExpressionStatement) program.getStatements().get(1)).getExpression();
+
+        assertFalse(first.isTailCall());
+        assertTrue(returned.isTailCall());
+        assertTrue(consequence.isTailCall());
+        assertFalse(((CallExpression) alternative.getRight()).isTailCall());
+        assertFalse(topLevel.isTailCall());
+    }
+
+    @Test
+    public void testBuiltinsBindStatically() {
+        Program program = resolve("let f = fn(x) { len(x) }; first([1]);");
+        FunctionLiteral function = functionOf(program.getStatements().get(0));
+        CallExpression inner = (CallExpression) ((ExpressionStatement) function.getBody().getStatements().get(0)).getExpression();
+        CallExpression topLevel = (CallExpression) ((ExpressionStatement) program.getStatements().get(1)).getExpression();
+
+        assertBinding((Identifier) inner.getFunction(), Identifier.Binding.BUILTIN, Builtins.indexOf("len"));
+        assertBinding((Identifier) topLevel.getFunction(), Identifier.Binding.BUILTIN, Builtins.indexOf("first"));
+    }
+
+    @Test
+    public void testShadowedBuiltinsStayGlobal() {
+        Program program = resolve("len(a); let len = fn(x) { 1 }; len(a); let f = fn() { len(a) }; fn(len) { len(a) };");
+        List<IStatement> statements = program.getStatements();
+        Identifier before = (Identifier) ((CallExpression) ((ExpressionStatement) statements.get(0)).getExpression()).getFunction();
+        Identifier after = (Identifier) ((CallExpression) ((ExpressionStatement) statements.get(2)).getExpression()).getFunction();
+        FunctionLiteral function = functionOf(statements.get(3));
+        Identifier inFunction = (Identifier) ((CallExpression) ((ExpressionStatement) function.getBody().getStatements().get(0)).getExpression()).getFunction();
+        FunctionLiteral parameter = (FunctionLiteral) ((ExpressionStatement) statements.get(4)).getExpression();
+        Identifier asParameter = (Identifier) ((CallExpression) ((ExpressionStatement) parameter.getBody().getStatements().get(0)).getExpression()).getFunction();
+
+        assertBinding(before, Identifier.Binding.BUILTIN, Builtins.indexOf("len"));
+        assertBinding(after, Identifier.Binding.GLOBAL, Identifier.NO_INDEX);
+        assertBinding(inFunction, Identifier.Binding.GLOBAL, Identifier.NO_INDEX);
+        assertBinding(asParameter, Identifier.Binding.LOCAL, 0);
+    }
+
+    @Test
+    public void testGlobalsOfTheEnvironmentShadowBuiltins() {
+        Program program = new Parser(new Lexer("len(a)")).parseProgram();
+        Resolver.resolve(program, name -> name.equals("len"));
+        Identifier len = (Identifier) ((CallExpression) ((ExpressionStatement) program.getStatements().get(0)).getExpression()).getFunction();
+
+        assertBinding(len, Identifier.Binding.GLOBAL, Identifier.NO_INDEX);
+    }
+
+    @Test
+    public void testFunctionsInAnExistingEnvironmentLookUpBuiltinsWhenCalled() {
+        Program program = new Parser(new Lexer("len(a); let f = fn(x) { len(x) };")).parseProgram();
+        Resolver.resolve(program, name -> false);
+        Identifier atTopLevel = (Identifier) ((CallExpression) ((ExpressionStatement) program.getStatements().get(0)).getExpression()).getFunction();
+        FunctionLiteral function = functionOf(program.getStatements().get(1));
+        Identifier inFunction = (Identifier) ((CallExpression) ((ExpressionStatement) function.getBody().getStatements().get(0)).getExpression()).getFunction();
+
+        assertBinding(atTopLevel, Identifier.Binding.BUILTIN, Builtins.indexOf("len"));
+        assertBinding(inFunction, Identifier.Binding.GLOBAL, Identifier.NO_INDEX);
+    }
+
+    private FunctionLiteral functionOf(IStatement statement) {
+        return (FunctionLiteral) ((LetStatement) statement).getValue();
+    }
+
+    private void assertBinding(Identifier identifier, Identifier.Binding binding, int index) {
+        assertEquals(binding, identifier.getBinding(), "binding of " + identifier.getValue());
+        assertEquals(index, identifier.getIndex(), "index of " + identifier.getValue());
+    }
+
+    private Program resolve(String input) {
+        Lexer lexer = new Lexer(input);
+        Parser parser = new Parser(lexer);
+        Program program = parser.parseProgram();
+        Resolver.resolve(program);
+
+        return program;
+    }
+}
@@ -0,0 +1,142 @@
+package dk.madsravn.interpreter.serialization;
+
+import dk.madsravn.interpreter.ast.*;
+import dk.madsravn.interpreter.evaluator.Evaluator;
+import dk.madsravn.interpreter.lexer.Lexer;
+import dk.madsravn.interpreter.object.Environment;
+import dk.madsravn.interpreter.object.IObject;
+import dk.madsravn.interpreter.parser.Parser;
+import dk.madsravn.interpreter.tokens.TokenType;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AstSerializationTest {
+    private static final String SCRIPT = """
+            let fib = fn(n) { if (n < 2) { return n; } else { fib(n - 1) + fib(n - 2) } };
+            let names = ["ørred", "a b", ""];
+            let counts = {"one": 1};
+            let flags = [{2: !true}, {false: -007}];
+            let apply = fn(f, xs) { [f(xs[0]), len(xs)] };
+            apply(fn(x) { x * 2 / 1 }, [fib(10), 5 == 5, 6 != 7, 1 > 0]);
+            if (true) { 1 };
+            counts["one"];
+            """;
+
+    @Test
+    public void testRoundTrip() {
+        Program expected = parse(SCRIPT);
+        Program program = AstReader.read(AstWriter.write(expected));
+
+        assertEquals(expected.getStatementsLength(), program.getStatementsLength());
+        assertEquals(expected.string(), program.string());
+        assertFalse(program.isResolved());
+        for(int i = 0; i < expected.getStatementsLength(); i++) {
+            assertEquals(expected.getStatements().get(i).tokenLiteral(), program.getStatements().get(i).tokenLiteral());
+        }
+    }
+
+    @Test
+    public void testExpressionStatementKeepsItsToken() {
+        Program program = AstReader.read(AstWriter.write(parse("foo; 5; [1]; \"s\";")));
+
+        assertEquals(TokenType.IDENT, ((ExpressionStatement) program.getStatements().get(0)).getToken().getType());
+        assertEquals("5", program.getStatements().get(1).tokenLiteral());
+        assertEquals(TokenType.LBRACKET, ((ExpressionStatement) program.getStatements().get(2)).getToken().getType());
+        assertEquals("s", program.getStatements().get(3).tokenLiteral());
+    }
+
+    @Test
+    public void testIdentifiersAreDistinctNodes() {
+        Program program = AstReader.read(AstWriter.write(parse("a; a;")));
+        Identifier first = (Identifier) ((ExpressionStatement) program.getStatements().get(0)).getExpression();
+        Identifier second = (Identifier) ((ExpressionStatement) program.getStatements().get(1)).getExpression();
+
+        assertNotSame(first, second);
+        assertEquals("a", first.getValue());
+    }
+
+    @Test
+    public void testLoadedProgramEvaluates() {
+        Program expected = parse(SCRIPT + "fib(15) + apply(fn(x) { x }, [3])[0];");
+        Program program = AstReader.read(AstWriter.write(expected));
+
+        IObject evaluated = Evaluator.evaluate(program, new Environment());
+        assertEquals(Evaluator.evaluate(expected, new Environment()).inspect(), evaluated.inspect());
+        assertEquals("613", evaluated.inspect());
+    }
+
+    @Test
+    public void testStringTableIsShared() {
+        byte[] once = AstWriter.write(parse("let identifier = \"string\";"));
+        byte[] twice = AstWriter.write(parse("let identifier = \"string\"; let identifier = \"string\";"));
+
+        assertTrue(twice.length - once.length < "let identifier = \"string\";".length());
+    }
+
+    @Test
+    public void testRejectsInvalidInput() {
+        byte[] bytes = AstWriter.write(parse(SCRIPT));
+
+        assertFalse(AstReader.isCompiled(SCRIPT.getBytes(StandardCharsets.UTF_8)));
+        assertThrows(IllegalArgumentException.class, () -> AstReader.read(SCRIPT.getBytes(StandardCharsets.UTF_8)));
+        assertThrows(IllegalArgumentException.class, () -> AstReader.read(Arrays.copyOf(bytes, bytes.length - 3)));
+        assertThrows(IllegalArgumentException.class, () -> AstReader.read(Arrays.copyOf(bytes, bytes.length + 1)));
+    }
+
+    @Test
+    public void testRejectsTruncatedInput() {
+        byte[] bytes = AstWriter.write(parse(SCRIPT));
+
+        for(int length = AstFormat.MAGIC.length; length < bytes.length; length++) {
+            byte[] truncated = Arrays.copyOf(bytes, length);
+            assertThrows(IllegalArgumentException.class, () -> AstReader.read(truncated), "truncated to " + length + " bytes");
+        }
+    }
+
+    @Test
+    public void testCorruptInputOnlyThrowsIllegalArgumentException() {
+        byte[] bytes = AstWriter.write(parse(SCRIPT));
+
+        for(int position = AstFormat.MAGIC.length; position < bytes.length; position++) {
+            for(int value : new int[] { 0x00, 0x01, 0x7F, 0x80, 0xFF }) {
+                byte[] corrupted = bytes.clone();
+                corrupted[position] = (byte) value;
+                assertDoesNotThrow(() -> {
+                    try {
+                        AstReader.read(corrupted);
+                    } catch(IllegalArgumentException e) {
+                        // Rejected, as it should be. Some corruptions still decode to a valid program.
+                    }
+                }, "byte " + position + " set to " + value);
+            }
+        }
+    }
+
+    @Test
+    public void testRejectsMissingNodes() {
+        byte[] nullStatement = { 'M', 'N', 'K', 'A', AstFormat.VERSION, 0, 1, AstFormat.NULL };
+        assertThrows(IllegalArgumentException.class, () -> AstReader.read(nullStatement));
+
+        // The body of fn() {} is the last node: the block's tag and its count of 0 statements.
+        byte[] function = AstWriter.write(parse("fn() {}"));
+        assertEquals(AstFormat.BLOCK_STATEMENT, function[function.length - 2]);
+        byte[] nullBody = Arrays.copyOf(function, function.length - 1);
+        nullBody[nullBody.length - 1] = AstFormat.NULL;
+        assertThrows(IllegalArgumentException.class, () -> AstReader.read(nullBody));
+
+        Program withoutElse = AstReader.read(AstWriter.write(parse("if (true) { 1 }")));
+        assertNull(((IfExpression) ((ExpressionStatement) withoutElse.getStatements().get(0)).getExpression()).getAlternative());
+    }
+
+    private Program parse(String input) {
+        Parser parser = new Parser(new Lexer(input));
+        Program program = parser.parseProgram();
+        assertEquals(0, parser.getErrors().size(), String.join("\n", parser.getErrors()));
+
+        return program;
+    }
+}
@@ -0,0 +1,195 @@
+package dk.madsravn.interpreter.vm;
+
+import dk.madsravn.interpreter.ast.Program;
+import dk.madsravn.interpreter.compiler.Compiler;
+import dk.madsravn.interpreter.compiler.SymbolTable;
+import dk.madsravn.interpreter.evaluator.EvaluatorTest;
+import dk.madsravn.interpreter.lexer.Lexer;
+import dk.madsravn.interpreter.object.*;
+import dk.madsravn.interpreter.parser.Parser;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Runs every EvaluatorTest case on the virtual machine, so both engines are held to the same behaviour.
+public class VMTest extends EvaluatorTest {
+
+    @Override
+    protected IObject testEval(String input) {
+        Lexer lexer = new Lexer(input);
+        Parser parser = new Parser(lexer);
+        Program program = parser.parseProgram();
+        Compiler compiler = new Compiler();
+        compiler.compile(program);
+        VM vm = new VM(compiler.bytecode());
+
+        return vm.run();
+    }
+
+    @Test
+    public void testRecursiveFibonacci() {
+        String input = """
+                let fibonacci = fn(x) {
+                    if (x == 0) {
+                        return 0;
+                    } else {
+                        if (x == 1) {
+                            return 1;
+                        } else {
+                            fibonacci(x - 1) + fibonacci(x - 2);
+                        }
+                    }
+                };
+                fibonacci(15);
+                """;
+        var evaluated = testEval(input);
+        assertTrue(evaluated instanceof IntegerObject);
+        assertEquals(610, ((IntegerObject) evaluated).getValue());
+    }
+
+    @Test
+    public void testClosures() {
+        String input = """
+                let newAdder = fn(a, b) {
+                    let c = a + b;
+                    fn(d) { let e = d + c; fn(f) { e + f; }; };
+                };
+                let adder = newAdder(1, 2);
+                adder(8)(9);
+                """;
+        var evaluated = testEval(input);
+        assertTrue(evaluated instanceof IntegerObject);
+        assertEquals(20, ((IntegerObject) evaluated).getValue());
+    }
+
+    @Test
+    public void testLateBoundGlobals() {
+        String input = """
+                let f = fn() { g() + 1 };
+                let g = fn() { 41 };
+                f();
+                """;
+        var evaluated = testEval(input);
+        assertTrue(evaluated instanceof IntegerObject);
+        assertEquals(42, ((IntegerObject) evaluated).getValue());
+    }
+
+    @Test
+    public void testGlobalsShadowBuiltins() {
+        assertEquals(42, ((IntegerObject) testEval("let g = fn(x) { len(x) }; let len = fn(x) { 42 }; g([1, 2])")).getValue());
+        assertEquals(5, ((IntegerObject) testEval("let f = fn() { puts }; let puts = 5; f()")).getValue());
+        // A global whose let never ran is still the builtin.
+        assertEquals(2, ((IntegerObject) testEval("if (false) { let len = 1; }; len([1, 2])")).getValue());
+    }
+
+    @Test
+    public void testRecursiveFunctionsSeeTheirNameRebound() {
+        String input = "let f = fn(n) { if (n == 0) { 0 } else { f(n - 1) } }; let g = f; let f = fn(n) { 99 }; g(3)";
+        assertEquals(99, ((IntegerObject) testEval(input)).getValue());
+        assertEquals(99, ((IntegerObject) testEval("fn() { " + input + " }()")).getValue());
+    }
+
+    @Test
+    public void testLaterInputsShadowBuiltins() {
+        // Like the REPL, every input is compiled on its own with the same symbol table, constants and globals.
+        SymbolTable symbolTable = new SymbolTable();
+        List<IObject> constants = new ArrayList<>();
+        IObject[] globals = new IObject[0];
+        List<IObject> results = new ArrayList<>();
+        for(String input : List.of("let f = fn(x) { len(x) };", "f(\"abc\")", "let len = fn(x) { 42 };", "f(\"abc\")")) {
+            Compiler compiler = new Compiler(symbolTable, constants);
+            compiler.compile(new Parser(new Lexer(input)).parseProgram());
+            VM vm = new VM(compiler.bytecode(), globals);
+            results.add(vm.run());
+            globals = vm.getGlobals();
+        }
+
+        assertEquals(3, ((IntegerObject) results.get(1)).getValue());
+        assertEquals(42, ((IntegerObject) results.get(3)).getValue());
+    }
+
+    @Test
+    public void testLetStatementHasNoValue() {
+        assertNull(testEval("let a = 1;"));
+    }
+
+    @Test
+    public void testCallingWithWrongNumberOfArguments() {
+        var evaluated = testEval("fn(a, b) { a + b }(1);");
+        assertTrue(evaluated instanceof ErrorObject);
+        assertEquals("wrong number of arguments. got=1, want=2", ((ErrorObject) evaluated).getMessage());
+    }
+
+    @Test
+    public void testMoreThanAByteOfOperands() {
+        StringBuilder lets = new StringBuilder();
+        StringBuilder parameters = new StringBuilder();
+        StringBuilder arguments = new StringBuilder();
+        StringBuilder captures = new StringBuilder();
+        for(int i = 0; i < 300; i++) {
+            lets.append("let ").append(name(i)).append(" = ").append(i).append("; ");
+            parameters.append(i == 0 ? "" : ", ").append(name(i));
+            arguments.append(i == 0 ? "" : ", ").append(i);
+            captures.append(" + ").append(name(i));
+        }
+
+        assertEquals(299, ((IntegerObject) testEval("fn() { " + lets + name(299) + " }()")).getValue());
+        assertEquals(299, ((IntegerObject) testEval("fn(" + parameters + ") { " + name(0) + " + " + name(299) + " }(" + arguments + ")")).getValue());
+        assertEquals(299 * 300 / 2, ((IntegerObject) testEval("fn() { " + lets + "fn() { 0" + captures + " } }()()")).getValue());
+    }
+
+    // Identifiers can only contain letters.
+    private static String name(int index) {
+        return "v" + (char) ('a' + index / 26 / 26) + (char) ('a' + index / 26 % 26) + (char) ('a' + index % 26);
+    }
+
+    @Test
+    public void testStackOverflowIsAnError() {
+        var evaluated = testEval("let f = fn(x) { f(x + 1) + 1 }; f(0);");
+        assertTrue(evaluated instanceof ErrorObject);
+    }
+
+    @Test
+    public void testDeepRecursionOnSmallStack() throws Exception {
+        String input = "let sum = fn(n) { if (n == 0) { 0 } else { n + sum(n - 1) } }; sum(50000);";
+        IObject[] result = new IObject[1];
+        // 64KB is far too little for 50000 nested Java calls; the VM keeps its call stack on the heap.
+        Thread thread = new Thread(null, () -> result[0] = testEval(input), "small-stack", 64 * 1024);
+        thread.start();
+        thread.join();
+
+        assertTrue(result[0] instanceof IntegerObject);
+        assertEquals(1250025000, ((IntegerObject) result[0]).getValue());
+
+        Thread virtual = Thread.ofVirtual().start(() -> result[0] = testEval(input));
+        virtual.join();
+        assertEquals(1250025000, ((IntegerObject) result[0]).getValue());
+    }
+
+    @Test
+    public void testMaxDepth() {
+        Compiler compiler = new Compiler();
+        compiler.compile(new Parser(new Lexer("let f = fn(n) { if (n == 0) { 0 } else { 1 + f(n - 1) } }; f(100);")).parseProgram());
+
+        var within = new VM(compiler.bytecode(), new IObject[0], 101).run();
+        assertEquals(100, ((IntegerObject) within).getValue());
+
+        var beyond = new VM(compiler.bytecode(), new IObject[0], 100).run();
+        assertTrue(beyond instanceof ErrorObject);
+        assertEquals("stack overflow", ((ErrorObject) beyond).getMessage());
+    }
+
+    @Test
+    public void testTailCallsDoNotCountTowardsMaxDepth() {
+        Compiler compiler = new Compiler();
+        compiler.compile(new Parser(new Lexer("let c = fn(n, acc) { if (n == 0) { acc } else { c(n - 1, acc + 1) } }; c(100000, 0)")).parseProgram());
+
+        var evaluated = new VM(compiler.bytecode(), new IObject[0], 2).run();
+        assertEquals(100000, ((IntegerObject) evaluated).getValue());
+    }
+}